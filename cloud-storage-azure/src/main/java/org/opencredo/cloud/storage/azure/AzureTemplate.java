@@ -14,49 +14,84 @@
  */
 package org.opencredo.cloud.storage.azure;
 
+import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpStatus;
+import org.opencredo.cloud.storage.BatchResult;
+import org.opencredo.cloud.storage.BlobConditions;
+import org.opencredo.cloud.storage.BlobContent;
 import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.BlobDetailsPage;
+import org.opencredo.cloud.storage.BlobListOptions;
 import org.opencredo.cloud.storage.ContainerStatus;
+import org.opencredo.cloud.storage.ExecutorAsyncStorageOperations;
+import org.opencredo.cloud.storage.FilePart;
+import org.opencredo.cloud.storage.MultipartDownloadHandler;
+import org.opencredo.cloud.storage.MultipartDownloadSettings;
+import org.opencredo.cloud.storage.MultipartDownloader;
+import org.opencredo.cloud.storage.MultipartUploadHandler;
+import org.opencredo.cloud.storage.MultipartUploadSettings;
+import org.opencredo.cloud.storage.MultipartUploader;
+import org.opencredo.cloud.storage.PagedBlobDetailsIterator;
+import org.opencredo.cloud.storage.ResponseBodyInputStream;
+import org.opencredo.cloud.storage.StorageBatchOperations;
 import org.opencredo.cloud.storage.StorageCommunicationException;
+import org.opencredo.cloud.storage.StorageObjectModifiedException;
 import org.opencredo.cloud.storage.StorageOperations;
 import org.opencredo.cloud.storage.StorageResponseHandlingException;
 import org.opencredo.cloud.storage.StorageUtils;
+import org.opencredo.cloud.storage.StreamingUploadHandler;
+import org.opencredo.cloud.storage.StreamingUploadOutputStream;
 import org.opencredo.cloud.storage.azure.model.FileBlob;
+import org.opencredo.cloud.storage.azure.model.FilePartBlob;
 import org.opencredo.cloud.storage.azure.model.InputStreamBlob;
 import org.opencredo.cloud.storage.azure.model.StringBlob;
 import org.opencredo.cloud.storage.azure.rest.AzureRestCommunicationException;
+import org.opencredo.cloud.storage.azure.rest.AzureRestPreconditionFailedException;
 import org.opencredo.cloud.storage.azure.rest.AzureRestRequestCreationException;
 import org.opencredo.cloud.storage.azure.rest.AzureRestResponseHandlingException;
 import org.opencredo.cloud.storage.azure.rest.AzureRestService;
+import org.opencredo.cloud.storage.azure.rest.ConnectionPoolStatistics;
+import org.opencredo.cloud.storage.azure.rest.HttpConnectionPoolSettings;
 import org.opencredo.cloud.storage.azure.rest.internal.DefaultAzureRestService;
-import org.opencredo.cloud.storage.azure.rest.internal.XPathContainerNamesListFactory;
-import org.opencredo.cloud.storage.azure.rest.internal.XPathContainerObjectDetailsListFactory;
+import org.opencredo.cloud.storage.azure.rest.internal.StaxContainerNamesListFactory;
+import org.opencredo.cloud.storage.azure.rest.internal.StaxContainerObjectDetailsListFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.util.Assert;
-import org.springframework.xml.xpath.Jaxp13XPathTemplate;
-import org.springframework.xml.xpath.XPathOperations;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This is template class for interacting with Azure cloud storage.
  *
  * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
  */
-public class AzureTemplate implements StorageOperations {
+public class AzureTemplate implements StorageOperations, DisposableBean {
     private static final Logger LOG = LoggerFactory.getLogger(AzureTemplate.class);
 
     public static final String DEFAULT_CONTAINER_NAME = "container1";
 
+    /**
+     * Maximum size of single block accepted by Put Block request.
+     */
+    public static final long MAX_BLOCK_SIZE = 4 * 1024 * 1024;
+
     private final String defaultContainerName;
 
     private final AzureRestService restService;
 
+    private MultipartUploadSettings streamingUploadSettings = new MultipartUploadSettings();
+
     /**
      * Constructor with Azure credentials. Default container name is set to
      * {@link #DEFAULT_CONTAINER_NAME}.
@@ -72,13 +107,66 @@ public class AzureTemplate implements StorageOperations {
      * @param defaultContainerName Default container name.
      */
     public AzureTemplate(final AzureCredentials credentials, String defaultContainerName) {
+        this(credentials, defaultContainerName, new HttpConnectionPoolSettings());
+    }
+
+    /**
+     * @param credentials          Azure credentials
+     * @param defaultContainerName Default container name.
+     * @param poolSettings         HTTP connection pool settings.
+     */
+    public AzureTemplate(final AzureCredentials credentials, String defaultContainerName,
+                         HttpConnectionPoolSettings poolSettings) {
+        this(credentials, defaultContainerName, poolSettings, DefaultAzureRestService.DEFAULT_BLOB_URL_FORMAT);
+    }
+
+    /**
+     * @param credentials          Azure credentials
+     * @param defaultContainerName Default container name.
+     * @param poolSettings         HTTP connection pool settings.
+     * @param blobUrlFormat        Blob service URL format with account name and
+     *                             request path placeholders.
+     * @see DefaultAzureRestService#DEFAULT_BLOB_URL_FORMAT
+     */
+    public AzureTemplate(final AzureCredentials credentials, String defaultContainerName,
+                         HttpConnectionPoolSettings poolSettings, String blobUrlFormat) {
         super();
         Assert.hasText(defaultContainerName, "Default container name is not provided");
+        Assert.notNull(poolSettings, "HTTP connection pool settings are not provided");
+        Assert.hasText(blobUrlFormat, "Blob URL format is not provided");
         this.defaultContainerName = defaultContainerName;
 
-        XPathOperations xpathOperations = new Jaxp13XPathTemplate();
-        restService = new DefaultAzureRestService(credentials, new XPathContainerNamesListFactory(xpathOperations),
-                new XPathContainerObjectDetailsListFactory(xpathOperations));
+        restService = new DefaultAzureRestService(credentials, new StaxContainerNamesListFactory(),
+                new StaxContainerObjectDetailsListFactory(), poolSettings, blobUrlFormat);
+    }
+
+    /**
+     * @return Current utilisation of HTTP connection pool.
+     */
+    public ConnectionPoolStatistics getConnectionPoolStatistics() {
+        return restService.getConnectionPoolStatistics();
+    }
+
+    /**
+     * Creates asynchronous operations executed by as many threads as there are
+     * pooled connections to storage account, so requests wait in queue
+     * instead of waiting for pooled connection. Returned operations must be
+     * shut down when no longer used.
+     *
+     * @return
+     */
+    public ExecutorAsyncStorageOperations createAsyncOperations() {
+        return new ExecutorAsyncStorageOperations(this, restService.getConnectionPoolStatistics()
+                .getMaxConnectionsPerRoute());
+    }
+
+    /**
+     * Closes pooled HTTP connections.
+     *
+     * @see org.springframework.beans.factory.DisposableBean#destroy()
+     */
+    public void destroy() {
+        restService.shutdown();
     }
 
     /**
@@ -94,7 +182,7 @@ public class AzureTemplate implements StorageOperations {
                     "Azure cloud storage request 'check container status' has failed [container: '%s'].", containerName);
         } catch (AzureRestResponseHandlingException e) {
             throw new StorageCommunicationException(
-                    e,
+                    e.getStatusCode(), e,
                     "Response handling for Azure cloud storage request 'check container status' has failed [container: '%s'].",
                     containerName);
         }
@@ -123,12 +211,146 @@ public class AzureTemplate implements StorageOperations {
                     containerName, objectName);
         } catch (AzureRestResponseHandlingException e) {
             throw new StorageCommunicationException(
-                    e,
+                    e.getStatusCode(), e,
                     "Response handling for Azure cloud storage request 'delete object' has failed [container: '%s', blob: '%s']",
                     containerName, objectName);
         }
     }
 
+    /**
+     * @param containerName
+     * @param objectName
+     * @param conditions
+     * @see org.opencredo.cloud.storage.StorageOperations#deleteObject(java.lang.String,
+     *      java.lang.String, org.opencredo.cloud.storage.BlobConditions)
+     */
+    public void deleteObject(String containerName, String objectName, BlobConditions conditions) {
+        Assert.notNull(conditions, "Conditions are not provided");
+        try {
+            restService.deleteObject(containerName, objectName, conditions);
+        } catch (AzureRestPreconditionFailedException e) {
+            throw new StorageObjectModifiedException(e,
+                    "Blob does not meet delete conditions %s [container: '%s', blob: '%s']", conditions,
+                    containerName, objectName);
+        } catch (AzureRestCommunicationException e) {
+            throw new StorageCommunicationException(e,
+                    "Azure cloud storage request 'delete object conditionally' has failed [container: '%s', blob: '%s']",
+                    containerName, objectName);
+        } catch (AzureRestResponseHandlingException e) {
+            throw new StorageCommunicationException(
+                    e.getStatusCode(), e,
+                    "Response handling for Azure cloud storage request 'delete object conditionally' has failed [container: '%s', blob: '%s']",
+                    containerName, objectName);
+        }
+    }
+
+    /**
+     * Blob is copied by Azure service (Copy Blob), content is not transferred
+     * through this template.
+     *
+     * @param srcContainerName
+     * @param srcObjectName
+     * @param dstContainerName
+     * @param dstObjectName
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#copy(java.lang.String,
+     *      java.lang.String, java.lang.String, java.lang.String)
+     */
+    public String copy(String srcContainerName, String srcObjectName, String dstContainerName, String dstObjectName) {
+        Assert.hasText(srcObjectName, "Source blob name must be set");
+        Assert.hasText(dstObjectName, "Destination blob name must be set");
+        try {
+            restService.copyObject(srcContainerName, srcObjectName, dstContainerName, dstObjectName);
+        } catch (AzureRestCommunicationException e) {
+            throw new StorageCommunicationException(e,
+                    "Azure cloud storage request 'copy' has failed [container: '%s', blob: '%s', destination container: '%s', destination blob: '%s']",
+                    srcContainerName, srcObjectName, dstContainerName, dstObjectName);
+        } catch (AzureRestResponseHandlingException e) {
+            throw new StorageCommunicationException(
+                    e.getStatusCode(), e,
+                    "Response handling for Azure cloud storage request 'copy' has failed [container: '%s', blob: '%s', destination container: '%s', destination blob: '%s']",
+                    srcContainerName, srcObjectName, dstContainerName, dstObjectName);
+        }
+        return dstObjectName;
+    }
+
+    /**
+     * Azure Blob REST API has no rename, blob is copied and source blob is
+     * deleted.
+     *
+     * @param srcContainerName
+     * @param srcObjectName
+     * @param dstContainerName
+     * @param dstObjectName
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#move(java.lang.String,
+     *      java.lang.String, java.lang.String, java.lang.String)
+     */
+    public String move(String srcContainerName, String srcObjectName, String dstContainerName, String dstObjectName) {
+        copy(srcContainerName, srcObjectName, dstContainerName, dstObjectName);
+        deleteObject(srcContainerName, srcObjectName);
+        return dstObjectName;
+    }
+
+    /**
+     * @param containerName
+     * @param filesToSend
+     * @param maxConcurrency
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#sendAll(java.lang.String,
+     *      java.util.Map, int)
+     */
+    public BatchResult<String> sendAll(String containerName, Map<String, File> filesToSend, int maxConcurrency) {
+        Assert.notNull(filesToSend, "Files to send must be specified");
+        return new StorageBatchOperations(this, maxConcurrency).sendAll(containerName, filesToSend);
+    }
+
+    /**
+     * @param containerName
+     * @param objectsToReceive
+     * @param maxConcurrency
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#receiveAll(java.lang.String,
+     *      java.util.Map, int)
+     */
+    public BatchResult<String> receiveAll(String containerName, Map<String, File> objectsToReceive,
+                                          int maxConcurrency) {
+        Assert.notNull(objectsToReceive, "Objects to receive must be specified");
+        return new StorageBatchOperations(this, maxConcurrency).receiveAll(containerName, objectsToReceive);
+    }
+
+    /**
+     * Azure Blob REST API version used has no batch delete, objects are
+     * deleted with concurrent single object requests.
+     *
+     * @param containerName
+     * @param objectNames
+     * @param maxConcurrency
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#deleteAll(java.lang.String,
+     *      java.util.Collection, int)
+     */
+    public BatchResult<Void> deleteAll(String containerName, Collection<String> objectNames, int maxConcurrency) {
+        Assert.notNull(objectNames, "Object names must be specified");
+        return new StorageBatchOperations(this, maxConcurrency).deleteAll(containerName, objectNames);
+    }
+
+    /**
+     * @param srcContainerName
+     * @param srcPrefix
+     * @param dstContainerName
+     * @param dstPrefix
+     * @param maxConcurrency
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#copyAll(java.lang.String,
+     *      java.lang.String, java.lang.String, java.lang.String, int)
+     */
+    public BatchResult<String> copyAll(String srcContainerName, String srcPrefix, String dstContainerName,
+                                       String dstPrefix, int maxConcurrency) {
+        return new StorageBatchOperations(this, maxConcurrency).copyAll(srcContainerName, srcPrefix,
+                dstContainerName, dstPrefix);
+    }
+
     public String createdSignedUrl(String containerName, String objectName, Date expiryDate) {
         throw new StorageCommunicationException("Method not currently supported for Azure");
     }
@@ -156,12 +378,49 @@ public class AzureTemplate implements StorageOperations {
                     containerName);
         } catch (AzureRestResponseHandlingException e) {
             throw new StorageCommunicationException(
-                    e,
+                    e.getStatusCode(), e,
                     "Response handling for Azure cloud storage request 'list container object details' has failed [container: '%s'].",
                     containerName);
         }
     }
 
+    /**
+     * @param containerName
+     * @param options
+     * @param marker
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#listContainerObjectDetailsPage(java.lang.String,
+     *      org.opencredo.cloud.storage.BlobListOptions, java.lang.String)
+     */
+    public BlobDetailsPage listContainerObjectDetailsPage(String containerName, BlobListOptions options, String marker) {
+        Assert.notNull(options, "Blob list options are not provided");
+        try {
+            return restService.listContainerObjectDetailsPage(containerName, options.getPrefix(), options
+                    .getDelimiter(), marker, options.getPageSize());
+        } catch (AzureRestCommunicationException e) {
+            throw new StorageCommunicationException(e,
+                    "Azure cloud storage request 'list container object details page' has failed [container: '%s'].",
+                    containerName);
+        } catch (AzureRestResponseHandlingException e) {
+            throw new StorageCommunicationException(
+                    e.getStatusCode(), e,
+                    "Response handling for Azure cloud storage request 'list container object details page' has failed [container: '%s'].",
+                    containerName);
+        }
+    }
+
+    /**
+     * @param containerName
+     * @param options
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#iterateContainerObjectDetails(java.lang.String,
+     *      org.opencredo.cloud.storage.BlobListOptions)
+     */
+    public Iterator<BlobDetails> iterateContainerObjectDetails(String containerName, BlobListOptions options) {
+        Assert.notNull(options, "Blob list options are not provided");
+        return new PagedBlobDetailsIterator(this, containerName, options);
+    }
+
     /**
      * @return
      * @see org.opencredo.cloud.storage.StorageOperations#listContainerNames()
@@ -172,7 +431,7 @@ public class AzureTemplate implements StorageOperations {
         } catch (AzureRestCommunicationException e) {
             throw new StorageCommunicationException("Azure cloud storage request 'list container names' has failed", e);
         } catch (AzureRestResponseHandlingException e) {
-            throw new StorageCommunicationException(
+            throw new StorageCommunicationException(e.getStatusCode(),
                     "Response handling for Azure cloud storage request 'list container names' has failed has failed", e);
         }
     }
@@ -189,7 +448,7 @@ public class AzureTemplate implements StorageOperations {
                     "Azure cloud storage request 'create container' has failed [container: '%s'].", containerName);
         } catch (AzureRestResponseHandlingException e) {
             throw new StorageCommunicationException(
-                    e,
+                    e.getStatusCode(), e,
                     "Response handling for Azure cloud storage request 'create container' has failed [container: '%s'].",
                     containerName);
         }
@@ -208,7 +467,7 @@ public class AzureTemplate implements StorageOperations {
                     "Azure cloud storage request 'delete container' has failed [container: '%s'].", containerName);
         } catch (AzureRestResponseHandlingException e) {
             throw new StorageCommunicationException(
-                    e,
+                    e.getStatusCode(), e,
                     "Response handling for Azure cloud storage request 'delete container' has failed [container: '%s'].",
                     containerName);
         }
@@ -252,14 +511,19 @@ public class AzureTemplate implements StorageOperations {
                     containerName, objectName);
         } catch (AzureRestResponseHandlingException e) {
             throw new StorageCommunicationException(
-                    e,
+                    e.getStatusCode(), e,
                     "Response handling for Azure cloud storage request 'receive and save as file' has failed [container: '%s', blob: '%s']",
                     containerName, objectName);
         }
 
+        ResponseBodyInputStream body = new ResponseBodyInputStream(streamBlob.getData());
         try {
-            StorageUtils.writeStreamToFile(streamBlob.getData(), toFile);
+            StorageUtils.writeStreamToFile(body, toFile);
         } catch (IOException e) {
+            if (body.isCauseOf(e)) {
+                throw new StorageCommunicationException(e,
+                        "Reading response from container '%s' blob '%s' has failed", containerName, objectName);
+            }
             throw new StorageResponseHandlingException(e,
                     "Converting response from container '%s' blob '%s' to file IO problem", containerName, objectName);
         } finally {
@@ -275,6 +539,53 @@ public class AzureTemplate implements StorageOperations {
         return toFile.getAbsolutePath();
     }
 
+    /**
+     * Receives blob in ranges pinned to blob ETag, so blob modified during
+     * download is detected.
+     *
+     * @param containerName
+     * @param objectName
+     * @param toFile
+     * @param settings
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#receiveInParts(java.lang.String,
+     *      java.lang.String, java.io.File, org.opencredo.cloud.storage.MultipartDownloadSettings)
+     */
+    public String receiveInParts(final String containerName, final String objectName, File toFile,
+                                 MultipartDownloadSettings settings) {
+        Assert.notNull(toFile, "File to save received data must be specified");
+        Assert.notNull(settings, "Multipart download settings are not provided");
+
+        try {
+            StorageUtils.createParentDirs(toFile);
+        } catch (IOException e) {
+            throw new StorageResponseHandlingException(e, "Failed to create parent directories for file: %s", toFile
+                    .getAbsolutePath());
+        }
+
+        new MultipartDownloader(settings).download(toFile, new MultipartDownloadHandler() {
+            private volatile String eTag;
+
+            public long begin() throws Exception {
+                BlobDetails details = restService.getObjectDetails(containerName, objectName);
+                eTag = details.getETag();
+                return details.getContentLength();
+            }
+
+            public InputStream openRange(FilePart range) throws Exception {
+                try {
+                    return restService.getObjectRange(containerName, objectName, range.getOffset(), range
+                            .getLength(), eTag).getData();
+                } catch (AzureRestPreconditionFailedException e) {
+                    throw new StorageObjectModifiedException(e,
+                            "Blob has been modified while receiving it [container: '%s', blob: '%s']",
+                            containerName, objectName);
+                }
+            }
+        });
+        return toFile.getAbsolutePath();
+    }
+
     /**
      * @param objectName
      * @return
@@ -300,12 +611,90 @@ public class AzureTemplate implements StorageOperations {
                     containerName, objectName);
         } catch (AzureRestResponseHandlingException e) {
             throw new StorageCommunicationException(
-                    e,
+                    e.getStatusCode(), e,
                     "Response handling for Azure cloud storage request 'receive as input stream' has failed [container: '%s', blob: '%s']",
                     containerName, objectName);
         }
     }
 
+    /**
+     * @param containerName
+     * @param objectName
+     * @param eTag
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#receiveIfNoneMatch(java.lang.String,
+     *      java.lang.String, java.lang.String)
+     */
+    public BlobContent receiveIfNoneMatch(String containerName, String objectName, String eTag) {
+        try {
+            return restService.getObjectIfNoneMatch(containerName, objectName, eTag);
+        } catch (AzureRestCommunicationException e) {
+            throw new StorageCommunicationException(e,
+                    "Azure cloud storage request 'receive if none match' has failed [container: '%s', blob: '%s']",
+                    containerName, objectName);
+        } catch (AzureRestResponseHandlingException e) {
+            throw new StorageCommunicationException(
+                    e.getStatusCode(), e,
+                    "Response handling for Azure cloud storage request 'receive if none match' has failed [container: '%s', blob: '%s']",
+                    containerName, objectName);
+        }
+    }
+
+    /**
+     * @param containerName
+     * @param objectName
+     * @param conditions
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#receive(java.lang.String,
+     *      java.lang.String, org.opencredo.cloud.storage.BlobConditions)
+     */
+    public BlobContent receive(String containerName, String objectName, BlobConditions conditions) {
+        Assert.notNull(conditions, "Conditions are not provided");
+        try {
+            return restService.getObject(containerName, objectName, conditions);
+        } catch (AzureRestPreconditionFailedException e) {
+            throw new StorageObjectModifiedException(e,
+                    "Blob does not meet receive conditions %s [container: '%s', blob: '%s']", conditions,
+                    containerName, objectName);
+        } catch (AzureRestCommunicationException e) {
+            throw new StorageCommunicationException(e,
+                    "Azure cloud storage request 'receive conditionally' has failed [container: '%s', blob: '%s']",
+                    containerName, objectName);
+        } catch (AzureRestResponseHandlingException e) {
+            throw new StorageCommunicationException(
+                    e.getStatusCode(), e,
+                    "Response handling for Azure cloud storage request 'receive conditionally' has failed [container: '%s', blob: '%s']",
+                    containerName, objectName);
+        }
+    }
+
+    /**
+     * Blob properties are received with Get Blob Properties (HEAD) request.
+     *
+     * @param containerName
+     * @param objectName
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#getBlobDetails(java.lang.String,
+     *      java.lang.String)
+     */
+    public BlobDetails getBlobDetails(String containerName, String objectName) {
+        try {
+            return restService.getObjectDetails(containerName, objectName);
+        } catch (AzureRestCommunicationException e) {
+            throw new StorageCommunicationException(e,
+                    "Azure cloud storage request 'get blob details' has failed [container: '%s', blob: '%s']",
+                    containerName, objectName);
+        } catch (AzureRestResponseHandlingException e) {
+            if (e.getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+                return null;
+            }
+            throw new StorageCommunicationException(
+                    e.getStatusCode(), e,
+                    "Response handling for Azure cloud storage request 'get blob details' has failed [container: '%s', blob: '%s']",
+                    containerName, objectName);
+        }
+    }
+
     /**
      * @param objectName
      * @return
@@ -333,7 +722,7 @@ public class AzureTemplate implements StorageOperations {
                     containerName, objectName);
         } catch (AzureRestResponseHandlingException e) {
             throw new StorageCommunicationException(
-                    e,
+                    e.getStatusCode(), e,
                     "Response handling for Azure cloud storage request 'receive as string' has failed [container: '%s', blob: '%s']",
                     containerName, objectName);
         }
@@ -341,8 +730,9 @@ public class AzureTemplate implements StorageOperations {
         try {
             return IOUtils.toString(streamBlob.getData());
         } catch (IOException e) {
-            throw new StorageResponseHandlingException(e,
-                    "Converting response from container '%s' blob '%s' to string IO problem", containerName, objectName);
+            // Only response body is read, so failure is a transport failure
+            throw new StorageCommunicationException(e,
+                    "Reading response from container '%s' blob '%s' as string has failed", containerName, objectName);
         } finally {
             if (streamBlob != null && streamBlob.getData() != null) {
                 try {
@@ -385,13 +775,47 @@ public class AzureTemplate implements StorageOperations {
                     containerName, objectName);
         } catch (AzureRestResponseHandlingException e) {
             throw new StorageCommunicationException(
-                    e,
+                    e.getStatusCode(), e,
                     "Response handling for Azure cloud storage request 'send from string' has failed [container: '%s', blob: '%s']",
                     containerName, objectName);
         }
         return objectName;
     }
 
+    /**
+     * @param containerName
+     * @param objectName
+     * @param stringToSend
+     * @param conditions
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#send(java.lang.String,
+     *      java.lang.String, java.lang.String, org.opencredo.cloud.storage.BlobConditions)
+     */
+    public String send(String containerName, String objectName, String stringToSend, BlobConditions conditions) {
+        Assert.notNull(conditions, "Conditions are not provided");
+        try {
+            restService.putObject(containerName, new StringBlob(objectName, stringToSend), conditions);
+        } catch (AzureRestRequestCreationException e) {
+            throw new StorageCommunicationException(e,
+                    "Creation of Azure cloud storage request from string has failed [container: '%s', blob: '%s']", containerName,
+                    objectName);
+        } catch (AzureRestPreconditionFailedException e) {
+            throw new StorageObjectModifiedException(e,
+                    "Blob does not meet send conditions %s [container: '%s', blob: '%s']", conditions,
+                    containerName, objectName);
+        } catch (AzureRestCommunicationException e) {
+            throw new StorageCommunicationException(e,
+                    "Azure cloud storage request 'send from string conditionally' has failed [container: '%s', blob: '%s']",
+                    containerName, objectName);
+        } catch (AzureRestResponseHandlingException e) {
+            throw new StorageCommunicationException(
+                    e.getStatusCode(), e,
+                    "Response handling for Azure cloud storage request 'send from string conditionally' has failed [container: '%s', blob: '%s']",
+                    containerName, objectName);
+        }
+        return objectName;
+    }
+
     /**
      * @param fileToSend
      * @see org.opencredo.cloud.storage.StorageOperations#send(java.io.File)
@@ -432,13 +856,101 @@ public class AzureTemplate implements StorageOperations {
                     containerName, objectName, fileToSend.getAbsolutePath());
         } catch (AzureRestResponseHandlingException e) {
             throw new StorageCommunicationException(
-                    e,
+                    e.getStatusCode(), e,
                     "Response handling for Azure cloud storage request 'send from file' has failed [container: '%s', blob: '%s', file: '%s']",
                     containerName, objectName, fileToSend.getAbsolutePath());
         }
         return objectName;
     }
 
+    /**
+     * @param containerName
+     * @param objectName
+     * @param fileToSend
+     * @param conditions
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#send(java.lang.String,
+     *      java.lang.String, java.io.File, org.opencredo.cloud.storage.BlobConditions)
+     */
+    public String send(String containerName, String objectName, File fileToSend, BlobConditions conditions) {
+        Assert.notNull(fileToSend, "File to send can not be null");
+        Assert.notNull(conditions, "Conditions are not provided");
+        try {
+            restService.putObject(containerName, new FileBlob(objectName, fileToSend), conditions);
+        } catch (AzureRestRequestCreationException e) {
+            throw new StorageCommunicationException(e,
+                    "Creation of Azure cloud storage request from file has failed [container: '%s', blob: '%s', file: '%s']",
+                    containerName, objectName, fileToSend.getAbsolutePath());
+        } catch (AzureRestPreconditionFailedException e) {
+            throw new StorageObjectModifiedException(e,
+                    "Blob does not meet send conditions %s [container: '%s', blob: '%s']", conditions,
+                    containerName, objectName);
+        } catch (AzureRestCommunicationException e) {
+            throw new StorageCommunicationException(e,
+                    "Azure cloud storage request 'send from file conditionally' has failed [container: '%s', blob: '%s', file: '%s']",
+                    containerName, objectName, fileToSend.getAbsolutePath());
+        } catch (AzureRestResponseHandlingException e) {
+            throw new StorageCommunicationException(
+                    e.getStatusCode(), e,
+                    "Response handling for Azure cloud storage request 'send from file conditionally' has failed [container: '%s', blob: '%s', file: '%s']",
+                    containerName, objectName, fileToSend.getAbsolutePath());
+        }
+        return objectName;
+    }
+
+    /**
+     * Sends file as blocks (Put Block) committed with single block list (Put
+     * Block List) request. Part size is limited to {@link #MAX_BLOCK_SIZE}.
+     *
+     * @param containerName
+     * @param objectName
+     * @param fileToSend
+     * @param settings
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#sendInParts(java.lang.String,
+     *      java.lang.String, java.io.File, org.opencredo.cloud.storage.MultipartUploadSettings)
+     */
+    public String sendInParts(final String containerName, final String objectName, File fileToSend,
+                              MultipartUploadSettings settings) {
+        Assert.notNull(fileToSend, "File to send can not be null");
+        Assert.notNull(settings, "Multipart upload settings are not provided");
+        if (fileToSend.length() <= settings.getMultipartThreshold()) {
+            return send(containerName, objectName, fileToSend);
+        }
+
+        long partSize = Math.min(settings.getPartSize(), MAX_BLOCK_SIZE);
+        new MultipartUploader(settings).upload(fileToSend, partSize, new MultipartUploadHandler() {
+            public void begin() {
+                // Block blob is created by the first Put Block request
+            }
+
+            public String uploadPart(FilePart part) throws Exception {
+                String blockId = createBlockId(part.getPartNumber());
+                restService.putBlock(containerName, blockId, new FilePartBlob(objectName, part));
+                return blockId;
+            }
+
+            public void commit(List<String> partIds) throws Exception {
+                restService.putBlockList(containerName, objectName, partIds);
+            }
+
+            public void abort() {
+                // Uncommitted blocks are garbage collected by Azure
+                LOG.debug("Multipart upload of blob '{}' to container '{}' aborted", objectName, containerName);
+            }
+        });
+        return objectName;
+    }
+
+    /**
+     * @param partNumber
+     * @return Base64 encoded block identifier of the same length for all
+     *         parts.
+     */
+    private static String createBlockId(int partNumber) {
+        return new String(Base64.encodeBase64(String.format("%06d", partNumber).getBytes()));
+    }
+
     /**
      * @param objectName
      * @param is
@@ -457,25 +969,87 @@ public class AzureTemplate implements StorageOperations {
      *      java.lang.String, java.io.InputStream)
      */
     public String send(String containerName, String objectName, InputStream is) {
+        Assert.notNull(is, "Input stream to send can not be null");
+        StreamingUploadOutputStream os = createUploadStream(containerName, objectName);
         try {
-            restService.putObject(containerName, new InputStreamBlob(objectName, is));
-        } catch (AzureRestRequestCreationException e) {
-            throw new StorageCommunicationException(e,
-                    "Creation of Azure cloud storage request from input stream has failed [container: '%s', blob: '%s']", containerName,
-                    objectName);
-        } catch (AzureRestCommunicationException e) {
+            IOUtils.copy(is, os);
+            os.close();
+        } catch (IOException e) {
+            os.abort();
             throw new StorageCommunicationException(e,
                     "Azure cloud storage request 'send from input stream' has failed [container: '%s', blob: '%s']",
                     containerName, objectName);
-        } catch (AzureRestResponseHandlingException e) {
-            throw new StorageCommunicationException(
-                    e,
-                    "Response handling for Azure cloud storage request 'send from input stream' has failed [container: '%s', blob: '%s']",
-                    containerName, objectName);
         }
         return objectName;
     }
 
+    /**
+     * Opens stream uploading blob as blocks (Put Block) of
+     * {@link #getStreamingUploadSettings()} part size limited to
+     * {@link #MAX_BLOCK_SIZE}. Blob not larger than single block is sent with
+     * single Put Blob request.
+     *
+     * @param containerName
+     * @param objectName
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#openForWrite(java.lang.String,
+     *      java.lang.String)
+     */
+    public OutputStream openForWrite(String containerName, String objectName) {
+        return createUploadStream(containerName, objectName);
+    }
+
+    private StreamingUploadOutputStream createUploadStream(final String containerName, final String objectName) {
+        Assert.hasText(containerName, "Container name is not provided");
+        Assert.hasText(objectName, "Blob name is not provided");
+        int partSize = (int) Math.min(streamingUploadSettings.getPartSize(), MAX_BLOCK_SIZE);
+        String description = String.format("blob '%s' to container '%s'", objectName, containerName);
+        return new StreamingUploadOutputStream(description, streamingUploadSettings, partSize,
+                new StreamingUploadHandler() {
+                    public void uploadSingle(FilePart part) throws Exception {
+                        restService.putObject(containerName, new FilePartBlob(objectName, part));
+                    }
+
+                    public void begin() {
+                        // Block blob is created by the first Put Block request
+                    }
+
+                    public String uploadPart(FilePart part) throws Exception {
+                        String blockId = createBlockId(part.getPartNumber());
+                        restService.putBlock(containerName, blockId, new FilePartBlob(objectName, part));
+                        return blockId;
+                    }
+
+                    public void commit(List<String> partIds) throws Exception {
+                        restService.putBlockList(containerName, objectName, partIds);
+                    }
+
+                    public void abort() {
+                        // Uncommitted blocks are garbage collected by Azure
+                        LOG.debug("Streaming upload of blob '{}' to container '{}' aborted", objectName,
+                                containerName);
+                    }
+                });
+    }
+
+    /**
+     * @return Settings of uploads to streams opened with
+     *         {@link #openForWrite(String, String)}.
+     */
+    public MultipartUploadSettings getStreamingUploadSettings() {
+        return streamingUploadSettings;
+    }
+
+    /**
+     * @param streamingUploadSettings
+     *            Settings of uploads to streams opened with
+     *            {@link #openForWrite(String, String)}.
+     */
+    public void setStreamingUploadSettings(MultipartUploadSettings streamingUploadSettings) {
+        Assert.notNull(streamingUploadSettings, "Streaming upload settings are not provided");
+        this.streamingUploadSettings = streamingUploadSettings;
+    }
+
     /**
      * @return the defaultContainerName
      */
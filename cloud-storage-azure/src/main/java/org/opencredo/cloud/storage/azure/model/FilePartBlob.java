@@ -0,0 +1,102 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.azure.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.opencredo.cloud.storage.FilePart;
+
+/**
+ * Blob abstraction for sending part of file to Azure cloud storage as block.
+ * Request body is repeatable, every write reads part from file again.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ * 
+ */
+public class FilePartBlob extends Blob<FilePart> {
+
+    private final FilePart data;
+
+    /**
+     * @param name
+     *            Name of blob which block belongs to.
+     * @param data
+     */
+    public FilePartBlob(String name, FilePart data) {
+        super(name);
+        this.data = data;
+    }
+
+    /**
+     * @return
+     * @see org.opencredo.cloud.storage.azure.model.Blob#getData()
+     */
+    @Override
+    public FilePart getData() {
+        return data;
+    }
+
+    /**
+     * @return
+     * @see org.opencredo.cloud.storage.azure.model.Blob#createRequestBody()
+     */
+    @Override
+    public HttpEntity createRequestBody() {
+        return new FilePartEntity(data);
+    }
+
+    private static class FilePartEntity extends AbstractHttpEntity {
+
+        private final FilePart part;
+
+        FilePartEntity(FilePart part) {
+            this.part = part;
+        }
+
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        public long getContentLength() {
+            return part.getLength();
+        }
+
+        public InputStream getContent() throws IOException {
+            return part.openStream();
+        }
+
+        public void writeTo(OutputStream outstream) throws IOException {
+            InputStream in = part.openStream();
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    outstream.write(buffer, 0, read);
+                }
+                outstream.flush();
+            } finally {
+                in.close();
+            }
+        }
+
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+}
@@ -30,12 +30,35 @@ public class InputStreamBlob extends Blob<InputStream> {
 
     private final InputStream data;
 
+    private final long length;
+
     /**
+     * Blob of unknown length, sent with chunked transfer encoding.
+     * 
      * @param name
+     * @param data
      */
     public InputStreamBlob(String name, InputStream data) {
+        this(name, data, -1);
+    }
+
+    /**
+     * @param name
+     * @param data
+     * @param length
+     *            Number of bytes in input stream, or negative if unknown.
+     */
+    public InputStreamBlob(String name, InputStream data, long length) {
         super(name);
         this.data = data;
+        this.length = length;
+    }
+
+    /**
+     * @return Number of bytes in input stream, or negative if unknown.
+     */
+    public long getLength() {
+        return length;
     }
 
     /**
@@ -53,8 +76,7 @@ public class InputStreamBlob extends Blob<InputStream> {
      */
     @Override
     public HttpEntity createRequestBody() {
-        // FIXME: Calculate size - currently is 0
-        return new InputStreamEntity(data, 0);
+        return new InputStreamEntity(data, length);
     }
 
 }
@@ -0,0 +1,39 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.azure.rest;
+
+import org.apache.http.HttpStatus;
+
+/**
+ * This exception occurs if conditional Azure Blob REST API request is
+ * rejected because blob does not match request condition (e.g. 'If-Match'
+ * ETag).
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ * 
+ */
+public class AzureRestPreconditionFailedException extends AzureRestResponseHandlingException {
+
+    private static final long serialVersionUID = 4021385571265924713L;
+
+    /**
+     * 
+     * @param messageFormat
+     * @param params
+     */
+    public AzureRestPreconditionFailedException(String messageFormat, Object... params) {
+        super(HttpStatus.SC_PRECONDITION_FAILED, messageFormat, params);
+    }
+}
@@ -14,6 +14,7 @@
  */
 package org.opencredo.cloud.storage.azure.rest;
 
+import org.opencredo.cloud.storage.StorageCommunicationException;
 
 /**
  * This exception occurs if handling of Azure Blob REST API response fails.
@@ -25,11 +26,14 @@ public class AzureRestResponseHandlingException extends AzureRestException {
 
     private static final long serialVersionUID = -276354276775535652L;
 
+    private final int statusCode;
+
     /**
      * 
      */
     public AzureRestResponseHandlingException() {
         super();
+        this.statusCode = StorageCommunicationException.UNKNOWN_STATUS_CODE;
     }
 
     /**
@@ -37,6 +41,7 @@ public class AzureRestResponseHandlingException extends AzureRestException {
      */
     public AzureRestResponseHandlingException(String message) {
         super(message);
+        this.statusCode = StorageCommunicationException.UNKNOWN_STATUS_CODE;
     }
 
     /**
@@ -45,6 +50,7 @@ public class AzureRestResponseHandlingException extends AzureRestException {
      */
     public AzureRestResponseHandlingException(String message, Throwable cause) {
         super(message, cause);
+        this.statusCode = StorageCommunicationException.UNKNOWN_STATUS_CODE;
     }
 
     /**
@@ -52,6 +58,7 @@ public class AzureRestResponseHandlingException extends AzureRestException {
      */
     public AzureRestResponseHandlingException(Throwable cause) {
         super(cause);
+        this.statusCode = StorageCommunicationException.UNKNOWN_STATUS_CODE;
     }
 
     /**
@@ -61,6 +68,7 @@ public class AzureRestResponseHandlingException extends AzureRestException {
      */
     public AzureRestResponseHandlingException(String messageFormat, Object... params) {
         super(messageFormat, params);
+        this.statusCode = StorageCommunicationException.UNKNOWN_STATUS_CODE;
     }
 
     /**
@@ -71,5 +79,27 @@ public class AzureRestResponseHandlingException extends AzureRestException {
      */
     public AzureRestResponseHandlingException(Throwable cause, String messageFormat, Object... params) {
         super(cause, messageFormat, params);
+        this.statusCode = StorageCommunicationException.UNKNOWN_STATUS_CODE;
+    }
+
+    /**
+     * 
+     * @param statusCode
+     *            Status code of Azure Blob REST API response.
+     * @param messageFormat
+     * @param params
+     */
+    public AzureRestResponseHandlingException(int statusCode, String messageFormat, Object... params) {
+        super(messageFormat, params);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @return Status code of Azure Blob REST API response, or
+     *         {@link StorageCommunicationException#UNKNOWN_STATUS_CODE} if
+     *         failure is not caused by unexpected response status.
+     */
+    public int getStatusCode() {
+        return statusCode;
     }
 }
@@ -16,7 +16,10 @@ package org.opencredo.cloud.storage.azure.rest;
 
 import java.util.List;
 
+import org.opencredo.cloud.storage.BlobConditions;
+import org.opencredo.cloud.storage.BlobContent;
 import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.BlobDetailsPage;
 import org.opencredo.cloud.storage.ContainerStatus;
 import org.opencredo.cloud.storage.azure.model.Blob;
 import org.opencredo.cloud.storage.azure.model.InputStreamBlob;
@@ -67,6 +70,22 @@ public interface AzureRestService {
      */
     void deleteObject(String containerName, String blobName) throws AzureRestCommunicationException, AzureRestResponseHandlingException;
 
+    /**
+     * Delete object from Azure cloud storage container if conditions are met.
+     *
+     * @param containerName
+     * @param blobName
+     * @param conditions
+     *            Conditions sent in HTTP conditional headers, or
+     *            <code>null</code>.
+     * @throws AzureRestPreconditionFailedException
+     *             If any condition is not met.
+     * @throws AzureRestCommunicationException
+     * @throws AzureRestResponseHandlingException
+     */
+    void deleteObject(String containerName, String blobName, BlobConditions conditions)
+            throws AzureRestCommunicationException, AzureRestResponseHandlingException;
+
     /**
      * Add object into Azure cloud storage container.
      * 
@@ -78,6 +97,70 @@ public interface AzureRestService {
      */
     void putObject(String containerName, Blob<?> blob) throws AzureRestRequestCreationException, AzureRestCommunicationException, AzureRestResponseHandlingException;
 
+    /**
+     * Add object into Azure cloud storage container if conditions are met by
+     * existing object.
+     *
+     * @param containerName
+     * @param blob
+     * @param conditions
+     *            Conditions sent in HTTP conditional headers, or
+     *            <code>null</code>.
+     * @throws AzureRestPreconditionFailedException
+     *             If any condition is not met.
+     * @throws AzureRestRequestCreationException
+     * @throws AzureRestCommunicationException
+     * @throws AzureRestResponseHandlingException
+     */
+    void putObject(String containerName, Blob<?> blob, BlobConditions conditions)
+            throws AzureRestRequestCreationException, AzureRestCommunicationException,
+            AzureRestResponseHandlingException;
+
+    /**
+     * Copy blob within Azure cloud storage account (Copy Blob), blob content
+     * is copied by the service. Existing destination blob is replaced.
+     *
+     * @param srcContainerName
+     * @param srcBlobName
+     * @param dstContainerName
+     * @param dstBlobName
+     * @throws AzureRestCommunicationException
+     * @throws AzureRestResponseHandlingException
+     */
+    void copyObject(String srcContainerName, String srcBlobName, String dstContainerName, String dstBlobName)
+            throws AzureRestCommunicationException, AzureRestResponseHandlingException;
+
+    /**
+     * Upload uncommitted block of block blob (Put Block).
+     *
+     * @param containerName
+     * @param blockId
+     *            Block identifier, all block identifiers of the blob must be
+     *            the same length.
+     * @param blob
+     *            Block data, blob name is name of blob block belongs to.
+     * @throws AzureRestRequestCreationException
+     * @throws AzureRestCommunicationException
+     * @throws AzureRestResponseHandlingException
+     */
+    void putBlock(String containerName, String blockId, Blob<?> blob) throws AzureRestRequestCreationException,
+            AzureRestCommunicationException, AzureRestResponseHandlingException;
+
+    /**
+     * Commit uploaded blocks as block blob content (Put Block List).
+     *
+     * @param containerName
+     * @param blobName
+     * @param blockIds
+     *            Block identifiers in blob content order.
+     * @throws AzureRestRequestCreationException
+     * @throws AzureRestCommunicationException
+     * @throws AzureRestResponseHandlingException
+     */
+    void putBlockList(String containerName, String blobName, List<String> blockIds)
+            throws AzureRestRequestCreationException, AzureRestCommunicationException,
+            AzureRestResponseHandlingException;
+
     /**
      * Get object from Azure cloud storage container.
      * 
@@ -90,6 +173,72 @@ public interface AzureRestService {
     InputStreamBlob getObject(String containerName, String blobName) throws AzureRestCommunicationException,
             AzureRestResponseHandlingException;
 
+    /**
+     * Get object with its properties from Azure cloud storage container,
+     * unless object ETag matches given ETag.
+     *
+     * @param containerName
+     * @param blobName
+     * @param eTag
+     *            ETag sent in 'If-None-Match' header, or <code>null</code>.
+     * @return Blob details and content, or <code>null</code> if blob ETag
+     *         matches.
+     * @throws AzureRestCommunicationException
+     * @throws AzureRestResponseHandlingException
+     */
+    BlobContent getObjectIfNoneMatch(String containerName, String blobName, String eTag)
+            throws AzureRestCommunicationException, AzureRestResponseHandlingException;
+
+    /**
+     * Get object with its properties from Azure cloud storage container if
+     * conditions are met.
+     *
+     * @param containerName
+     * @param blobName
+     * @param conditions
+     *            Conditions sent in HTTP conditional headers, or
+     *            <code>null</code>.
+     * @return Blob details and content, or <code>null</code> if blob is not
+     *         modified ('If-None-Match' or 'If-Modified-Since' condition is
+     *         not met).
+     * @throws AzureRestPreconditionFailedException
+     *             If 'If-Match' or 'If-Unmodified-Since' condition is not met.
+     * @throws AzureRestCommunicationException
+     * @throws AzureRestResponseHandlingException
+     */
+    BlobContent getObject(String containerName, String blobName, BlobConditions conditions)
+            throws AzureRestCommunicationException, AzureRestResponseHandlingException;
+
+    /**
+     * Get object properties (Get Blob Properties) without object content.
+     *
+     * @param containerName
+     * @param blobName
+     * @return Blob details with content length.
+     * @throws AzureRestCommunicationException
+     * @throws AzureRestResponseHandlingException
+     */
+    BlobDetails getObjectDetails(String containerName, String blobName) throws AzureRestCommunicationException,
+            AzureRestResponseHandlingException;
+
+    /**
+     * Get range of object content.
+     *
+     * @param containerName
+     * @param blobName
+     * @param offset
+     * @param length
+     * @param eTag
+     *            If set, range is returned only if object ETag matches.
+     * @return
+     * @throws AzureRestCommunicationException
+     * @throws AzureRestPreconditionFailedException
+     *             If object ETag does not match.
+     * @throws AzureRestResponseHandlingException
+     */
+    InputStreamBlob getObjectRange(String containerName, String blobName, long offset, long length, String eTag)
+            throws AzureRestCommunicationException, AzureRestResponseHandlingException;
+
     /**
      * List object details in specified Azure cloud storage container.
      * 
@@ -101,7 +250,28 @@ public interface AzureRestService {
     List<BlobDetails> listContainerObjectDetails(String containerName) throws AzureRestCommunicationException, AzureRestResponseHandlingException;
 
     /**
-     * Check the status of the container.
+     * List single page of object details in specified Azure cloud storage
+     * container.
+     * 
+     * @param containerName
+     * @param prefix
+     *            Blob name prefix, or <code>null</code>.
+     * @param delimiter
+     *            Blob name delimiter, or <code>null</code>.
+     * @param marker
+     *            Marker returned with previous page, or <code>null</code>.
+     * @param maxResults
+     *            Maximum amount of blobs in page, or 0 for service default.
+     * @return
+     * @throws AzureRestCommunicationException
+     * @throws AzureRestResponseHandlingException
+     */
+    BlobDetailsPage listContainerObjectDetailsPage(String containerName, String prefix, String delimiter,
+            String marker, int maxResults) throws AzureRestCommunicationException, AzureRestResponseHandlingException;
+
+    /**
+     * Check the status of the container with Get Container Properties
+     * request, without listing container blobs.
      * 
      * @param containerName
      * @return
@@ -109,4 +279,15 @@ public interface AzureRestService {
      * @throws AzureRestResponseHandlingException 
      */
     ContainerStatus checkContainerStatus(String containerName) throws AzureRestCommunicationException, AzureRestResponseHandlingException;
+
+    /**
+     * @return Returns current utilisation of HTTP connection pool used to
+     *         communicate with Azure cloud storage.
+     */
+    ConnectionPoolStatistics getConnectionPoolStatistics();
+
+    /**
+     * Close all pooled connections and release resources held by service.
+     */
+    void shutdown();
 }
@@ -20,6 +20,8 @@ import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
 
 /**
  * Utils for Azure REST API.
@@ -29,7 +31,16 @@ import java.util.Date;
 public final class AzureRestServiceUtil {
 
     public static final String RFC1123_DATE_PATTERN = "EEE, dd MMM yyyy HH:mm:ss z";
-    private static final DateFormat rfc1123_dateFormatter = new SimpleDateFormat(RFC1123_DATE_PATTERN);
+
+    // SimpleDateFormat is not thread safe, listings are parsed concurrently.
+    private static final ThreadLocal<DateFormat> rfc1123_dateFormatter = new ThreadLocal<DateFormat>() {
+        @Override
+        protected DateFormat initialValue() {
+            DateFormat dateFormat = new SimpleDateFormat(RFC1123_DATE_PATTERN, Locale.US);
+            dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+            return dateFormat;
+        }
+    };
 
     private AzureRestServiceUtil() {
     }
@@ -41,6 +52,16 @@ public final class AzureRestServiceUtil {
         return DateFormatUtils.formatUTC(System.currentTimeMillis(), RFC1123_DATE_PATTERN);
     }
 
+    /**
+     * Formats date in RFC1123 pattern, as used by HTTP date headers.
+     *
+     * @param date
+     * @return
+     */
+    public static String formatRFC1123Time(Date date) {
+        return rfc1123_dateFormatter.get().format(date);
+    }
+
     /**
      * Parses date in RFC1123 string.
      *
@@ -49,7 +70,7 @@ public final class AzureRestServiceUtil {
      * @throws ParseException
      */
     public static Date parseRFC1123TimeString(String dateStr) throws ParseException {
-        return rfc1123_dateFormatter.parse(dateStr);
+        return rfc1123_dateFormatter.get().parse(dateStr);
     }
 
 }
@@ -0,0 +1,109 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.azure.rest;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Snapshot of HTTP connection pool utilisation.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class ConnectionPoolStatistics {
+
+    private final int connectionsInPool;
+
+    private final int maxTotalConnections;
+
+    private final int maxConnectionsPerRoute;
+
+    private final long requestsExecuted;
+
+    private final long evictedConnectionRuns;
+
+    /**
+     * @param connectionsInPool
+     * @param maxTotalConnections
+     * @param maxConnectionsPerRoute
+     * @param requestsExecuted
+     * @param evictedConnectionRuns
+     */
+    public ConnectionPoolStatistics(int connectionsInPool, int maxTotalConnections, int maxConnectionsPerRoute,
+                                    long requestsExecuted, long evictedConnectionRuns) {
+        super();
+        this.connectionsInPool = connectionsInPool;
+        this.maxTotalConnections = maxTotalConnections;
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        this.requestsExecuted = requestsExecuted;
+        this.evictedConnectionRuns = evictedConnectionRuns;
+    }
+
+    /**
+     * @return Number of open connections (leased and idle) held by the pool.
+     */
+    public int getConnectionsInPool() {
+        return connectionsInPool;
+    }
+
+    /**
+     * @return the maxTotalConnections
+     */
+    public int getMaxTotalConnections() {
+        return maxTotalConnections;
+    }
+
+    /**
+     * @return the maxConnectionsPerRoute
+     */
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    /**
+     * @return Number of requests executed through the pool.
+     */
+    public long getRequestsExecuted() {
+        return requestsExecuted;
+    }
+
+    /**
+     * @return Number of completed idle connection eviction runs.
+     */
+    public long getEvictedConnectionRuns() {
+        return evictedConnectionRuns;
+    }
+
+    /**
+     * @return Ratio of open connections to pool capacity (0.0 - 1.0).
+     */
+    public double getUtilisation() {
+        return maxTotalConnections == 0 ? 0 : (double) connectionsInPool / maxTotalConnections;
+    }
+
+    /**
+     * @return
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)//
+                .append("connectionsInPool", this.connectionsInPool)//
+                .append("maxTotalConnections", this.maxTotalConnections)//
+                .append("maxConnectionsPerRoute", this.maxConnectionsPerRoute)//
+                .append("requestsExecuted", this.requestsExecuted)//
+                .append("evictedConnectionRuns", this.evictedConnectionRuns)//
+                .toString();
+    }
+}
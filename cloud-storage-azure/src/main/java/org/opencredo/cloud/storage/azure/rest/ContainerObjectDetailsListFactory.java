@@ -18,6 +18,7 @@ import java.util.List;
 
 import org.apache.http.HttpEntity;
 import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.BlobDetailsPage;
 
 /**
  * Factory for creating container object details list from Azure REST API response.
@@ -28,4 +29,14 @@ public interface ContainerObjectDetailsListFactory {
 
     List<BlobDetails> createContainerObjectDetailsList(String containerName, HttpEntity entity)
             throws AzureRestResponseHandlingException;
+
+    /**
+     * @param containerName
+     * @param entity
+     * @return Page of container object details with blob prefixes and next
+     *         marker.
+     * @throws AzureRestResponseHandlingException
+     */
+    BlobDetailsPage createContainerObjectDetailsPage(String containerName, HttpEntity entity)
+            throws AzureRestResponseHandlingException;
 }
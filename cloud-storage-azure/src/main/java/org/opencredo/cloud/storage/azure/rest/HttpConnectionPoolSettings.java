@@ -0,0 +1,195 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.azure.rest;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.springframework.util.Assert;
+
+/**
+ * Settings of the HTTP connection pool shared by all requests sent to Azure
+ * cloud storage. Defaults are suitable for a single application talking to a
+ * single storage account.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class HttpConnectionPoolSettings {
+
+    public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 50;
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+
+    public static final long DEFAULT_CONNECTION_POOL_TIMEOUT = 30000;
+
+    public static final int DEFAULT_CONNECTION_TIMEOUT = 30000;
+
+    public static final int DEFAULT_SOCKET_TIMEOUT = 60000;
+
+    public static final long DEFAULT_KEEP_ALIVE_DURATION = 60000;
+
+    public static final long DEFAULT_IDLE_CONNECTION_TIMEOUT = 30000;
+
+    public static final long DEFAULT_IDLE_CONNECTION_EVICTION_INTERVAL = 5000;
+
+    private int maxTotalConnections = DEFAULT_MAX_TOTAL_CONNECTIONS;
+
+    private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+
+    private long connectionPoolTimeout = DEFAULT_CONNECTION_POOL_TIMEOUT;
+
+    private int connectionTimeout = DEFAULT_CONNECTION_TIMEOUT;
+
+    private int socketTimeout = DEFAULT_SOCKET_TIMEOUT;
+
+    private long keepAliveDuration = DEFAULT_KEEP_ALIVE_DURATION;
+
+    private long idleConnectionTimeout = DEFAULT_IDLE_CONNECTION_TIMEOUT;
+
+    private long idleConnectionEvictionInterval = DEFAULT_IDLE_CONNECTION_EVICTION_INTERVAL;
+
+    /**
+     * @return Maximum number of connections kept in the pool.
+     */
+    public int getMaxTotalConnections() {
+        return maxTotalConnections;
+    }
+
+    /**
+     * @param maxTotalConnections
+     */
+    public void setMaxTotalConnections(int maxTotalConnections) {
+        Assert.isTrue(maxTotalConnections > 0, "Max total connections must be positive");
+        this.maxTotalConnections = maxTotalConnections;
+    }
+
+    /**
+     * @return Maximum number of connections per route (storage account host).
+     */
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    /**
+     * @param maxConnectionsPerRoute
+     */
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        Assert.isTrue(maxConnectionsPerRoute > 0, "Max connections per route must be positive");
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    /**
+     * @return Time in milliseconds to wait for a free connection from the pool.
+     */
+    public long getConnectionPoolTimeout() {
+        return connectionPoolTimeout;
+    }
+
+    /**
+     * @param connectionPoolTimeout
+     */
+    public void setConnectionPoolTimeout(long connectionPoolTimeout) {
+        this.connectionPoolTimeout = connectionPoolTimeout;
+    }
+
+    /**
+     * @return Connection establishment timeout in milliseconds.
+     */
+    public int getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    /**
+     * @param connectionTimeout
+     */
+    public void setConnectionTimeout(int connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    /**
+     * @return Socket read timeout in milliseconds.
+     */
+    public int getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    /**
+     * @param socketTimeout
+     */
+    public void setSocketTimeout(int socketTimeout) {
+        this.socketTimeout = socketTimeout;
+    }
+
+    /**
+     * @return Time in milliseconds a connection is kept alive when server does
+     *         not send 'Keep-Alive' timeout.
+     */
+    public long getKeepAliveDuration() {
+        return keepAliveDuration;
+    }
+
+    /**
+     * @param keepAliveDuration
+     */
+    public void setKeepAliveDuration(long keepAliveDuration) {
+        this.keepAliveDuration = keepAliveDuration;
+    }
+
+    /**
+     * @return Time in milliseconds after which idle connection is evicted from
+     *         the pool.
+     */
+    public long getIdleConnectionTimeout() {
+        return idleConnectionTimeout;
+    }
+
+    /**
+     * @param idleConnectionTimeout
+     */
+    public void setIdleConnectionTimeout(long idleConnectionTimeout) {
+        this.idleConnectionTimeout = idleConnectionTimeout;
+    }
+
+    /**
+     * @return Interval in milliseconds between idle and expired connection
+     *         eviction runs. Eviction is disabled if value is not positive.
+     */
+    public long getIdleConnectionEvictionInterval() {
+        return idleConnectionEvictionInterval;
+    }
+
+    /**
+     * @param idleConnectionEvictionInterval
+     */
+    public void setIdleConnectionEvictionInterval(long idleConnectionEvictionInterval) {
+        this.idleConnectionEvictionInterval = idleConnectionEvictionInterval;
+    }
+
+    /**
+     * @return
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)//
+                .append("maxTotalConnections", this.maxTotalConnections)//
+                .append("maxConnectionsPerRoute", this.maxConnectionsPerRoute)//
+                .append("connectionPoolTimeout", this.connectionPoolTimeout)//
+                .append("connectionTimeout", this.connectionTimeout)//
+                .append("socketTimeout", this.socketTimeout)//
+                .append("keepAliveDuration", this.keepAliveDuration)//
+                .append("idleConnectionTimeout", this.idleConnectionTimeout)//
+                .append("idleConnectionEvictionInterval", this.idleConnectionEvictionInterval)//
+                .toString();
+    }
+}
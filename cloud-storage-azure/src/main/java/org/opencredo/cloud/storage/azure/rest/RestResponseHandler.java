@@ -17,7 +17,9 @@ package org.opencredo.cloud.storage.azure.rest;
 import java.util.List;
 
 import org.apache.http.HttpResponse;
+import org.opencredo.cloud.storage.BlobContent;
 import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.BlobDetailsPage;
 import org.opencredo.cloud.storage.ContainerStatus;
 import org.opencredo.cloud.storage.azure.model.Blob;
 import org.opencredo.cloud.storage.azure.model.InputStreamBlob;
@@ -52,6 +54,8 @@ public interface RestResponseHandler {
      * @param response
      * @param containerName
      * @param blobName
+     * @throws AzureRestPreconditionFailedException
+     *             If blob does not meet request conditions.
      * @throws AzureRestResponseHandlingException
      */
     void handleDeleteObjectResponse(HttpResponse response, String containerName, String blobName)
@@ -69,6 +73,43 @@ public interface RestResponseHandler {
     InputStreamBlob handleGetObjectResponse(HttpResponse response, String containerName, String blobName)
             throws AzureRestResponseHandlingException, AzureRestResponseHandlingException;
 
+    /**
+     * 
+     * @param response
+     * @param containerName
+     * @param blobName
+     * @return Blob details and content, or <code>null</code> if blob is not
+     *         modified.
+     * @throws AzureRestPreconditionFailedException
+     *             If blob does not meet request conditions.
+     * @throws AzureRestResponseHandlingException
+     */
+    BlobContent handleGetObjectIfNoneMatchResponse(HttpResponse response, String containerName, String blobName)
+            throws AzureRestResponseHandlingException;
+
+    /**
+     * 
+     * @param response
+     * @param containerName
+     * @param blobName
+     * @return
+     * @throws AzureRestResponseHandlingException
+     */
+    BlobDetails handleGetObjectDetailsResponse(HttpResponse response, String containerName, String blobName)
+            throws AzureRestResponseHandlingException;
+
+    /**
+     * 
+     * @param response
+     * @param containerName
+     * @param blobName
+     * @return
+     * @throws AzureRestPreconditionFailedException
+     * @throws AzureRestResponseHandlingException
+     */
+    InputStreamBlob handleGetObjectRangeResponse(HttpResponse response, String containerName, String blobName)
+            throws AzureRestResponseHandlingException;
+
     /**
      * 
      * @param response
@@ -89,16 +130,60 @@ public interface RestResponseHandler {
     List<BlobDetails> handleListContainerObjectDetailsResponse(HttpResponse response, String containerName)
             throws AzureRestResponseHandlingException;
 
+    /**
+     * 
+     * @param response
+     * @param containerName
+     * @return
+     * @throws AzureRestResponseHandlingException
+     */
+    BlobDetailsPage handleListContainerObjectDetailsPageResponse(HttpResponse response, String containerName)
+            throws AzureRestResponseHandlingException;
+
     /**
      * 
      * @param response
      * @param containerName
      * @param blob
+     * @throws AzureRestPreconditionFailedException
+     *             If existing blob does not meet request conditions.
      * @throws AzureRestResponseHandlingException
      */
     void handlePutObjectResponse(HttpResponse response, String containerName, Blob<?> blob)
             throws AzureRestResponseHandlingException;
 
+    /**
+     * 
+     * @param response
+     * @param dstContainerName
+     * @param dstBlobName
+     * @param copySource
+     * @throws AzureRestResponseHandlingException
+     */
+    void handleCopyObjectResponse(HttpResponse response, String dstContainerName, String dstBlobName,
+            String copySource) throws AzureRestResponseHandlingException;
+
+    /**
+     *
+     * @param response
+     * @param containerName
+     * @param blobName
+     * @param blockId
+     * @throws AzureRestResponseHandlingException
+     */
+    void handlePutBlockResponse(HttpResponse response, String containerName, String blobName, String blockId)
+            throws AzureRestResponseHandlingException;
+
+    /**
+     *
+     * @param response
+     * @param containerName
+     * @param blobName
+     * @throws AzureRestResponseHandlingException
+     */
+    void handlePutBlockListResponse(HttpResponse response, String containerName, String blobName)
+            throws AzureRestResponseHandlingException;
+
     /**
      * 
      * @param response
@@ -15,14 +15,32 @@
 package org.opencredo.cloud.storage.azure.rest.internal;
 
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.opencredo.cloud.storage.BlobConditions;
+import org.opencredo.cloud.storage.BlobContent;
 import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.BlobDetailsPage;
 import org.opencredo.cloud.storage.ContainerStatus;
 import org.opencredo.cloud.storage.azure.AzureCredentials;
 import org.opencredo.cloud.storage.azure.model.Blob;
@@ -31,29 +49,50 @@ import org.opencredo.cloud.storage.azure.rest.AzureRestCommunicationException;
 import org.opencredo.cloud.storage.azure.rest.AzureRestRequestCreationException;
 import org.opencredo.cloud.storage.azure.rest.AzureRestResponseHandlingException;
 import org.opencredo.cloud.storage.azure.rest.AzureRestService;
+import org.opencredo.cloud.storage.azure.rest.AzureRestServiceUtil;
+import org.opencredo.cloud.storage.azure.rest.ConnectionPoolStatistics;
 import org.opencredo.cloud.storage.azure.rest.ContainerNamesListFactory;
 import org.opencredo.cloud.storage.azure.rest.ContainerObjectDetailsListFactory;
+import org.opencredo.cloud.storage.azure.rest.HttpConnectionPoolSettings;
 import org.opencredo.cloud.storage.azure.rest.RestResponseHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Default implementation of basic interactions with Azure Blob REST API.
+ * Default implementation of basic interactions with Azure Blob REST API. All
+ * requests share single HTTP client backed by thread safe connection pool, so
+ * connections to storage account are kept alive and reused between requests.
  *
  * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
  */
 public class DefaultAzureRestService implements AzureRestService {
     private static final Logger LOG = LoggerFactory.getLogger(DefaultAzureRestService.class);
 
-    private String blobUrlFormat = "http://%s.blob.core.windows.net/%s";
+    /**
+     * Format of Azure Blob service URL, formatted with account name and
+     * request path.
+     */
+    public static final String DEFAULT_BLOB_URL_FORMAT = "http://%s.blob.core.windows.net/%s";
+
+    private final String blobUrlFormat;
     private final RestResponseHandler responseHandler;
 
     private final AzureCredentials credentials;
     private final RequestAuthorizationInterceptor authorizationInterceptor;
 
+    private final HttpConnectionPoolSettings poolSettings;
+    private final ThreadSafeClientConnManager connectionManager;
+    private final DefaultHttpClient client;
+    private final IdleConnectionEvictor connectionEvictor;
+    private final AtomicLong requestsExecuted = new AtomicLong();
+
     /**
      * @param credentials               Azure cloud storage credentials required to sign request.
      * @param containerNamesListFactory
@@ -63,10 +102,72 @@ public class DefaultAzureRestService implements AzureRestService {
     public DefaultAzureRestService(final AzureCredentials credentials,
                                    final ContainerNamesListFactory containerNamesListFactory,
                                    final ContainerObjectDetailsListFactory containerObjectDetailsListFactory) {
-        this.responseHandler = new DefaultRestResponseHandler(containerNamesListFactory,
-                containerObjectDetailsListFactory);
+        this(credentials, containerNamesListFactory, containerObjectDetailsListFactory,
+                new HttpConnectionPoolSettings());
+    }
+
+    /**
+     * @param credentials               Azure cloud storage credentials required to sign request.
+     * @param containerNamesListFactory
+     * @param containerObjectDetailsListFactory
+     *
+     * @param poolSettings              HTTP connection pool settings.
+     */
+    public DefaultAzureRestService(final AzureCredentials credentials,
+                                   final ContainerNamesListFactory containerNamesListFactory,
+                                   final ContainerObjectDetailsListFactory containerObjectDetailsListFactory,
+                                   final HttpConnectionPoolSettings poolSettings) {
+        this(credentials, containerNamesListFactory, containerObjectDetailsListFactory, poolSettings,
+                DEFAULT_BLOB_URL_FORMAT);
+    }
+
+    /**
+     * @param credentials               Azure cloud storage credentials required to sign request.
+     * @param containerNamesListFactory
+     * @param containerObjectDetailsListFactory
+     *
+     * @param poolSettings              HTTP connection pool settings.
+     * @param blobUrlFormat             Blob service URL format with account name and request path
+     *                                  placeholders, e.g. <code>http://127.0.0.1:10000/%s/%s</code>
+     *                                  for local Azure storage emulator.
+     */
+    public DefaultAzureRestService(final AzureCredentials credentials,
+                                   final ContainerNamesListFactory containerNamesListFactory,
+                                   final ContainerObjectDetailsListFactory containerObjectDetailsListFactory,
+                                   final HttpConnectionPoolSettings poolSettings, final String blobUrlFormat) {
+        this(credentials, new DefaultRestResponseHandler(containerNamesListFactory,
+                containerObjectDetailsListFactory), poolSettings, blobUrlFormat);
+    }
+
+    /**
+     * @param credentials               Azure cloud storage credentials required to sign request.
+     * @param responseHandler           Handler turning responses into results or exceptions.
+     * @param poolSettings              HTTP connection pool settings.
+     * @param blobUrlFormat             Blob service URL format with account name and request path
+     *                                  placeholders.
+     */
+    public DefaultAzureRestService(final AzureCredentials credentials, final RestResponseHandler responseHandler,
+                                   final HttpConnectionPoolSettings poolSettings, final String blobUrlFormat) {
+        this.blobUrlFormat = blobUrlFormat;
+        this.responseHandler = responseHandler;
         this.credentials = credentials;
         this.authorizationInterceptor = new RequestAuthorizationInterceptor(credentials);
+        this.poolSettings = poolSettings;
+
+        LOG.debug("Create Azure HTTP connection pool: {}", poolSettings);
+        HttpParams params = createHttpParams(poolSettings);
+        this.connectionManager = new ThreadSafeClientConnManager(params, createSchemeRegistry());
+        this.client = new DefaultHttpClient(connectionManager, params);
+        this.client.addRequestInterceptor(authorizationInterceptor);
+        this.client.setKeepAliveStrategy(new DefaultDurationKeepAliveStrategy(poolSettings.getKeepAliveDuration()));
+
+        if (poolSettings.getIdleConnectionEvictionInterval() > 0) {
+            this.connectionEvictor = new IdleConnectionEvictor(connectionManager, poolSettings
+                    .getIdleConnectionEvictionInterval(), poolSettings.getIdleConnectionTimeout());
+            this.connectionEvictor.start();
+        } else {
+            this.connectionEvictor = null;
+        }
     }
 
     /**
@@ -81,12 +182,12 @@ public class DefaultAzureRestService implements AzureRestService {
             AzureRestResponseHandlingException {
         LOG.debug("Create Azure container '{}'", containerName);
 
-        HttpClient client = createClient();
         HttpPut req = new HttpPut(String.format(blobUrlFormat, credentials.getAccountName(), containerName
                 + "?restype=container"));
 
+        HttpResponse response = null;
         try {
-            HttpResponse response = client.execute(req);
+            response = execute(req);
             LOG
                     .debug("Create Azure container '{}' response status line: '{}'", containerName, response
                             .getStatusLine());
@@ -97,6 +198,8 @@ public class DefaultAzureRestService implements AzureRestService {
         } catch (IOException e) {
             throw new AzureRestCommunicationException(e, "Unexpected IO error while creating container '%s'.",
                     containerName);
+        } finally {
+            releaseConnection(response);
         }
     }
 
@@ -112,12 +215,12 @@ public class DefaultAzureRestService implements AzureRestService {
             AzureRestResponseHandlingException {
         LOG.debug("Delete Azure container '{}'", containerName);
 
-        HttpClient client = createClient();
         HttpDelete req = new HttpDelete(String.format(blobUrlFormat, credentials.getAccountName(), containerName
                 + "?restype=container"));
 
+        HttpResponse response = null;
         try {
-            HttpResponse response = client.execute(req);
+            response = execute(req);
             LOG
                     .debug("Delete Azure container '{}' response status line: '{}'", containerName, response
                             .getStatusLine());
@@ -128,6 +231,8 @@ public class DefaultAzureRestService implements AzureRestService {
         } catch (IOException e) {
             throw new AzureRestCommunicationException(e, "Unexpected IO error while deleting container '%s'.",
                     containerName);
+        } finally {
+            releaseConnection(response);
         }
     }
 
@@ -143,14 +248,29 @@ public class DefaultAzureRestService implements AzureRestService {
      */
     public void deleteObject(String containerName, String blobName) throws AzureRestCommunicationException,
             AzureRestResponseHandlingException {
+        deleteObject(containerName, blobName, null);
+    }
+
+    /**
+     * @param containerName
+     * @param blobName
+     * @param conditions
+     * @throws AzureRestCommunicationException
+     * @throws AzureRestResponseHandlingException
+     * @see org.opencredo.cloud.storage.azure.rest.AzureRestService#deleteObject(java.lang.String,
+     *      java.lang.String, org.opencredo.cloud.storage.BlobConditions)
+     */
+    public void deleteObject(String containerName, String blobName, BlobConditions conditions)
+            throws AzureRestCommunicationException, AzureRestResponseHandlingException {
         LOG.debug("Delete Azure blob '{}' from container '{}'", blobName, containerName);
 
-        HttpClient client = createClient();
         HttpDelete req = new HttpDelete(String.format(blobUrlFormat, credentials.getAccountName(), containerName + "/"
                 + blobName));
+        addConditionHeaders(req, conditions);
 
+        HttpResponse response = null;
         try {
-            HttpResponse response = client.execute(req);
+            response = execute(req);
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Delete Azure blob '{}' from container '{}' response status line: '{}'", new Object[]{
                         blobName, containerName, response.getStatusLine()});
@@ -163,6 +283,8 @@ public class DefaultAzureRestService implements AzureRestService {
         } catch (IOException e) {
             throw new AzureRestCommunicationException(e,
                     "Unexpected IO error while deleting blob '%s' in container '%s'.", blobName, containerName);
+        } finally {
+            releaseConnection(response);
         }
     }
 
@@ -182,26 +304,190 @@ public class DefaultAzureRestService implements AzureRestService {
 
         LOG.debug("Receive blob '{}' from Azure container '{}' as string", blobName, containerName);
 
-        HttpClient client = createClient();
         HttpGet req = new HttpGet(String.format(blobUrlFormat, credentials.getAccountName(), containerName + "/"
                 + blobName));
 
         req.addHeader("x-ms-blob-type", "BlockBlob");
 
+        HttpResponse response = null;
+        boolean success = false;
         try {
-            HttpResponse response = client.execute(req);
+            response = execute(req);
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Receive blob '{}' from Azure container '{}' as string response status line: '{}'",
                         new Object[]{blobName, containerName, response.getStatusLine()});
             }
 
-            return responseHandler.handleGetObjectResponse(response, containerName, blobName);
+            // Connection is released when caller closes blob data stream.
+            InputStreamBlob blob = responseHandler.handleGetObjectResponse(response, containerName, blobName);
+            success = true;
+            return blob;
+        } catch (ClientProtocolException e) {
+            throw new AzureRestCommunicationException(e,
+                    "Unexpected protocol error while getting blob '%s' from container '%s'.", blobName, containerName);
+        } catch (IOException e) {
+            throw new AzureRestCommunicationException(e,
+                    "Unexpected IO error while getting blob '%s' from container '%s'.", blobName, containerName);
+        } finally {
+            if (!success) {
+                releaseConnection(response);
+            }
+        }
+    }
+
+    /**
+     * @param containerName
+     * @param blobName
+     * @param eTag
+     * @return
+     * @throws AzureRestCommunicationException
+     * @throws AzureRestResponseHandlingException
+     * @see org.opencredo.cloud.storage.azure.rest.AzureRestService#getObjectIfNoneMatch(java.lang.String,
+     *      java.lang.String, java.lang.String)
+     */
+    public BlobContent getObjectIfNoneMatch(String containerName, String blobName, String eTag)
+            throws AzureRestCommunicationException, AzureRestResponseHandlingException {
+        BlobConditions conditions = new BlobConditions();
+        conditions.setIfNoneMatch(eTag);
+        return getObject(containerName, blobName, conditions);
+    }
+
+    /**
+     * @param containerName
+     * @param blobName
+     * @param conditions
+     * @return
+     * @throws AzureRestCommunicationException
+     * @throws AzureRestResponseHandlingException
+     * @see org.opencredo.cloud.storage.azure.rest.AzureRestService#getObject(java.lang.String,
+     *      java.lang.String, org.opencredo.cloud.storage.BlobConditions)
+     */
+    public BlobContent getObject(String containerName, String blobName, BlobConditions conditions)
+            throws AzureRestCommunicationException, AzureRestResponseHandlingException {
+
+        LOG.debug("Receive blob '{}' from Azure container '{}' with conditions {}", new Object[]{blobName,
+                containerName, conditions});
+
+        HttpGet req = new HttpGet(String.format(blobUrlFormat, credentials.getAccountName(), containerName + "/"
+                + blobName));
+        addConditionHeaders(req, conditions);
+
+        HttpResponse response = null;
+        boolean success = false;
+        try {
+            response = execute(req);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Receive blob '{}' from Azure container '{}' conditionally response status line: '{}'",
+                        new Object[]{blobName, containerName, response.getStatusLine()});
+            }
+
+            // Connection is released when caller closes blob data stream.
+            BlobContent content = responseHandler.handleGetObjectIfNoneMatchResponse(response, containerName,
+                    blobName);
+            success = content != null;
+            return content;
         } catch (ClientProtocolException e) {
             throw new AzureRestCommunicationException(e,
                     "Unexpected protocol error while getting blob '%s' from container '%s'.", blobName, containerName);
         } catch (IOException e) {
             throw new AzureRestCommunicationException(e,
                     "Unexpected IO error while getting blob '%s' from container '%s'.", blobName, containerName);
+        } finally {
+            if (!success) {
+                releaseConnection(response);
+            }
+        }
+    }
+
+    /**
+     * @param containerName
+     * @param blobName
+     * @return
+     * @throws AzureRestCommunicationException
+     * @throws AzureRestResponseHandlingException
+     * @see org.opencredo.cloud.storage.azure.rest.AzureRestService#getObjectDetails(java.lang.String,
+     *      java.lang.String)
+     */
+    public BlobDetails getObjectDetails(String containerName, String blobName) throws AzureRestCommunicationException,
+            AzureRestResponseHandlingException {
+
+        LOG.debug("Get properties of blob '{}' in Azure container '{}'", blobName, containerName);
+
+        HttpHead req = new HttpHead(String.format(blobUrlFormat, credentials.getAccountName(), containerName + "/"
+                + blobName));
+
+        HttpResponse response = null;
+        try {
+            response = execute(req);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Get properties of blob '{}' in Azure container '{}' response status line: '{}'",
+                        new Object[]{blobName, containerName, response.getStatusLine()});
+            }
+
+            return responseHandler.handleGetObjectDetailsResponse(response, containerName, blobName);
+        } catch (ClientProtocolException e) {
+            throw new AzureRestCommunicationException(e,
+                    "Unexpected protocol error while getting properties of blob '%s' in container '%s'.", blobName,
+                    containerName);
+        } catch (IOException e) {
+            throw new AzureRestCommunicationException(e,
+                    "Unexpected IO error while getting properties of blob '%s' in container '%s'.", blobName,
+                    containerName);
+        } finally {
+            releaseConnection(response);
+        }
+    }
+
+    /**
+     * @param containerName
+     * @param blobName
+     * @param offset
+     * @param length
+     * @param eTag
+     * @return
+     * @throws AzureRestCommunicationException
+     * @throws AzureRestResponseHandlingException
+     * @see org.opencredo.cloud.storage.azure.rest.AzureRestService#getObjectRange(java.lang.String,
+     *      java.lang.String, long, long, java.lang.String)
+     */
+    public InputStreamBlob getObjectRange(String containerName, String blobName, long offset, long length,
+                                          String eTag) throws AzureRestCommunicationException, AzureRestResponseHandlingException {
+
+        LOG.debug("Receive range of blob '{}' from Azure container '{}'", blobName, containerName);
+
+        HttpGet req = new HttpGet(String.format(blobUrlFormat, credentials.getAccountName(), containerName + "/"
+                + blobName));
+
+        req.addHeader("x-ms-range", "bytes=" + offset + "-" + (offset + length - 1));
+        if (eTag != null) {
+            req.addHeader("If-Match", eTag);
+        }
+
+        HttpResponse response = null;
+        boolean success = false;
+        try {
+            response = execute(req);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Receive range of blob '{}' from Azure container '{}' response status line: '{}'",
+                        new Object[]{blobName, containerName, response.getStatusLine()});
+            }
+
+            // Connection is released when caller closes blob data stream.
+            InputStreamBlob blob = responseHandler.handleGetObjectRangeResponse(response, containerName, blobName);
+            success = true;
+            return blob;
+        } catch (ClientProtocolException e) {
+            throw new AzureRestCommunicationException(e,
+                    "Unexpected protocol error while getting range of blob '%s' from container '%s'.", blobName,
+                    containerName);
+        } catch (IOException e) {
+            throw new AzureRestCommunicationException(e,
+                    "Unexpected IO error while getting range of blob '%s' from container '%s'.", blobName,
+                    containerName);
+        } finally {
+            if (!success) {
+                releaseConnection(response);
+            }
         }
     }
 
@@ -216,11 +502,11 @@ public class DefaultAzureRestService implements AzureRestService {
     public List<String> listContainerNames() throws AzureRestCommunicationException, AzureRestResponseHandlingException {
         LOG.debug("List Azure containers");
 
-        HttpClient client = createClient();
         HttpGet req = new HttpGet(String.format(blobUrlFormat, credentials.getAccountName(), "?comp=list"));
 
+        HttpResponse response = null;
         try {
-            HttpResponse response = client.execute(req);
+            response = execute(req);
             LOG.debug("List Azure containers response status line: '{}'", response.getStatusLine());
 
             return responseHandler.handleListContainerNamesResponse(response);
@@ -229,6 +515,8 @@ public class DefaultAzureRestService implements AzureRestService {
                     "Unexpected protocol error while getting list of containe names.", e);
         } catch (IOException e) {
             throw new AzureRestCommunicationException("Unexpected IO error while getting list of containe names.", e);
+        } finally {
+            releaseConnection(response);
         }
     }
 
@@ -246,6 +534,22 @@ public class DefaultAzureRestService implements AzureRestService {
      */
     public void putObject(String containerName, Blob<?> blob) throws AzureRestRequestCreationException,
             AzureRestCommunicationException, AzureRestResponseHandlingException {
+        putObject(containerName, blob, null);
+    }
+
+    /**
+     * @param containerName
+     * @param blob
+     * @param conditions
+     * @throws AzureRestRequestCreationException
+     * @throws AzureRestCommunicationException
+     * @throws AzureRestResponseHandlingException
+     * @see org.opencredo.cloud.storage.azure.rest.AzureRestService#putObject(java.lang.String,
+     *      org.opencredo.cloud.storage.azure.model.Blob, org.opencredo.cloud.storage.BlobConditions)
+     */
+    public void putObject(String containerName, Blob<?> blob, BlobConditions conditions)
+            throws AzureRestRequestCreationException, AzureRestCommunicationException,
+            AzureRestResponseHandlingException {
 
         LOG.debug("Send string as blob '{}' to Azure container '{}'", blob.getName(), containerName);
 
@@ -257,15 +561,16 @@ public class DefaultAzureRestService implements AzureRestService {
                     "Failed to create request body as blob '{}' in container '{}'", blob.getName(), containerName);
         }
 
-        HttpClient client = createClient();
         HttpPut req = new HttpPut(String.format(blobUrlFormat, credentials.getAccountName(), containerName + "/"
                 + blob.getName(), entity));
 
         req.addHeader("x-ms-blob-type", "BlockBlob");
         req.setEntity(entity);
+        addConditionHeaders(req, conditions);
 
+        HttpResponse response = null;
         try {
-            HttpResponse response = client.execute(req);
+            response = execute(req);
             LOG.debug("Response status: '{}'", response.getStatusLine());
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Send blob '{}' to Azure container '{}' response status line: '{}'", new Object[]{
@@ -280,10 +585,168 @@ public class DefaultAzureRestService implements AzureRestService {
         } catch (IOException e) {
             throw new AzureRestCommunicationException(e,
                     "Unexpected IO error while sending blob '%s' to container '%s'.", blob.getName(), containerName);
+        } finally {
+            releaseConnection(response);
         }
 
     }
 
+    /**
+     * Copy source is given as '/account/container/blob', as required by
+     * storage version 2009-09-19.
+     *
+     * @param srcContainerName
+     * @param srcBlobName
+     * @param dstContainerName
+     * @param dstBlobName
+     * @throws AzureRestCommunicationException
+     * @throws AzureRestResponseHandlingException
+     * @see org.opencredo.cloud.storage.azure.rest.AzureRestService#copyObject(java.lang.String,
+     *      java.lang.String, java.lang.String, java.lang.String)
+     */
+    public void copyObject(String srcContainerName, String srcBlobName, String dstContainerName, String dstBlobName)
+            throws AzureRestCommunicationException, AzureRestResponseHandlingException {
+        String copySource = "/" + credentials.getAccountName() + "/" + srcContainerName + "/" + srcBlobName;
+        LOG.debug("Copy Azure blob '{}' to blob '{}' in container '{}'", new Object[]{copySource, dstBlobName,
+                dstContainerName});
+
+        HttpPut req = new HttpPut(String.format(blobUrlFormat, credentials.getAccountName(), dstContainerName + "/"
+                + dstBlobName));
+        req.addHeader("x-ms-copy-source", copySource);
+
+        HttpResponse response = null;
+        try {
+            response = execute(req);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Copy Azure blob '{}' to blob '{}' in container '{}' response status line: '{}'",
+                        new Object[]{copySource, dstBlobName, dstContainerName, response.getStatusLine()});
+            }
+
+            responseHandler.handleCopyObjectResponse(response, dstContainerName, dstBlobName, copySource);
+        } catch (ClientProtocolException e) {
+            throw new AzureRestCommunicationException(e,
+                    "Unexpected protocol error while copying blob '%s' to blob '%s' in container '%s'.", copySource,
+                    dstBlobName, dstContainerName);
+        } catch (IOException e) {
+            throw new AzureRestCommunicationException(e,
+                    "Unexpected IO error while copying blob '%s' to blob '%s' in container '%s'.", copySource,
+                    dstBlobName, dstContainerName);
+        } finally {
+            releaseConnection(response);
+        }
+    }
+
+    /**
+     * @param containerName
+     * @param blockId
+     * @param blob
+     * @throws AzureRestRequestCreationException
+     * @throws AzureRestCommunicationException
+     * @throws AzureRestResponseHandlingException
+     * @see org.opencredo.cloud.storage.azure.rest.AzureRestService#putBlock(java.lang.String,
+     *      java.lang.String, org.opencredo.cloud.storage.azure.model.Blob)
+     */
+    public void putBlock(String containerName, String blockId, Blob<?> blob) throws AzureRestRequestCreationException,
+            AzureRestCommunicationException, AzureRestResponseHandlingException {
+
+        LOG.debug("Send block '{}' of blob '{}' to Azure container '{}'", new Object[]{blockId, blob.getName(),
+                containerName});
+
+        HttpEntity entity;
+        try {
+            entity = blob.createRequestBody();
+        } catch (AzureRestRequestCreationException e) {
+            throw new AzureRestRequestCreationException(e,
+                    "Failed to create request body as block '%s' of blob '%s' in container '%s'", blockId, blob
+                            .getName(), containerName);
+        }
+
+        StringBuilder query = new StringBuilder(containerName).append('/').append(blob.getName()).append(
+                "?comp=block");
+        appendQueryParam(query, "blockid", blockId);
+
+        HttpPut req = new HttpPut(String.format(blobUrlFormat, credentials.getAccountName(), query));
+        req.setEntity(entity);
+
+        HttpResponse response = null;
+        try {
+            response = execute(req);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Send block '{}' of blob '{}' response status line: '{}'", new Object[]{blockId,
+                        blob.getName(), response.getStatusLine()});
+            }
+
+            responseHandler.handlePutBlockResponse(response, containerName, blob.getName(), blockId);
+        } catch (ClientProtocolException e) {
+            throw new AzureRestCommunicationException(e,
+                    "Unexpected protocol error while sending block '%s' of blob '%s' to container '%s'.", blockId,
+                    blob.getName(), containerName);
+        } catch (IOException e) {
+            throw new AzureRestCommunicationException(e,
+                    "Unexpected IO error while sending block '%s' of blob '%s' to container '%s'.", blockId, blob
+                            .getName(), containerName);
+        } finally {
+            releaseConnection(response);
+        }
+    }
+
+    /**
+     * @param containerName
+     * @param blobName
+     * @param blockIds
+     * @throws AzureRestRequestCreationException
+     * @throws AzureRestCommunicationException
+     * @throws AzureRestResponseHandlingException
+     * @see org.opencredo.cloud.storage.azure.rest.AzureRestService#putBlockList(java.lang.String,
+     *      java.lang.String, java.util.List)
+     */
+    public void putBlockList(String containerName, String blobName, List<String> blockIds)
+            throws AzureRestRequestCreationException, AzureRestCommunicationException,
+            AzureRestResponseHandlingException {
+
+        LOG.debug("Commit {} blocks of blob '{}' in Azure container '{}'", new Object[]{blockIds.size(), blobName,
+                containerName});
+
+        StringBuilder body = new StringBuilder(64 + blockIds.size() * 40);
+        body.append("<?xml version=\"1.0\" encoding=\"utf-8\"?><BlockList>");
+        for (String blockId : blockIds) {
+            body.append("<Latest>").append(blockId).append("</Latest>");
+        }
+        body.append("</BlockList>");
+
+        HttpEntity entity;
+        try {
+            entity = new ByteArrayEntity(body.toString().getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new AzureRestRequestCreationException(e,
+                    "Failed to create block list request body of blob '%s' in container '%s'", blobName,
+                    containerName);
+        }
+
+        HttpPut req = new HttpPut(String.format(blobUrlFormat, credentials.getAccountName(), containerName + "/"
+                + blobName + "?comp=blocklist"));
+        req.setEntity(entity);
+
+        HttpResponse response = null;
+        try {
+            response = execute(req);
+            LOG.debug("Commit block list of blob '{}' response status line: '{}'", blobName, response
+                    .getStatusLine());
+
+            responseHandler.handlePutBlockListResponse(response, containerName, blobName);
+        } catch (ClientProtocolException e) {
+            throw new AzureRestCommunicationException(e,
+                    "Unexpected protocol error while committing block list of blob '%s' in container '%s'.",
+                    blobName, containerName);
+        } catch (IOException e) {
+            throw new AzureRestCommunicationException(e,
+                    "Unexpected IO error while committing block list of blob '%s' in container '%s'.", blobName,
+                    containerName);
+        } finally {
+            releaseConnection(response);
+        }
+    }
+
     /**
      * @param containerName
      * @return
@@ -297,32 +760,179 @@ public class DefaultAzureRestService implements AzureRestService {
             AzureRestResponseHandlingException {
         LOG.debug("List objects in Azure container '{}'", containerName);
 
-        HttpClient client = createClient();
-        HttpGet req = new HttpGet(String.format(blobUrlFormat, credentials.getAccountName(), containerName
-                + "?restype=container&comp=list"));
+        // Follow continuation markers, single response is limited to 5000 blobs.
+        List<BlobDetails> blobDetails = new ArrayList<BlobDetails>();
+        String marker = null;
+        BlobDetailsPage page;
+        do {
+            page = listContainerObjectDetailsPage(containerName, null, null, marker, 0);
+            blobDetails.addAll(page.getBlobDetails());
+            marker = page.getNextMarker();
+        } while (page.hasNextPage());
+
+        return blobDetails;
+    }
 
+    /**
+     * @param containerName
+     * @param prefix
+     * @param delimiter
+     * @param marker
+     * @param maxResults
+     * @return
+     * @throws AzureRestCommunicationException
+     * @throws AzureRestResponseHandlingException
+     * @see org.opencredo.cloud.storage.azure.rest.AzureRestService#listContainerObjectDetailsPage(java.lang.String,
+     *      java.lang.String, java.lang.String, java.lang.String, int)
+     */
+    public BlobDetailsPage listContainerObjectDetailsPage(String containerName, String prefix, String delimiter,
+                                                          String marker, int maxResults) throws AzureRestCommunicationException,
+            AzureRestResponseHandlingException {
+        LOG.debug("List objects page in Azure container '{}' with marker '{}'", containerName, marker);
+
+        StringBuilder query = new StringBuilder(containerName).append("?restype=container&comp=list");
+        appendQueryParam(query, "prefix", prefix);
+        appendQueryParam(query, "delimiter", delimiter);
+        appendQueryParam(query, "marker", marker);
+        if (maxResults > 0) {
+            appendQueryParam(query, "maxresults", String.valueOf(maxResults));
+        }
+
+        HttpGet req = new HttpGet(String.format(blobUrlFormat, credentials.getAccountName(), query));
+
+        HttpResponse response = null;
         try {
-            HttpResponse response = client.execute(req);
+            response = execute(req);
             LOG.debug("List objects in Azure container '{}' response status line: '{}'", containerName, response
                     .getStatusLine());
 
-            return responseHandler.handleListContainerObjectDetailsResponse(response, containerName);
+            return responseHandler.handleListContainerObjectDetailsPageResponse(response, containerName);
         } catch (ClientProtocolException e) {
             throw new AzureRestCommunicationException(e,
                     "Unexpected protocol error while getting list of blob details from container '%s'.", containerName);
         } catch (IOException e) {
             throw new AzureRestCommunicationException(e,
                     "Unexpected IO error while getting list of blob details from container '%s'.", containerName);
+        } finally {
+            releaseConnection(response);
+        }
+    }
+
+    /**
+     * @param query
+     * @param name
+     * @param value Query parameter value, skipped if empty.
+     */
+    private void appendQueryParam(StringBuilder query, String name, String value) {
+        if (value == null || value.length() == 0) {
+            return;
+        }
+        try {
+            query.append('&').append(name).append('=').append(URLEncoder.encode(value, "UTF-8").replace("+", "%20"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 encoding is not supported", e);
+        }
+    }
+
+    /**
+     * @return
+     * @see org.opencredo.cloud.storage.azure.rest.AzureRestService#getConnectionPoolStatistics()
+     */
+    public ConnectionPoolStatistics getConnectionPoolStatistics() {
+        return new ConnectionPoolStatistics(connectionManager.getConnectionsInPool(), poolSettings
+                .getMaxTotalConnections(), poolSettings.getMaxConnectionsPerRoute(), requestsExecuted.get(),
+                connectionEvictor == null ? 0 : connectionEvictor.getEvictionRuns());
+    }
+
+    /**
+     * @see org.opencredo.cloud.storage.azure.rest.AzureRestService#shutdown()
+     */
+    public void shutdown() {
+        LOG.debug("Shutdown Azure HTTP connection pool");
+        if (connectionEvictor != null) {
+            connectionEvictor.shutdown();
+        }
+        connectionManager.shutdown();
+    }
+
+    /**
+     * Add HTTP conditional headers of set conditions.
+     *
+     * @param req
+     * @param conditions
+     *            Conditions, or <code>null</code>.
+     */
+    private static void addConditionHeaders(HttpRequest req, BlobConditions conditions) {
+        if (conditions == null) {
+            return;
+        }
+        if (conditions.getIfMatch() != null) {
+            req.addHeader("If-Match", conditions.getIfMatch());
+        }
+        if (conditions.getIfNoneMatch() != null) {
+            req.addHeader("If-None-Match", conditions.getIfNoneMatch());
+        }
+        if (conditions.getIfModifiedSince() != null) {
+            req.addHeader("If-Modified-Since", AzureRestServiceUtil.formatRFC1123Time(conditions
+                    .getIfModifiedSince()));
+        }
+        if (conditions.getIfUnmodifiedSince() != null) {
+            req.addHeader("If-Unmodified-Since", AzureRestServiceUtil.formatRFC1123Time(conditions
+                    .getIfUnmodifiedSince()));
         }
     }
 
     /**
+     * @param req
      * @return
+     * @throws IOException
      */
-    private HttpClient createClient() {
-        DefaultHttpClient httpClient = new DefaultHttpClient();
-        httpClient.addRequestInterceptor(authorizationInterceptor);
-        return httpClient;
+    private HttpResponse execute(HttpUriRequest req) throws IOException {
+        requestsExecuted.incrementAndGet();
+        return client.execute(req);
+    }
+
+    /**
+     * Consumes response body, so underlying connection is released back to
+     * the pool.
+     *
+     * @param response
+     */
+    private void releaseConnection(HttpResponse response) {
+        if (response == null || response.getEntity() == null) {
+            return;
+        }
+        try {
+            response.getEntity().consumeContent();
+        } catch (IOException e) {
+            LOG.debug("Failed to consume response content", e);
+        }
+    }
+
+    /**
+     * @param settings
+     * @return
+     */
+    private static HttpParams createHttpParams(HttpConnectionPoolSettings settings) {
+        HttpParams params = new BasicHttpParams();
+        HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+        HttpConnectionParams.setConnectionTimeout(params, settings.getConnectionTimeout());
+        HttpConnectionParams.setSoTimeout(params, settings.getSocketTimeout());
+        ConnManagerParams.setMaxTotalConnections(params, settings.getMaxTotalConnections());
+        ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(settings
+                .getMaxConnectionsPerRoute()));
+        ConnManagerParams.setTimeout(params, settings.getConnectionPoolTimeout());
+        return params;
+    }
+
+    /**
+     * @return
+     */
+    private static SchemeRegistry createSchemeRegistry() {
+        SchemeRegistry schemeRegistry = new SchemeRegistry();
+        schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+        schemeRegistry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+        return schemeRegistry;
     }
 
     /**
@@ -336,12 +946,12 @@ public class DefaultAzureRestService implements AzureRestService {
      */
     public ContainerStatus checkContainerStatus(String containerName) throws AzureRestCommunicationException,
             AzureRestResponseHandlingException {
-        HttpClient client = createClient();
-        HttpGet req = new HttpGet(String.format(blobUrlFormat, credentials.getAccountName(), containerName
-                + "?restype=container&comp=list"));
+        HttpHead req = new HttpHead(String.format(blobUrlFormat, credentials.getAccountName(), containerName
+                + "?restype=container"));
 
+        HttpResponse response = null;
         try {
-            HttpResponse response = client.execute(req);
+            response = execute(req);
             LOG.debug("Check status for Azure container '{}' response status line: '{}'", containerName, response
                     .getStatusLine());
 
@@ -352,6 +962,8 @@ public class DefaultAzureRestService implements AzureRestService {
         } catch (IOException e) {
             throw new AzureRestCommunicationException(e,
                     "Unexpected IO error while checking status for container '%s'.", containerName);
+        } finally {
+            releaseConnection(response);
         }
     }
 }
@@ -0,0 +1,66 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.azure.rest.internal;
+
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Keep-alive strategy honouring server 'Keep-Alive: timeout=...' header and
+ * falling back to configured duration when server does not send one, so
+ * connections are reused instead of being kept open indefinitely.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class DefaultDurationKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+
+    private final long defaultDuration;
+
+    /**
+     * @param defaultDuration Keep alive duration in milliseconds.
+     */
+    public DefaultDurationKeepAliveStrategy(long defaultDuration) {
+        super();
+        this.defaultDuration = defaultDuration;
+    }
+
+    /**
+     * @param response
+     * @param context
+     * @return
+     * @see org.apache.http.conn.ConnectionKeepAliveStrategy#getKeepAliveDuration(org.apache.http.HttpResponse,
+     *      org.apache.http.protocol.HttpContext)
+     */
+    public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+        HeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+        while (it.hasNext()) {
+            HeaderElement he = it.nextElement();
+            String value = he.getValue();
+            if (value != null && "timeout".equalsIgnoreCase(he.getName())) {
+                try {
+                    return Long.parseLong(value) * 1000;
+                } catch (NumberFormatException ignore) {
+                    // Fall back to default duration
+                }
+            }
+        }
+        return defaultDuration;
+    }
+}
@@ -15,16 +15,22 @@
 package org.opencredo.cloud.storage.azure.rest.internal;
 
 import java.io.IOException;
+import java.text.ParseException;
 import java.util.List;
 
+import org.apache.http.Header;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
+import org.opencredo.cloud.storage.BlobContent;
 import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.BlobDetailsPage;
 import org.opencredo.cloud.storage.ContainerStatus;
 import org.opencredo.cloud.storage.azure.model.Blob;
 import org.opencredo.cloud.storage.azure.model.InputStreamBlob;
 import org.opencredo.cloud.storage.azure.rest.AzureRestResponseHandlingException;
 import org.opencredo.cloud.storage.azure.rest.AzureRestCommunicationException;
+import org.opencredo.cloud.storage.azure.rest.AzureRestPreconditionFailedException;
+import org.opencredo.cloud.storage.azure.rest.AzureRestServiceUtil;
 import org.opencredo.cloud.storage.azure.rest.ContainerNamesListFactory;
 import org.opencredo.cloud.storage.azure.rest.ContainerObjectDetailsListFactory;
 import org.opencredo.cloud.storage.azure.rest.RestResponseHandler;
@@ -60,7 +66,8 @@ public class DefaultRestResponseHandler implements RestResponseHandler {
     public void handleCreateContainerResponse(HttpResponse response, String containerName)
             throws AzureRestResponseHandlingException {
         if (response.getStatusLine().getStatusCode() != HttpStatus.SC_CREATED) {
-            throw new AzureRestResponseHandlingException("Failed to create Azure container '%s'. Reason: '%s %d: %s'",
+            throw new AzureRestResponseHandlingException(response.getStatusLine().getStatusCode(),
+                    "Failed to create Azure container '%s'. Reason: '%s %d: %s'",
                     containerName, response.getStatusLine().getProtocolVersion().getProtocol(), response
                             .getStatusLine().getStatusCode(), response.getStatusLine().getReasonPhrase());
         }
@@ -76,7 +83,8 @@ public class DefaultRestResponseHandler implements RestResponseHandler {
     public void handleDeleteContainerResponse(HttpResponse response, String containerName)
             throws AzureRestResponseHandlingException {
         if (response.getStatusLine().getStatusCode() != HttpStatus.SC_ACCEPTED) {
-            throw new AzureRestResponseHandlingException("Failed to delete Azure container '%s'. Reason: '%s %d: %s'",
+            throw new AzureRestResponseHandlingException(response.getStatusLine().getStatusCode(),
+                    "Failed to delete Azure container '%s'. Reason: '%s %d: %s'",
                     containerName, response.getStatusLine().getProtocolVersion().getProtocol(), response
                             .getStatusLine().getStatusCode(), response.getStatusLine().getReasonPhrase());
         }
@@ -92,8 +100,14 @@ public class DefaultRestResponseHandler implements RestResponseHandler {
      */
     public void handleDeleteObjectResponse(HttpResponse response, String containerName, String blobName)
             throws AzureRestResponseHandlingException {
+        if (response.getStatusLine().getStatusCode() == HttpStatus.SC_PRECONDITION_FAILED) {
+            throw new AzureRestPreconditionFailedException(
+                    "Blob '%s' in Azure container '%s' does not meet delete conditions. Reason: '%s %d: %s'",
+                    blobName, containerName, response.getStatusLine().getProtocolVersion().getProtocol(), response
+                            .getStatusLine().getStatusCode(), response.getStatusLine().getReasonPhrase());
+        }
         if (response.getStatusLine().getStatusCode() != HttpStatus.SC_ACCEPTED) {
-            throw new AzureRestResponseHandlingException(
+            throw new AzureRestResponseHandlingException(response.getStatusLine().getStatusCode(),
                     "Failed to delete blob '%s' in Azure container '%s'. Reason: '%s %d: %s'", blobName, containerName,
                     response.getStatusLine().getProtocolVersion().getProtocol(), response.getStatusLine()
                             .getStatusCode(), response.getStatusLine().getReasonPhrase());
@@ -110,14 +124,80 @@ public class DefaultRestResponseHandler implements RestResponseHandler {
      */
     public void handlePutObjectResponse(HttpResponse response, String containerName, Blob<?> blob)
             throws AzureRestResponseHandlingException {
+        if (response.getStatusLine().getStatusCode() == HttpStatus.SC_PRECONDITION_FAILED) {
+            throw new AzureRestPreconditionFailedException(
+                    "Blob '%s' in Azure container '%s' does not meet put conditions. Reason: '%s %d: %s'", blob
+                            .getName(), containerName, response.getStatusLine().getProtocolVersion().getProtocol(),
+                    response.getStatusLine().getStatusCode(), response.getStatusLine().getReasonPhrase());
+        }
         if (response.getStatusLine().getStatusCode() != HttpStatus.SC_CREATED) {
-            throw new AzureRestResponseHandlingException(
+            throw new AzureRestResponseHandlingException(response.getStatusLine().getStatusCode(),
                     "Failed to add blob '%s' in Azure container '%s'. Reason: '%s %d: %s'", blob.getName(),
                     containerName, response.getStatusLine().getProtocolVersion().getProtocol(), response
                             .getStatusLine().getStatusCode(), response.getStatusLine().getReasonPhrase());
         }
     }
 
+    /**
+     * Copy Blob completes synchronously with '201 Created' in storage version
+     * used, '202 Accepted' of later versions is accepted too.
+     * 
+     * @param response
+     * @param dstContainerName
+     * @param dstBlobName
+     * @param copySource
+     * @throws AzureRestResponseHandlingException
+     * @see org.opencredo.cloud.storage.azure.rest.RestResponseHandler#handleCopyObjectResponse(org.apache.http.HttpResponse,
+     *      java.lang.String, java.lang.String, java.lang.String)
+     */
+    public void handleCopyObjectResponse(HttpResponse response, String dstContainerName, String dstBlobName,
+            String copySource) throws AzureRestResponseHandlingException {
+        int statusCode = response.getStatusLine().getStatusCode();
+        if (statusCode != HttpStatus.SC_CREATED && statusCode != HttpStatus.SC_ACCEPTED) {
+            throw new AzureRestResponseHandlingException(statusCode,
+                    "Failed to copy blob '%s' to blob '%s' in Azure container '%s'. Reason: '%s %d: %s'",
+                    copySource, dstBlobName, dstContainerName, response.getStatusLine().getProtocolVersion()
+                            .getProtocol(), statusCode, response.getStatusLine().getReasonPhrase());
+        }
+    }
+
+    /**
+     * @param response
+     * @param containerName
+     * @param blobName
+     * @param blockId
+     * @throws AzureRestResponseHandlingException
+     * @see org.opencredo.cloud.storage.azure.rest.RestResponseHandler#handlePutBlockResponse(org.apache.http.HttpResponse,
+     *      java.lang.String, java.lang.String, java.lang.String)
+     */
+    public void handlePutBlockResponse(HttpResponse response, String containerName, String blobName, String blockId)
+            throws AzureRestResponseHandlingException {
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_CREATED) {
+            throw new AzureRestResponseHandlingException(response.getStatusLine().getStatusCode(),
+                    "Failed to add block '%s' of blob '%s' in Azure container '%s'. Reason: '%s %d: %s'", blockId,
+                    blobName, containerName, response.getStatusLine().getProtocolVersion().getProtocol(), response
+                            .getStatusLine().getStatusCode(), response.getStatusLine().getReasonPhrase());
+        }
+    }
+
+    /**
+     * @param response
+     * @param containerName
+     * @param blobName
+     * @throws AzureRestResponseHandlingException
+     * @see org.opencredo.cloud.storage.azure.rest.RestResponseHandler#handlePutBlockListResponse(org.apache.http.HttpResponse,
+     *      java.lang.String, java.lang.String)
+     */
+    public void handlePutBlockListResponse(HttpResponse response, String containerName, String blobName)
+            throws AzureRestResponseHandlingException {
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_CREATED) {
+            throw new AzureRestResponseHandlingException(response.getStatusLine().getStatusCode(),
+                    "Failed to commit block list of blob '%s' in Azure container '%s'. Reason: '%s %d: %s'",
+                    blobName, containerName, response.getStatusLine().getProtocolVersion().getProtocol(), response
+                            .getStatusLine().getStatusCode(), response.getStatusLine().getReasonPhrase());
+        }
+    }
+
     /**
      * @param response
      * @param containerName
@@ -130,7 +210,7 @@ public class DefaultRestResponseHandler implements RestResponseHandler {
     public InputStreamBlob handleGetObjectResponse(HttpResponse response, String containerName, String blobName)
             throws AzureRestResponseHandlingException {
         if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-            throw new AzureRestResponseHandlingException(
+            throw new AzureRestResponseHandlingException(response.getStatusLine().getStatusCode(),
                     "Failed to get blob '%s' in Azure container '%s'. Reason: '%s %d: %s'", blobName, containerName,
                     response.getStatusLine().getProtocolVersion().getProtocol(), response.getStatusLine()
                             .getStatusCode(), response.getStatusLine().getReasonPhrase());
@@ -145,6 +225,122 @@ public class DefaultRestResponseHandler implements RestResponseHandler {
         }
     }
 
+    /**
+     * @param response
+     * @param containerName
+     * @param blobName
+     * @return
+     * @throws AzureRestResponseHandlingException
+     * @see org.opencredo.cloud.storage.azure.rest.RestResponseHandler#handleGetObjectDetailsResponse(org.apache.http.HttpResponse,
+     *      java.lang.String, java.lang.String)
+     */
+    public BlobDetails handleGetObjectDetailsResponse(HttpResponse response, String containerName, String blobName)
+            throws AzureRestResponseHandlingException {
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+            throw new AzureRestResponseHandlingException(response.getStatusLine().getStatusCode(),
+                    "Failed to get properties of blob '%s' in Azure container '%s'. Reason: '%s %d: %s'", blobName,
+                    containerName, response.getStatusLine().getProtocolVersion().getProtocol(), response
+                            .getStatusLine().getStatusCode(), response.getStatusLine().getReasonPhrase());
+        }
+
+        return createBlobDetails(response, containerName, blobName);
+    }
+
+    /**
+     * @param response
+     * @param containerName
+     * @param blobName
+     * @return
+     * @throws AzureRestResponseHandlingException
+     * @see org.opencredo.cloud.storage.azure.rest.RestResponseHandler#handleGetObjectIfNoneMatchResponse(org.apache.http.HttpResponse,
+     *      java.lang.String, java.lang.String)
+     */
+    public BlobContent handleGetObjectIfNoneMatchResponse(HttpResponse response, String containerName, String blobName)
+            throws AzureRestResponseHandlingException {
+        int statusCode = response.getStatusLine().getStatusCode();
+        if (statusCode == HttpStatus.SC_NOT_MODIFIED) {
+            return null;
+        }
+        if (statusCode == HttpStatus.SC_PRECONDITION_FAILED) {
+            throw new AzureRestPreconditionFailedException(
+                    "Blob '%s' in Azure container '%s' has been modified. Reason: '%s %d: %s'", blobName,
+                    containerName, response.getStatusLine().getProtocolVersion().getProtocol(), statusCode, response
+                            .getStatusLine().getReasonPhrase());
+        }
+        if (statusCode != HttpStatus.SC_OK) {
+            throw new AzureRestResponseHandlingException(statusCode,
+                    "Failed to get blob '%s' in Azure container '%s'. Reason: '%s %d: %s'", blobName, containerName,
+                    response.getStatusLine().getProtocolVersion().getProtocol(), statusCode, response
+                            .getStatusLine().getReasonPhrase());
+        }
+
+        BlobDetails details = createBlobDetails(response, containerName, blobName);
+        try {
+            return new BlobContent(details, response.getEntity().getContent());
+        } catch (IllegalStateException e) {
+            throw new AzureRestResponseHandlingException("Failed to get content", e);
+        } catch (IOException e) {
+            throw new AzureRestResponseHandlingException("Unexpected IO exception while creating blob", e);
+        }
+    }
+
+    private BlobDetails createBlobDetails(HttpResponse response, String containerName, String blobName)
+            throws AzureRestResponseHandlingException {
+        String eTag = getHeaderValue(response, "ETag");
+        String contentLength = getHeaderValue(response, "Content-Length");
+        String lastModified = getHeaderValue(response, "Last-Modified");
+        try {
+            return new BlobDetails(containerName, blobName, eTag, lastModified == null ? null : AzureRestServiceUtil
+                    .parseRFC1123TimeString(lastModified), contentLength == null ? BlobDetails.UNKNOWN_CONTENT_LENGTH
+                    : Long.parseLong(contentLength));
+        } catch (ParseException e) {
+            throw new AzureRestResponseHandlingException(e, "Failed to parse last modified date '%s' of blob '%s'",
+                    lastModified, blobName);
+        } catch (NumberFormatException e) {
+            throw new AzureRestResponseHandlingException(e, "Failed to parse content length '%s' of blob '%s'",
+                    contentLength, blobName);
+        }
+    }
+
+    /**
+     * @param response
+     * @param containerName
+     * @param blobName
+     * @return
+     * @throws AzureRestResponseHandlingException
+     * @see org.opencredo.cloud.storage.azure.rest.RestResponseHandler#handleGetObjectRangeResponse(org.apache.http.HttpResponse,
+     *      java.lang.String, java.lang.String)
+     */
+    public InputStreamBlob handleGetObjectRangeResponse(HttpResponse response, String containerName, String blobName)
+            throws AzureRestResponseHandlingException {
+        int statusCode = response.getStatusLine().getStatusCode();
+        if (statusCode == HttpStatus.SC_PRECONDITION_FAILED) {
+            throw new AzureRestPreconditionFailedException(
+                    "Blob '%s' in Azure container '%s' has been modified. Reason: '%s %d: %s'", blobName,
+                    containerName, response.getStatusLine().getProtocolVersion().getProtocol(), statusCode, response
+                            .getStatusLine().getReasonPhrase());
+        }
+        if (statusCode != HttpStatus.SC_PARTIAL_CONTENT && statusCode != HttpStatus.SC_OK) {
+            throw new AzureRestResponseHandlingException(statusCode,
+                    "Failed to get range of blob '%s' in Azure container '%s'. Reason: '%s %d: %s'", blobName,
+                    containerName, response.getStatusLine().getProtocolVersion().getProtocol(), statusCode, response
+                            .getStatusLine().getReasonPhrase());
+        }
+
+        try {
+            return new InputStreamBlob(blobName, response.getEntity().getContent());
+        } catch (IllegalStateException e) {
+            throw new AzureRestResponseHandlingException("Failed to get content", e);
+        } catch (IOException e) {
+            throw new AzureRestResponseHandlingException("Unexpected IO exception while creating blob", e);
+        }
+    }
+
+    private String getHeaderValue(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
     /**
      * @param response
      * @param containerName
@@ -158,7 +354,7 @@ public class DefaultRestResponseHandler implements RestResponseHandler {
             throws AzureRestResponseHandlingException, AzureRestResponseHandlingException {
 
         if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-            throw new AzureRestResponseHandlingException(
+            throw new AzureRestResponseHandlingException(response.getStatusLine().getStatusCode(),
                     "Failed to get list of blobs from Azure container '%s'. Reason: '%s %d: %s'", containerName,
                     response.getStatusLine().getProtocolVersion().getProtocol(), response.getStatusLine()
                             .getStatusCode(), response.getStatusLine().getReasonPhrase());
@@ -173,6 +369,33 @@ public class DefaultRestResponseHandler implements RestResponseHandler {
         }
     }
 
+    /**
+     * @param response
+     * @param containerName
+     * @return
+     * @throws AzureRestResponseHandlingException
+     * @see org.opencredo.cloud.storage.azure.rest.RestResponseHandler#handleListContainerObjectDetailsPageResponse(org.apache.http.HttpResponse,
+     *      java.lang.String)
+     */
+    public BlobDetailsPage handleListContainerObjectDetailsPageResponse(HttpResponse response, String containerName)
+            throws AzureRestResponseHandlingException {
+
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+            throw new AzureRestResponseHandlingException(response.getStatusLine().getStatusCode(),
+                    "Failed to get list of blobs from Azure container '%s'. Reason: '%s %d: %s'", containerName,
+                    response.getStatusLine().getProtocolVersion().getProtocol(), response.getStatusLine()
+                            .getStatusCode(), response.getStatusLine().getReasonPhrase());
+        }
+
+        try {
+            return containerObjectDetailsListFactory.createContainerObjectDetailsPage(containerName, response
+                    .getEntity());
+        } catch (AzureRestResponseHandlingException e) {
+            throw new AzureRestResponseHandlingException(
+                    "Failed to load blobs list from Azure container's '%s' response.", e);
+        }
+    }
+
     /**
      * @param response
      * @return
@@ -183,7 +406,8 @@ public class DefaultRestResponseHandler implements RestResponseHandler {
     public List<String> handleListContainerNamesResponse(HttpResponse response)
             throws AzureRestResponseHandlingException, AzureRestResponseHandlingException {
         if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-            throw new AzureRestResponseHandlingException("Failed to get Azure containers list. Reason: '%s %d: %s'",
+            throw new AzureRestResponseHandlingException(response.getStatusLine().getStatusCode(),
+                    "Failed to get Azure containers list. Reason: '%s %d: %s'",
                     response.getStatusLine().getProtocolVersion().getProtocol(), response.getStatusLine()
                             .getStatusCode(), response.getStatusLine().getReasonPhrase());
         }
@@ -214,9 +438,10 @@ public class DefaultRestResponseHandler implements RestResponseHandler {
             return ContainerStatus.DOES_NOT_EXIST;
         }
 
-        throw new AzureRestResponseHandlingException("Unexpected Azure containers '{}' status. Reason: '%s %d: %s'",
-                containerName, response.getStatusLine().getProtocolVersion().getProtocol(), response.getStatusLine()
-                        .getStatusCode(), response.getStatusLine().getReasonPhrase());
+        throw new AzureRestResponseHandlingException(response.getStatusLine().getStatusCode(),
+                "Unexpected Azure container '%s' status. Reason: '%s %d: %s'", containerName, response
+                        .getStatusLine().getProtocolVersion().getProtocol(), response.getStatusLine().getStatusCode(),
+                response.getStatusLine().getReasonPhrase());
     }
 
 }
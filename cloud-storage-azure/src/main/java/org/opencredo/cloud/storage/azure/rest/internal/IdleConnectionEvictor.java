@@ -0,0 +1,92 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.azure.rest.internal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.conn.ClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Daemon thread periodically closing expired and idle pooled connections, so
+ * connections dropped by the server side are not handed out to requests.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class IdleConnectionEvictor extends Thread {
+    private static final Logger LOG = LoggerFactory.getLogger(IdleConnectionEvictor.class);
+
+    private final ClientConnectionManager connectionManager;
+    private final long evictionInterval;
+    private final long idleConnectionTimeout;
+    private final AtomicLong evictionRuns = new AtomicLong();
+
+    private volatile boolean shutdown;
+
+    /**
+     * @param connectionManager
+     * @param evictionInterval      Interval in milliseconds between eviction runs.
+     * @param idleConnectionTimeout Time in milliseconds after which idle connection is closed.
+     */
+    public IdleConnectionEvictor(ClientConnectionManager connectionManager, long evictionInterval,
+                                 long idleConnectionTimeout) {
+        super("azure-idle-connection-evictor");
+        this.connectionManager = connectionManager;
+        this.evictionInterval = evictionInterval;
+        this.idleConnectionTimeout = idleConnectionTimeout;
+        setDaemon(true);
+    }
+
+    /**
+     * @see java.lang.Thread#run()
+     */
+    @Override
+    public void run() {
+        try {
+            while (!shutdown) {
+                synchronized (this) {
+                    wait(evictionInterval);
+                }
+                if (shutdown) {
+                    break;
+                }
+                connectionManager.closeExpiredConnections();
+                connectionManager.closeIdleConnections(idleConnectionTimeout, TimeUnit.MILLISECONDS);
+                evictionRuns.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            LOG.debug("Idle connection evictor interrupted");
+        }
+    }
+
+    /**
+     * Stops eviction thread.
+     */
+    public void shutdown() {
+        shutdown = true;
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return Number of completed eviction runs.
+     */
+    public long getEvictionRuns() {
+        return evictionRuns.get();
+    }
+}
@@ -14,7 +14,6 @@
  */
 package org.opencredo.cloud.storage.azure.rest.internal;
 
-import org.apache.commons.codec.binary.Base64;
 import org.apache.http.Header;
 import org.apache.http.HttpException;
 import org.apache.http.HttpRequest;
@@ -27,21 +26,16 @@ import org.opencredo.cloud.storage.azure.rest.RequestAuthorizationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
 
 /**
- * TODO Add comments.
+ * Adds mandatory 'x-ms-*' headers and SharedKey 'Authorization' header to
+ * every request. Signature-string is built in per-thread buffer and signed
+ * with {@link SharedKeySigner}, which keeps decoded key and initialised Mac
+ * between requests.
  *
  * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
  */
@@ -50,6 +44,10 @@ public class RequestAuthorizationInterceptor implements HttpRequestInterceptor {
 
     private static final String DEFAULT_STORAGE_VERSION = "2009-09-19";
 
+    private static final String X_MS_HEADER_PREFIX = "x-ms-";
+
+    private static final int SIGNATURE_STRING_INITIAL_CAPACITY = 512;
+
     private enum MandatoryHeader {
         X_MS_DATE("x-ms-date"), X_MS_VERSION("x-ms-version");
 
@@ -74,14 +72,25 @@ public class RequestAuthorizationInterceptor implements HttpRequestInterceptor {
 
     private final AzureCredentials credentials;
     private final HeadersComparator headersComparator;
+    private final SharedKeySigner signer;
+    private final String authorizationPrefix;
+
+    private final ThreadLocal<StringBuilder> signatureStringBuffers = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(SIGNATURE_STRING_INITIAL_CAPACITY);
+        }
+    };
 
     /**
-     *
+     * @param credentials
      */
     public RequestAuthorizationInterceptor(AzureCredentials credentials) {
         super();
         this.credentials = credentials;
-        headersComparator = new HeadersComparator();
+        this.headersComparator = new HeadersComparator();
+        this.signer = new SharedKeySigner(credentials.getSecretKey());
+        this.authorizationPrefix = "SharedKey " + credentials.getAccountName() + ":";
     }
 
     /**
@@ -99,54 +108,28 @@ public class RequestAuthorizationInterceptor implements HttpRequestInterceptor {
         String signatureString = constructSignatureString(req);
         LOG.trace("signatureString: '{}'", signatureString);
 
-        signatureString = createSignature(signatureString);
+        signatureString = signer.sign(signatureString);
         LOG.debug("signature: '{}'", signatureString);
 
         // Add authorization header
-        req.addHeader("Authorization", "SharedKey " + credentials.getAccountName() + ":" + signatureString);
+        req.addHeader("Authorization", authorizationPrefix + signatureString);
 
         if (LOG.isDebugEnabled()) {
             LOG.debug("Request: '\n{}\n{}'", req.getRequestLine(), getHeadersAsString(req));
         }
     }
 
-    /**
-     * @param signatureString
-     * @return
-     */
-    private String createSignature(String signatureString) throws RequestAuthorizationException {
-        String encoding = "UTF-8";
-        String encryptionAlgorithm = "HmacSHA256";
-        try {
-            Mac mac = Mac.getInstance(encryptionAlgorithm);
-            mac.init(new SecretKeySpec(Base64.decodeBase64(credentials.getSecretKey()), mac.getAlgorithm()));
-            byte[] dataToMAC = signatureString.getBytes(encoding);
-            mac.update(dataToMAC);
-            byte[] result = mac.doFinal();
-            return new String(Base64.encodeBase64(result));
-        } catch (InvalidKeyException e) {
-            throw new RequestAuthorizationException(
-                    "Provided secret key is inappropriate to encrypt signature-string.", e);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RequestAuthorizationException("No algorithm [" + encryptionAlgorithm
-                    + "] to encrypt signature-string.", e);
-        } catch (UnsupportedEncodingException e) {
-            throw new RequestAuthorizationException("Unable to convert signature-string to encoding - '" + encoding
-                    + "'.", e);
-        } catch (IllegalStateException e) {
-            throw new RequestAuthorizationException("Illegal signature-string encryption state.", e);
-        }
-    }
-
     /**
      * @param req
      * @return
      * @throws RequestAuthorizationException
      */
-    private String constructSignatureString(HttpRequest req) throws RequestAuthorizationException {
-        StringBuilder sb = new StringBuilder();
+    String constructSignatureString(HttpRequest req) throws RequestAuthorizationException {
+        StringBuilder sb = signatureStringBuffers.get();
+        sb.setLength(0);
+
         // VERB
-        sb.append(req.getRequestLine().getMethod().toUpperCase()).append("\n");
+        sb.append(req.getRequestLine().getMethod().toUpperCase()).append('\n');
 
         // Standard Headers String
         constructStandartHeaderString(req, sb);
@@ -177,10 +160,10 @@ public class RequestAuthorizationInterceptor implements HttpRequestInterceptor {
             }
 
             // If header specified and is not "Date" header
-            if (headers.length == 1 && i != 5) {
-                sb.append((headers[0].getValue() == null ? "" : headers[0].getValue()));
+            if (headers.length == 1 && i != 5 && headers[0].getValue() != null) {
+                sb.append(headers[0].getValue());
             }
-            sb.append("\n");
+            sb.append('\n');
         }
     }
 
@@ -190,26 +173,27 @@ public class RequestAuthorizationInterceptor implements HttpRequestInterceptor {
      */
     private void constructCanonicalizedHeadersString(HttpRequest req, StringBuilder sb) {
 
-        // Get all x-ms-... headers and sort them.
+        // Get all x-ms-... headers and sort them in place.
         Header[] allHeaders = req.getAllHeaders();
 
-        List<Header> list = new ArrayList<Header>(allHeaders.length);
-
         // FIXME: Need to ensure that headers does not repeat.
+        int count = 0;
         for (Header header : allHeaders) {
-            if (header.getName().startsWith("x-ms-")) {
-                list.add(header);
+            if (header.getName().startsWith(X_MS_HEADER_PREFIX)) {
+                allHeaders[count++] = header;
             }
         }
 
-        Collections.sort(list, headersComparator);
+        Arrays.sort(allHeaders, 0, count, headersComparator);
 
         // Append all x-ms-... headers to signatureString
         // FIXME: Unfold the string by replacing any breaking white space with a
         // single space.
-        for (Header header : list) {
-            sb.append(header.getName().toLowerCase()).append(":").append(header.getValue().trim());
-            sb.append("\n");
+        Header header;
+        for (int i = 0; i < count; i++) {
+            header = allHeaders[i];
+            sb.append(header.getName().toLowerCase()).append(':').append(header.getValue().trim());
+            sb.append('\n');
         }
     }
 
@@ -220,31 +204,76 @@ public class RequestAuthorizationInterceptor implements HttpRequestInterceptor {
      */
     private void constructCanonicalizedResourceString(HttpRequest req, StringBuilder sb)
             throws RequestAuthorizationException {
+        String requestUri = req.getRequestLine().getUri();
+
+        // Account name
+        sb.append('/').append(credentials.getAccountName());
+
+        if (requestUri.indexOf('%') != -1) {
+            // Escaped characters have to be decoded, leave it to URI.
+            appendDecodedResource(requestUri, sb);
+            return;
+        }
+
+        // Skip scheme and authority of absolute request URI.
+        int pathStart = 0;
+        int authorityStart = requestUri.indexOf("://");
+        if (authorityStart != -1) {
+            pathStart = requestUri.indexOf('/', authorityStart + 3);
+            if (pathStart == -1) {
+                pathStart = requestUri.length();
+            }
+        }
+
+        int pathEnd = requestUri.indexOf('#', pathStart);
+        if (pathEnd == -1) {
+            pathEnd = requestUri.length();
+        }
+        int queryStart = requestUri.indexOf('?', pathStart);
+        if (queryStart != -1 && queryStart < pathEnd) {
+            sb.append(requestUri, pathStart, queryStart);
+            appendQuery(requestUri.substring(queryStart + 1, pathEnd), sb);
+        } else {
+            sb.append(requestUri, pathStart, pathEnd);
+        }
+    }
+
+    /**
+     * @param requestUri
+     * @param sb         Signature string.
+     * @throws RequestAuthorizationException
+     */
+    private void appendDecodedResource(String requestUri, StringBuilder sb) throws RequestAuthorizationException {
         URI uri;
         try {
-            uri = new URI(req.getRequestLine().getUri());
+            uri = new URI(requestUri);
         } catch (URISyntaxException e) {
-            throw new RequestAuthorizationException("Failed to create uri from request line: "
-                    + req.getRequestLine().getUri(), e);
+            throw new RequestAuthorizationException("Failed to create uri from request line: " + requestUri, e);
         }
 
-        // Account name
-        sb.append("/").append(credentials.getAccountName());
-
         // URI path
         sb.append(uri.getPath());
 
-        // If query exists, all query params in alphabetical way.
         String queryStr = uri.getQuery();
         if (queryStr != null) {
-            List<String> queryItems = Arrays.asList(queryStr.split("&"));
-            Collections.sort(queryItems);
-            // FIXME: If in query two params are the same, their values should
-            // be separated by comma and appear in single line.
-            for (String query : queryItems) {
-                sb.append("\n");
-                sb.append(query.replace('=', ':'));
-            }
+            appendQuery(queryStr, sb);
+        }
+    }
+
+    /**
+     * Appends all query params in alphabetical way.
+     *
+     * @param queryStr
+     * @param sb       Signature string.
+     */
+    private void appendQuery(String queryStr, StringBuilder sb) {
+        String[] queryItems = queryStr.split("&");
+        Arrays.sort(queryItems);
+        // FIXME: If in query two params are the same, their values should
+        // be separated by comma and appear in single line.
+        for (String query : queryItems) {
+            sb.append('\n');
+            sb.append(query.replace('=', ':'));
         }
     }
 
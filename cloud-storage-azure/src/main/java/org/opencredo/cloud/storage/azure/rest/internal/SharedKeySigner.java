@@ -0,0 +1,94 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.azure.rest.internal;
+
+import java.nio.charset.Charset;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.binary.Base64;
+import org.opencredo.cloud.storage.azure.rest.RequestAuthorizationException;
+
+/**
+ * Signs Azure SharedKey signature-strings with HMAC-SHA256. Secret key is
+ * decoded once and every thread gets own initialised {@link Mac} instance, so
+ * signing a request does not pay for algorithm lookup and key set-up.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class SharedKeySigner {
+
+    public static final String ENCRYPTION_ALGORITHM = "HmacSHA256";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final SecretKeySpec key;
+
+    private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>();
+
+    /**
+     * @param base64SecretKey Base64 encoded storage account secret key.
+     */
+    public SharedKeySigner(String base64SecretKey) {
+        super();
+        this.key = new SecretKeySpec(Base64.decodeBase64(base64SecretKey), ENCRYPTION_ALGORITHM);
+    }
+
+    /**
+     * @param signatureString
+     * @return Base64 encoded signature.
+     * @throws RequestAuthorizationException
+     */
+    public String sign(String signatureString) throws RequestAuthorizationException {
+        Mac mac = getMac();
+        // doFinal resets Mac, so instance is ready for next signature.
+        byte[] result = mac.doFinal(signatureString.getBytes(UTF_8));
+        return new String(Base64.encodeBase64(result), UTF_8);
+    }
+
+    /**
+     * @return Initialised Mac bound to current thread.
+     * @throws RequestAuthorizationException
+     */
+    private Mac getMac() throws RequestAuthorizationException {
+        Mac mac = macs.get();
+        if (mac == null) {
+            mac = createMac();
+            macs.set(mac);
+        }
+        return mac;
+    }
+
+    /**
+     * @return
+     * @throws RequestAuthorizationException
+     */
+    private Mac createMac() throws RequestAuthorizationException {
+        try {
+            Mac mac = Mac.getInstance(ENCRYPTION_ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (InvalidKeyException e) {
+            throw new RequestAuthorizationException(
+                    "Provided secret key is inappropriate to encrypt signature-string.", e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RequestAuthorizationException("No algorithm [" + ENCRYPTION_ALGORITHM
+                    + "] to encrypt signature-string.", e);
+        }
+    }
+}
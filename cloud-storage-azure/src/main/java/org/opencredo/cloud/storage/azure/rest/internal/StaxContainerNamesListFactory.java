@@ -0,0 +1,102 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.azure.rest.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.http.HttpEntity;
+import org.opencredo.cloud.storage.azure.rest.AzureRestResponseHandlingException;
+import org.opencredo.cloud.storage.azure.rest.ContainerNamesListFactory;
+
+/**
+ * Container names factory reading response with StAX.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ * 
+ */
+public class StaxContainerNamesListFactory implements ContainerNamesListFactory {
+
+    // Depths of elements in /EnumerationResults/Containers/Container/Name
+    private static final int CONTAINER_DEPTH = 3;
+    private static final int NAME_DEPTH = 4;
+
+    private final XMLInputFactory inputFactory;
+
+    /**
+     * 
+     */
+    public StaxContainerNamesListFactory() {
+        super();
+        this.inputFactory = StaxUtils.createInputFactory();
+    }
+
+    /**
+     * @param entity
+     * @return
+     * @throws AzureRestResponseHandlingException
+     * @see org.opencredo.cloud.storage.azure.rest.ContainerNamesListFactory#createContainerNamesList(org.apache.http.HttpEntity)
+     */
+    public List<String> createContainerNamesList(HttpEntity entity) throws AzureRestResponseHandlingException {
+        XMLStreamReader reader = null;
+        try {
+            reader = inputFactory.createXMLStreamReader(entity.getContent());
+
+            List<String> containerNames = new ArrayList<String>();
+
+            int depth = 0;
+            boolean inContainer = false;
+            String localName;
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        depth++;
+                        localName = reader.getLocalName();
+                        if (depth == CONTAINER_DEPTH && "Container".equals(localName)) {
+                            inContainer = true;
+                        } else if (inContainer && depth == NAME_DEPTH && "Name".equals(localName)) {
+                            containerNames.add(reader.getElementText());
+                            depth--;
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (depth == CONTAINER_DEPTH) {
+                            inContainer = false;
+                        }
+                        depth--;
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            return containerNames;
+        } catch (XMLStreamException e) {
+            throw new AzureRestResponseHandlingException("Failed to parse", e);
+        } catch (IllegalStateException e) {
+            throw new AzureRestResponseHandlingException("Failed to get content", e);
+        } catch (IOException e) {
+            throw new AzureRestResponseHandlingException("Unexpected IO exception while creating container list", e);
+        } finally {
+            StaxUtils.closeQuietly(reader);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.azure.rest.internal;
+
+import org.apache.http.HttpEntity;
+import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.BlobDetailsPage;
+import org.opencredo.cloud.storage.azure.rest.AzureRestResponseHandlingException;
+import org.opencredo.cloud.storage.azure.rest.AzureRestServiceUtil;
+import org.opencredo.cloud.storage.azure.rest.ContainerObjectDetailsListFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Container object details factory reading response with StAX. Blob details
+ * are created while response is streamed, no document tree is built.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class StaxContainerObjectDetailsListFactory implements ContainerObjectDetailsListFactory {
+    private static final Logger LOG = LoggerFactory.getLogger(StaxContainerObjectDetailsListFactory.class);
+
+    // Depths of elements in /EnumerationResults/Blobs/Blob/Properties/...
+    private static final int RESULTS_CHILD_DEPTH = 2;
+    private static final int BLOB_DEPTH = 3;
+    private static final int BLOB_CHILD_DEPTH = 4;
+    private static final int PROPERTY_DEPTH = 5;
+
+    private final XMLInputFactory inputFactory;
+
+    /**
+     *
+     */
+    public StaxContainerObjectDetailsListFactory() {
+        super();
+        this.inputFactory = StaxUtils.createInputFactory();
+    }
+
+    /**
+     * @param containerName
+     * @param entity
+     * @return
+     * @throws AzureRestResponseHandlingException
+     *
+     * @see org.opencredo.cloud.storage.azure.rest.ContainerObjectDetailsListFactory#createContainerObjectDetailsList(java.lang.String,
+     *      org.apache.http.HttpEntity)
+     */
+    public List<BlobDetails> createContainerObjectDetailsList(final String containerName, HttpEntity entity)
+            throws AzureRestResponseHandlingException {
+        return createContainerObjectDetailsPage(containerName, entity).getBlobDetails();
+    }
+
+    /**
+     * @param containerName
+     * @param entity
+     * @return
+     * @throws AzureRestResponseHandlingException
+     *
+     * @see org.opencredo.cloud.storage.azure.rest.ContainerObjectDetailsListFactory#createContainerObjectDetailsPage(java.lang.String,
+     *      org.apache.http.HttpEntity)
+     */
+    public BlobDetailsPage createContainerObjectDetailsPage(final String containerName, HttpEntity entity)
+            throws AzureRestResponseHandlingException {
+        XMLStreamReader reader = null;
+        try {
+            reader = inputFactory.createXMLStreamReader(entity.getContent());
+
+            List<BlobDetails> blobDetails = new ArrayList<BlobDetails>();
+            List<String> blobPrefixes = new ArrayList<String>();
+            String nextMarker = null;
+
+            int depth = 0;
+            boolean inBlob = false;
+            boolean inBlobPrefix = false;
+            boolean inProperties = false;
+            String localName;
+            String name = null;
+            String eTag = null;
+            String dateStr = null;
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        depth++;
+                        localName = reader.getLocalName();
+                        if (depth == RESULTS_CHILD_DEPTH && "NextMarker".equals(localName)) {
+                            nextMarker = reader.getElementText();
+                            depth--;
+                        } else if (depth == BLOB_DEPTH && "Blob".equals(localName)) {
+                            inBlob = true;
+                            name = null;
+                            eTag = null;
+                            dateStr = null;
+                        } else if (depth == BLOB_DEPTH && "BlobPrefix".equals(localName)) {
+                            inBlobPrefix = true;
+                        } else if (inBlobPrefix && depth == BLOB_CHILD_DEPTH && "Name".equals(localName)) {
+                            blobPrefixes.add(reader.getElementText());
+                            depth--;
+                        } else if (inBlob && depth == BLOB_CHILD_DEPTH && "Name".equals(localName)) {
+                            name = reader.getElementText();
+                            depth--;
+                        } else if (inBlob && depth == BLOB_CHILD_DEPTH && "Properties".equals(localName)) {
+                            inProperties = true;
+                        } else if (inProperties && depth == PROPERTY_DEPTH && "Etag".equals(localName)) {
+                            eTag = reader.getElementText();
+                            depth--;
+                        } else if (inProperties && depth == PROPERTY_DEPTH && "Last-Modified".equals(localName)) {
+                            dateStr = reader.getElementText();
+                            depth--;
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (inProperties && depth == BLOB_CHILD_DEPTH) {
+                            inProperties = false;
+                        } else if (inBlob && depth == BLOB_DEPTH) {
+                            inBlob = false;
+                            blobDetails.add(createBlobDetails(containerName, name, eTag, dateStr));
+                        } else if (inBlobPrefix && depth == BLOB_DEPTH) {
+                            inBlobPrefix = false;
+                        }
+                        depth--;
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            return new BlobDetailsPage(blobDetails, blobPrefixes, nextMarker);
+        } catch (XMLStreamException e) {            throw new AzureRestResponseHandlingException("Failed to parse", e);
+        } catch (IllegalStateException e) {
+            throw new AzureRestResponseHandlingException("Failed to get content", e);
+        } catch (IOException e) {
+            throw new AzureRestResponseHandlingException("Unexpected IO exception while creating container object list", e);
+        } catch (ParseException e) {
+            throw new AzureRestResponseHandlingException("Failed to parse Last-Modified date", e);
+        } finally {
+            StaxUtils.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * @param containerName
+     * @param name
+     * @param eTag
+     * @param dateStr
+     * @return
+     * @throws ParseException
+     */
+    private BlobDetails createBlobDetails(String containerName, String name, String eTag, String dateStr)
+            throws ParseException {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Create blob with - conatiner-name: '{}', name: '{}', eTag: '{}', last-modified: '{}'",
+                    new Object[]{containerName, name, eTag, dateStr});
+        }
+
+        Date date = dateStr == null ? null : AzureRestServiceUtil.parseRFC1123TimeString(dateStr);
+        return new BlobDetails(containerName, name, eTag, date);
+    }
+}
@@ -16,6 +16,7 @@ package org.opencredo.cloud.storage.azure.rest.internal;
 
 import org.apache.http.HttpEntity;
 import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.BlobDetailsPage;
 import org.opencredo.cloud.storage.azure.rest.AzureRestResponseHandlingException;
 import org.opencredo.cloud.storage.azure.rest.AzureRestServiceUtil;
 import org.opencredo.cloud.storage.azure.rest.ContainerObjectDetailsListFactory;
@@ -62,19 +63,43 @@ public class XPathContainerObjectDetailsListFactory implements ContainerObjectDe
      *
      * @see org.opencredo.cloud.storage.azure.rest.ContainerObjectDetailsListFactory#createContainerObjectsList(org.apache.http.HttpEntity)
      */
-    @SuppressWarnings("unchecked")
     public List<BlobDetails> createContainerObjectDetailsList(final String containerName, HttpEntity entity)
             throws AzureRestResponseHandlingException {
+        return createContainerObjectDetailsPage(containerName, entity).getBlobDetails();
+    }
+
+    /**
+     * @param containerName
+     * @param entity
+     * @return
+     * @throws AzureRestResponseHandlingException
+     *
+     * @see org.opencredo.cloud.storage.azure.rest.ContainerObjectDetailsListFactory#createContainerObjectDetailsPage(java.lang.String,
+     *      org.apache.http.HttpEntity)
+     */
+    @SuppressWarnings("unchecked")
+    public BlobDetailsPage createContainerObjectDetailsPage(final String containerName, HttpEntity entity)
+            throws AzureRestResponseHandlingException {
         DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
         try {
             DocumentBuilder builder = factory.newDocumentBuilder();
             Document doc = builder.parse(entity.getContent());
 
-            List<Node> nodeList = xpathOperations.evaluateAsNodeList("/EnumerationResults/Blobs/Blob", new DOMSource(
-                    doc));
+            DOMSource docSource = new DOMSource(doc);
+            List<Node> nodeList = xpathOperations.evaluateAsNodeList("/EnumerationResults/Blobs/Blob", docSource);
+            String nextMarker = xpathOperations.evaluateAsString("/EnumerationResults/NextMarker/text()", docSource);
+
+            List<String> blobPrefixes = new ArrayList<String>();
+            List<Node> prefixNodeList = xpathOperations.evaluateAsNodeList(
+                    "/EnumerationResults/Blobs/BlobPrefix/Name/text()", docSource);
+            if (prefixNodeList != null) {
+                for (Node node : prefixNodeList) {
+                    blobPrefixes.add(node.getNodeValue());
+                }
+            }
 
             if (nodeList == null) {
-                return new ArrayList<BlobDetails>(0);
+                return new BlobDetailsPage(new ArrayList<BlobDetails>(0), blobPrefixes, nextMarker);
             }
 
             ArrayList<BlobDetails> containerNames = new ArrayList<BlobDetails>(nodeList.size());
@@ -99,7 +124,7 @@ public class XPathContainerObjectDetailsListFactory implements ContainerObjectDe
                 containerNames.add(new BlobDetails(containerName, name, eTag, date));
             }
 
-            return containerNames;
+            return new BlobDetailsPage(containerNames, blobPrefixes, nextMarker);
         } catch (XPathException e) {
             throw new AzureRestResponseHandlingException("Failed to evaluate XPath expression", e);
         } catch (IllegalStateException e) {
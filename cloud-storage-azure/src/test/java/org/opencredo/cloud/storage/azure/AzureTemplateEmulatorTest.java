@@ -0,0 +1,295 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.azure;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencredo.cloud.storage.BatchResult;
+import org.opencredo.cloud.storage.BlobConditions;
+import org.opencredo.cloud.storage.BlobContent;
+import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.BlobDetailsPage;
+import org.opencredo.cloud.storage.BlobListOptions;
+import org.opencredo.cloud.storage.ContainerStatus;
+import org.opencredo.cloud.storage.MultipartDownloadSettings;
+import org.opencredo.cloud.storage.MultipartUploadSettings;
+import org.opencredo.cloud.storage.StorageCommunicationException;
+import org.opencredo.cloud.storage.StorageObjectModifiedException;
+import org.opencredo.cloud.storage.azure.rest.HttpConnectionPoolSettings;
+import org.opencredo.cloud.storage.test.azure.AzureBlobEmulator;
+
+/**
+ * Azure template tests running against embedded Azure Blob service emulator,
+ * so they do not require Azure account.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class AzureTemplateEmulatorTest {
+
+    private static final String CONTAINER_NAME = "emulator-test";
+
+    private AzureBlobEmulator emulator;
+
+    private AzureTemplate template;
+
+    private File tempDir;
+
+    @Before
+    public void setUp() throws IOException {
+        emulator = new AzureBlobEmulator();
+        emulator.start();
+        template = createTemplate(AzureBlobEmulator.DEFAULT_SECRET_KEY);
+        template.createContainer(CONTAINER_NAME);
+
+        tempDir = new File(System.getProperty("java.io.tmpdir"), "azure-emulator-test-" + System.nanoTime());
+        assertTrue(tempDir.mkdirs());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        template.destroy();
+        emulator.stop();
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    @Test
+    public void testContainerLifecycle() {
+        assertTrue(template.createContainer("second"));
+        assertEquals(ContainerStatus.MINE, template.checkContainerStatus("second"));
+        assertEquals(2, template.listContainerNames().size());
+
+        template.deleteContainer("second");
+        assertEquals(ContainerStatus.DOES_NOT_EXIST, template.checkContainerStatus("second"));
+        assertEquals(1, emulator.getOperationCount("DeleteContainer"));
+    }
+
+    @Test
+    public void testSendReceiveAndDelete() {
+        template.send(CONTAINER_NAME, "a/b.txt", "content");
+        assertEquals("content", template.receiveAsString(CONTAINER_NAME, "a/b.txt"));
+
+        BlobContent content = template.receiveIfNoneMatch(CONTAINER_NAME, "a/b.txt", null);
+        assertNotNull(content);
+        String eTag = content.getDetails().getETag();
+        IOUtils.closeQuietly(content.getData());
+        assertNull(template.receiveIfNoneMatch(CONTAINER_NAME, "a/b.txt", eTag));
+
+        template.deleteObject(CONTAINER_NAME, "a/b.txt");
+        assertTrue(template.listContainerObjectDetails(CONTAINER_NAME).isEmpty());
+    }
+
+    @Test
+    public void testListingPagesAndPrefixes() {
+        for (int i = 0; i < 5; i++) {
+            template.send(CONTAINER_NAME, "dir/blob" + i, "data" + i);
+        }
+        template.send(CONTAINER_NAME, "dir/sub/blob", "data");
+        template.send(CONTAINER_NAME, "root", "data");
+
+        BlobListOptions options = new BlobListOptions();
+        options.setPrefix("dir/");
+        options.setDelimiter("/");
+        options.setPageSize(2);
+
+        List<String> names = new ArrayList<String>();
+        List<String> prefixes = new ArrayList<String>();
+        String marker = null;
+        do {
+            BlobDetailsPage page = template.listContainerObjectDetailsPage(CONTAINER_NAME, options, marker);
+            for (BlobDetails details : page.getBlobDetails()) {
+                names.add(details.getName());
+            }
+            prefixes.addAll(page.getCommonPrefixes());
+            marker = page.getNextMarker();
+        } while (marker != null);
+
+        assertEquals(5, names.size());
+        assertEquals("dir/blob0", names.get(0));
+        assertEquals(1, prefixes.size());
+        assertEquals("dir/sub/", prefixes.get(0));
+        assertEquals(7, template.listContainerObjectDetails(CONTAINER_NAME).size());
+    }
+
+    @Test
+    public void testMultipartUploadAndDownload() throws IOException {
+        byte[] data = new byte[300 * 1024];
+        new Random(1).nextBytes(data);
+        File source = new File(tempDir, "source");
+        FileUtils.writeByteArrayToFile(source, data);
+
+        MultipartUploadSettings uploadSettings = new MultipartUploadSettings();
+        uploadSettings.setPartSize(64 * 1024);
+        uploadSettings.setMultipartThreshold(128 * 1024);
+        template.sendInParts(CONTAINER_NAME, "large", source, uploadSettings);
+        assertEquals(5, emulator.getOperationCount("PutBlock"));
+        assertArrayEquals(data, emulator.getBlobData(CONTAINER_NAME, "large"));
+
+        MultipartDownloadSettings downloadSettings = new MultipartDownloadSettings();
+        downloadSettings.setRangeSize(100 * 1024);
+        downloadSettings.setMultipartThreshold(128 * 1024);
+        File target = new File(tempDir, "target");
+        template.receiveInParts(CONTAINER_NAME, "large", target, downloadSettings);
+        assertEquals(3, emulator.getOperationCount("GetBlob"));
+        assertArrayEquals(data, FileUtils.readFileToByteArray(target));
+    }
+
+    @Test
+    public void testStreamingUpload() throws IOException {
+        byte[] data = new byte[300 * 1024];
+        new Random(2).nextBytes(data);
+
+        MultipartUploadSettings uploadSettings = new MultipartUploadSettings();
+        uploadSettings.setPartSize(64 * 1024);
+        uploadSettings.setParallelism(2);
+        template.setStreamingUploadSettings(uploadSettings);
+
+        OutputStream os = template.openForWrite(CONTAINER_NAME, "streamed");
+        for (int offset = 0; offset < data.length; offset += 1000) {
+            os.write(data, offset, Math.min(1000, data.length - offset));
+        }
+        os.close();
+        assertEquals(5, emulator.getOperationCount("PutBlock"));
+        assertEquals(1, emulator.getOperationCount("PutBlockList"));
+        assertArrayEquals(data, emulator.getBlobData(CONTAINER_NAME, "streamed"));
+
+        template.send(CONTAINER_NAME, "small", new ByteArrayInputStream("small content".getBytes()));
+        assertEquals(1, emulator.getOperationCount("PutBlob"));
+        assertEquals(5, emulator.getOperationCount("PutBlock"));
+        assertEquals("small content", template.receiveAsString(CONTAINER_NAME, "small"));
+    }
+
+    @Test
+    public void testContainerStatusUsesSingleRequest() {
+        assertEquals(ContainerStatus.MINE, template.checkContainerStatus(CONTAINER_NAME));
+        assertEquals(ContainerStatus.DOES_NOT_EXIST, template.checkContainerStatus("missing"));
+        assertEquals(2, emulator.getOperationCount("GetContainerProperties"));
+        assertEquals(0, emulator.getOperationCount("ListBlobs"));
+    }
+
+    @Test
+    public void testConditionalOperations() throws IOException {
+        assertNull(template.getBlobDetails(CONTAINER_NAME, "conditional"));
+
+        BlobConditions createOnly = new BlobConditions();
+        createOnly.setIfNoneMatch(BlobConditions.ANY_ETAG);
+        template.send(CONTAINER_NAME, "conditional", "v1", createOnly);
+        try {
+            template.send(CONTAINER_NAME, "conditional", "v2", createOnly);
+            fail("Existing blob should not be overwritten");
+        } catch (StorageObjectModifiedException e) {
+            // expected
+        }
+
+        BlobDetails details = template.getBlobDetails(CONTAINER_NAME, "conditional");
+        assertNotNull(details);
+        assertEquals(2, details.getContentLength());
+        assertEquals(2, emulator.getOperationCount("GetBlobProperties"));
+
+        BlobConditions notModified = new BlobConditions();
+        notModified.setIfNoneMatch(details.getETag());
+        assertNull(template.receive(CONTAINER_NAME, "conditional", notModified));
+
+        BlobConditions matching = new BlobConditions();
+        matching.setIfMatch(details.getETag());
+        BlobContent content = template.receive(CONTAINER_NAME, "conditional", matching);
+        assertEquals("v1", IOUtils.toString(content.getData()));
+        IOUtils.closeQuietly(content.getData());
+
+        template.send(CONTAINER_NAME, "conditional", "v2", matching);
+        try {
+            template.deleteObject(CONTAINER_NAME, "conditional", matching);
+            fail("Blob modified after ETag was received should not be deleted");
+        } catch (StorageObjectModifiedException e) {
+            // expected
+        }
+
+        matching.setIfMatch(template.getBlobDetails(CONTAINER_NAME, "conditional").getETag());
+        template.deleteObject(CONTAINER_NAME, "conditional", matching);
+        assertNull(template.getBlobDetails(CONTAINER_NAME, "conditional"));
+    }
+
+    @Test
+    public void testServerSideCopyAndMove() {
+        template.createContainer("archive");
+        template.send(CONTAINER_NAME, "in/a", "a");
+        template.send(CONTAINER_NAME, "in/b", "b");
+        template.send(CONTAINER_NAME, "other", "other");
+
+        template.copy(CONTAINER_NAME, "other", CONTAINER_NAME, "other-copy");
+        assertEquals("other", template.receiveAsString(CONTAINER_NAME, "other-copy"));
+
+        template.move(CONTAINER_NAME, "other", "archive", "moved");
+        assertNull(template.getBlobDetails(CONTAINER_NAME, "other"));
+        assertEquals("other", template.receiveAsString("archive", "moved"));
+
+        BatchResult<String> result = template.copyAll(CONTAINER_NAME, "in/", "archive", "2010/", 2);
+        assertTrue(result.isSuccessful());
+        assertEquals(2, result.getResults().size());
+        assertEquals("2010/a", result.getResults().get("in/a"));
+        assertArrayEquals("b".getBytes(), emulator.getBlobData("archive", "2010/b"));
+
+        assertEquals(4, emulator.getOperationCount("CopyBlob"));
+        assertEquals(2, emulator.getOperationCount("GetBlob"));
+    }
+
+    @Test
+    public void testInvalidSignatureIsRejected() {
+        AzureTemplate invalid = createTemplate("aW52YWxpZCBrZXk=");
+        try {
+            invalid.listContainerNames();
+            fail("Request signed with invalid key should be rejected");
+        } catch (StorageCommunicationException e) {
+            assertEquals(403, e.getStatusCode());
+        } finally {
+            invalid.destroy();
+        }
+    }
+
+    @Test
+    public void testInjectedFailures() {
+        emulator.failNextRequests(1);
+        try {
+            template.send(CONTAINER_NAME, "blob", "data");
+            fail("Injected failure expected");
+        } catch (StorageCommunicationException e) {
+            assertEquals(503, e.getStatusCode());
+        }
+        assertEquals(1, emulator.getInjectedFailureCount());
+        assertTrue(template.listContainerObjectDetails(CONTAINER_NAME).isEmpty());
+    }
+
+    private AzureTemplate createTemplate(String secretKey) {
+        return new AzureTemplate(new AzureCredentials(emulator.getAccountName(), secretKey), CONTAINER_NAME,
+                new HttpConnectionPoolSettings(), emulator.getBlobUrlFormat());
+    }
+}
@@ -0,0 +1,75 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.azure.model;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencredo.cloud.storage.FilePart;
+
+/**
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ * 
+ */
+public class FilePartBlobTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("file-part-blob", ".txt");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write("0123456789".getBytes());
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testRequestBodyContainsPartBytesOnly() throws Exception {
+        List<FilePart> parts = FilePart.split(file, 4);
+        assertEquals(3, parts.size());
+
+        HttpEntity entity = new FilePartBlob("blob", parts.get(1)).createRequestBody();
+        assertTrue(entity.isRepeatable());
+        assertEquals(4, entity.getContentLength());
+
+        // Body can be written again when failed block upload is repeated.
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            entity.writeTo(out);
+            assertEquals("4567", out.toString());
+        }
+
+        HttpEntity last = new FilePartBlob("blob", parts.get(2)).createRequestBody();
+        assertEquals(2, last.getContentLength());
+        assertEquals("89", IOUtils.toString(last.getContent()));
+    }
+}
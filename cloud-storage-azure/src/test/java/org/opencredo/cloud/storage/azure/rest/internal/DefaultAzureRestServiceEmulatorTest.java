@@ -0,0 +1,126 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.azure.rest.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.apache.http.HttpResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencredo.cloud.storage.BlobConditions;
+import org.opencredo.cloud.storage.BlobContent;
+import org.opencredo.cloud.storage.azure.AzureCredentials;
+import org.opencredo.cloud.storage.azure.model.InputStreamBlob;
+import org.opencredo.cloud.storage.azure.model.StringBlob;
+import org.opencredo.cloud.storage.azure.rest.HttpConnectionPoolSettings;
+import org.opencredo.cloud.storage.test.azure.AzureBlobEmulator;
+
+/**
+ * Azure REST service tests running against embedded Azure Blob service
+ * emulator.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class DefaultAzureRestServiceEmulatorTest {
+
+    private static final String CONTAINER_NAME = "emulator-test";
+
+    private static final int MAX_CONNECTIONS = 2;
+
+    private AzureBlobEmulator emulator;
+
+    private DefaultAzureRestService service;
+
+    @Before
+    public void setUp() throws Exception {
+        emulator = new AzureBlobEmulator();
+        emulator.start();
+
+        HttpConnectionPoolSettings poolSettings = new HttpConnectionPoolSettings();
+        poolSettings.setMaxTotalConnections(MAX_CONNECTIONS);
+        poolSettings.setMaxConnectionsPerRoute(MAX_CONNECTIONS);
+        poolSettings.setConnectionPoolTimeout(1000);
+        service = new DefaultAzureRestService(new AzureCredentials(emulator.getAccountName(),
+                AzureBlobEmulator.DEFAULT_SECRET_KEY), new FailingGetResponseHandler(), poolSettings, emulator
+                .getBlobUrlFormat());
+
+        service.createContainer(CONTAINER_NAME);
+        service.putObject(CONTAINER_NAME, new StringBlob("blob", "content"));
+    }
+
+    @After
+    public void tearDown() {
+        service.shutdown();
+        emulator.stop();
+    }
+
+    @Test
+    public void testConnectionReleasedWhenGetResponseHandlingFails() throws Exception {
+        int requests = 3 * MAX_CONNECTIONS;
+        for (int i = 0; i < requests; i++) {
+            try {
+                service.getObject(CONTAINER_NAME, "blob");
+                fail("Handler failure expected");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+            try {
+                service.getObject(CONTAINER_NAME, "blob", new BlobConditions());
+                fail("Handler failure expected");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+            try {
+                service.getObjectRange(CONTAINER_NAME, "blob", 0, 3, null);
+                fail("Handler failure expected");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+
+        // Leaked connections would make pool time out here
+        assertEquals(7, service.getObjectDetails(CONTAINER_NAME, "blob").getContentLength());
+        assertEquals(3 * requests, emulator.getOperationCount("GetBlob"));
+    }
+
+    /**
+     * Handler failing with unexpected exception after blob data was received.
+     */
+    private static class FailingGetResponseHandler extends DefaultRestResponseHandler {
+
+        FailingGetResponseHandler() {
+            super(new StaxContainerNamesListFactory(), new StaxContainerObjectDetailsListFactory());
+        }
+
+        @Override
+        public InputStreamBlob handleGetObjectResponse(HttpResponse response, String containerName, String blobName) {
+            throw new IllegalStateException("Unexpected handler failure");
+        }
+
+        @Override
+        public BlobContent handleGetObjectIfNoneMatchResponse(HttpResponse response, String containerName,
+                String blobName) {
+            throw new IllegalStateException("Unexpected handler failure");
+        }
+
+        @Override
+        public InputStreamBlob handleGetObjectRangeResponse(HttpResponse response, String containerName,
+                String blobName) {
+            throw new IllegalStateException("Unexpected handler failure");
+        }
+    }
+}
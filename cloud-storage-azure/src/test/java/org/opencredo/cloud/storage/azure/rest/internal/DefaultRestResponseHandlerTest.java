@@ -0,0 +1,128 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.azure.rest.internal;
+
+import static org.junit.Assert.*;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencredo.cloud.storage.BlobContent;
+import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.azure.rest.AzureRestPreconditionFailedException;
+import org.opencredo.cloud.storage.azure.rest.AzureRestResponseHandlingException;
+
+/**
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ * 
+ */
+public class DefaultRestResponseHandlerTest {
+
+    private DefaultRestResponseHandler handler;
+
+    @Before
+    public void setUp() {
+        handler = new DefaultRestResponseHandler(new StaxContainerNamesListFactory(),
+                new StaxContainerObjectDetailsListFactory());
+    }
+
+    @Test
+    public void testHandleGetObjectDetailsResponse() throws Exception {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+        response.addHeader("ETag", "0x8CB171BA9E94B0B");
+        response.addHeader("Content-Length", "12345");
+        response.addHeader("Last-Modified", "Sun, 11 Oct 2009 21:49:13 GMT");
+
+        BlobDetails details = handler.handleGetObjectDetailsResponse(response, "container", "blob");
+
+        assertEquals("container", details.getContainerName());
+        assertEquals("blob", details.getName());
+        assertEquals("0x8CB171BA9E94B0B", details.getETag());
+        assertEquals(12345, details.getContentLength());
+        assertNotNull(details.getLastModified());
+    }
+
+    @Test
+    public void testHandleGetObjectRangeResponse() throws Exception {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_PARTIAL_CONTENT,
+                "Partial Content");
+        response.setEntity(new StringEntity("range"));
+
+        assertEquals("range", IOUtils.toString(handler.handleGetObjectRangeResponse(response, "container", "blob")
+                .getData()));
+    }
+
+    @Test
+    public void testHandleGetObjectIfNoneMatchResponse() throws Exception {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+        response.addHeader("ETag", "0x8CB171BA9E94B0B");
+        response.addHeader("Content-Length", "4");
+        response.setEntity(new StringEntity("blob"));
+
+        BlobContent content = handler.handleGetObjectIfNoneMatchResponse(response, "container", "blob");
+
+        assertEquals("0x8CB171BA9E94B0B", content.getDetails().getETag());
+        assertEquals(4, content.getDetails().getContentLength());
+        assertEquals("blob", IOUtils.toString(content.getData()));
+    }
+
+    @Test
+    public void testHandleGetObjectIfNoneMatchResponseWhenBlobNotModified() throws Exception {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_NOT_MODIFIED,
+                "Not Modified");
+
+        assertNull(handler.handleGetObjectIfNoneMatchResponse(response, "container", "blob"));
+    }
+
+    @Test(expected = AzureRestPreconditionFailedException.class)
+    public void testHandleGetObjectRangeResponseWhenBlobModified() throws Exception {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_PRECONDITION_FAILED,
+                "Precondition Failed");
+
+        handler.handleGetObjectRangeResponse(response, "container", "blob");
+    }
+
+    @Test
+    public void testHandleDeleteObjectResponseWhenServerBusy() throws Exception {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_SERVICE_UNAVAILABLE,
+                "Server Busy");
+
+        try {
+            handler.handleDeleteObjectResponse(response, "container", "blob");
+            fail("Response handling exception expected");
+        } catch (AzureRestResponseHandlingException e) {
+            assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testHandleCheckContainerStatusWhenServerBusy() throws Exception {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_SERVICE_UNAVAILABLE,
+                "Server Busy");
+
+        try {
+            handler.handleCheckContainerStatus(response, "container");
+            fail("Response handling exception expected");
+        } catch (AzureRestResponseHandlingException e) {
+            assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, e.getStatusCode());
+            assertTrue(e.getMessage().contains("'container'"));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.azure.rest.internal;
+
+import static org.junit.Assert.*;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.http.HttpRequest;
+import org.apache.http.message.BasicHttpRequest;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencredo.cloud.storage.azure.AzureCredentials;
+
+/**
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ * 
+ */
+public class RequestAuthorizationInterceptorTest {
+
+    private static final String SECRET_KEY = new String(Base64.encodeBase64("test-secret-key".getBytes()));
+
+    private RequestAuthorizationInterceptor interceptor;
+
+    @Before
+    public void setUp() {
+        interceptor = new RequestAuthorizationInterceptor(new AzureCredentials("account", SECRET_KEY));
+    }
+
+    @Test
+    public void testConstructSignatureString() throws Exception {
+        HttpRequest req = new BasicHttpRequest("put", "http://account.blob.core.windows.net/container/blob?restype=container&comp=list");
+        req.addHeader("Content-Type", "text/plain");
+        req.addHeader("x-ms-version", "2009-09-19");
+        req.addHeader("x-ms-date", "Sun, 11 Oct 2009 21:49:13 GMT");
+
+        String expected = "PUT\n\n\n\n\ntext/plain\n\n\n\n\n\n\n" //
+                + "x-ms-date:Sun, 11 Oct 2009 21:49:13 GMT\n" //
+                + "x-ms-version:2009-09-19\n" //
+                + "/account/container/blob\ncomp:list\nrestype:container";
+        assertEquals(expected, interceptor.constructSignatureString(req));
+
+        // Per-thread buffer is reused, result must be the same.
+        assertEquals(expected, interceptor.constructSignatureString(req));
+    }
+
+    @Test
+    public void testConstructSignatureStringWithEscapedPath() throws Exception {
+        HttpRequest req = new BasicHttpRequest("GET", "/container/my%20blob");
+        assertTrue(interceptor.constructSignatureString(req).endsWith("\n/account/container/my blob"));
+    }
+
+    @Test
+    public void testSign() throws Exception {
+        Mac mac = Mac.getInstance(SharedKeySigner.ENCRYPTION_ALGORITHM);
+        mac.init(new SecretKeySpec(Base64.decodeBase64(SECRET_KEY), SharedKeySigner.ENCRYPTION_ALGORITHM));
+        String expected = new String(Base64.encodeBase64(mac.doFinal("signature-string".getBytes("UTF-8"))));
+
+        SharedKeySigner signer = new SharedKeySigner(SECRET_KEY);
+        assertEquals(expected, signer.sign("signature-string"));
+        // Mac instance is reused for subsequent signatures.
+        assertEquals(expected, signer.sign("signature-string"));
+    }
+}
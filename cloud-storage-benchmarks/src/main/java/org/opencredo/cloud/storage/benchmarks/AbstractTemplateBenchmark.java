@@ -0,0 +1,116 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.opencredo.cloud.storage.StorageOperations;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * End-to-end send and receive through template against local emulator of
+ * cloud storage. Subclasses create template and start or stop emulator.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public abstract class AbstractTemplateBenchmark {
+
+    protected static final String CONTAINER_NAME = "benchmark-container";
+
+    protected static final String OBJECT_NAME = "benchmark-object";
+
+    @Param({"1024", "1048576"})
+    private int payloadSize;
+
+    private StorageOperations template;
+
+    private File fileToSend;
+
+    private byte[] buffer;
+
+    @Setup
+    public void setUp() throws Exception {
+        template = createTemplate();
+        template.createContainer(CONTAINER_NAME);
+
+        fileToSend = File.createTempFile("template-benchmark", ".bin");
+        writeRandomFile(fileToSend, payloadSize);
+        template.send(CONTAINER_NAME, OBJECT_NAME, fileToSend);
+        buffer = new byte[64 * 1024];
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        try {
+            template.deleteObject(CONTAINER_NAME, OBJECT_NAME);
+            destroyTemplate(template);
+        } finally {
+            FileUtils.deleteQuietly(fileToSend);
+        }
+    }
+
+    @Benchmark
+    public String send() {
+        return template.send(CONTAINER_NAME, OBJECT_NAME, fileToSend);
+    }
+
+    @Benchmark
+    public long receive() throws IOException {
+        InputStream is = template.receiveAsInputStream(CONTAINER_NAME, OBJECT_NAME);
+        try {
+            long count = 0;
+            for (int n; (n = is.read(buffer)) != -1;) {
+                count += n;
+            }
+            return count;
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * @return Template connected to started cloud storage emulator.
+     * @throws Exception
+     */
+    protected abstract StorageOperations createTemplate() throws Exception;
+
+    /**
+     * Release template resources and stop cloud storage emulator.
+     * 
+     * @param template
+     * @throws Exception
+     */
+    protected abstract void destroyTemplate(StorageOperations template) throws Exception;
+
+    private static void writeRandomFile(File file, int size) throws IOException {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        OutputStream os = new FileOutputStream(file);
+        try {
+            os.write(data);
+        } finally {
+            os.close();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.opencredo.cloud.storage.FileWriteOptions;
+import org.opencredo.cloud.storage.StorageUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of writing payloads to local file with 4KB heap buffer copy loop
+ * (previous implementation) and NIO based {@link StorageUtils}. Stream source
+ * is buffered stream over file, so it is not transferred from file channel.
+ * 
+ * Run single payload size with e.g. <code>-p payloadSize=4294967296</code>,
+ * multi-gigabyte source file is created in temporary directory.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StorageUtilsBenchmark {
+
+    @Param({"1024", "1048576", "67108864", "1073741824", "4294967296"})
+    private long payloadSize;
+
+    private File sourceFile;
+
+    private File targetFile;
+
+    private FileWriteOptions syncAtomicOptions;
+
+    @Setup
+    public void setUp() throws IOException {
+        sourceFile = File.createTempFile("storage-utils-source", ".bin");
+        targetFile = File.createTempFile("storage-utils-target", ".bin");
+        writeRandomFile(sourceFile, payloadSize);
+
+        syncAtomicOptions = new FileWriteOptions();
+        syncAtomicOptions.setSync(true);
+        syncAtomicOptions.setAtomic(true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        FileUtils.deleteQuietly(sourceFile);
+        FileUtils.deleteQuietly(targetFile);
+    }
+
+    @Benchmark
+    public long legacyStreamToFile() throws IOException {
+        InputStream is = new BufferedInputStream(new FileInputStream(sourceFile));
+        try {
+            OutputStream os = new FileOutputStream(targetFile);
+            try {
+                byte[] buffer = new byte[4096];
+                for (int n; (n = is.read(buffer)) != -1;) {
+                    os.write(buffer, 0, n);
+                }
+            } finally {
+                os.close();
+            }
+        } finally {
+            is.close();
+        }
+        return targetFile.length();
+    }
+
+    @Benchmark
+    public long streamToFile() throws IOException {
+        InputStream is = new BufferedInputStream(new FileInputStream(sourceFile));
+        try {
+            StorageUtils.writeStreamToFile(is, targetFile);
+        } finally {
+            is.close();
+        }
+        return targetFile.length();
+    }
+
+    @Benchmark
+    public long fileToFile() throws IOException {
+        StorageUtils.writeFileToFile(sourceFile, targetFile);
+        return targetFile.length();
+    }
+
+    @Benchmark
+    public long fileToFileSyncAtomic() throws IOException {
+        StorageUtils.writeFileToFile(sourceFile, targetFile, syncAtomicOptions);
+        return targetFile.length();
+    }
+
+    private static void writeRandomFile(File file, long size) throws IOException {
+        byte[] chunk = new byte[1024 * 1024];
+        new Random(42).nextBytes(chunk);
+        OutputStream os = new FileOutputStream(file);
+        try {
+            long remaining = size;
+            while (remaining > 0) {
+                int n = (int) Math.min(chunk.length, remaining);
+                os.write(chunk, 0, n);
+                remaining -= n;
+            }
+        } finally {
+            os.close();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.benchmarks.azure;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opencredo.cloud.storage.StorageOperations;
+import org.opencredo.cloud.storage.azure.AzureCredentials;
+import org.opencredo.cloud.storage.azure.AzureTemplate;
+import org.opencredo.cloud.storage.azure.rest.HttpConnectionPoolSettings;
+import org.opencredo.cloud.storage.benchmarks.AbstractTemplateBenchmark;
+import org.opencredo.cloud.storage.test.azure.AzureBlobEmulator;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end send and receive through {@link AzureTemplate} against
+ * {@link AzureBlobEmulator}, including request signing, pooled HTTP
+ * connections and response handling. Emulated service latency simulates
+ * network round trip.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class AzureTemplateBenchmark extends AbstractTemplateBenchmark {
+
+    @Param({"0", "5"})
+    private long latency;
+
+    private AzureBlobEmulator emulator;
+
+    @Override
+    protected StorageOperations createTemplate() throws Exception {
+        emulator = new AzureBlobEmulator();
+        emulator.setLatency(latency);
+        emulator.start();
+        AzureCredentials credentials = new AzureCredentials(emulator.getAccountName(),
+                AzureBlobEmulator.DEFAULT_SECRET_KEY);
+        return new AzureTemplate(credentials, CONTAINER_NAME, new HttpConnectionPoolSettings(), emulator
+                .getBlobUrlFormat());
+    }
+
+    @Override
+    protected void destroyTemplate(StorageOperations template) throws Exception {
+        try {
+            ((AzureTemplate) template).destroy();
+        } finally {
+            emulator.stop();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.benchmarks.azure;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.entity.ByteArrayEntity;
+import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.azure.rest.ContainerObjectDetailsListFactory;
+import org.opencredo.cloud.storage.azure.rest.internal.StaxContainerObjectDetailsListFactory;
+import org.opencredo.cloud.storage.azure.rest.internal.XPathContainerObjectDetailsListFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.xml.xpath.Jaxp13XPathTemplate;
+
+/**
+ * Parsing of synthetic Azure 'List Blobs' responses with XPath (DOM) and
+ * StAX container object details factories.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ContainerListingParseBenchmark {
+
+    @Param({"100", "5000", "50000"})
+    private int blobCount;
+
+    private byte[] response;
+
+    private ContainerObjectDetailsListFactory xpathFactory;
+
+    private ContainerObjectDetailsListFactory staxFactory;
+
+    @Setup
+    public void setUp() throws Exception {
+        response = createListBlobsResponse(blobCount);
+        xpathFactory = new XPathContainerObjectDetailsListFactory(new Jaxp13XPathTemplate());
+        staxFactory = new StaxContainerObjectDetailsListFactory();
+    }
+
+    @Benchmark
+    public List<BlobDetails> xpath() throws Exception {
+        return xpathFactory.createContainerObjectDetailsList("container", new ByteArrayEntity(response));
+    }
+
+    @Benchmark
+    public List<BlobDetails> stax() throws Exception {
+        return staxFactory.createContainerObjectDetailsList("container", new ByteArrayEntity(response));
+    }
+
+    /**
+     * @param blobCount
+     * @return 'List Blobs' response body with given amount of blobs.
+     * @throws Exception
+     */
+    static byte[] createListBlobsResponse(int blobCount) throws Exception {
+        StringBuilder sb = new StringBuilder(blobCount * 640);
+        sb.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+        sb.append("<EnumerationResults ContainerName=\"http://account.blob.core.windows.net/container\">");
+        sb.append("<MaxResults>").append(blobCount).append("</MaxResults><Blobs>");
+        for (int i = 0; i < blobCount; i++) {
+            sb.append("<Blob><Name>data/blob-").append(i).append(".txt</Name>");
+            sb.append("<Url>http://account.blob.core.windows.net/container/data/blob-").append(i).append(".txt</Url>");
+            sb.append("<Properties><Last-Modified>Wed, 12 Aug 2009 20:39:39 GMT</Last-Modified>");
+            sb.append("<Etag>0x8CACB9BD7C6B").append(Integer.toHexString(i)).append("</Etag>");
+            sb.append("<Content-Length>1024</Content-Length><Content-Type>text/plain</Content-Type>");
+            sb.append("<Content-Encoding /><Content-Language /><Content-MD5 /><Cache-Control />");
+            sb.append("<BlobType>BlockBlob</BlobType><LeaseStatus>unlocked</LeaseStatus></Properties>");
+            sb.append("<Metadata><Name>value</Name></Metadata></Blob>");
+        }
+        sb.append("</Blobs><NextMarker /></EnumerationResults>");
+        return sb.toString().getBytes("UTF-8");
+    }
+}
@@ -0,0 +1,103 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.benchmarks.azure;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.http.HttpRequest;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.opencredo.cloud.storage.azure.AzureCredentials;
+import org.opencredo.cloud.storage.azure.rest.internal.RequestAuthorizationInterceptor;
+import org.opencredo.cloud.storage.azure.rest.internal.SharedKeySigner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-request cost of Azure SharedKey request signing. 'legacySign' repeats
+ * Mac look-up, key decoding and initialisation on every call the way
+ * interceptor used to do it and serves as baseline for 'sign'.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class RequestSigningBenchmark {
+
+    private static final String SECRET_KEY = new String(Base64.encodeBase64("benchmark-secret-key".getBytes()));
+
+    private static final String SIGNATURE_STRING = "PUT\n\n\n1024\n\ntext/plain\n\n\n\n\n\n\n"
+            + "x-ms-date:Sun, 11 Oct 2009 21:49:13 GMT\nx-ms-version:2009-09-19\n/account/container/blob";
+
+    private RequestAuthorizationInterceptor interceptor;
+
+    private SharedKeySigner signer;
+
+    private HttpContext context;
+
+    @Setup
+    public void setUp() {
+        interceptor = new RequestAuthorizationInterceptor(new AzureCredentials("account", SECRET_KEY));
+        signer = new SharedKeySigner(SECRET_KEY);
+        context = new BasicHttpContext();
+    }
+
+    @Benchmark
+    public String legacySign() throws Exception {
+        Mac mac = Mac.getInstance(SharedKeySigner.ENCRYPTION_ALGORITHM);
+        mac.init(new SecretKeySpec(Base64.decodeBase64(SECRET_KEY), mac.getAlgorithm()));
+        mac.update(SIGNATURE_STRING.getBytes("UTF-8"));
+        return new String(Base64.encodeBase64(mac.doFinal()));
+    }
+
+    @Benchmark
+    public String sign() throws Exception {
+        return signer.sign(SIGNATURE_STRING);
+    }
+
+    @Benchmark
+    public HttpRequest signPutRequest() throws Exception {
+        HttpRequest req = new BasicHttpRequest("PUT", "/container/blob");
+        req.addHeader("Content-Length", "1024");
+        req.addHeader("Content-Type", "text/plain");
+        req.addHeader("x-ms-blob-type", "BlockBlob");
+        interceptor.process(req, context);
+        return req;
+    }
+
+    @Benchmark
+    public HttpRequest signListRequest() throws Exception {
+        HttpRequest req = new BasicHttpRequest("GET", "/container?restype=container&comp=list&prefix=data");
+        interceptor.process(req, context);
+        return req;
+    }
+}
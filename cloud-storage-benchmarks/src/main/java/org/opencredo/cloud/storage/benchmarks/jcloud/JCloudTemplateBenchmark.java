@@ -0,0 +1,75 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.benchmarks.jcloud;
+
+import java.io.File;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.jclouds.filesystem.reference.FilesystemConstants;
+import org.opencredo.cloud.storage.StorageOperations;
+import org.opencredo.cloud.storage.benchmarks.AbstractTemplateBenchmark;
+import org.opencredo.cloud.storage.jcloud.CloudProvider;
+import org.opencredo.cloud.storage.jcloud.JCloudCredentials;
+import org.opencredo.cloud.storage.jcloud.JCloudTemplate;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end send and receive through {@link JCloudTemplate} with jclouds
+ * in-memory (transient) and local file system providers.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class JCloudTemplateBenchmark extends AbstractTemplateBenchmark {
+
+    @Param({"TRANSIENT", "FILESYSTEM"})
+    private CloudProvider provider;
+
+    private File baseDir;
+
+    @Override
+    protected StorageOperations createTemplate() throws Exception {
+        if (provider == CloudProvider.FILESYSTEM) {
+            baseDir = File.createTempFile("jcloud-benchmark", "");
+            baseDir.delete();
+            Properties properties = new Properties();
+            properties.setProperty(FilesystemConstants.PROPERTY_BASEDIR, baseDir.getAbsolutePath());
+            return new JCloudTemplate(provider, properties, CONTAINER_NAME);
+        }
+        return new JCloudTemplate(provider, new JCloudCredentials("identity", "credential"), CONTAINER_NAME);
+    }
+
+    @Override
+    protected void destroyTemplate(StorageOperations template) throws Exception {
+        if (baseDir != null) {
+            FileUtils.deleteQuietly(baseDir);
+        }
+    }
+}
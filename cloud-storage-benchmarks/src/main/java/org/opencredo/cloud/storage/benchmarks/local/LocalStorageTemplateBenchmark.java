@@ -0,0 +1,68 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.benchmarks.local;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.opencredo.cloud.storage.StorageOperations;
+import org.opencredo.cloud.storage.benchmarks.AbstractTemplateBenchmark;
+import org.opencredo.cloud.storage.benchmarks.jcloud.JCloudTemplateBenchmark;
+import org.opencredo.cloud.storage.local.LocalStorageTemplate;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end send and receive through {@link LocalStorageTemplate}, to be
+ * compared with jclouds file system provider measured by
+ * {@link JCloudTemplateBenchmark}.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class LocalStorageTemplateBenchmark extends AbstractTemplateBenchmark {
+
+    private File baseDir;
+
+    @Override
+    protected StorageOperations createTemplate() throws Exception {
+        baseDir = File.createTempFile("local-benchmark", "");
+        baseDir.delete();
+        LocalStorageTemplate template = new LocalStorageTemplate(baseDir);
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    @Override
+    protected void destroyTemplate(StorageOperations template) throws Exception {
+        try {
+            ((LocalStorageTemplate) template).destroy();
+        } finally {
+            FileUtils.deleteQuietly(baseDir);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.benchmarks.s3;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opencredo.cloud.storage.StorageOperations;
+import org.opencredo.cloud.storage.benchmarks.AbstractTemplateBenchmark;
+import org.opencredo.cloud.storage.s3.AwsCredentials;
+import org.opencredo.cloud.storage.s3.JCloudS3Template;
+import org.opencredo.cloud.storage.s3.JetS3Template;
+import org.opencredo.cloud.storage.test.s3.S3Emulator;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end send and receive through {@link JetS3Template} and
+ * {@link JCloudS3Template} against {@link S3Emulator}, including request
+ * signing, HTTP client and response parsing of each S3 client library.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class S3TemplateBenchmark extends AbstractTemplateBenchmark {
+
+    @Param({"jets3t", "jclouds"})
+    private String client;
+
+    @Param({"0", "5"})
+    private long latency;
+
+    private S3Emulator emulator;
+
+    @Override
+    protected StorageOperations createTemplate() throws Exception {
+        emulator = new S3Emulator();
+        emulator.setLatency(latency);
+        emulator.start();
+        AwsCredentials credentials = new AwsCredentials(S3Emulator.DEFAULT_ACCESS_KEY, S3Emulator.DEFAULT_SECRET_KEY);
+        if ("jclouds".equals(client)) {
+            return new JCloudS3Template(credentials, CONTAINER_NAME, emulator.getEndpoint());
+        }
+        return new JetS3Template(credentials, CONTAINER_NAME, emulator.getEndpoint());
+    }
+
+    @Override
+    protected void destroyTemplate(StorageOperations template) throws Exception {
+        emulator.stop();
+    }
+}
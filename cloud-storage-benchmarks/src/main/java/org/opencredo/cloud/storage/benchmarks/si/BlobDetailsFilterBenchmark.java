@@ -0,0 +1,113 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.benchmarks.si;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.si.comparator.internal.BlobLastModifiedDateComparator;
+import org.opencredo.cloud.storage.si.filter.BlobDetailsFilter;
+import org.opencredo.cloud.storage.si.filter.internal.AcceptOnceBlobNameFilter;
+import org.opencredo.cloud.storage.si.filter.internal.CompositeBlobDetailsFilter;
+import org.opencredo.cloud.storage.si.filter.internal.PatternMatchingBlobNameFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of filtering and sorting single container listing the way inbound
+ * channel adapter does it on every poll. Accept once filter has already seen
+ * all blobs, as in steady state polling of container which does not change.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BlobDetailsFilterBenchmark {
+
+    @Param({"100", "5000", "50000"})
+    private int blobCount;
+
+    private List<BlobDetails> listing;
+
+    private BlobDetailsFilter patternFilter;
+
+    private BlobDetailsFilter acceptOnceFilter;
+
+    private BlobDetailsFilter compositeFilter;
+
+    private BlobLastModifiedDateComparator comparator;
+
+    @Setup
+    public void setUp() {
+        listing = createListing(blobCount);
+        patternFilter = new PatternMatchingBlobNameFilter("data/blob-\\d+\\.txt");
+        acceptOnceFilter = new AcceptOnceBlobNameFilter();
+        acceptOnceFilter.filter(listing);
+        compositeFilter = new CompositeBlobDetailsFilter(patternFilter, acceptOnceFilter);
+        comparator = new BlobLastModifiedDateComparator();
+    }
+
+    @Benchmark
+    public List<BlobDetails> patternMatching() {
+        return patternFilter.filter(listing);
+    }
+
+    @Benchmark
+    public List<BlobDetails> acceptOnce() {
+        return acceptOnceFilter.filter(listing);
+    }
+
+    @Benchmark
+    public List<BlobDetails> composite() {
+        return compositeFilter.filter(listing);
+    }
+
+    @Benchmark
+    public List<BlobDetails> sortByLastModified() {
+        List<BlobDetails> sorted = new ArrayList<BlobDetails>(listing);
+        Collections.sort(sorted, comparator);
+        return sorted;
+    }
+
+    private static List<BlobDetails> createListing(int blobCount) {
+        Random random = new Random(42);
+        long now = System.currentTimeMillis();
+        List<BlobDetails> listing = new ArrayList<BlobDetails>(blobCount);
+        for (int i = 0; i < blobCount; i++) {
+            Date lastModified = new Date(now - random.nextInt(Integer.MAX_VALUE));
+            listing.add(new BlobDetails("container", "data/blob-" + i + ".txt", "0x8CB171BA9E94B0B" + i,
+                    lastModified, 1024));
+        }
+        return listing;
+    }
+}
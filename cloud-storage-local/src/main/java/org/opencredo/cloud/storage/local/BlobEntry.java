@@ -0,0 +1,108 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.local;
+
+import java.io.File;
+
+/**
+ * Location and properties of blob record in segment. Data of blobs which do
+ * not fit into segment is kept in blob file, which record refers to. Entries
+ * are immutable, so index entry read without locking describes complete
+ * record.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+final class BlobEntry {
+
+    private final Segment segment;
+
+    private final int recordOffset;
+
+    private final int recordSize;
+
+    private final int dataOffset;
+
+    private final long length;
+
+    private final File file;
+
+    private final String eTag;
+
+    private final long lastModified;
+
+    BlobEntry(Segment segment, int recordOffset, int recordSize, int dataOffset, int length, String eTag,
+            long lastModified) {
+        this(segment, recordOffset, recordSize, dataOffset, length, null, eTag, lastModified);
+    }
+
+    BlobEntry(Segment segment, int recordOffset, int recordSize, int dataOffset, long length, File file,
+            String eTag, long lastModified) {
+        this.segment = segment;
+        this.recordOffset = recordOffset;
+        this.recordSize = recordSize;
+        this.dataOffset = dataOffset;
+        this.length = length;
+        this.file = file;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @param target
+     * @param targetOffset
+     * @param targetDataOffset
+     * @return Entry of the same blob whose record has been copied to target
+     *         segment.
+     */
+    BlobEntry moveTo(Segment target, int targetOffset, int targetDataOffset) {
+        return new BlobEntry(target, targetOffset, recordSize, targetDataOffset, length, file, eTag, lastModified);
+    }
+
+    Segment getSegment() {
+        return segment;
+    }
+
+    int getRecordOffset() {
+        return recordOffset;
+    }
+
+    int getRecordSize() {
+        return recordSize;
+    }
+
+    int getDataOffset() {
+        return dataOffset;
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    /**
+     * @return Blob file, or <code>null</code> if blob data is stored in
+     *         segment.
+     */
+    File getFile() {
+        return file;
+    }
+
+    String getETag() {
+        return eTag;
+    }
+
+    long getLastModified() {
+        return lastModified;
+    }
+}
@@ -0,0 +1,881 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.local;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.opencredo.cloud.storage.StorageUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Blobs of single container stored in append-only segment files of container
+ * directory. Each send or delete appends a record to active segment and
+ * updates in-memory index of blob names, so the latest record of a blob is
+ * the one the index points to. Record consists of header, UTF-8 blob name and
+ * blob data:
+ * 
+ * <pre>
+ * int magic, byte type, long last modified, int name length, int data length,
+ * byte[16] data MD5, int CRC32 of preceding header bytes and name
+ * </pre>
+ * 
+ * Index is rebuilt on open by replaying segments in sequence order, replay
+ * stops at first invalid record. Data MD5 is verified for the last segment,
+ * as only its records may not have been fully written to storage device
+ * before crash. Earlier segments are forced when sealed.
+ * <p>
+ * Blob whose record would not fit into segment of configured size is written
+ * to blob file of its own, which is renamed into place before file record
+ * referring to it (file id and length as record data, MD5 of file content in
+ * header) is appended. Blob file is deleted when blob is replaced or deleted;
+ * files left without record by crash are deleted on open.
+ * <p>
+ * Sealed segment is compacted when its garbage ratio reaches
+ * {@link LocalStorageSettings#getCompactionThreshold()}: live records are
+ * copied to temporary file, which is forced and renamed to the next segment
+ * generation before old generation is deleted. Crash at any step leaves
+ * either complete old or complete new generation, open keeps the newest one.
+ * Delete record is kept while an older segment still contains record of the
+ * deleted blob, otherwise replay would bring the blob back.
+ * <p>
+ * Writes are serialised on the store, reads are lock-free: index entries are
+ * immutable and published after record is written.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+final class ContainerStore {
+    private static final Logger LOG = LoggerFactory.getLogger(ContainerStore.class);
+
+    static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    private static final int RECORD_MAGIC = 0x4F435231;
+
+    private static final byte PUT = 1;
+
+    private static final byte DELETE = 2;
+
+    private static final byte PUT_FILE = 3;
+
+    private static final int FILE_REFERENCE_LENGTH = 16;
+
+    private static final Pattern BLOB_FILE_NAME = Pattern.compile("([0-9a-f]{16})\\.blob");
+
+    private static final int CHECKSUM_OFFSET = 37;
+
+    private static final int RECORD_HEADER_SIZE = CHECKSUM_OFFSET + 4;
+
+    private static final int MD5_LENGTH = 16;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final String name;
+
+    private final File directory;
+
+    private final LocalStorageSettings settings;
+
+    private final ConcurrentSkipListMap<String, BlobEntry> index = new ConcurrentSkipListMap<String, BlobEntry>();
+
+    private final TreeMap<Long, Segment> segments = new TreeMap<Long, Segment>();
+
+    private Segment active;
+
+    private long nextSequence;
+
+    private long nextFileId;
+
+    private boolean closed;
+
+    /**
+     * @param name
+     * @param directory
+     * @param settings
+     */
+    ContainerStore(String name, File directory, LocalStorageSettings settings) {
+        this.name = name;
+        this.directory = directory;
+        this.settings = settings;
+    }
+
+    /**
+     * Open segments of container directory and rebuild index.
+     * 
+     * @throws IOException
+     */
+    synchronized void open() throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Container directory cannot be listed: " + directory);
+        }
+
+        TreeMap<Long, File> latest = new TreeMap<Long, File>();
+        List<File> blobFiles = new ArrayList<File>();
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_FILE_SUFFIX)) {
+                LOG.debug("Delete incomplete file '{}'", file);
+                file.delete();
+                continue;
+            }
+            Matcher matcher = BLOB_FILE_NAME.matcher(file.getName());
+            if (matcher.matches()) {
+                nextFileId = Math.max(nextFileId, Long.parseLong(matcher.group(1), 16) + 1);
+                blobFiles.add(file);
+                continue;
+            }
+            long[] id = Segment.parseFileName(file.getName());
+            if (id == null) {
+                continue;
+            }
+            File previous = latest.get(id[0]);
+            File superseded = file;
+            if (previous == null || Segment.parseFileName(previous.getName())[1] < id[1]) {
+                latest.put(id[0], file);
+                superseded = previous;
+            }
+            if (superseded != null) {
+                // Crash after compacted generation was renamed into place
+                LOG.debug("Delete superseded segment file '{}'", superseded);
+                superseded.delete();
+            }
+        }
+
+        for (Map.Entry<Long, File> entry : latest.entrySet()) {
+            long[] id = Segment.parseFileName(entry.getValue().getName());
+            Segment segment = Segment.open(entry.getValue(), id[0], (int) id[1]);
+            segments.put(id[0], segment);
+            replay(segment, entry.getKey().equals(latest.lastKey()));
+        }
+
+        if (!segments.isEmpty()) {
+            Segment last = segments.lastEntry().getValue();
+            nextSequence = last.getSequence() + 1;
+            active = last.remaining() > RECORD_HEADER_SIZE ? last : null;
+        }
+        for (String blobName : checkBlobFiles(blobFiles)) {
+            // Delete record keeps older records of the blob from coming back
+            append(DELETE, blobName, null, null, 0, null);
+        }
+        LOG.debug("Opened container '{}' with {} blobs in {} segments", new Object[] { name, index.size(),
+                segments.size() });
+    }
+
+    /**
+     * Delete blob files no index entry refers to.
+     * 
+     * @param blobFiles
+     * @return Names of blobs whose file is missing or incomplete.
+     */
+    private List<String> checkBlobFiles(List<File> blobFiles) {
+        Set<File> referenced = new HashSet<File>();
+        List<String> broken = new ArrayList<String>();
+        for (Map.Entry<String, BlobEntry> entry : index.entrySet()) {
+            File file = entry.getValue().getFile();
+            if (file == null) {
+                continue;
+            }
+            if (file.length() == entry.getValue().getLength()) {
+                referenced.add(file);
+            } else {
+                LOG.warn("Discarding blob '{}' of container '{}' as its file '{}' is missing or incomplete",
+                        new Object[] { entry.getKey(), name, file });
+                broken.add(entry.getKey());
+            }
+        }
+        for (File file : blobFiles) {
+            if (!referenced.contains(file)) {
+                LOG.debug("Delete unreferenced blob file '{}'", file);
+                file.delete();
+            }
+        }
+        return broken;
+    }
+
+    private void replay(Segment segment, boolean last) {
+        int offset = Segment.HEADER_SIZE;
+        Record record;
+        while ((record = readRecord(segment, offset, last)) != null) {
+            apply(segment, offset, record);
+            offset += record.getSize();
+        }
+        segment.setWritePosition(offset);
+
+        if (segment.remaining() >= 4 && segment.slice(offset, 4).getInt() != 0) {
+            LOG.warn("Discarding invalid record at offset {} of segment '{}' in container '{}'", new Object[] {
+                    offset, segment.getPath(), name });
+            if (last) {
+                segment.clear(offset, segment.remaining());
+                segment.force();
+            }
+        }
+    }
+
+    /**
+     * @param segment
+     * @param offset
+     * @param verifyData
+     * @return Record, or <code>null</code> if there is no valid record at
+     *         offset.
+     */
+    private Record readRecord(Segment segment, int offset, boolean verifyData) {
+        if (segment.getCapacity() - offset < RECORD_HEADER_SIZE) {
+            return null;
+        }
+        ByteBuffer header = segment.slice(offset, RECORD_HEADER_SIZE);
+        if (header.getInt() != RECORD_MAGIC) {
+            return null;
+        }
+        byte type = header.get();
+        long lastModified = header.getLong();
+        int nameLength = header.getInt();
+        int dataLength = header.getInt();
+        byte[] md5 = new byte[MD5_LENGTH];
+        header.get(md5);
+        int checksum = header.getInt();
+        if ((type != PUT && type != DELETE && type != PUT_FILE) || nameLength <= 0 || dataLength < 0
+                || (type == PUT_FILE && dataLength != FILE_REFERENCE_LENGTH) || (long) offset + RECORD_HEADER_SIZE + nameLength + dataLength > segment.getCapacity()) {
+            return null;
+        }
+
+        byte[] headerBytes = new byte[CHECKSUM_OFFSET];
+        segment.slice(offset, CHECKSUM_OFFSET).get(headerBytes);
+        byte[] nameBytes = new byte[nameLength];
+        segment.slice(offset + RECORD_HEADER_SIZE, nameLength).get(nameBytes);
+        if (checksum(headerBytes, nameBytes) != checksum) {
+            return null;
+        }
+
+        Record record = new Record(type, new String(nameBytes, UTF_8), lastModified, nameLength, dataLength, md5);
+        if (verifyData && type == PUT) {
+            MessageDigest digest = newDigest();
+            digest.update(segment.slice(record.getDataOffset(offset), dataLength));
+            if (!Arrays.equals(md5, digest.digest())) {
+                return null;
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Apply record to index and segment counters.
+     * 
+     * @param segment
+     * @param offset
+     * @param record
+     * @return Index entry replaced by record, or <code>null</code>.
+     */
+    private BlobEntry apply(Segment segment, int offset, Record record) {
+        BlobEntry previous;
+        if (record.getType() == PUT) {
+            segment.addLive(record.getSize());
+            previous = index.put(record.getName(), new BlobEntry(segment, offset, record.getSize(), record
+                    .getDataOffset(offset), record.getDataLength(), toHex(record.getMd5()), record
+                    .getLastModified()));
+        } else if (record.getType() == PUT_FILE) {
+            ByteBuffer reference = segment.slice(record.getDataOffset(offset), FILE_REFERENCE_LENGTH);
+            long fileId = reference.getLong();
+            long length = reference.getLong();
+            // Ids of replayed records are not reused even if their file is gone
+            nextFileId = Math.max(nextFileId, fileId + 1);
+            segment.addLive(record.getSize());
+            previous = index.put(record.getName(), new BlobEntry(segment, offset, record.getSize(), record
+                    .getDataOffset(offset), length, blobFile(fileId), toHex(record.getMd5()), record
+                    .getLastModified()));
+        } else {
+            segment.addGarbage(record.getSize());
+            previous = index.remove(record.getName());
+        }
+        if (previous != null) {
+            previous.getSegment().release(previous.getRecordSize(), record.getName());
+        }
+        return previous;
+    }
+
+    /**
+     * @param blobName
+     * @param data
+     * @return Index entry of stored blob.
+     * @throws IOException
+     */
+    synchronized BlobEntry put(String blobName, byte[] data) throws IOException {
+        return store(blobName, ByteBuffer.wrap(data), null, data.length);
+    }
+
+    /**
+     * @param blobName
+     * @param data
+     *            Remaining buffer bytes are stored, buffer position is not
+     *            changed.
+     * @return Index entry of stored blob.
+     * @throws IOException
+     */
+    synchronized BlobEntry put(String blobName, ByteBuffer data) throws IOException {
+        return store(blobName, data, null, data.remaining());
+    }
+
+    /**
+     * @param blobName
+     * @param file
+     * @return Index entry of stored blob.
+     * @throws IOException
+     */
+    BlobEntry put(String blobName, File file) throws IOException {
+        FileInputStream is = new FileInputStream(file);
+        try {
+            return put(blobName, is.getChannel());
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Store remaining stream bytes. File input stream is read from its
+     * channel directly into segment or blob file, other streams are spooled to temporary
+     * file first, as record size must be known before it is appended.
+     * 
+     * @param blobName
+     * @param is
+     * @return Index entry of stored blob.
+     * @throws IOException
+     */
+    BlobEntry put(String blobName, InputStream is) throws IOException {
+        if (is instanceof FileInputStream) {
+            return put(blobName, ((FileInputStream) is).getChannel());
+        }
+        File temp = File.createTempFile("upload-", TEMP_FILE_SUFFIX, directory);
+        try {
+            StorageUtils.writeStreamToFile(is, temp);
+            return put(blobName, temp);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    private synchronized BlobEntry put(String blobName, FileChannel channel) throws IOException {
+        return store(blobName, null, channel, channel.size() - channel.position());
+    }
+
+    /**
+     * @param blobName
+     * @return <code>true</code> if blob existed.
+     * @throws IOException
+     */
+    synchronized boolean delete(String blobName) throws IOException {
+        if (!index.containsKey(blobName)) {
+            return false;
+        }
+        append(DELETE, blobName, null, null, 0, null);
+        return true;
+    }
+
+    /**
+     * Append put record, or write blob file if record would not fit into
+     * segment of configured size.
+     * 
+     * @param blobName
+     * @param data
+     *            Data to store, or <code>null</code> if it is read from
+     *            channel.
+     * @param channel
+     * @param length
+     * @return Index entry of stored blob.
+     * @throws IOException
+     */
+    private BlobEntry store(String blobName, ByteBuffer data, FileChannel channel, long length) throws IOException {
+        checkOpen();
+        long size = (long) RECORD_HEADER_SIZE + blobName.getBytes(UTF_8).length + length;
+        if (size <= settings.getSegmentSize() - Segment.HEADER_SIZE) {
+            return append(PUT, blobName, data, channel, length, null);
+        }
+
+        long fileId = nextFileId++;
+        File file = blobFile(fileId);
+        File temp = new File(directory, file.getName() + TEMP_FILE_SUFFIX);
+        byte[] md5;
+        try {
+            md5 = writeBlobFile(temp, data, channel, length);
+            if (!temp.renameTo(file)) {
+                throw new IOException("Failed to rename blob file '" + temp + "' to '" + file + "'");
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+
+        ByteBuffer reference = ByteBuffer.allocate(FILE_REFERENCE_LENGTH);
+        reference.putLong(fileId).putLong(length).flip();
+        try {
+            return append(PUT_FILE, blobName, reference, null, FILE_REFERENCE_LENGTH, md5);
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * @param file
+     * @param data
+     * @param channel
+     * @param length
+     * @return MD5 of written data.
+     * @throws IOException
+     */
+    private byte[] writeBlobFile(File file, ByteBuffer data, FileChannel channel, long length) throws IOException {
+        MessageDigest digest = newDigest();
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            FileChannel target = os.getChannel();
+            if (data != null) {
+                digest.update(data.duplicate());
+                ByteBuffer source = data.duplicate();
+                while (source.hasRemaining()) {
+                    target.write(source);
+                }
+            } else {
+                ByteBuffer buffer = ByteBuffer.allocate(StorageUtils.STREAM_BUFFER_SIZE);
+                for (long remaining = length; remaining > 0; remaining -= buffer.limit()) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), remaining));
+                    while (buffer.hasRemaining()) {
+                        if (channel.read(buffer) < 0) {
+                            throw new IOException("File ended before " + length + " bytes were read");
+                        }
+                    }
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.rewind();
+                    while (buffer.hasRemaining()) {
+                        target.write(buffer);
+                    }
+                }
+            }
+            if (settings.isSyncOnWrite()) {
+                target.force(true);
+            }
+        } finally {
+            os.close();
+        }
+        return digest.digest();
+    }
+
+    /**
+     * @param type
+     * @param blobName
+     * @param data
+     * @param channel
+     * @param length
+     * @param md5
+     *            MD5 of blob file of file record, data MD5 of put record is
+     *            computed from segment.
+     * @return Index entry of stored blob, or <code>null</code> for delete
+     *         record.
+     * @throws IOException
+     */
+    private BlobEntry append(byte type, String blobName, ByteBuffer data, FileChannel channel, long length,
+            byte[] md5) throws IOException {
+        checkOpen();
+        byte[] nameBytes = blobName.getBytes(UTF_8);
+        long size = (long) RECORD_HEADER_SIZE + nameBytes.length + length;
+        if (size > Integer.MAX_VALUE - Segment.HEADER_SIZE) {
+            throw new IOException("Blob of " + length + " bytes does not fit into segment");
+        }
+
+        Segment segment = segmentFor((int) size);
+        int offset = segment.allocate((int) size);
+        Record record;
+        try {
+            int dataOffset = offset + RECORD_HEADER_SIZE + nameBytes.length;
+            if (data != null) {
+                segment.write(dataOffset, data.duplicate());
+            } else if (channel != null) {
+                segment.transferFrom(dataOffset, (int) length, channel);
+            }
+            if (type == PUT) {
+                MessageDigest digest = newDigest();
+                digest.update(segment.slice(dataOffset, (int) length));
+                md5 = digest.digest();
+            } else if (md5 == null) {
+                md5 = new byte[MD5_LENGTH];
+            }
+            record = new Record(type, blobName, System.currentTimeMillis(), nameBytes.length, (int) length, md5);
+            // Header is written last, record is invalid until it is complete
+            segment.write(offset, record.encodeHeader(nameBytes));
+        } catch (IOException e) {
+            segment.clear(offset, (int) size);
+            segment.setWritePosition(offset);
+            throw e;
+        }
+        if (settings.isSyncOnWrite()) {
+            segment.force();
+        }
+
+        BlobEntry previous = apply(segment, offset, record);
+        if (previous != null && previous.getFile() != null && !previous.getFile().delete()) {
+            LOG.warn("Failed to delete blob file '{}'", previous.getFile());
+        }
+        if (previous != null && previous.getSegment() != active) {
+            compactIfNeeded(previous.getSegment());
+        }
+        return type == DELETE ? null : index.get(blobName);
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Container store is closed: " + name);
+        }
+    }
+
+    private Segment segmentFor(int recordSize) throws IOException {
+        if (active != null && active.remaining() >= recordSize) {
+            return active;
+        }
+
+        Segment sealed = active;
+        long sequence = nextSequence++;
+        int capacity = Math.max(settings.getSegmentSize(), Segment.HEADER_SIZE + recordSize);
+        active = Segment.create(new File(directory, Segment.fileName(sequence, 0)), sequence, 0, capacity);
+        segments.put(sequence, active);
+        LOG.debug("Created segment '{}' in container '{}'", active, name);
+
+        if (sealed != null) {
+            sealed.force();
+            compactIfNeeded(sealed);
+        }
+        return active;
+    }
+
+    /**
+     * Compact all sealed segments which reached compaction threshold.
+     * 
+     * @throws IOException
+     */
+    synchronized void compact() throws IOException {
+        for (Segment segment : new ArrayList<Segment>(segments.values())) {
+            if (segment != active) {
+                compactIfNeeded(segment);
+            }
+        }
+    }
+
+    private void compactIfNeeded(Segment segment) throws IOException {
+        long used = segment.getWritePosition() - Segment.HEADER_SIZE;
+        if (used > 0 && segment.getGarbageBytes() >= settings.getCompactionThreshold() * used) {
+            compact(segment);
+        }
+    }
+
+    private void compact(Segment segment) throws IOException {
+        Collection<Segment> olderSegments = segments.headMap(segment.getSequence()).values();
+
+        List<Integer> offsets = new ArrayList<Integer>();
+        List<Record> records = new ArrayList<Record>();
+        long keptSize = 0;
+        int offset = Segment.HEADER_SIZE;
+        Record record;
+        while (offset < segment.getWritePosition() && (record = readRecord(segment, offset, false)) != null) {
+            boolean keep;
+            if (record.getType() != DELETE) {
+                BlobEntry entry = index.get(record.getName());
+                keep = entry != null && entry.getSegment() == segment && entry.getRecordOffset() == offset;
+            } else {
+                keep = containsDead(olderSegments, record.getName());
+            }
+            if (keep) {
+                offsets.add(offset);
+                records.add(record);
+                keptSize += record.getSize();
+            }
+            offset += record.getSize();
+        }
+        if (keptSize == offset - Segment.HEADER_SIZE) {
+            // Nothing to drop, delete records are still needed
+            return;
+        }
+
+        if (keptSize == 0) {
+            LOG.debug("Delete garbage segment '{}' in container '{}'", segment, name);
+            segments.remove(segment.getSequence());
+            segment.close();
+            segment.getPath().delete();
+            compactNewer(segment);
+            return;
+        }
+
+        File target = new File(directory, Segment.fileName(segment.getSequence(), segment.getGeneration() + 1));
+        File temp = new File(directory, target.getName() + TEMP_FILE_SUFFIX);
+        Segment compacted = Segment.create(temp, segment.getSequence(), segment.getGeneration() + 1,
+                (int) (Segment.HEADER_SIZE + keptSize));
+        Map<String, BlobEntry> moved = new LinkedHashMap<String, BlobEntry>();
+        try {
+            for (int i = 0; i < records.size(); i++) {
+                record = records.get(i);
+                int sourceOffset = offsets.get(i);
+                int targetOffset = compacted.allocate(record.getSize());
+                compacted.write(targetOffset, segment.slice(sourceOffset, record.getSize()));
+                if (record.getType() != DELETE) {
+                    compacted.addLive(record.getSize());
+                    moved.put(record.getName(), index.get(record.getName()).moveTo(compacted, targetOffset,
+                            record.getDataOffset(targetOffset)));
+                } else {
+                    compacted.addGarbage(record.getSize());
+                }
+            }
+            compacted.force();
+            compacted.renameTo(target);
+        } catch (IOException e) {
+            compacted.close();
+            temp.delete();
+            throw e;
+        }
+
+        index.putAll(moved);
+        segments.put(segment.getSequence(), compacted);
+        segment.close();
+        if (!segment.getPath().delete()) {
+            LOG.warn("Failed to delete compacted segment file '{}'", segment.getPath());
+        }
+        LOG.debug("Compacted segment '{}' of container '{}' to {} bytes", new Object[] { segment, name, keptSize });
+        compactNewer(segment);
+    }
+
+    /**
+     * Dropped records may have been the last reason to keep delete records of
+     * newer segments.
+     * 
+     * @param compacted
+     * @throws IOException
+     */
+    private void compactNewer(Segment compacted) throws IOException {
+        if (!compacted.hasDead()) {
+            return;
+        }
+        for (Segment segment : new ArrayList<Segment>(segments.tailMap(compacted.getSequence(), false).values())) {
+            if (segment != active && segments.get(segment.getSequence()) == segment) {
+                compactIfNeeded(segment);
+            }
+        }
+    }
+
+    private static boolean containsDead(Collection<Segment> segments, String blobName) {
+        for (Segment segment : segments) {
+            if (segment.containsDead(blobName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param blobName
+     * @return Index entry, or <code>null</code> if blob does not exist.
+     */
+    BlobEntry get(String blobName) {
+        return index.get(blobName);
+    }
+
+    /**
+     * @param entry
+     * @return Independent buffer of blob data, blob file is mapped.
+     * @throws IOException
+     *             If blob file cannot be read or is too large to be mapped
+     *             at once.
+     */
+    ByteBuffer read(BlobEntry entry) throws IOException {
+        if (entry.getFile() == null) {
+            return entry.getSegment().slice(entry.getDataOffset(), (int) entry.getLength());
+        }
+        if (entry.getLength() > Integer.MAX_VALUE) {
+            throw new IOException("Blob of " + entry.getLength() + " bytes is too large to be read at once");
+        }
+        FileInputStream is = new FileInputStream(entry.getFile());
+        try {
+            return is.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, entry.getLength());
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * @param entry
+     * @return Stream of blob data. Stream of blob stored in segment reads
+     *         mapped memory, stream of blob file has to be closed.
+     * @throws IOException
+     */
+    InputStream openStream(BlobEntry entry) throws IOException {
+        if (entry.getFile() == null) {
+            return new ByteBufferInputStream(read(entry));
+        }
+        return new FileInputStream(entry.getFile());
+    }
+
+    /**
+     * @return Container directory, temporary files created in it are removed
+     *         when container is opened.
+     */
+    File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return Live view of index sorted by blob name.
+     */
+    NavigableMap<String, BlobEntry> getIndex() {
+        return index;
+    }
+
+    /**
+     * @return Amount of segment files.
+     */
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Force and close all segments. Blobs received before close remain
+     * readable.
+     * 
+     * @throws IOException
+     */
+    synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (active != null) {
+            active.force();
+        }
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+    }
+
+    private File blobFile(long fileId) {
+        return new File(directory, String.format("%016x.blob", fileId));
+    }
+
+    private static int checksum(byte[] headerBytes, byte[] nameBytes) {
+        CRC32 crc = new CRC32();
+        crc.update(headerBytes);
+        crc.update(nameBytes);
+        return (int) crc.getValue();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 digest is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0x0F];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0x0F];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Decoded record header.
+     */
+    private static final class Record {
+
+        private final byte type;
+
+        private final String name;
+
+        private final long lastModified;
+
+        private final int nameLength;
+
+        private final int dataLength;
+
+        private final byte[] md5;
+
+        Record(byte type, String name, long lastModified, int nameLength, int dataLength, byte[] md5) {
+            this.type = type;
+            this.name = name;
+            this.lastModified = lastModified;
+            this.nameLength = nameLength;
+            this.dataLength = dataLength;
+            this.md5 = md5;
+        }
+
+        ByteBuffer encodeHeader(byte[] nameBytes) {
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE + nameLength);
+            header.putInt(RECORD_MAGIC).put(type).putLong(lastModified).putInt(nameLength).putInt(dataLength).put(
+                    md5);
+            header.putInt(checksum(Arrays.copyOf(header.array(), CHECKSUM_OFFSET), nameBytes));
+            header.put(nameBytes);
+            header.flip();
+            return header;
+        }
+
+        byte getType() {
+            return type;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        long getLastModified() {
+            return lastModified;
+        }
+
+        int getDataLength() {
+            return dataLength;
+        }
+
+        byte[] getMd5() {
+            return md5;
+        }
+
+        int getSize() {
+            return RECORD_HEADER_SIZE + nameLength + dataLength;
+        }
+
+        int getDataOffset(int recordOffset) {
+            return recordOffset + RECORD_HEADER_SIZE + nameLength;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.local;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.springframework.util.Assert;
+
+/**
+ * Settings of {@link LocalStorageTemplate} segment files. Blobs are appended
+ * to segment files of segment size, blobs which do not fit into segment are
+ * written to blob files of their own. Sealed segment is compacted once share
+ * of overwritten and deleted blob bytes reaches compaction threshold.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class LocalStorageSettings {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    public static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+
+    public static final boolean DEFAULT_SYNC_ON_WRITE = false;
+
+    private int segmentSize = DEFAULT_SEGMENT_SIZE;
+
+    private double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+    private boolean syncOnWrite = DEFAULT_SYNC_ON_WRITE;
+
+    /**
+     * @return the segmentSize
+     */
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * @param segmentSize
+     *            Size in bytes of preallocated memory-mapped segment file.
+     */
+    public void setSegmentSize(int segmentSize) {
+        Assert.isTrue(segmentSize >= 4096, "Segment size must be at least 4096 bytes");
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * @return the compactionThreshold
+     */
+    public double getCompactionThreshold() {
+        return compactionThreshold;
+    }
+
+    /**
+     * @param compactionThreshold
+     *            Share of garbage bytes in sealed segment which triggers
+     *            segment compaction, 1 disables compaction of segments which
+     *            still contain live blobs.
+     */
+    public void setCompactionThreshold(double compactionThreshold) {
+        Assert.isTrue(compactionThreshold > 0 && compactionThreshold <= 1,
+                "Compaction threshold must be greater than 0 and not greater than 1");
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * @return the syncOnWrite
+     */
+    public boolean isSyncOnWrite() {
+        return syncOnWrite;
+    }
+
+    /**
+     * @param syncOnWrite
+     *            If set, segment and blob file are forced to storage device
+     *            before send or delete returns. Otherwise written blobs
+     *            survive process crash, but not operating system crash.
+     */
+    public void setSyncOnWrite(boolean syncOnWrite) {
+        this.syncOnWrite = syncOnWrite;
+    }
+
+    /**
+     * @return
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)//
+                .append("segmentSize", this.segmentSize)//
+                .append("compactionThreshold", this.compactionThreshold)//
+                .append("syncOnWrite", this.syncOnWrite)//
+                .toString();
+    }
+}
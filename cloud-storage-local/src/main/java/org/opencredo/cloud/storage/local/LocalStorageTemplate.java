@@ -0,0 +1,1065 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.local;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.opencredo.cloud.storage.BatchResult;
+import org.opencredo.cloud.storage.BlobConditions;
+import org.opencredo.cloud.storage.BlobContent;
+import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.BlobDetailsPage;
+import org.opencredo.cloud.storage.BlobListOptions;
+import org.opencredo.cloud.storage.ContainerStatus;
+import org.opencredo.cloud.storage.FileSpoolingOutputStream;
+import org.opencredo.cloud.storage.MultipartDownloadSettings;
+import org.opencredo.cloud.storage.MultipartUploadSettings;
+import org.opencredo.cloud.storage.PagedBlobDetailsIterator;
+import org.opencredo.cloud.storage.StorageBatchOperations;
+import org.opencredo.cloud.storage.StorageCommunicationException;
+import org.opencredo.cloud.storage.StorageObjectModifiedException;
+import org.opencredo.cloud.storage.StorageOperations;
+import org.opencredo.cloud.storage.StorageResponseHandlingException;
+import org.opencredo.cloud.storage.StorageUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Storage operations implementation keeping containers as directories of
+ * local file system. Blobs are appended to memory-mapped segment files and
+ * located through in-memory index, so blobs are received without system
+ * calls and sent without creating a file per blob. Received input streams
+ * read mapped memory directly. Blobs which do not fit into segment are kept
+ * in files of their own.
+ * <p>
+ * Template is a drop-in replacement of cloud storage templates for local
+ * development, tests and as fast storage tier. Base directory must not be
+ * shared by templates, neither within nor across processes.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ * @see LocalStorageSettings
+ */
+public class LocalStorageTemplate implements StorageOperations, InitializingBean, DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(LocalStorageTemplate.class);
+
+    private static final String CONTAINER_NAME_MUST_BE_SET = "Container name must be set";
+    private static final String OBJECT_NAME_MUST_BE_SET = "Object name must be set";
+    private static final int HTTP_NOT_FOUND = 404;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File baseDirectory;
+
+    private final LocalStorageSettings settings;
+
+    private final Map<String, ContainerStore> stores = new ConcurrentHashMap<String, ContainerStore>();
+
+    private String defaultContainerName;
+
+    /**
+     * @param baseDirectory
+     *            Directory containing container directories.
+     */
+    public LocalStorageTemplate(File baseDirectory) {
+        this(baseDirectory, null);
+    }
+
+    /**
+     * @param baseDirectory
+     *            Directory containing container directories.
+     * @param defaultContainerName
+     */
+    public LocalStorageTemplate(File baseDirectory, String defaultContainerName) {
+        this(baseDirectory, defaultContainerName, new LocalStorageSettings());
+    }
+
+    /**
+     * @param baseDirectory
+     *            Directory containing container directories.
+     * @param defaultContainerName
+     * @param settings
+     */
+    public LocalStorageTemplate(File baseDirectory, String defaultContainerName, LocalStorageSettings settings) {
+        Assert.notNull(baseDirectory, "Base directory must be specified");
+        Assert.notNull(settings, "Local storage settings must be specified");
+        this.baseDirectory = baseDirectory;
+        this.defaultContainerName = defaultContainerName;
+        this.settings = settings;
+    }
+
+    /**
+     * Create base directory and default container if they do not exist.
+     * 
+     * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
+     */
+    public void afterPropertiesSet() {
+        if (!baseDirectory.isDirectory() && !baseDirectory.mkdirs()) {
+            throw new StorageCommunicationException("Failed to create base directory '%s'", baseDirectory);
+        }
+        if (defaultContainerName != null) {
+            createContainer(defaultContainerName);
+        }
+    }
+
+    /**
+     * Force and close segment files of all containers.
+     * 
+     * @see org.springframework.beans.factory.DisposableBean#destroy()
+     */
+    public void destroy() {
+        synchronized (stores) {
+            for (ContainerStore store : stores.values()) {
+                closeStore(store);
+            }
+            stores.clear();
+        }
+    }
+
+    // **********************************
+    // CONFIGURATION
+    // **********************************
+
+    /**
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#listContainerNames()
+     */
+    public List<String> listContainerNames() {
+        LOG.debug("List containers");
+        List<String> containerNames = new ArrayList<String>();
+        File[] files = baseDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    containerNames.add(file.getName());
+                }
+            }
+        }
+        Collections.sort(containerNames);
+        return containerNames;
+    }
+
+    /**
+     * @param containerName
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#checkContainerStatus(java.lang.String)
+     */
+    public ContainerStatus checkContainerStatus(String containerName) {
+        return containerDirectory(containerName).isDirectory() ? ContainerStatus.MINE
+                : ContainerStatus.DOES_NOT_EXIST;
+    }
+
+    /**
+     * @param containerName
+     * @return <code>false</code> if container already exists.
+     * @see org.opencredo.cloud.storage.StorageOperations#createContainer(java.lang.String)
+     */
+    public boolean createContainer(String containerName) {
+        File directory = containerDirectory(containerName);
+        LOG.debug("Create container '{}'", containerName);
+        if (directory.isDirectory()) {
+            return false;
+        }
+        if (!directory.mkdirs()) {
+            throw new StorageCommunicationException("Failed to create container directory '%s'", directory);
+        }
+        return true;
+    }
+
+    /**
+     * Container is deleted with all its blobs.
+     * 
+     * @param containerName
+     * @see org.opencredo.cloud.storage.StorageOperations#deleteContainer(java.lang.String)
+     */
+    public void deleteContainer(String containerName) {
+        File directory = containerDirectory(containerName);
+        LOG.debug("Delete container '{}'", containerName);
+        synchronized (stores) {
+            if (!directory.isDirectory()) {
+                throw containerNotFound(containerName);
+            }
+            ContainerStore store = stores.remove(containerName);
+            if (store != null) {
+                closeStore(store);
+            }
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            if (!directory.delete()) {
+                throw new StorageCommunicationException("Failed to delete container directory '%s'", directory);
+            }
+        }
+    }
+
+    /**
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#listContainerObjectDetails()
+     */
+    public List<BlobDetails> listContainerObjectDetails() {
+        return listContainerObjectDetails(defaultContainerName);
+    }
+
+    /**
+     * @param containerName
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#listContainerObjectDetails(java.lang.String)
+     */
+    public List<BlobDetails> listContainerObjectDetails(String containerName) {
+        LOG.debug("Get objects list for container '{}'", containerName);
+        ContainerStore store = getStore(containerName);
+        List<BlobDetails> blobDetails = new ArrayList<BlobDetails>();
+        for (Map.Entry<String, BlobEntry> entry : store.getIndex().entrySet()) {
+            blobDetails.add(toBlobDetails(containerName, entry.getKey(), entry.getValue()));
+        }
+        return blobDetails;
+    }
+
+    /**
+     * Blobs are listed from index in name order. Marker is exclusive, blobs
+     * rolled up into common prefix are skipped without being visited.
+     * 
+     * @param containerName
+     * @param options
+     * @param marker
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#listContainerObjectDetailsPage(java.lang.String,
+     *      org.opencredo.cloud.storage.BlobListOptions, java.lang.String)
+     */
+    public BlobDetailsPage listContainerObjectDetailsPage(String containerName, BlobListOptions options, String marker) {
+        Assert.notNull(options, "Blob list options cannot be null");
+        LOG.debug("Get objects list page for container '{}' with marker '{}'", containerName, marker);
+        NavigableMap<String, BlobEntry> index = getStore(containerName).getIndex();
+
+        String prefix = options.getPrefix() == null ? "" : options.getPrefix();
+        String delimiter = StringUtils.hasLength(options.getDelimiter()) ? options.getDelimiter() : null;
+
+        Map.Entry<String, BlobEntry> entry;
+        if (marker == null || marker.compareTo(prefix) < 0) {
+            entry = index.ceilingEntry(prefix);
+        } else if (delimiter != null && marker.startsWith(prefix)
+                && marker.indexOf(delimiter, prefix.length()) == marker.length() - delimiter.length()) {
+            // Marker is common prefix returned as last item of previous page
+            entry = entryAfterPrefix(index, marker);
+        } else {
+            entry = index.higherEntry(marker);
+        }
+
+        List<BlobDetails> blobDetails = new ArrayList<BlobDetails>();
+        List<String> commonPrefixes = new ArrayList<String>();
+        String lastItem = null;
+        String nextMarker = null;
+        while (entry != null && entry.getKey().startsWith(prefix)) {
+            if (blobDetails.size() + commonPrefixes.size() == options.getPageSize()) {
+                nextMarker = lastItem;
+                break;
+            }
+            String key = entry.getKey();
+            int delimiterIndex = delimiter == null ? -1 : key.indexOf(delimiter, prefix.length());
+            if (delimiterIndex >= 0) {
+                lastItem = key.substring(0, delimiterIndex + delimiter.length());
+                commonPrefixes.add(lastItem);
+                entry = entryAfterPrefix(index, lastItem);
+            } else {
+                lastItem = key;
+                blobDetails.add(toBlobDetails(containerName, key, entry.getValue()));
+                entry = index.higherEntry(key);
+            }
+        }
+
+        return new BlobDetailsPage(blobDetails, commonPrefixes, nextMarker);
+    }
+
+    /**
+     * @param index
+     * @param prefix
+     * @return First entry which name does not start with prefix and follows
+     *         it, or <code>null</code>.
+     */
+    private static Map.Entry<String, BlobEntry> entryAfterPrefix(NavigableMap<String, BlobEntry> index,
+            String prefix) {
+        char last = prefix.charAt(prefix.length() - 1);
+        if (last == Character.MAX_VALUE) {
+            Map.Entry<String, BlobEntry> entry = index.higherEntry(prefix);
+            while (entry != null && entry.getKey().startsWith(prefix)) {
+                entry = index.higherEntry(entry.getKey());
+            }
+            return entry;
+        }
+        return index.ceilingEntry(prefix.substring(0, prefix.length() - 1) + (char) (last + 1));
+    }
+
+    /**
+     * @param containerName
+     * @param options
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#iterateContainerObjectDetails(java.lang.String,
+     *      org.opencredo.cloud.storage.BlobListOptions)
+     */
+    public Iterator<BlobDetails> iterateContainerObjectDetails(String containerName, BlobListOptions options) {
+        Assert.notNull(options, "Blob list options cannot be null");
+        return new PagedBlobDetailsIterator(this, containerName, options);
+    }
+
+    // **********************************
+    // SEND/RECEIVE
+    // **********************************
+
+    /**
+     * @param objectName
+     * @param stringToSend
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#send(java.lang.String,
+     *      java.lang.String)
+     */
+    public String send(String objectName, String stringToSend) {
+        return send(defaultContainerName, objectName, stringToSend);
+    }
+
+    /**
+     * String is stored UTF-8 encoded.
+     * 
+     * @param containerName
+     * @param objectName
+     * @param stringToSend
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#send(java.lang.String,
+     *      java.lang.String, java.lang.String)
+     */
+    public String send(String containerName, String objectName, String stringToSend) {
+        Assert.hasText(objectName, OBJECT_NAME_MUST_BE_SET);
+        Assert.notNull(stringToSend, "String to send must be specified");
+        LOG.debug("Send string to container '{}' with name '{}'", containerName, objectName);
+        ContainerStore store = getStore(containerName);
+        try {
+            store.put(objectName, stringToSend.getBytes(UTF_8));
+        } catch (IOException e) {
+            throw new StorageCommunicationException(e,
+                    "Local storage request 'send string' has failed [container: '%s', object: '%s']",
+                    containerName, objectName);
+        }
+        return objectName;
+    }
+
+    /**
+     * Conditions are checked and string is stored holding container write
+     * lock, so check and write are atomic.
+     * 
+     * @param containerName
+     * @param objectName
+     * @param stringToSend
+     * @param conditions
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#send(java.lang.String,
+     *      java.lang.String, java.lang.String, org.opencredo.cloud.storage.BlobConditions)
+     */
+    public String send(String containerName, String objectName, String stringToSend, BlobConditions conditions) {
+        Assert.hasText(objectName, OBJECT_NAME_MUST_BE_SET);
+        Assert.notNull(stringToSend, "String to send must be specified");
+        Assert.notNull(conditions, "Conditions must be specified");
+        LOG.debug("Send string to container '{}' with name '{}' with conditions {}", new Object[] { containerName,
+                objectName, conditions });
+        ContainerStore store = getStore(containerName);
+        try {
+            synchronized (store) {
+                checkConditions(store, containerName, objectName, conditions);
+                store.put(objectName, stringToSend.getBytes(UTF_8));
+            }
+        } catch (IOException e) {
+            throw new StorageCommunicationException(e,
+                    "Local storage request 'send string conditionally' has failed [container: '%s', object: '%s']",
+                    containerName, objectName);
+        }
+        return objectName;
+    }
+
+    /**
+     * @param fileToSend
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#send(java.io.File)
+     */
+    public String send(File fileToSend) {
+        return send(defaultContainerName, fileToSend);
+    }
+
+    /**
+     * @param containerName
+     * @param fileToSend
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#send(java.lang.String,
+     *      java.io.File)
+     */
+    public String send(String containerName, File fileToSend) {
+        Assert.notNull(fileToSend, "File to send must be specified");
+        return send(containerName, fileToSend.getName(), fileToSend);
+    }
+
+    /**
+     * File is read from its channel directly into segment.
+     * 
+     * @param containerName
+     * @param objectName
+     * @param fileToSend
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#send(java.lang.String,
+     *      java.lang.String, java.io.File)
+     */
+    public String send(String containerName, String objectName, File fileToSend) {
+        Assert.hasText(objectName, OBJECT_NAME_MUST_BE_SET);
+        Assert.notNull(fileToSend, "File to send must be specified");
+        LOG.debug("Send file '{}' to container '{}' with name '{}'", new Object[] { fileToSend.getAbsolutePath(),
+                containerName, objectName });
+        ContainerStore store = getStore(containerName);
+        try {
+            store.put(objectName, fileToSend);
+        } catch (IOException e) {
+            throw new StorageCommunicationException(e,
+                    "Local storage request 'send file' has failed [container: '%s', object: '%s']", containerName,
+                    objectName);
+        }
+        return objectName;
+    }
+
+    /**
+     * Conditions are checked and file is stored holding container write lock,
+     * so check and write are atomic.
+     * 
+     * @param containerName
+     * @param objectName
+     * @param fileToSend
+     * @param conditions
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#send(java.lang.String,
+     *      java.lang.String, java.io.File, org.opencredo.cloud.storage.BlobConditions)
+     */
+    public String send(String containerName, String objectName, File fileToSend, BlobConditions conditions) {
+        Assert.hasText(objectName, OBJECT_NAME_MUST_BE_SET);
+        Assert.notNull(fileToSend, "File to send must be specified");
+        Assert.notNull(conditions, "Conditions must be specified");
+        LOG.debug("Send file '{}' to container '{}' with name '{}' with conditions {}", new Object[] {
+                fileToSend.getAbsolutePath(), containerName, objectName, conditions });
+        ContainerStore store = getStore(containerName);
+        try {
+            synchronized (store) {
+                checkConditions(store, containerName, objectName, conditions);
+                store.put(objectName, fileToSend);
+            }
+        } catch (IOException e) {
+            throw new StorageCommunicationException(e,
+                    "Local storage request 'send file conditionally' has failed [container: '%s', object: '%s']",
+                    containerName, objectName);
+        }
+        return objectName;
+    }
+
+    /**
+     * Local storage has no request size limits, file is stored as single
+     * blob.
+     * 
+     * @param containerName
+     * @param objectName
+     * @param fileToSend
+     * @param settings
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#sendInParts(java.lang.String,
+     *      java.lang.String, java.io.File,
+     *      org.opencredo.cloud.storage.MultipartUploadSettings)
+     */
+    public String sendInParts(String containerName, String objectName, File fileToSend,
+            MultipartUploadSettings settings) {
+        return send(containerName, objectName, fileToSend);
+    }
+
+    /**
+     * @param objectName
+     * @param is
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#send(java.lang.String,
+     *      java.io.InputStream)
+     */
+    public String send(String objectName, InputStream is) {
+        return send(defaultContainerName, objectName, is);
+    }
+
+    /**
+     * Stream is read to its end, but not closed.
+     * 
+     * @param containerName
+     * @param objectName
+     * @param is
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#send(java.lang.String,
+     *      java.lang.String, java.io.InputStream)
+     */
+    public String send(String containerName, String objectName, InputStream is) {
+        Assert.hasText(objectName, OBJECT_NAME_MUST_BE_SET);
+        Assert.notNull(is, "Input stream to send must be specified");
+        LOG.debug("Send input-stream to container '{}' with name '{}'", containerName, objectName);
+        ContainerStore store = getStore(containerName);
+        try {
+            store.put(objectName, is);
+        } catch (IOException e) {
+            throw new StorageCommunicationException(e,
+                    "Local storage request 'send input stream' has failed [container: '%s', object: '%s']",
+                    containerName, objectName);
+        }
+        return objectName;
+    }
+
+    /**
+     * Written data is spooled to temporary file in container directory and
+     * appended to container segment when stream is closed, as record size must
+     * be known before it is appended.
+     * 
+     * @param containerName
+     * @param objectName
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#openForWrite(java.lang.String,
+     *      java.lang.String)
+     */
+    public OutputStream openForWrite(final String containerName, final String objectName) {
+        Assert.hasText(objectName, OBJECT_NAME_MUST_BE_SET);
+        final ContainerStore store = getStore(containerName);
+        try {
+            return new FileSpoolingOutputStream(store.getDirectory()) {
+                @Override
+                protected void upload(File file) throws IOException {
+                    LOG.debug("Store written data to container '{}' with name '{}'", containerName, objectName);
+                    store.put(objectName, file);
+                }
+            };
+        } catch (IOException e) {
+            throw new StorageCommunicationException(e,
+                    "Local storage request 'open for write' has failed [container: '%s', object: '%s']",
+                    containerName, objectName);
+        }
+    }
+
+    /**
+     * @param objectName
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#receiveAsString(java.lang.String)
+     */
+    public String receiveAsString(String objectName) {
+        return receiveAsString(defaultContainerName, objectName);
+    }
+
+    /**
+     * @param containerName
+     * @param objectName
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#receiveAsString(java.lang.String,
+     *      java.lang.String)
+     */
+    public String receiveAsString(String containerName, String objectName) {
+        LOG.debug("Receive string from container '{}' with name '{}'", containerName, objectName);
+        ContainerStore store = getStore(containerName);
+        try {
+            return UTF_8.decode(store.read(getEntry(store, containerName, objectName))).toString();
+        } catch (IOException e) {
+            throw new StorageCommunicationException(e,
+                    "Local storage request 'receive as string' has failed [container: '%s', object: '%s']",
+                    containerName, objectName);
+        }
+    }
+
+    /**
+     * @param objectName
+     * @param toFile
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#receiveAndSaveToFile(java.lang.String,
+     *      java.io.File)
+     */
+    public String receiveAndSaveToFile(String objectName, File toFile) {
+        return receiveAndSaveToFile(defaultContainerName, objectName, toFile);
+    }
+
+    /**
+     * Blob is written to file from mapped segment directly, blob kept in file
+     * of its own is copied.
+     * 
+     * @param containerName
+     * @param objectName
+     * @param toFile
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#receiveAndSaveToFile(java.lang.String,
+     *      java.lang.String, java.io.File)
+     */
+    public String receiveAndSaveToFile(String containerName, String objectName, File toFile) {
+        Assert.notNull(toFile, "File to save received data must be specified");
+        LOG.debug("Receive blob '{}' from container '{}' and save it to file '{}'", new Object[] { objectName,
+                containerName, toFile.getAbsolutePath() });
+        ContainerStore store = getStore(containerName);
+        BlobEntry entry = getEntry(store, containerName, objectName);
+
+        try {
+            StorageUtils.createParentDirs(toFile);
+            if (entry.getFile() != null) {
+                StorageUtils.writeFileToFile(entry.getFile(), toFile);
+                return toFile.getAbsolutePath();
+            }
+            ByteBuffer data = store.read(entry);
+            FileOutputStream os = new FileOutputStream(toFile);
+            try {
+                FileChannel channel = os.getChannel();
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            } finally {
+                os.close();
+            }
+        } catch (IOException e) {
+            throw new StorageResponseHandlingException(e,
+                    "Saving container '%s' blob '%s' to file '%s' IO problem", containerName, objectName, toFile
+                            .getAbsolutePath());
+        }
+        return toFile.getAbsolutePath();
+    }
+
+    /**
+     * Blob is read from mapped segment, so there is nothing to receive in
+     * parts.
+     * 
+     * @param containerName
+     * @param objectName
+     * @param toFile
+     * @param settings
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#receiveInParts(java.lang.String,
+     *      java.lang.String, java.io.File,
+     *      org.opencredo.cloud.storage.MultipartDownloadSettings)
+     */
+    public String receiveInParts(String containerName, String objectName, File toFile,
+            MultipartDownloadSettings settings) {
+        return receiveAndSaveToFile(containerName, objectName, toFile);
+    }
+
+    /**
+     * @param objectName
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#receiveAsInputStream(java.lang.String)
+     */
+    public InputStream receiveAsInputStream(String objectName) {
+        return receiveAsInputStream(defaultContainerName, objectName);
+    }
+
+    /**
+     * Stream of blob stored in segment reads mapped memory and needs no
+     * closing, stream of blob kept in file of its own has to be closed.
+     * 
+     * @param containerName
+     * @param objectName
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#receiveAsInputStream(java.lang.String,
+     *      java.lang.String)
+     */
+    public InputStream receiveAsInputStream(String containerName, String objectName) {
+        LOG.debug("Receive input-stream from container '{}' with name '{}'", containerName, objectName);
+        ContainerStore store = getStore(containerName);
+        return openStream(store, containerName, objectName, getEntry(store, containerName, objectName));
+    }
+
+    /**
+     * @param containerName
+     * @param objectName
+     * @param eTag
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#receiveIfNoneMatch(java.lang.String,
+     *      java.lang.String, java.lang.String)
+     */
+    public BlobContent receiveIfNoneMatch(String containerName, String objectName, String eTag) {
+        LOG.debug("Receive blob '{}' from container '{}' if none match '{}'", new Object[] { objectName,
+                containerName, eTag });
+        ContainerStore store = getStore(containerName);
+        BlobEntry entry = getEntry(store, containerName, objectName);
+        if (entry.getETag().equals(eTag)) {
+            return null;
+        }
+        return new BlobContent(toBlobDetails(containerName, objectName, entry), openStream(store, containerName,
+                objectName, entry));
+    }
+
+    /**
+     * @param containerName
+     * @param objectName
+     * @param conditions
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#receive(java.lang.String,
+     *      java.lang.String, org.opencredo.cloud.storage.BlobConditions)
+     */
+    public BlobContent receive(String containerName, String objectName, BlobConditions conditions) {
+        Assert.notNull(conditions, "Conditions must be specified");
+        LOG.debug("Receive blob '{}' from container '{}' with conditions {}", new Object[] { objectName,
+                containerName, conditions });
+        ContainerStore store = getStore(containerName);
+        BlobEntry entry = getEntry(store, containerName, objectName);
+        BlobDetails details = toBlobDetails(containerName, objectName, entry);
+        if (conditions.isPreconditionFailed(details)) {
+            throw new StorageObjectModifiedException(
+                    "Blob does not meet receive conditions %s [container: '%s', object: '%s']", conditions,
+                    containerName, objectName);
+        }
+        if (conditions.isNotModified(details)) {
+            return null;
+        }
+        return new BlobContent(details, openStream(store, containerName, objectName, entry));
+    }
+
+    /**
+     * Details are read from container index, blob data is not accessed.
+     * 
+     * @param containerName
+     * @param objectName
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#getBlobDetails(java.lang.String,
+     *      java.lang.String)
+     */
+    public BlobDetails getBlobDetails(String containerName, String objectName) {
+        Assert.hasText(objectName, OBJECT_NAME_MUST_BE_SET);
+        BlobEntry entry = getStore(containerName).get(objectName);
+        return entry == null ? null : toBlobDetails(containerName, objectName, entry);
+    }
+
+    /**
+     * @param objectName
+     * @see org.opencredo.cloud.storage.StorageOperations#deleteObject(java.lang.String)
+     */
+    public void deleteObject(String objectName) {
+        deleteObject(defaultContainerName, objectName);
+    }
+
+    /**
+     * Deleting blob which does not exist has no effect.
+     * 
+     * @param containerName
+     * @param objectName
+     * @see org.opencredo.cloud.storage.StorageOperations#deleteObject(java.lang.String,
+     *      java.lang.String)
+     */
+    public void deleteObject(String containerName, String objectName) {
+        Assert.hasText(objectName, OBJECT_NAME_MUST_BE_SET);
+        LOG.debug("Delete blob '{}' in container '{}'", objectName, containerName);
+        try {
+            getStore(containerName).delete(objectName);
+        } catch (IOException e) {
+            throw new StorageCommunicationException(e,
+                    "Local storage request 'delete object' has failed [container: '%s', object: '%s']",
+                    containerName, objectName);
+        }
+    }
+
+    /**
+     * Conditions are checked and blob is deleted holding container write
+     * lock, so check and delete are atomic.
+     * 
+     * @param containerName
+     * @param objectName
+     * @param conditions
+     * @see org.opencredo.cloud.storage.StorageOperations#deleteObject(java.lang.String,
+     *      java.lang.String, org.opencredo.cloud.storage.BlobConditions)
+     */
+    public void deleteObject(String containerName, String objectName, BlobConditions conditions) {
+        Assert.hasText(objectName, OBJECT_NAME_MUST_BE_SET);
+        Assert.notNull(conditions, "Conditions must be specified");
+        LOG.debug("Delete blob '{}' in container '{}' with conditions {}", new Object[] { objectName,
+                containerName, conditions });
+        ContainerStore store = getStore(containerName);
+        try {
+            synchronized (store) {
+                checkConditions(store, containerName, objectName, conditions);
+                store.delete(objectName);
+            }
+        } catch (IOException e) {
+            throw new StorageCommunicationException(e,
+                    "Local storage request 'delete object conditionally' has failed [container: '%s', object: '%s']",
+                    containerName, objectName);
+        }
+    }
+
+    /**
+     * Blob data is appended to destination container directly from mapped
+     * source segment.
+     * 
+     * @param srcContainerName
+     * @param srcObjectName
+     * @param dstContainerName
+     * @param dstObjectName
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#copy(java.lang.String,
+     *      java.lang.String, java.lang.String, java.lang.String)
+     */
+    public String copy(String srcContainerName, String srcObjectName, String dstContainerName, String dstObjectName) {
+        Assert.hasText(dstObjectName, OBJECT_NAME_MUST_BE_SET);
+        LOG.debug("Copy blob '{}' in container '{}' to blob '{}' in container '{}'", new Object[] { srcObjectName,
+                srcContainerName, dstObjectName, dstContainerName });
+        ContainerStore srcStore = getStore(srcContainerName);
+        ContainerStore dstStore = getStore(dstContainerName);
+        BlobEntry entry = getEntry(srcStore, srcContainerName, srcObjectName);
+        try {
+            if (entry.getFile() != null) {
+                dstStore.put(dstObjectName, entry.getFile());
+            } else {
+                dstStore.put(dstObjectName, srcStore.read(entry));
+            }
+        } catch (IOException e) {
+            throw new StorageCommunicationException(e,
+                    "Local storage request 'copy' has failed [container: '%s', object: '%s', destination container: '%s', destination object: '%s']",
+                    srcContainerName, srcObjectName, dstContainerName, dstObjectName);
+        }
+        return dstObjectName;
+    }
+
+    /**
+     * Blob is copied as by {@link #copy(String, String, String, String)} and
+     * source blob is deleted.
+     * 
+     * @param srcContainerName
+     * @param srcObjectName
+     * @param dstContainerName
+     * @param dstObjectName
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#move(java.lang.String,
+     *      java.lang.String, java.lang.String, java.lang.String)
+     */
+    public String move(String srcContainerName, String srcObjectName, String dstContainerName, String dstObjectName) {
+        copy(srcContainerName, srcObjectName, dstContainerName, dstObjectName);
+        deleteObject(srcContainerName, srcObjectName);
+        return dstObjectName;
+    }
+
+    // **********************************
+    // BATCH
+    // **********************************
+
+    /**
+     * @param containerName
+     * @param filesToSend
+     * @param maxConcurrency
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#sendAll(java.lang.String,
+     *      java.util.Map, int)
+     */
+    public BatchResult<String> sendAll(String containerName, Map<String, File> filesToSend, int maxConcurrency) {
+        Assert.notNull(filesToSend, "Files to send must be specified");
+        return new StorageBatchOperations(this, maxConcurrency).sendAll(containerName, filesToSend);
+    }
+
+    /**
+     * @param containerName
+     * @param objectsToReceive
+     * @param maxConcurrency
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#receiveAll(java.lang.String,
+     *      java.util.Map, int)
+     */
+    public BatchResult<String> receiveAll(String containerName, Map<String, File> objectsToReceive,
+            int maxConcurrency) {
+        Assert.notNull(objectsToReceive, "Objects to receive must be specified");
+        return new StorageBatchOperations(this, maxConcurrency).receiveAll(containerName, objectsToReceive);
+    }
+
+    /**
+     * @param containerName
+     * @param objectNames
+     * @param maxConcurrency
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#deleteAll(java.lang.String,
+     *      java.util.Collection, int)
+     */
+    public BatchResult<Void> deleteAll(String containerName, Collection<String> objectNames, int maxConcurrency) {
+        Assert.notNull(objectNames, "Object names must be specified");
+        return new StorageBatchOperations(this, maxConcurrency).deleteAll(containerName, objectNames);
+    }
+
+    /**
+     * @param srcContainerName
+     * @param srcPrefix
+     * @param dstContainerName
+     * @param dstPrefix
+     * @param maxConcurrency
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#copyAll(java.lang.String,
+     *      java.lang.String, java.lang.String, java.lang.String, int)
+     */
+    public BatchResult<String> copyAll(String srcContainerName, String srcPrefix, String dstContainerName,
+            String dstPrefix, int maxConcurrency) {
+        return new StorageBatchOperations(this, maxConcurrency).copyAll(srcContainerName, srcPrefix,
+                dstContainerName, dstPrefix);
+    }
+
+    /**
+     * Local blobs are not accessible through URL.
+     * 
+     * @see org.opencredo.cloud.storage.StorageOperations#createdSignedUrl(java.lang.String,
+     *      java.lang.String, java.util.Date)
+     */
+    public String createdSignedUrl(String containerName, String objectName, Date expiryDate) {
+        throw new StorageCommunicationException("Method not supported by local storage");
+    }
+
+    /**
+     * Compact sealed segments of opened containers which reached compaction
+     * threshold. Segments are compacted automatically when sealed or when
+     * blob stored in them is replaced, so this is needed only after
+     * compaction threshold is lowered.
+     */
+    public void compact() {
+        for (Map.Entry<String, ContainerStore> entry : stores.entrySet()) {
+            try {
+                entry.getValue().compact();
+            } catch (IOException e) {
+                throw new StorageCommunicationException(e, "Compaction of container '%s' has failed", entry
+                        .getKey());
+            }
+        }
+    }
+
+    private ContainerStore getStore(String containerName) {
+        ContainerStore store = containerName == null ? null : stores.get(containerName);
+        if (store != null) {
+            return store;
+        }
+        File directory = containerDirectory(containerName);
+        synchronized (stores) {
+            store = stores.get(containerName);
+            if (store == null) {
+                if (!directory.isDirectory()) {
+                    throw containerNotFound(containerName);
+                }
+                store = new ContainerStore(containerName, directory, settings);
+                try {
+                    store.open();
+                } catch (IOException e) {
+                    closeStore(store);
+                    throw new StorageCommunicationException(e, "Failed to open container '%s'", containerName);
+                }
+                stores.put(containerName, store);
+            }
+            return store;
+        }
+    }
+
+    private BlobEntry getEntry(ContainerStore store, String containerName, String objectName) {
+        Assert.hasText(objectName, OBJECT_NAME_MUST_BE_SET);
+        BlobEntry entry = store.get(objectName);
+        if (entry == null) {
+            throw new StorageCommunicationException(HTTP_NOT_FOUND, null,
+                    "Object not found [container: '%s', object: '%s']", containerName, objectName);
+        }
+        return entry;
+    }
+
+    /**
+     * Must be called holding store lock, for check to be atomic with the
+     * following write.
+     */
+    private static InputStream openStream(ContainerStore store, String containerName, String objectName,
+            BlobEntry entry) {
+        try {
+            return store.openStream(entry);
+        } catch (IOException e) {
+            throw new StorageCommunicationException(e,
+                    "Local storage request 'receive' has failed [container: '%s', object: '%s']", containerName,
+                    objectName);
+        }
+    }
+
+    private static void checkConditions(ContainerStore store, String containerName, String objectName,
+            BlobConditions conditions) {
+        BlobEntry entry = store.get(objectName);
+        BlobDetails current = entry == null ? null : toBlobDetails(containerName, objectName, entry);
+        if (conditions.isPreconditionFailed(current) || conditions.isNotModified(current)) {
+            throw new StorageObjectModifiedException(
+                    "Blob does not meet conditions %s [container: '%s', object: '%s']", conditions, containerName,
+                    objectName);
+        }
+    }
+
+    private File containerDirectory(String containerName) {
+        Assert.hasText(containerName, CONTAINER_NAME_MUST_BE_SET);
+        Assert.isTrue(containerName.indexOf('/') < 0 && containerName.indexOf('\\') < 0
+                && !".".equals(containerName) && !"..".equals(containerName), "Invalid container name: "
+                + containerName);
+        return new File(baseDirectory, containerName);
+    }
+
+    private StorageCommunicationException containerNotFound(String containerName) {
+        return new StorageCommunicationException(HTTP_NOT_FOUND, null, "Container not found [container: '%s']",
+                containerName);
+    }
+
+    private void closeStore(ContainerStore store) {
+        try {
+            store.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close container store", e);
+        }
+    }
+
+    private static BlobDetails toBlobDetails(String containerName, String name, BlobEntry entry) {
+        return new BlobDetails(containerName, name, entry.getETag(), new Date(entry.getLastModified()), entry
+                .getLength());
+    }
+
+    /**
+     * @return the baseDirectory
+     */
+    public File getBaseDirectory() {
+        return baseDirectory;
+    }
+
+    /**
+     * @return the settings
+     */
+    public LocalStorageSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * @param defaultContainerName
+     *            the defaultContainerName to set
+     */
+    public void setDefaultContainerName(String defaultContainerName) {
+        this.defaultContainerName = defaultContainerName;
+    }
+
+    /**
+     * @return the defaultContainerName
+     */
+    public String getDefaultContainerName() {
+        return defaultContainerName;
+    }
+}
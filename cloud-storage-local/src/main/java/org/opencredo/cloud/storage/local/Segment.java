@@ -0,0 +1,321 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Append-only segment file mapped into memory. Segment file is preallocated
+ * to its capacity, records are written into mapped buffer and read from its
+ * slices, so shared buffer position is never changed.
+ * <p>
+ * Segment file name consists of segment sequence, which orders segments of a
+ * container, and generation, which is increased each time segment is
+ * compacted.
+ * <p>
+ * Writes and counters must be guarded by owning {@link ContainerStore}, reads
+ * of published records need no locking.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+final class Segment {
+
+    static final long MAGIC = 0x4F43435353454731L;
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 16;
+
+    static final String FILE_SUFFIX = ".seg";
+
+    private static final Pattern FILE_NAME_PATTERN = Pattern.compile("([0-9a-f]{16})-([0-9a-f]{4})\\.seg");
+
+    private final long sequence;
+
+    private final int generation;
+
+    private final int capacity;
+
+    private final RandomAccessFile file;
+
+    private final MappedByteBuffer buffer;
+
+    private File path;
+
+    private int writePosition = HEADER_SIZE;
+
+    private long liveBytes;
+
+    private long garbageBytes;
+
+    private final Set<String> deadNames = new HashSet<String>();
+
+    private Segment(File path, long sequence, int generation, RandomAccessFile file, int capacity)
+            throws IOException {
+        this.path = path;
+        this.sequence = sequence;
+        this.generation = generation;
+        this.file = file;
+        this.capacity = capacity;
+        this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    /**
+     * Create segment file preallocated to given capacity.
+     * 
+     * @param path
+     * @param sequence
+     * @param generation
+     * @param capacity
+     * @return
+     * @throws IOException
+     */
+    static Segment create(File path, long sequence, int generation, int capacity) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            file.setLength(capacity);
+            Segment segment = new Segment(path, sequence, generation, file, capacity);
+            ByteBuffer header = segment.buffer.duplicate();
+            header.putLong(MAGIC).putInt(VERSION).putInt(0);
+            return segment;
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open existing segment file.
+     * 
+     * @param path
+     * @param sequence
+     * @param generation
+     * @return
+     * @throws IOException
+     *             If file is not a segment file.
+     */
+    static Segment open(File path, long sequence, int generation) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            long length = file.length();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                throw new IOException("Invalid segment file length " + length + ": " + path);
+            }
+            Segment segment = new Segment(path, sequence, generation, file, (int) length);
+            ByteBuffer header = segment.buffer.duplicate();
+            if (header.getLong() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Invalid segment file header: " + path);
+            }
+            return segment;
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param sequence
+     * @param generation
+     * @return Segment file name.
+     */
+    static String fileName(long sequence, int generation) {
+        return String.format("%016x-%04x%s", sequence, generation, FILE_SUFFIX);
+    }
+
+    /**
+     * @param fileName
+     * @return Sequence and generation parsed from segment file name, or
+     *         <code>null</code> if name is not segment file name.
+     */
+    static long[] parseFileName(String fileName) {
+        Matcher matcher = FILE_NAME_PATTERN.matcher(fileName);
+        if (!matcher.matches()) {
+            return null;
+        }
+        return new long[] { Long.parseLong(matcher.group(1), 16), Integer.parseInt(matcher.group(2), 16) };
+    }
+
+    /**
+     * Reserve space for record at the end of segment.
+     * 
+     * @param size
+     * @return Offset of reserved space.
+     */
+    int allocate(int size) {
+        int offset = writePosition;
+        writePosition += size;
+        return offset;
+    }
+
+    /**
+     * @param offset
+     * @param length
+     * @return Independent buffer of segment bytes.
+     */
+    ByteBuffer slice(int offset, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(offset + length).position(offset);
+        return slice.slice();
+    }
+
+    /**
+     * @param offset
+     * @param data
+     */
+    void write(int offset, ByteBuffer data) {
+        ByteBuffer target = buffer.duplicate();
+        target.position(offset);
+        target.put(data);
+    }
+
+    /**
+     * Read bytes from channel directly into segment.
+     * 
+     * @param offset
+     * @param length
+     * @param channel
+     * @throws IOException
+     *             If channel ends before all bytes are read.
+     */
+    void transferFrom(int offset, int length, FileChannel channel) throws IOException {
+        ByteBuffer target = slice(offset, length);
+        while (target.hasRemaining()) {
+            if (channel.read(target) < 0) {
+                throw new IOException("File ended before " + length + " bytes were read");
+            }
+        }
+    }
+
+    /**
+     * Zero segment bytes, so stale bytes of incomplete record cannot be
+     * mistaken for record written later.
+     * 
+     * @param offset
+     * @param length
+     */
+    void clear(int offset, int length) {
+        ByteBuffer target = slice(offset, length);
+        while (target.remaining() >= 8) {
+            target.putLong(0);
+        }
+        while (target.hasRemaining()) {
+            target.put((byte) 0);
+        }
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Close segment file. Mapping stays valid until buffer is garbage
+     * collected, so streams of blobs read before close can still be consumed.
+     * 
+     * @throws IOException
+     */
+    void close() throws IOException {
+        file.close();
+    }
+
+    void renameTo(File target) throws IOException {
+        if (!path.renameTo(target)) {
+            throw new IOException("Failed to rename segment file " + path + " to " + target);
+        }
+        path = target;
+    }
+
+    File getPath() {
+        return path;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    int getGeneration() {
+        return generation;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    int getWritePosition() {
+        return writePosition;
+    }
+
+    void setWritePosition(int writePosition) {
+        this.writePosition = writePosition;
+    }
+
+    int remaining() {
+        return capacity - writePosition;
+    }
+
+    long getLiveBytes() {
+        return liveBytes;
+    }
+
+    long getGarbageBytes() {
+        return garbageBytes;
+    }
+
+    void addLive(long bytes) {
+        liveBytes += bytes;
+    }
+
+    /**
+     * Account live blob record which was replaced or deleted.
+     * 
+     * @param bytes
+     * @param name
+     */
+    void release(long bytes, String name) {
+        liveBytes -= bytes;
+        garbageBytes += bytes;
+        deadNames.add(name);
+    }
+
+    /**
+     * @param name
+     * @return <code>true</code> if segment contains replaced or deleted
+     *         record of blob.
+     */
+    boolean containsDead(String name) {
+        return deadNames.contains(name);
+    }
+
+    boolean hasDead() {
+        return !deadNames.isEmpty();
+    }
+
+    void addGarbage(long bytes) {
+        garbageBytes += bytes;
+    }
+
+    @Override
+    public String toString() {
+        return path.getName();
+    }
+}
@@ -0,0 +1,392 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.local;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencredo.cloud.storage.BatchResult;
+import org.opencredo.cloud.storage.BlobConditions;
+import org.opencredo.cloud.storage.BlobContent;
+import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.BlobDetailsPage;
+import org.opencredo.cloud.storage.BlobListOptions;
+import org.opencredo.cloud.storage.ContainerStatus;
+import org.opencredo.cloud.storage.StorageCommunicationException;
+import org.opencredo.cloud.storage.StorageObjectModifiedException;
+
+/**
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class LocalStorageTemplateTest {
+
+    private static final String CONTAINER_NAME = "local-test";
+
+    private File baseDir;
+
+    private LocalStorageSettings settings;
+
+    private LocalStorageTemplate template;
+
+    @Before
+    public void setUp() {
+        baseDir = new File(System.getProperty("java.io.tmpdir"), "local-storage-test-" + System.nanoTime());
+        settings = new LocalStorageSettings();
+        settings.setSegmentSize(8192);
+        template = createTemplate();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        template.destroy();
+        FileUtils.deleteDirectory(baseDir);
+    }
+
+    @Test
+    public void testContainerLifecycle() {
+        assertEquals(ContainerStatus.MINE, template.checkContainerStatus(CONTAINER_NAME));
+        assertTrue(template.createContainer("second"));
+        assertFalse(template.createContainer("second"));
+        template.send("second", "blob", "data");
+        assertEquals(2, template.listContainerNames().size());
+
+        template.deleteContainer("second");
+        assertEquals(ContainerStatus.DOES_NOT_EXIST, template.checkContainerStatus("second"));
+        assertEquals(1, template.listContainerNames().size());
+    }
+
+    @Test
+    public void testSendAndReceive() throws IOException {
+        File file = new File(baseDir, "in.bin");
+        byte[] data = randomBytes(20000);
+        FileUtils.writeByteArrayToFile(file, data);
+
+        template.send("string", "\u0160tring data");
+        template.send(CONTAINER_NAME, "file", file);
+        template.send(CONTAINER_NAME, "stream", new ByteArrayInputStream(data));
+        OutputStream os = template.openForWrite(CONTAINER_NAME, "written");
+        os.write(data);
+        os.close();
+
+        assertEquals("\u0160tring data", template.receiveAsString("string"));
+        assertArrayEquals(data, IOUtils.toByteArray(template.receiveAsInputStream("file")));
+        assertArrayEquals(data, IOUtils.toByteArray(template.receiveAsInputStream("written")));
+        File out = new File(baseDir, "out/stream.bin");
+        assertEquals(out.getAbsolutePath(), template.receiveAndSaveToFile("stream", out));
+        assertArrayEquals(data, FileUtils.readFileToByteArray(out));
+
+        BlobContent content = template.receiveIfNoneMatch(CONTAINER_NAME, "file", null);
+        assertEquals(data.length, content.getDetails().getContentLength());
+        assertNull(template.receiveIfNoneMatch(CONTAINER_NAME, "stream", content.getDetails().getETag()));
+    }
+
+    @Test(expected = StorageCommunicationException.class)
+    public void testReceiveMissingObject() {
+        template.receiveAsString("missing");
+    }
+
+    @Test
+    public void testConditionalOperations() throws IOException {
+        assertNull(template.getBlobDetails(CONTAINER_NAME, "blob"));
+
+        BlobConditions createOnly = new BlobConditions();
+        createOnly.setIfNoneMatch(BlobConditions.ANY_ETAG);
+        template.send(CONTAINER_NAME, "blob", "v1", createOnly);
+        try {
+            template.send(CONTAINER_NAME, "blob", "v2", createOnly);
+            fail("Existing blob should not be overwritten");
+        } catch (StorageObjectModifiedException e) {
+            // expected
+        }
+
+        BlobDetails details = template.getBlobDetails(CONTAINER_NAME, "blob");
+        assertEquals(2, details.getContentLength());
+
+        BlobConditions notModified = new BlobConditions();
+        notModified.setIfNoneMatch(details.getETag());
+        assertNull(template.receive(CONTAINER_NAME, "blob", notModified));
+
+        BlobConditions matching = new BlobConditions();
+        matching.setIfMatch(details.getETag());
+        BlobContent content = template.receive(CONTAINER_NAME, "blob", matching);
+        assertEquals("v1", IOUtils.toString(content.getData()));
+
+        template.send(CONTAINER_NAME, "blob", "v2", matching);
+        try {
+            template.deleteObject(CONTAINER_NAME, "blob", matching);
+            fail("Blob modified after ETag was received should not be deleted");
+        } catch (StorageObjectModifiedException e) {
+            // expected
+        }
+        assertEquals("v2", template.receiveAsString(CONTAINER_NAME, "blob"));
+    }
+
+    @Test
+    public void testCopyAndMove() {
+        template.createContainer("archive");
+        template.send(CONTAINER_NAME, "in/a", "a");
+        template.send(CONTAINER_NAME, "in/b", "b");
+        template.send(CONTAINER_NAME, "other", "other");
+
+        template.copy(CONTAINER_NAME, "other", CONTAINER_NAME, "other-copy");
+        assertEquals("other", template.receiveAsString(CONTAINER_NAME, "other-copy"));
+        assertEquals(template.getBlobDetails(CONTAINER_NAME, "other").getETag(), template.getBlobDetails(
+                CONTAINER_NAME, "other-copy").getETag());
+
+        template.move(CONTAINER_NAME, "other", "archive", "moved");
+        assertNull(template.getBlobDetails(CONTAINER_NAME, "other"));
+        assertEquals("other", template.receiveAsString("archive", "moved"));
+
+        BatchResult<String> result = template.copyAll(CONTAINER_NAME, "in/", "archive", "", 2);
+        assertTrue(result.isSuccessful());
+        assertEquals("a", template.receiveAsString("archive", "a"));
+        assertEquals("b", template.receiveAsString("archive", "b"));
+    }
+
+    @Test
+    public void testOverwriteAndDeleteCompactSegments() {
+        Random random = new Random(1);
+        String[] values = new String[10];
+        for (int i = 0; i < 500; i++) {
+            int blob = random.nextInt(values.length);
+            values[blob] = "value-" + i + "-" + new String(new char[random.nextInt(1000)]).replace('\0', 'x');
+            template.send("blob-" + blob, values[blob]);
+            if (i % 7 == 0) {
+                template.deleteObject("blob-" + ((blob + 1) % values.length));
+                values[(blob + 1) % values.length] = null;
+            }
+        }
+
+        // Live data fits into few segments, garbage must have been compacted
+        assertTrue(segmentFiles().length < 10);
+        assertContents(values);
+
+        template.destroy();
+        template = createTemplate();
+        assertContents(values);
+    }
+
+    @Test
+    public void testReopenRecoversIndex() {
+        template.send("a", "first");
+        template.send("b", "second");
+        template.send("a", "third");
+        template.deleteObject("b");
+        template.destroy();
+
+        template = createTemplate();
+        assertEquals("third", template.receiveAsString("a"));
+        assertEquals(1, template.listContainerObjectDetails().size());
+    }
+
+    @Test
+    public void testIncompleteRecordDiscardedOnReopen() throws IOException {
+        template.send("complete", "complete data");
+        template.send("torn", "torn data");
+        template.destroy();
+
+        // Flip last data byte of torn record, as if it was not written
+        File segment = segmentFiles()[0];
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            long position = findLastDataByte(file);
+            file.seek(position);
+            file.write('X');
+        } finally {
+            file.close();
+        }
+
+        template = createTemplate();
+        assertEquals("complete data", template.receiveAsString("complete"));
+        assertEquals(1, template.listContainerObjectDetails().size());
+
+        template.send("after", "after data");
+        template.destroy();
+        template = createTemplate();
+        assertEquals("after data", template.receiveAsString("after"));
+        assertEquals(2, template.listContainerObjectDetails().size());
+    }
+
+    @Test
+    public void testBlobLargerThanSegmentStoredInFile() throws IOException {
+        byte[] data = randomBytes(20000);
+        template.send(CONTAINER_NAME, "large", new ByteArrayInputStream(data));
+        template.copy(CONTAINER_NAME, "large", CONTAINER_NAME, "large-copy");
+
+        assertEquals(2, blobFiles().length);
+        for (File segment : segmentFiles()) {
+            assertEquals(8192, segment.length());
+        }
+        assertEquals(data.length, template.getBlobDetails(CONTAINER_NAME, "large").getContentLength());
+        assertEquals(template.getBlobDetails(CONTAINER_NAME, "large").getETag(), template.getBlobDetails(
+                CONTAINER_NAME, "large-copy").getETag());
+
+        template.destroy();
+        template = createTemplate();
+        InputStream is = template.receiveAsInputStream("large");
+        try {
+            assertArrayEquals(data, IOUtils.toByteArray(is));
+        } finally {
+            is.close();
+        }
+        assertArrayEquals(data, FileUtils.readFileToByteArray(new File(template.receiveAndSaveToFile("large-copy",
+                new File(baseDir, "out.bin")))));
+
+        template.send("large", "small");
+        template.deleteObject("large-copy");
+        assertEquals(0, blobFiles().length);
+        assertEquals("small", template.receiveAsString("large"));
+    }
+
+    @Test
+    public void testMissingBlobFileDiscardedOnReopen() throws IOException {
+        template.send(CONTAINER_NAME, "large", new ByteArrayInputStream(randomBytes(20000)));
+        template.send(CONTAINER_NAME, "lost", new ByteArrayInputStream(randomBytes(30000)));
+        template.destroy();
+
+        File lost = null;
+        for (File file : blobFiles()) {
+            if (file.length() == 30000) {
+                lost = file;
+            }
+        }
+        assertTrue(lost.delete());
+        File orphan = new File(new File(baseDir, CONTAINER_NAME), "00000000000000ff.blob");
+        FileUtils.writeByteArrayToFile(orphan, randomBytes(100));
+
+        template = createTemplate();
+        assertNull(template.getBlobDetails(CONTAINER_NAME, "lost"));
+        assertEquals(1, template.listContainerObjectDetails().size());
+        assertFalse(orphan.exists());
+
+        template.send(CONTAINER_NAME, "new", new ByteArrayInputStream(randomBytes(40000)));
+        template.destroy();
+        template = createTemplate();
+        assertNull(template.getBlobDetails(CONTAINER_NAME, "lost"));
+        assertArrayEquals(randomBytes(20000), IOUtils.toByteArray(template.receiveAsInputStream("large")));
+        assertEquals(40000, template.getBlobDetails(CONTAINER_NAME, "new").getContentLength());
+    }
+
+    @Test
+    public void testListPages() {
+        for (String name : new String[] { "a/1", "a/2", "b", "c/1", "c/2/x", "d" }) {
+            template.send(name, name);
+        }
+
+        BlobListOptions options = new BlobListOptions();
+        options.setDelimiter("/");
+        options.setPageSize(2);
+        List<String> items = new ArrayList<String>();
+        String marker = null;
+        int pages = 0;
+        do {
+            BlobDetailsPage page = template.listContainerObjectDetailsPage(CONTAINER_NAME, options, marker);
+            items.addAll(page.getCommonPrefixes());
+            for (BlobDetails details : page.getBlobDetails()) {
+                items.add(details.getName());
+            }
+            marker = page.getNextMarker();
+            pages++;
+        } while (marker != null);
+        assertEquals(2, pages);
+        assertEquals(4, items.size());
+        assertTrue(items.containsAll(Arrays.asList("a/", "b", "c/", "d")));
+
+        options = new BlobListOptions();
+        options.setPrefix("c/");
+        Iterator<BlobDetails> iterator = template.iterateContainerObjectDetails(CONTAINER_NAME, options);
+        assertEquals("c/1", iterator.next().getName());
+        BlobDetails details = iterator.next();
+        assertEquals("c/2/x", details.getName());
+        assertEquals(5, details.getContentLength());
+        assertNotNull(details.getETag());
+        assertFalse(iterator.hasNext());
+    }
+
+    private LocalStorageTemplate createTemplate() {
+        LocalStorageTemplate localTemplate = new LocalStorageTemplate(baseDir, CONTAINER_NAME, settings);
+        localTemplate.afterPropertiesSet();
+        return localTemplate;
+    }
+
+    private void assertContents(String[] values) {
+        int count = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                assertEquals(values[i], template.receiveAsString("blob-" + i));
+                count++;
+            }
+        }
+        assertEquals(count, template.listContainerObjectDetails().size());
+    }
+
+    private File[] segmentFiles() {
+        return new File(baseDir, CONTAINER_NAME).listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".seg");
+            }
+        });
+    }
+
+    private File[] blobFiles() {
+        return new File(baseDir, CONTAINER_NAME).listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".blob");
+            }
+        });
+    }
+
+    private static long findLastDataByte(RandomAccessFile file) throws IOException {
+        long position = file.length() - 1;
+        file.seek(position);
+        while (position > 0) {
+            file.seek(position);
+            if (file.read() != 0) {
+                return position;
+            }
+            position--;
+        }
+        throw new IllegalStateException("Segment is empty");
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
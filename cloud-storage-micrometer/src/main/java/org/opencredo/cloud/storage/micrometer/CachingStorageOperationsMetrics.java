@@ -0,0 +1,92 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.micrometer;
+
+import java.util.Collections;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import org.apache.commons.lang.Validate;
+import org.opencredo.cloud.storage.CachingStorageOperations;
+
+/**
+ * Binds hit, miss, revalidation and eviction counts and cache sizes of
+ * {@link CachingStorageOperations} to Micrometer {@link MeterRegistry}.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class CachingStorageOperationsMetrics implements MeterBinder {
+
+    private final CachingStorageOperations operations;
+
+    private final Tags tags;
+
+    /**
+     * @param operations
+     */
+    public CachingStorageOperationsMetrics(CachingStorageOperations operations) {
+        this(operations, Collections.<Tag> emptyList());
+    }
+
+    /**
+     * @param operations
+     * @param tags
+     */
+    public CachingStorageOperationsMetrics(CachingStorageOperations operations, Iterable<Tag> tags) {
+        super();
+        Validate.notNull(operations, "Caching storage operations must be set");
+        Validate.notNull(tags, "Tags must be set");
+        this.operations = operations;
+        this.tags = Tags.of(tags);
+    }
+
+    /**
+     * @param registry
+     * @see io.micrometer.core.instrument.binder.MeterBinder#bindTo(io.micrometer.core.instrument.MeterRegistry)
+     */
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cloud.storage.cache.requests", operations, CachingStorageOperations::getHitCount)//
+                .tags(tags.and("result", "hit"))//
+                .description("Receive operations served from cache")//
+                .register(registry);
+        FunctionCounter.builder("cloud.storage.cache.requests", operations, CachingStorageOperations::getMissCount)//
+                .tags(tags.and("result", "miss"))//
+                .description("Receive operations which transferred object content")//
+                .register(registry);
+        FunctionCounter.builder("cloud.storage.cache.revalidations", operations,
+                CachingStorageOperations::getRevalidationCount)//
+                .tags(tags)//
+                .description("Conditional requests sent to revalidate cached objects")//
+                .register(registry);
+        FunctionCounter.builder("cloud.storage.cache.evictions", operations,
+                CachingStorageOperations::getEvictionCount)//
+                .tags(tags)//
+                .description("Objects evicted because cache size limit has been exceeded")//
+                .register(registry);
+        Gauge.builder("cloud.storage.cache.size", operations, CachingStorageOperations::getMemorySize)//
+                .tags(tags.and("tier", "memory"))//
+                .baseUnit("bytes")//
+                .register(registry);
+        Gauge.builder("cloud.storage.cache.size", operations, CachingStorageOperations::getDiskSize)//
+                .tags(tags.and("tier", "disk"))//
+                .baseUnit("bytes")//
+                .register(registry);
+    }
+}
@@ -0,0 +1,107 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.micrometer;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import org.apache.commons.lang.Validate;
+import org.opencredo.cloud.storage.StorageCommunicationException;
+import org.opencredo.cloud.storage.StorageOperationEvent;
+import org.opencredo.cloud.storage.StorageOperationListener;
+
+/**
+ * {@link StorageOperationListener} recording operation timers and payload size
+ * distributions in Micrometer {@link MeterRegistry}. Meters are tagged with
+ * operation name, outcome and HTTP status code of failed request, so latency
+ * percentiles and error rates can be observed per operation and status code.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class MicrometerStorageOperationListener implements StorageOperationListener {
+
+    public static final String OPERATIONS_METER_NAME = "cloud.storage.operations";
+
+    public static final String PAYLOAD_METER_NAME = "cloud.storage.payload";
+
+    public static final String UNKNOWN_STATUS = "none";
+
+    private final MeterRegistry registry;
+
+    private final Tags tags;
+
+    /**
+     * @param registry
+     */
+    public MicrometerStorageOperationListener(MeterRegistry registry) {
+        this(registry, Collections.<Tag> emptyList());
+    }
+
+    /**
+     * @param registry
+     * @param tags
+     *            Tags added to all meters, e.g. cloud storage provider or
+     *            account name.
+     */
+    public MicrometerStorageOperationListener(MeterRegistry registry, Iterable<Tag> tags) {
+        super();
+        Validate.notNull(registry, "Meter registry must be set");
+        Validate.notNull(tags, "Tags must be set");
+        this.registry = registry;
+        this.tags = Tags.of(tags);
+    }
+
+    /**
+     * @param event
+     * @see org.opencredo.cloud.storage.StorageOperationListener#operationCompleted(org.opencredo.cloud.storage.StorageOperationEvent)
+     */
+    public void operationCompleted(StorageOperationEvent event) {
+        Tags operationTags = tags.and("operation", event.getOperation());
+
+        Timer.builder(OPERATIONS_METER_NAME)//
+                .tags(operationTags)//
+                .tag("outcome", event.getOutcome().name())//
+                .tag("status", status(event.getStatusCode()))//
+                .publishPercentileHistogram()//
+                .register(registry)//
+                .record(event.getDuration(), TimeUnit.NANOSECONDS);
+
+        if (event.getBytesSent() > 0) {
+            payloadSummary(operationTags, "sent").record(event.getBytesSent());
+        }
+        if (event.getBytesReceived() > 0) {
+            payloadSummary(operationTags, "received").record(event.getBytesReceived());
+        }
+    }
+
+    private DistributionSummary payloadSummary(Tags operationTags, String direction) {
+        return DistributionSummary.builder(PAYLOAD_METER_NAME)//
+                .tags(operationTags)//
+                .tag("direction", direction)//
+                .baseUnit("bytes")//
+                .register(registry);
+    }
+
+    private static String status(int statusCode) {
+        return statusCode == StorageCommunicationException.UNKNOWN_STATUS_CODE ? UNKNOWN_STATUS : String
+                .valueOf(statusCode);
+    }
+}
@@ -0,0 +1,76 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.micrometer;
+
+import java.util.Collections;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import org.apache.commons.lang.Validate;
+import org.opencredo.cloud.storage.RetryingStorageOperations;
+
+/**
+ * Binds attempt, retry and give up counts of
+ * {@link RetryingStorageOperations} to Micrometer {@link MeterRegistry}.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class RetryingStorageOperationsMetrics implements MeterBinder {
+
+    private final RetryingStorageOperations operations;
+
+    private final Iterable<Tag> tags;
+
+    /**
+     * @param operations
+     */
+    public RetryingStorageOperationsMetrics(RetryingStorageOperations operations) {
+        this(operations, Collections.<Tag> emptyList());
+    }
+
+    /**
+     * @param operations
+     * @param tags
+     */
+    public RetryingStorageOperationsMetrics(RetryingStorageOperations operations, Iterable<Tag> tags) {
+        super();
+        Validate.notNull(operations, "Retrying storage operations must be set");
+        Validate.notNull(tags, "Tags must be set");
+        this.operations = operations;
+        this.tags = tags;
+    }
+
+    /**
+     * @param registry
+     * @see io.micrometer.core.instrument.binder.MeterBinder#bindTo(io.micrometer.core.instrument.MeterRegistry)
+     */
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cloud.storage.attempts", operations, RetryingStorageOperations::getAttemptCount)//
+                .tags(tags)//
+                .description("Attempts to execute cloud storage operations")//
+                .register(registry);
+        FunctionCounter.builder("cloud.storage.retries", operations, RetryingStorageOperations::getRetryCount)//
+                .tags(tags)//
+                .description("Failed attempts which were repeated")//
+                .register(registry);
+        FunctionCounter.builder("cloud.storage.give.ups", operations, RetryingStorageOperations::getGiveUpCount)//
+                .tags(tags)//
+                .description("Operations which failed after their last attempt")//
+                .register(registry);
+    }
+}
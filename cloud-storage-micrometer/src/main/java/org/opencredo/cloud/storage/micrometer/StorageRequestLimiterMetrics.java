@@ -0,0 +1,91 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.micrometer;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import org.apache.commons.lang.Validate;
+import org.opencredo.cloud.storage.StorageRequestLimiter;
+
+/**
+ * Binds account level wait time, throttled request count, available permits
+ * and current rate of {@link StorageRequestLimiter} to Micrometer
+ * {@link MeterRegistry}. Unlimited permits and rate are reported as
+ * {@link Double#NaN}.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class StorageRequestLimiterMetrics implements MeterBinder {
+
+    private final StorageRequestLimiter limiter;
+
+    private final Iterable<Tag> tags;
+
+    /**
+     * @param limiter
+     */
+    public StorageRequestLimiterMetrics(StorageRequestLimiter limiter) {
+        this(limiter, Collections.<Tag> emptyList());
+    }
+
+    /**
+     * @param limiter
+     * @param tags
+     */
+    public StorageRequestLimiterMetrics(StorageRequestLimiter limiter, Iterable<Tag> tags) {
+        super();
+        Validate.notNull(limiter, "Request limiter must be set");
+        Validate.notNull(tags, "Tags must be set");
+        this.limiter = limiter;
+        this.tags = tags;
+    }
+
+    /**
+     * @param registry
+     * @see io.micrometer.core.instrument.binder.MeterBinder#bindTo(io.micrometer.core.instrument.MeterRegistry)
+     */
+    public void bindTo(MeterRegistry registry) {
+        FunctionTimer.builder("cloud.storage.limiter.wait", limiter, StorageRequestLimiter::getAcquiredCount,
+                StorageRequestLimiter::getTotalWaitTime, TimeUnit.MILLISECONDS)//
+                .tags(tags)//
+                .description("Time requests waited to be acquired")//
+                .register(registry);
+        FunctionCounter.builder("cloud.storage.limiter.throttled", limiter,
+                StorageRequestLimiter::getThrottledCount)//
+                .tags(tags)//
+                .description("Requests throttled by cloud storage")//
+                .register(registry);
+        Gauge.builder("cloud.storage.limiter.permits", limiter, l -> limited(l.getAvailablePermits()))//
+                .tags(tags)//
+                .description("Available request permits")//
+                .register(registry);
+        Gauge.builder("cloud.storage.limiter.rate", limiter, l -> limited(l.getCurrentRate()))//
+                .tags(tags)//
+                .description("Current request rate per second")//
+                .register(registry);
+    }
+
+    private static double limited(double value) {
+        return value == Integer.MAX_VALUE || Double.isInfinite(value) ? Double.NaN : value;
+    }
+}
@@ -0,0 +1,72 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.micrometer;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencredo.cloud.storage.StorageCommunicationException;
+import org.opencredo.cloud.storage.StorageOperationEvent;
+
+/**
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ * 
+ */
+public class MicrometerStorageOperationListenerTest {
+
+    private MeterRegistry registry;
+
+    private MicrometerStorageOperationListener listener;
+
+    @Before
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+        listener = new MicrometerStorageOperationListener(registry);
+    }
+
+    @Test
+    public void testSuccessfulOperationCompleted() {
+        listener.operationCompleted(new StorageOperationEvent("send", "container", "blob", TimeUnit.MILLISECONDS
+                .toNanos(5), 1024, 0, null));
+
+        assertEquals(1, registry.get(MicrometerStorageOperationListener.OPERATIONS_METER_NAME)//
+                .tags("operation", "send", "outcome", "SUCCESS", "status", "none")//
+                .timer().count());
+        assertEquals(5, registry.get(MicrometerStorageOperationListener.OPERATIONS_METER_NAME)//
+                .tag("operation", "send")//
+                .timer().totalTime(TimeUnit.MILLISECONDS), 0.001);
+        assertEquals(1024, registry.get(MicrometerStorageOperationListener.PAYLOAD_METER_NAME)//
+                .tags("operation", "send", "direction", "sent")//
+                .summary().totalAmount(), 0.001);
+    }
+
+    @Test
+    public void testFailedOperationCompleted() {
+        StorageCommunicationException failure = new StorageCommunicationException(503, "Server busy", null);
+        listener.operationCompleted(new StorageOperationEvent("deleteObject", "container", "blob", 1000, 0, 0,
+                failure));
+
+        assertEquals(1, registry.get(MicrometerStorageOperationListener.OPERATIONS_METER_NAME)//
+                .tags("operation", "deleteObject", "outcome", "SERVER_ERROR", "status", "503")//
+                .timer().count());
+        assertNull(registry.find(MicrometerStorageOperationListener.PAYLOAD_METER_NAME).summary());
+    }
+}
@@ -15,18 +15,34 @@
 
 package org.opencredo.cloud.storage.s3;
 
+import com.google.inject.Module;
+import org.apache.commons.io.IOUtils;
 import org.jclouds.blobstore.BlobStore;
 import org.jclouds.blobstore.BlobStoreContext;
 import org.jclouds.blobstore.BlobStoreContextFactory;
 import org.jclouds.blobstore.domain.Blob;
 import org.jclouds.blobstore.domain.BlobBuilder;
+import org.jclouds.blobstore.domain.BlobMetadata;
 import org.jclouds.blobstore.domain.PageSet;
 import org.jclouds.blobstore.domain.StorageMetadata;
+import org.jclouds.blobstore.domain.StorageType;
+import org.jclouds.blobstore.options.GetOptions;
+import org.jclouds.blobstore.options.ListContainerOptions;
+import org.jclouds.http.HttpResponseException;
 import org.jclouds.io.Payload;
+import org.opencredo.cloud.storage.BlobConditions;
+import org.opencredo.cloud.storage.BlobContent;
 import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.BlobDetailsPage;
+import org.opencredo.cloud.storage.BlobListOptions;
 import org.opencredo.cloud.storage.ContainerStatus;
+import org.opencredo.cloud.storage.FileSpoolingOutputStream;
+import org.opencredo.cloud.storage.MultipartDownloadSettings;
+import org.opencredo.cloud.storage.MultipartUploadSettings;
+import org.opencredo.cloud.storage.PagedBlobDetailsIterator;
 import org.opencredo.cloud.storage.StorageCommunicationException;
 import org.opencredo.cloud.storage.StorageException;
+import org.opencredo.cloud.storage.StorageObjectModifiedException;
 import org.opencredo.cloud.storage.StorageResponseHandlingException;
 import org.opencredo.cloud.storage.StorageUtils;
 import org.springframework.util.Assert;
@@ -34,9 +50,13 @@ import org.springframework.util.Assert;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Properties;
 
 /**
  * Main class encapsulating invocations to jclouds
@@ -45,7 +65,11 @@ import java.util.List;
  */
 public class JCloudS3Template extends S3Template {
     private static final String AWS_S3 = "aws-s3";
+    private static final String PROPERTY_S3_VIRTUAL_HOST_BUCKETS = "jclouds.s3.virtual-host-buckets";
     private static final String BLOB_NAME_MUST_BE_SET = "Blob name must be set";
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static final int HTTP_NOT_FOUND = 404;
+    private static final int HTTP_PRECONDITION_FAILED = 412;
     private static final String SEND_STRING_TO_BUCKET_WITH_KEY = "Send string to bucket '{}' with key '{}'";
     private static final String SEND_INPUT_STREAM_TO_BUCKET_WITH_KEY = "Send input-stream to bucket '{}' with key '{}'";
 
@@ -72,6 +96,26 @@ public class JCloudS3Template extends S3Template {
 
     }
 
+    /**
+     * Constructor for S3 compatible service on custom endpoint (e.g. local
+     * emulator), buckets are addressed path-style.
+     *
+     * @param awsCredentials
+     * @param defaultContainerName
+     * @param endpoint             Service URL, e.g. <code>http://localhost:8080</code>.
+     * @throws StorageException
+     */
+    public JCloudS3Template(final AwsCredentials awsCredentials, final String defaultContainerName,
+                            final String endpoint) {
+        super(defaultContainerName);
+        Assert.hasText(endpoint, "Endpoint must be set");
+        Properties overrides = new Properties();
+        overrides.setProperty(AWS_S3 + ".endpoint", endpoint);
+        overrides.setProperty(PROPERTY_S3_VIRTUAL_HOST_BUCKETS, "false");
+        context = new BlobStoreContextFactory().createContext(AWS_S3, awsCredentials.getAccessKey(),
+                awsCredentials.getSecretAccessKey(), Collections.<Module>emptySet(), overrides);
+    }
+
     // **********************************
     // CONFIGURATION
     // **********************************
@@ -135,6 +179,62 @@ public class JCloudS3Template extends S3Template {
 
     }
 
+    /**
+     * Conditions are checked with object metadata request preceding the
+     * delete, see {@link #checkConditions(String, String, BlobConditions)}.
+     *
+     * @param containerName
+     * @param objectName
+     * @param conditions
+     * @see org.opencredo.cloud.storage.StorageOperations#deleteObject(java.lang.String,
+     *      java.lang.String, org.opencredo.cloud.storage.BlobConditions)
+     */
+    public void deleteObject(String containerName, String objectName, BlobConditions conditions) {
+        checkConditions(containerName, objectName, conditions);
+        deleteObject(containerName, objectName);
+    }
+
+    /**
+     * jclouds blob store API has no server side copy, object content is
+     * streamed from source object to its copy through this template.
+     *
+     * @param srcContainerName
+     * @param srcObjectName
+     * @param dstContainerName
+     * @param dstObjectName
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#copy(java.lang.String,
+     *      java.lang.String, java.lang.String, java.lang.String)
+     */
+    public String copy(String srcContainerName, String srcObjectName, String dstContainerName, String dstObjectName) {
+        Assert.notNull(srcContainerName, BUCKET_NAME_CANNOT_BE_NULL);
+        Assert.notNull(dstContainerName, BUCKET_NAME_CANNOT_BE_NULL);
+        Assert.hasText(srcObjectName, BLOB_NAME_MUST_BE_SET);
+        Assert.hasText(dstObjectName, BLOB_NAME_MUST_BE_SET);
+        LOG.debug("Copy object '{}' in bucket '{}' to object '{}' in bucket '{}'", new Object[]{srcObjectName,
+                srcContainerName, dstObjectName, dstContainerName});
+
+        final BlobStore blobStore = getStore();
+        final Blob source = blobStore.getBlob(srcContainerName, srcObjectName);
+        if (source == null) {
+            throw new StorageCommunicationException(HTTP_NOT_FOUND, null,
+                    "Object not found [bucket: '%s', key: '%s']", srcContainerName, srcObjectName);
+        }
+
+        InputStream is = source.getPayload().getInput();
+        try {
+            BlobBuilder.PayloadBlobBuilder blobBuilder = blobStore.blobBuilder(dstObjectName).payload(is);
+            Long contentLength = source.getMetadata().getContentMetadata().getContentLength();
+            if (contentLength != null) {
+                blobBuilder.contentLength(contentLength);
+            }
+            blobStore.putBlob(dstContainerName, blobBuilder.build());
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+        return dstObjectName;
+    }
+
     /**
      * @return
      * @see org.opencredo.cloud.storage.StorageOperations#listContainerNames()
@@ -170,9 +270,8 @@ public class JCloudS3Template extends S3Template {
         Assert.notNull(containerName, BUCKET_NAME_CANNOT_BE_NULL);
         LOG.debug("Get bucket '{}' status", containerName);
 
-        return ContainerStatus.MINE;
-//      return ContainerStatus.DOES_NOT_EXIST;
-//      return ContainerStatus.ALREADY_CLAIMED;
+        // jclouds does not tell apart buckets claimed by other accounts
+        return getStore().containerExists(containerName) ? ContainerStatus.MINE : ContainerStatus.DOES_NOT_EXIST;
     }
 
     /**
@@ -183,16 +282,79 @@ public class JCloudS3Template extends S3Template {
     public List<BlobDetails> listContainerObjectDetails(String containerName) {
         Assert.notNull(containerName, BUCKET_NAME_CANNOT_BE_NULL);
         LOG.debug("Get objects list for bucket '{}'", containerName);
+        // Single list call returns one page only, follow markers.
+        List<BlobDetails> returnList = new ArrayList<BlobDetails>();
+        Iterator<BlobDetails> iterator = iterateContainerObjectDetails(containerName, new BlobListOptions());
+        while (iterator.hasNext()) {
+            returnList.add(iterator.next());
+        }
+
+        return returnList;
+    }
+
+    /**
+     * Blob store listing supports only '/' delimiter and directory prefixes.
+     * Prefix part after last '/' is matched against blob names when page is
+     * received, so page may contain less blobs than requested page size.
+     *
+     * @param containerName
+     * @param options
+     * @param marker
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#listContainerObjectDetailsPage(java.lang.String,
+     *      org.opencredo.cloud.storage.BlobListOptions, java.lang.String)
+     */
+    public BlobDetailsPage listContainerObjectDetailsPage(String containerName, BlobListOptions options, String marker) {
+        Assert.notNull(containerName, BUCKET_NAME_CANNOT_BE_NULL);
+        Assert.notNull(options, "Blob list options cannot be null");
+        Assert.isTrue(options.getDelimiter() == null || "/".equals(options.getDelimiter()),
+                "Only '/' delimiter is supported");
+        LOG.debug("Get objects list page for bucket '{}' with marker '{}'", containerName, marker);
+
+        ListContainerOptions listOptions = new ListContainerOptions().maxResults(options.getPageSize());
+        if (marker != null) {
+            listOptions.afterMarker(marker);
+        }
+        String prefix = options.getPrefix();
+        int directoryEnd = prefix == null ? -1 : prefix.lastIndexOf('/');
+        if (directoryEnd > 0) {
+            listOptions.inDirectory(prefix.substring(0, directoryEnd));
+        }
+        if (options.getDelimiter() == null) {
+            listOptions.recursive();
+        }
+
         final BlobStore blobStore = getStore();
-        final PageSet<? extends StorageMetadata> list = blobStore.list(containerName);
+        final PageSet<? extends StorageMetadata> list = blobStore.list(containerName, listOptions);
 
-        List<BlobDetails> returnList = new ArrayList<BlobDetails>(list.size());
+        List<BlobDetails> blobDetails = new ArrayList<BlobDetails>(list.size());
+        List<String> commonPrefixes = new ArrayList<String>();
         for (StorageMetadata entry : list) {
-            final BlobDetails blobDetails = new BlobDetails(entry.getName(), entry.getName(), entry.getETag(), entry.getLastModified());
-            returnList.add(blobDetails);
+            if (prefix != null && !entry.getName().startsWith(prefix)) {
+                continue;
+            }
+            if (entry.getType() == StorageType.BLOB) {
+                blobDetails.add(new BlobDetails(containerName, entry.getName(), entry.getETag(), entry
+                        .getLastModified()));
+            } else {
+                commonPrefixes.add(entry.getName());
+            }
         }
 
-        return returnList;
+        return new BlobDetailsPage(blobDetails, commonPrefixes, list.getNextMarker());
+    }
+
+    /**
+     * @param containerName
+     * @param options
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#iterateContainerObjectDetails(java.lang.String,
+     *      org.opencredo.cloud.storage.BlobListOptions)
+     */
+    public Iterator<BlobDetails> iterateContainerObjectDetails(String containerName, BlobListOptions options) {
+        Assert.notNull(containerName, BUCKET_NAME_CANNOT_BE_NULL);
+        Assert.notNull(options, "Blob list options cannot be null");
+        return new PagedBlobDetailsIterator(this, containerName, options);
     }
 
     // **********************************
@@ -227,6 +389,22 @@ public class JCloudS3Template extends S3Template {
 
     }
 
+    /**
+     * Conditions are checked with object metadata request preceding the
+     * upload, see {@link #checkConditions(String, String, BlobConditions)}.
+     *
+     * @param containerName
+     * @param objectName
+     * @param stringToSend
+     * @param conditions
+     * @see org.opencredo.cloud.storage.StorageOperations#send(java.lang.String,
+     *      java.lang.String, java.lang.String, org.opencredo.cloud.storage.BlobConditions)
+     */
+    public String send(String containerName, String objectName, String stringToSend, BlobConditions conditions) {
+        checkConditions(containerName, objectName, conditions);
+        return send(containerName, objectName, stringToSend);
+    }
+
     private String buildBlobAndSend(String containerName, String objectName, String stringToSend) {
         final BlobStore blobStore = getStore();
         final BlobBuilder blobBuilder = blobStore.blobBuilder(objectName);
@@ -268,6 +446,38 @@ public class JCloudS3Template extends S3Template {
         return sendAndReceiveUrl(containerName, objectName, fileToSend);
     }
 
+    /**
+     * Conditions are checked with object metadata request preceding the
+     * upload, see {@link #checkConditions(String, String, BlobConditions)}.
+     *
+     * @param containerName
+     * @param objectName
+     * @param fileToSend
+     * @param conditions
+     * @see org.opencredo.cloud.storage.StorageOperations#send(java.lang.String,
+     *      java.lang.String, java.io.File, org.opencredo.cloud.storage.BlobConditions)
+     */
+    public String send(String containerName, String objectName, File fileToSend, BlobConditions conditions) {
+        checkConditions(containerName, objectName, conditions);
+        return send(containerName, objectName, fileToSend);
+    }
+
+    /**
+     * Multipart upload is not available through jclouds blob store API, file is
+     * sent in single request.
+     *
+     * @param containerName
+     * @param objectName
+     * @param fileToSend
+     * @param settings
+     * @see org.opencredo.cloud.storage.StorageOperations#sendInParts(java.lang.String,
+     *      java.lang.String, java.io.File, org.opencredo.cloud.storage.MultipartUploadSettings)
+     */
+    public String sendInParts(String containerName, String objectName, File fileToSend,
+                              MultipartUploadSettings settings) {
+        return send(containerName, objectName, fileToSend);
+    }
+
     // ********************** Input stream send
 
     /**
@@ -296,6 +506,33 @@ public class JCloudS3Template extends S3Template {
 
     }
 
+    /**
+     * Multipart upload is not available through jclouds blob store API,
+     * written data is collected in temporary file which is sent in single
+     * request when stream is closed.
+     *
+     * @param containerName
+     * @param objectName
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#openForWrite(java.lang.String,
+     *      java.lang.String)
+     */
+    public OutputStream openForWrite(final String containerName, final String objectName) {
+        Assert.notNull(containerName, BUCKET_NAME_CANNOT_BE_NULL);
+        Assert.hasText(objectName, BLOB_NAME_MUST_BE_SET);
+        try {
+            return new FileSpoolingOutputStream(null) {
+                @Override
+                protected void upload(File file) {
+                    send(containerName, objectName, file);
+                }
+            };
+        } catch (IOException e) {
+            throw new StorageException(e, "Upload to bucket '%s' with key '%s' cannot be spooled", containerName,
+                    objectName);
+        }
+    }
+
     private String buildBlobAndSend(String containerName, String objectName, InputStream is) {
         final BlobStore blobStore = getStore();
         final BlobBuilder blobBuilder = blobStore.blobBuilder(objectName);
@@ -423,6 +660,23 @@ public class JCloudS3Template extends S3Template {
         return receiveFile(containerName, objectName, toFile);
     }
 
+    /**
+     * Range requests are not available through jclouds blob store API, object
+     * is received with single request.
+     *
+     * @param containerName
+     * @param objectName
+     * @param toFile
+     * @param settings
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#receiveInParts(java.lang.String,
+     *      java.lang.String, java.io.File, org.opencredo.cloud.storage.MultipartDownloadSettings)
+     */
+    public String receiveInParts(String containerName, String objectName, File toFile,
+                                 MultipartDownloadSettings settings) {
+        return receiveAndSaveToFile(containerName, objectName, toFile);
+    }
+
     private String receiveFile(String containerName, String objectName, File toFile) {
         try {
             StorageUtils.createParentDirs(toFile);
@@ -470,6 +724,124 @@ public class JCloudS3Template extends S3Template {
         return receiveInputStream(objectName, containerName);
     }
 
+    /**
+     * @param containerName
+     * @param objectName
+     * @param eTag
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#receiveIfNoneMatch(java.lang.String,
+     *      java.lang.String, java.lang.String)
+     */
+    public BlobContent receiveIfNoneMatch(String containerName, String objectName, String eTag) {
+        Assert.notNull(containerName, BUCKET_NAME_CANNOT_BE_NULL);
+        Assert.hasText(objectName, BLOB_NAME_MUST_BE_SET);
+        LOG.debug("Receive object from bucket '{}' with key '{}' if none match '{}'", new Object[]{containerName,
+                objectName, eTag});
+
+        GetOptions options = new GetOptions();
+        if (eTag != null) {
+            options.ifETagDoesntMatch(eTag);
+        }
+
+        Blob blob;
+        try {
+            blob = getStore().getBlob(containerName, objectName, options);
+        } catch (HttpResponseException e) {
+            if (e.getResponse() != null && e.getResponse().getStatusCode() == HTTP_NOT_MODIFIED) {
+                return null;
+            }
+            int statusCode = e.getResponse() == null ? StorageCommunicationException.UNKNOWN_STATUS_CODE : e
+                    .getResponse().getStatusCode();
+            throw new StorageCommunicationException(statusCode, "Receiving object problem", e);
+        }
+        if (blob == null) {
+            throw new StorageCommunicationException(HTTP_NOT_FOUND, null,
+                    "Object not found [bucket: '%s', key: '%s']", containerName, objectName);
+        }
+
+        BlobMetadata metadata = blob.getMetadata();
+        Long contentLength = metadata.getContentMetadata().getContentLength();
+        return new BlobContent(new BlobDetails(containerName, objectName, metadata.getETag(), metadata
+                .getLastModified(), contentLength == null ? BlobDetails.UNKNOWN_CONTENT_LENGTH : contentLength), blob
+                .getPayload().getInput());
+    }
+
+    /**
+     * @param containerName
+     * @param objectName
+     * @param conditions
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#receive(java.lang.String,
+     *      java.lang.String, org.opencredo.cloud.storage.BlobConditions)
+     */
+    public BlobContent receive(String containerName, String objectName, BlobConditions conditions) {
+        Assert.notNull(containerName, BUCKET_NAME_CANNOT_BE_NULL);
+        Assert.hasText(objectName, BLOB_NAME_MUST_BE_SET);
+        Assert.notNull(conditions, "Conditions are not provided");
+        LOG.debug("Receive object from bucket '{}' with key '{}' with conditions {}", new Object[]{containerName,
+                objectName, conditions});
+
+        GetOptions options = new GetOptions();
+        if (conditions.getIfMatch() != null) {
+            options.ifETagMatches(conditions.getIfMatch());
+        }
+        if (conditions.getIfNoneMatch() != null) {
+            options.ifETagDoesntMatch(conditions.getIfNoneMatch());
+        }
+        if (conditions.getIfModifiedSince() != null) {
+            options.ifModifiedSince(conditions.getIfModifiedSince());
+        }
+        if (conditions.getIfUnmodifiedSince() != null) {
+            options.ifUnmodifiedSince(conditions.getIfUnmodifiedSince());
+        }
+
+        Blob blob;
+        try {
+            blob = getStore().getBlob(containerName, objectName, options);
+        } catch (HttpResponseException e) {
+            int statusCode = e.getResponse() == null ? StorageCommunicationException.UNKNOWN_STATUS_CODE : e
+                    .getResponse().getStatusCode();
+            if (statusCode == HTTP_NOT_MODIFIED) {
+                return null;
+            }
+            if (statusCode == HTTP_PRECONDITION_FAILED) {
+                throw new StorageObjectModifiedException(e,
+                        "Object does not meet receive conditions %s [bucket: '%s', key: '%s']", conditions,
+                        containerName, objectName);
+            }
+            throw new StorageCommunicationException(statusCode, "Receiving object problem", e);
+        }
+        if (blob == null) {
+            throw new StorageCommunicationException(HTTP_NOT_FOUND, null,
+                    "Object not found [bucket: '%s', key: '%s']", containerName, objectName);
+        }
+
+        BlobMetadata metadata = blob.getMetadata();
+        return new BlobContent(toBlobDetails(containerName, objectName, metadata), blob.getPayload().getInput());
+    }
+
+    /**
+     * @param containerName
+     * @param objectName
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#getBlobDetails(java.lang.String,
+     *      java.lang.String)
+     */
+    public BlobDetails getBlobDetails(String containerName, String objectName) {
+        Assert.notNull(containerName, BUCKET_NAME_CANNOT_BE_NULL);
+        Assert.hasText(objectName, BLOB_NAME_MUST_BE_SET);
+        LOG.debug("Get details of object in bucket '{}' with key '{}'", containerName, objectName);
+
+        BlobMetadata metadata = getStore().blobMetadata(containerName, objectName);
+        return metadata == null ? null : toBlobDetails(containerName, objectName, metadata);
+    }
+
+    private static BlobDetails toBlobDetails(String containerName, String objectName, BlobMetadata metadata) {
+        Long contentLength = metadata.getContentMetadata().getContentLength();
+        return new BlobDetails(containerName, objectName, metadata.getETag(), metadata.getLastModified(),
+                contentLength == null ? BlobDetails.UNKNOWN_CONTENT_LENGTH : contentLength);
+    }
+
     private InputStream receiveInputStream(String containerName, String objectName) {
 
         final BlobStore blobStore = getStore();
@@ -15,6 +15,8 @@
 package org.opencredo.cloud.storage.s3;
 
 import org.apache.commons.io.IOUtils;
+import org.jets3t.service.Constants;
+import org.jets3t.service.Jets3tProperties;
 import org.jets3t.service.S3Service;
 import org.jets3t.service.S3ServiceException;
 import org.jets3t.service.ServiceException;
@@ -22,25 +24,53 @@ import org.jets3t.service.acl.AccessControlList;
 import org.jets3t.service.acl.GroupGrantee;
 import org.jets3t.service.acl.Permission;
 import org.jets3t.service.impl.rest.httpclient.RestS3Service;
+import org.jets3t.service.model.MultipartPart;
+import org.jets3t.service.model.MultipartUpload;
 import org.jets3t.service.model.S3Bucket;
 import org.jets3t.service.model.S3Object;
+import org.jets3t.service.model.StorageObject;
+import org.jets3t.service.model.StorageObjectsChunk;
+import org.opencredo.cloud.storage.BlobConditions;
+import org.opencredo.cloud.storage.BlobContent;
 import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.BlobDetailsPage;
+import org.opencredo.cloud.storage.BlobListOptions;
 import org.opencredo.cloud.storage.ContainerStatus;
+import org.opencredo.cloud.storage.FilePart;
+import org.opencredo.cloud.storage.MultipartDownloadHandler;
+import org.opencredo.cloud.storage.MultipartDownloadSettings;
+import org.opencredo.cloud.storage.MultipartDownloader;
+import org.opencredo.cloud.storage.MultipartUploadHandler;
+import org.opencredo.cloud.storage.MultipartUploadSettings;
+import org.opencredo.cloud.storage.MultipartUploader;
+import org.opencredo.cloud.storage.PagedBlobDetailsIterator;
+import org.opencredo.cloud.storage.ResponseBodyInputStream;
 import org.opencredo.cloud.storage.StorageCommunicationException;
 import org.opencredo.cloud.storage.StorageException;
+import org.opencredo.cloud.storage.StorageObjectModifiedException;
 import org.opencredo.cloud.storage.StorageResponseHandlingException;
 import org.opencredo.cloud.storage.StorageUtils;
+import org.opencredo.cloud.storage.StreamingUploadHandler;
+import org.opencredo.cloud.storage.StreamingUploadOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Main class encapsulating invocations to jets3t org.jets3t.service.S3Service.
@@ -59,11 +89,38 @@ public class JetS3Template extends S3Template {
     private static final String SEND_STRING_TO_BUCKET_WITH_KEY = "Send string to bucket '{}' with key '{}'";
     private static final String SEND_INPUT_STREAM_TO_BUCKET_WITH_KEY = "Send input-stream to bucket '{}' with key '{}'";
     private static final String BLOB_NAME_MUST_BE_SET = "Blob name must be set";
+    private static final String BLOB_LIST_OPTIONS_MUST_BE_SET = "Blob list options must be set";
     private static final String SENDING_INPUT_STREAM_PROBLEM = "Sending input stream problem";
     private static final String SENDING_INPUT_STREAM_IO_PROBLEM = "Sending input stream IO problem";
 
+    /**
+     * Minimum size of multipart upload part (except the last one).
+     */
+    public static final long MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    /**
+     * Maximum amount of parts in single multipart upload.
+     */
+    public static final int MAX_PARTS = 10000;
+
+    private static final int HTTP_NOT_MODIFIED = 304;
+
+    private static final int HTTP_PRECONDITION_FAILED = 412;
+
+    private static final int HTTP_NOT_FOUND = 404;
+
+    /**
+     * URL of Amazon S3 service objects are addressed by unless custom endpoint
+     * is set.
+     */
+    public static final String DEFAULT_SERVICE_URL = "http://s3.amazonaws.com";
+
     private final S3Service s3Service;
 
+    private final String serviceUrl;
+
+    private MultipartUploadSettings streamingUploadSettings = new MultipartUploadSettings();
+
     /**
      * Constructor with AWS (Amazon Web Services) credentials.
      *
@@ -80,10 +137,32 @@ public class JetS3Template extends S3Template {
      * @throws StorageException
      */
     public JetS3Template(final AwsCredentials awsCredentials, final String defaultContainerName) {
+        this(awsCredentials, defaultContainerName, Jets3tProperties.getInstance(Constants.JETS3T_PROPERTIES_FILENAME),
+                DEFAULT_SERVICE_URL);
+    }
+
+    /**
+     * Constructor for S3 compatible service on custom endpoint (e.g. local
+     * emulator), buckets are addressed path-style.
+     *
+     * @param awsCredentials
+     * @param defaultContainerName
+     * @param endpoint             Service URL, e.g. <code>http://localhost:8080</code>.
+     * @throws StorageException
+     */
+    public JetS3Template(final AwsCredentials awsCredentials, final String defaultContainerName,
+                         final String endpoint) {
+        this(awsCredentials, defaultContainerName, createEndpointProperties(endpoint), StringUtils
+                .trimTrailingCharacter(endpoint, '/'));
+    }
+
+    private JetS3Template(final AwsCredentials awsCredentials, final String defaultContainerName,
+                          final Jets3tProperties properties, final String serviceUrl) {
         super(defaultContainerName);
+        this.serviceUrl = serviceUrl;
         try {
             s3Service = new RestS3Service(new org.jets3t.service.security.AWSCredentials(awsCredentials.getAccessKey(),
-                    awsCredentials.getSecretAccessKey()));
+                    awsCredentials.getSecretAccessKey()), null, null, properties);
             // Next statement checks if connection works. This is suggested by jets3t documentation.
             s3Service.listAllBuckets();
         } catch (S3ServiceException e) {
@@ -91,6 +170,29 @@ public class JetS3Template extends S3Template {
         }
     }
 
+    /**
+     * @param endpoint
+     * @return Default jets3t properties with S3 endpoint replaced.
+     */
+    private static Jets3tProperties createEndpointProperties(String endpoint) {
+        Assert.hasText(endpoint, "Endpoint must be set");
+        URI uri = URI.create(endpoint);
+        Assert.hasText(uri.getHost(), "Endpoint host must be set");
+        boolean https = "https".equalsIgnoreCase(uri.getScheme());
+
+        Jets3tProperties properties = new Jets3tProperties();
+        properties.loadAndReplaceProperties(Jets3tProperties.getInstance(Constants.JETS3T_PROPERTIES_FILENAME),
+                Constants.JETS3T_PROPERTIES_FILENAME);
+        properties.setProperty("s3service.s3-endpoint", uri.getHost());
+        if (uri.getPort() != -1) {
+            properties.setProperty(https ? "s3service.s3-endpoint-https-port" : "s3service.s3-endpoint-http-port",
+                    String.valueOf(uri.getPort()));
+        }
+        properties.setProperty("s3service.https-only", String.valueOf(https));
+        properties.setProperty("s3service.disable-dns-buckets", "true");
+        return properties;
+    }
+
     // **********************************
     // CONFIGURATION
     // **********************************
@@ -105,7 +207,7 @@ public class JetS3Template extends S3Template {
             final S3Bucket bucket = s3Service.createBucket(new S3Bucket(containerName));
             return bucket != null;
         } catch (S3ServiceException e) {
-            throw new StorageCommunicationException("Bucket creation problem", e);
+            throw new StorageCommunicationException(e.getResponseCode(), "Bucket creation problem", e);
         }
 
     }
@@ -129,12 +231,12 @@ public class JetS3Template extends S3Template {
             // Update the bucket's ACL. Now anyone can view the list of objects in this bucket.
             publicBucket.setAcl(bucketAcl);
             s3Service.putBucketAcl(publicBucket);
-            LOG.info("Public bucket created - url: http://s3.amazonaws.com/" + publicBucket.getName());
+            LOG.info("Public bucket created - url: " + serviceUrl + "/" + publicBucket.getName());
 
         } catch (S3ServiceException e) {
-            throw new StorageCommunicationException(BUCKET_CREATION_PROBLEM, e);
+            throw new StorageCommunicationException(e.getResponseCode(), BUCKET_CREATION_PROBLEM, e);
         } catch (ServiceException e) {
-            throw new StorageCommunicationException(SERVICE_PROBLEM, e);
+            throw new StorageCommunicationException(e.getResponseCode(), SERVICE_PROBLEM, e);
         }
     }
 
@@ -148,7 +250,7 @@ public class JetS3Template extends S3Template {
         try {
             s3Service.deleteBucket(new S3Bucket(containerName));
         } catch (S3ServiceException e) {
-            throw new StorageCommunicationException(BUCKET_DELETION_PROBLEM, e);
+            throw new StorageCommunicationException(e.getResponseCode(), BUCKET_DELETION_PROBLEM, e);
         }
     }
 
@@ -172,10 +274,55 @@ public class JetS3Template extends S3Template {
         try {
             s3Service.deleteObject(new S3Bucket(containerName), objectName);
         } catch (S3ServiceException e) {
-            throw new StorageCommunicationException(BUCKET_DELETION_PROBLEM, e);
+            throw new StorageCommunicationException(e.getResponseCode(), BUCKET_DELETION_PROBLEM, e);
         }
     }
 
+    /**
+     * Conditions are checked with object details request preceding the
+     * delete, see {@link #checkConditions(String, String, BlobConditions)}.
+     *
+     * @param containerName
+     * @param objectName
+     * @param conditions
+     * @see org.opencredo.cloud.storage.StorageOperations#deleteObject(java.lang.String,
+     *      java.lang.String, org.opencredo.cloud.storage.BlobConditions)
+     */
+    public void deleteObject(String containerName, String objectName, BlobConditions conditions) {
+        checkConditions(containerName, objectName, conditions);
+        deleteObject(containerName, objectName);
+    }
+
+    /**
+     * Object is copied by S3 (PUT copy), content is not transferred through
+     * this template. Object metadata is copied with object.
+     *
+     * @param srcContainerName
+     * @param srcObjectName
+     * @param dstContainerName
+     * @param dstObjectName
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#copy(java.lang.String,
+     *      java.lang.String, java.lang.String, java.lang.String)
+     */
+    public String copy(String srcContainerName, String srcObjectName, String dstContainerName, String dstObjectName) {
+        Assert.notNull(srcContainerName, BUCKET_NAME_CANNOT_BE_NULL);
+        Assert.notNull(dstContainerName, BUCKET_NAME_CANNOT_BE_NULL);
+        Assert.hasText(srcObjectName, BLOB_NAME_MUST_BE_SET);
+        Assert.hasText(dstObjectName, BLOB_NAME_MUST_BE_SET);
+        LOG.debug("Copy object '{}' in bucket '{}' to object '{}' in bucket '{}'", new Object[]{srcObjectName,
+                srcContainerName, dstObjectName, dstContainerName});
+        try {
+            s3Service.copyObject(srcContainerName, srcObjectName, dstContainerName, new S3Object(dstObjectName),
+                    false);
+        } catch (S3ServiceException e) {
+            throw new StorageCommunicationException(e.getResponseCode(), "Copying object problem", e);
+        } catch (ServiceException e) {
+            throw new StorageCommunicationException(e.getResponseCode(), SERVICE_PROBLEM, e);
+        }
+        return dstObjectName;
+    }
+
     /**
      * @return
      * @see org.opencredo.cloud.storage.StorageOperations#listContainerNames()
@@ -190,7 +337,7 @@ public class JetS3Template extends S3Template {
             }
             return bucketNames;
         } catch (S3ServiceException e) {
-            throw new StorageCommunicationException("Bucket list problem", e);
+            throw new StorageCommunicationException(e.getResponseCode(), "Bucket list problem", e);
         }
     }
 
@@ -223,9 +370,10 @@ public class JetS3Template extends S3Template {
                     throw new StorageException("Unrecognised bucket status: " + bucketStatus);
             }
         } catch (S3ServiceException s3E) {
-            throw new StorageCommunicationException("Failed to get status of bucket name " + containerName, s3E);
+            throw new StorageCommunicationException(s3E.getResponseCode(), "Failed to get status of bucket name "
+                    + containerName, s3E);
         } catch (ServiceException e) {
-            throw new StorageCommunicationException(SERVICE_PROBLEM, e);
+            throw new StorageCommunicationException(e.getResponseCode(), SERVICE_PROBLEM, e);
         }
     }
 
@@ -245,10 +393,53 @@ public class JetS3Template extends S3Template {
             }
             return keys;
         } catch (S3ServiceException e) {
-            throw new StorageCommunicationException("Failed to get bucket " + containerName + " object details.", e);
+            throw new StorageCommunicationException(e.getResponseCode(), "Failed to get bucket " + containerName
+                    + " object details.", e);
+        }
+    }
+
+    /**
+     * @param containerName
+     * @param options
+     * @param marker
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#listContainerObjectDetailsPage(java.lang.String,
+     *      org.opencredo.cloud.storage.BlobListOptions, java.lang.String)
+     */
+    public BlobDetailsPage listContainerObjectDetailsPage(String containerName, BlobListOptions options, String marker) {
+        Assert.notNull(containerName, BUCKET_NAME_CANNOT_BE_NULL);
+        Assert.notNull(options, BLOB_LIST_OPTIONS_MUST_BE_SET);
+        LOG.debug("Get objects list page for bucket '{}' with marker '{}'", containerName, marker);
+        try {
+            StorageObjectsChunk chunk = this.s3Service.listObjectsChunked(containerName, options.getPrefix(), options
+                    .getDelimiter(), options.getPageSize(), marker);
+            StorageObject[] objects = chunk.getObjects();
+            List<BlobDetails> keys = new ArrayList<BlobDetails>(objects.length);
+            for (StorageObject s : objects) {
+                keys.add(new BlobDetails(containerName, s.getKey(), s.getETag(), s.getLastModifiedDate()));
+            }
+            String[] commonPrefixes = chunk.getCommonPrefixes();
+            return new BlobDetailsPage(keys, commonPrefixes == null ? null : Arrays.asList(commonPrefixes), chunk
+                    .isListingComplete() ? null : chunk.getPriorLastKey());
+        } catch (ServiceException e) {
+            throw new StorageCommunicationException(e.getResponseCode(), "Failed to get bucket " + containerName
+                    + " object details page.", e);
         }
     }
 
+    /**
+     * @param containerName
+     * @param options
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#iterateContainerObjectDetails(java.lang.String,
+     *      org.opencredo.cloud.storage.BlobListOptions)
+     */
+    public Iterator<BlobDetails> iterateContainerObjectDetails(String containerName, BlobListOptions options) {
+        Assert.notNull(containerName, BUCKET_NAME_CANNOT_BE_NULL);
+        Assert.notNull(options, BLOB_LIST_OPTIONS_MUST_BE_SET);
+        return new PagedBlobDetailsIterator(this, containerName, options);
+    }
+
     // **********************************
     // SEND/RECEIVE
     // **********************************
@@ -279,7 +470,7 @@ public class JetS3Template extends S3Template {
         try {
             s3Service.putObject(new S3Bucket(containerName), new S3Object(objectName, stringToSend));
         } catch (S3ServiceException e) {
-            throw new StorageCommunicationException("Sending string problem", e);
+            throw new StorageCommunicationException(e.getResponseCode(), "Sending string problem", e);
         } catch (NoSuchAlgorithmException e) {
             throw new StorageCommunicationException("No such algorithm", e);
         } catch (IOException e) {
@@ -288,6 +479,22 @@ public class JetS3Template extends S3Template {
         return objectName;
     }
 
+    /**
+     * Conditions are checked with object details request preceding the
+     * upload, see {@link #checkConditions(String, String, BlobConditions)}.
+     *
+     * @param containerName
+     * @param objectName
+     * @param stringToSend
+     * @param conditions
+     * @see org.opencredo.cloud.storage.StorageOperations#send(java.lang.String,
+     *      java.lang.String, java.lang.String, org.opencredo.cloud.storage.BlobConditions)
+     */
+    public String send(String containerName, String objectName, String stringToSend, BlobConditions conditions) {
+        checkConditions(containerName, objectName, conditions);
+        return send(containerName, objectName, stringToSend);
+    }
+
     // ********************** File send
 
     /**
@@ -321,6 +528,90 @@ public class JetS3Template extends S3Template {
         return sendAndReceiveUrl(containerName, objectName, fileToSend);
     }
 
+    /**
+     * Conditions are checked with object details request preceding the
+     * upload, see {@link #checkConditions(String, String, BlobConditions)}.
+     *
+     * @param containerName
+     * @param objectName
+     * @param fileToSend
+     * @param conditions
+     * @see org.opencredo.cloud.storage.StorageOperations#send(java.lang.String,
+     *      java.lang.String, java.io.File, org.opencredo.cloud.storage.BlobConditions)
+     */
+    public String send(String containerName, String objectName, File fileToSend, BlobConditions conditions) {
+        checkConditions(containerName, objectName, conditions);
+        return send(containerName, objectName, fileToSend);
+    }
+
+    /**
+     * Sends file using S3 multipart upload. Part size is raised to
+     * {@link #MIN_PART_SIZE} if smaller, and so that file is split to at most
+     * {@link #MAX_PARTS} parts.
+     *
+     * @param containerName
+     * @param objectName
+     * @param fileToSend
+     * @param settings
+     * @see org.opencredo.cloud.storage.StorageOperations#sendInParts(java.lang.String,
+     *      java.lang.String, java.io.File, org.opencredo.cloud.storage.MultipartUploadSettings)
+     */
+    public String sendInParts(final String containerName, final String objectName, File fileToSend,
+                              MultipartUploadSettings settings) {
+        Assert.notNull(containerName, BUCKET_NAME_CANNOT_BE_NULL);
+        Assert.hasText(objectName, BLOB_NAME_MUST_BE_SET);
+        Assert.notNull(fileToSend, "File to send can not be null");
+        Assert.notNull(settings, "Multipart upload settings must be set");
+        if (fileToSend.length() <= settings.getMultipartThreshold()) {
+            return send(containerName, objectName, fileToSend);
+        }
+
+        long partSize = Math.max(settings.getPartSize(), MIN_PART_SIZE);
+        partSize = Math.max(partSize, (fileToSend.length() + MAX_PARTS - 1) / MAX_PARTS);
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Send file '{}' in parts to bucket '{}' with key '{}'", new Object[]{
+                    fileToSend.getAbsolutePath(), containerName, objectName});
+        }
+
+        new MultipartUploader(settings).upload(fileToSend, partSize, new MultipartUploadHandler() {
+            private final ConcurrentMap<Integer, MultipartPart> uploadedParts = new ConcurrentHashMap<Integer, MultipartPart>();
+            private volatile MultipartUpload upload;
+
+            public void begin() throws S3ServiceException {
+                upload = s3Service.multipartStartUpload(containerName, objectName, null);
+            }
+
+            public String uploadPart(FilePart part) throws Exception {
+                S3Object s3Object = new S3Object(objectName);
+                s3Object.setDataInputStream(part.openStream());
+                s3Object.setContentLength(part.getLength());
+                try {
+                    MultipartPart uploaded = s3Service.multipartUploadPart(upload, part.getPartNumber(), s3Object);
+                    uploadedParts.put(part.getPartNumber(), uploaded);
+                    return uploaded.getEtag();
+                } finally {
+                    s3Object.closeDataInputStream();
+                }
+            }
+
+            public void commit(List<String> partIds) throws S3ServiceException {
+                List<MultipartPart> parts = new ArrayList<MultipartPart>(partIds.size());
+                for (int partNumber = 1; partNumber <= partIds.size(); partNumber++) {
+                    parts.add(uploadedParts.get(partNumber));
+                }
+                s3Service.multipartCompleteUpload(upload, parts);
+            }
+
+            public void abort() throws S3ServiceException {
+                if (upload != null) {
+                    s3Service.multipartAbortUpload(upload);
+                }
+            }
+        });
+        return serviceUrl + "/" + containerName + "/" + objectName;
+    }
+
     // ********************** Input stream send
 
     /**
@@ -341,22 +632,113 @@ public class JetS3Template extends S3Template {
      *      java.lang.String, java.io.InputStream)
      */
     public String send(String containerName, String objectName, InputStream is) {
-        Assert.notNull(containerName, BUCKET_NAME_CANNOT_BE_NULL);
-        Assert.hasText(objectName, BLOB_NAME_MUST_BE_SET);
+        Assert.notNull(is, "Input stream to send can not be null");
         LOG.debug(SEND_INPUT_STREAM_TO_BUCKET_WITH_KEY, containerName, objectName);
+        StreamingUploadOutputStream os = createUploadStream(containerName, objectName);
         try {
-            S3Object s3ObjectToSend = new S3Object(objectName);
-            s3ObjectToSend.setDataInputStream(is);
-            s3ObjectToSend.setContentLength(is.available());
-            s3Service.putObject(new S3Bucket(containerName), s3ObjectToSend);
+            IOUtils.copy(is, os);
+            os.close();
         } catch (IOException e) {
+            os.abort();
             throw new StorageCommunicationException(SENDING_INPUT_STREAM_IO_PROBLEM, e);
-        } catch (S3ServiceException e) {
-            throw new StorageCommunicationException(SENDING_INPUT_STREAM_PROBLEM, e);
         }
         return objectName;
     }
 
+    /**
+     * Opens stream uploading object with S3 multipart upload. Part size of
+     * {@link #getStreamingUploadSettings()} is raised to
+     * {@link #MIN_PART_SIZE} if smaller, object is limited to
+     * {@link #MAX_PARTS} parts. Object not larger than single part is sent
+     * with single Put Object request.
+     *
+     * @param containerName
+     * @param objectName
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#openForWrite(java.lang.String,
+     *      java.lang.String)
+     */
+    public OutputStream openForWrite(String containerName, String objectName) {
+        return createUploadStream(containerName, objectName);
+    }
+
+    private StreamingUploadOutputStream createUploadStream(final String containerName, final String objectName) {
+        Assert.notNull(containerName, BUCKET_NAME_CANNOT_BE_NULL);
+        Assert.hasText(objectName, BLOB_NAME_MUST_BE_SET);
+        int partSize = (int) Math.max(streamingUploadSettings.getPartSize(), MIN_PART_SIZE);
+        String description = String.format("key '%s' to bucket '%s'", objectName, containerName);
+        return new StreamingUploadOutputStream(description, streamingUploadSettings, partSize,
+                new StreamingUploadHandler() {
+                    private final ConcurrentMap<Integer, MultipartPart> uploadedParts = new ConcurrentHashMap<Integer, MultipartPart>();
+                    private volatile MultipartUpload upload;
+
+                    public void uploadSingle(FilePart part) throws Exception {
+                        S3Object s3Object = new S3Object(objectName);
+                        s3Object.setDataInputStream(part.openStream());
+                        s3Object.setContentLength(part.getLength());
+                        try {
+                            s3Service.putObject(new S3Bucket(containerName), s3Object);
+                        } finally {
+                            s3Object.closeDataInputStream();
+                        }
+                    }
+
+                    public void begin() throws S3ServiceException {
+                        upload = s3Service.multipartStartUpload(containerName, objectName, null);
+                    }
+
+                    public String uploadPart(FilePart part) throws Exception {
+                        if (part.getPartNumber() > MAX_PARTS) {
+                            throw new StorageException("Object '%s' exceeds %d parts of %d bytes", objectName,
+                                    MAX_PARTS, part.getLength());
+                        }
+                        S3Object s3Object = new S3Object(objectName);
+                        s3Object.setDataInputStream(part.openStream());
+                        s3Object.setContentLength(part.getLength());
+                        try {
+                            MultipartPart uploaded = s3Service.multipartUploadPart(upload, part.getPartNumber(),
+                                    s3Object);
+                            uploadedParts.put(part.getPartNumber(), uploaded);
+                            return uploaded.getEtag();
+                        } finally {
+                            s3Object.closeDataInputStream();
+                        }
+                    }
+
+                    public void commit(List<String> partIds) throws S3ServiceException {
+                        List<MultipartPart> parts = new ArrayList<MultipartPart>(partIds.size());
+                        for (int partNumber = 1; partNumber <= partIds.size(); partNumber++) {
+                            parts.add(uploadedParts.get(partNumber));
+                        }
+                        s3Service.multipartCompleteUpload(upload, parts);
+                    }
+
+                    public void abort() throws S3ServiceException {
+                        if (upload != null) {
+                            s3Service.multipartAbortUpload(upload);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * @return Settings of uploads to streams opened with
+     *         {@link #openForWrite(String, String)}.
+     */
+    public MultipartUploadSettings getStreamingUploadSettings() {
+        return streamingUploadSettings;
+    }
+
+    /**
+     * @param streamingUploadSettings
+     *            Settings of uploads to streams opened with
+     *            {@link #openForWrite(String, String)}.
+     */
+    public void setStreamingUploadSettings(MultipartUploadSettings streamingUploadSettings) {
+        Assert.notNull(streamingUploadSettings, "Streaming upload settings must be set");
+        this.streamingUploadSettings = streamingUploadSettings;
+    }
+
     public String sendAndReceiveUrl(String objectName, String stringToSend) {
         return sendAndReceiveUrl(getDefaultContainerName(), objectName, stringToSend);
     }
@@ -369,13 +751,13 @@ public class JetS3Template extends S3Template {
 
             S3Object s3Object = new S3Object(objectName, stringToSend);
             s3Service.putObject(containerName, s3Object);
-            LOG.info("View public object contents here: http://s3.amazonaws.com/" + containerName + "/" + s3Object.getKey());
-            return "http://s3.amazonaws.com/" + containerName + "/" + s3Object.getKey();
+            LOG.info("View public object contents here: " + serviceUrl + "/" + containerName + "/" + s3Object.getKey());
+            return serviceUrl + "/" + containerName + "/" + s3Object.getKey();
 
         } catch (IOException e) {
             throw new StorageCommunicationException(SENDING_INPUT_STREAM_IO_PROBLEM, e);
         } catch (S3ServiceException e) {
-            throw new StorageCommunicationException(SENDING_INPUT_STREAM_PROBLEM, e);
+            throw new StorageCommunicationException(e.getResponseCode(), SENDING_INPUT_STREAM_PROBLEM, e);
         } catch (NoSuchAlgorithmException e) {
             throw new StorageCommunicationException(SENDING_INPUT_STREAM_PROBLEM, e);
         }
@@ -396,13 +778,13 @@ public class JetS3Template extends S3Template {
             S3Object s3Object = new S3Object(fileToSend);
             s3Object.setKey(objectName);
             s3Service.putObject(new S3Bucket(containerName), s3Object);
-            LOG.info("View public object contents here: http://s3.amazonaws.com/" + containerName + "/" + s3Object.getKey());
-            return "http://s3.amazonaws.com/" + containerName + "/" + s3Object.getKey();
+            LOG.info("View public object contents here: " + serviceUrl + "/" + containerName + "/" + s3Object.getKey());
+            return serviceUrl + "/" + containerName + "/" + s3Object.getKey();
 
         } catch (IOException e) {
             throw new StorageCommunicationException(SENDING_INPUT_STREAM_IO_PROBLEM, e);
         } catch (S3ServiceException e) {
-            throw new StorageCommunicationException(SENDING_INPUT_STREAM_PROBLEM, e);
+            throw new StorageCommunicationException(e.getResponseCode(), SENDING_INPUT_STREAM_PROBLEM, e);
         } catch (NoSuchAlgorithmException e) {
             throw new StorageCommunicationException(SENDING_INPUT_STREAM_PROBLEM, e);
         }
@@ -422,21 +804,8 @@ public class JetS3Template extends S3Template {
     }
 
     public String sendAndReceiveUrl(String containerName, String objectName, InputStream is) {
-        Assert.notNull(containerName, BUCKET_NAME_CANNOT_BE_NULL);
-        Assert.hasText(objectName, BLOB_NAME_MUST_BE_SET);
-        LOG.debug(SEND_INPUT_STREAM_TO_BUCKET_WITH_KEY, containerName, objectName);
-        try {
-            S3Object s3ObjectToSend = new S3Object(objectName);
-            s3ObjectToSend.setDataInputStream(is);
-            s3ObjectToSend.setKey(objectName);
-            s3ObjectToSend.setContentLength(is.available());
-            s3Service.putObject(new S3Bucket(containerName), s3ObjectToSend);
-            return "http://s3.amazonaws.com/" + containerName + "/" + s3ObjectToSend.getKey();
-        } catch (IOException e) {
-            throw new StorageCommunicationException(SENDING_INPUT_STREAM_IO_PROBLEM, e);
-        } catch (S3ServiceException e) {
-            throw new StorageCommunicationException(SENDING_INPUT_STREAM_PROBLEM, e);
-        }
+        send(containerName, objectName, is);
+        return serviceUrl + "/" + containerName + "/" + objectName;
     }
 
     // ********************** String receive
@@ -466,11 +835,12 @@ public class JetS3Template extends S3Template {
             s3Object = s3Service.getObject(new S3Bucket(containerName), objectName);
             return IOUtils.toString(s3Object.getDataInputStream());
         } catch (S3ServiceException e) {
-            throw new StorageCommunicationException("Receiving as string problem", e);
+            throw new StorageCommunicationException(e.getResponseCode(), "Receiving as string problem", e);
         } catch (IOException e) {
-            throw new StorageResponseHandlingException("Receiving as string IO problem", e);
+            // Only response body is read, so failure is a transport failure
+            throw new StorageCommunicationException("Receiving as string IO problem", e);
         } catch (ServiceException e) {
-            throw new StorageCommunicationException(SERVICE_PROBLEM, e);
+            throw new StorageCommunicationException(e.getResponseCode(), SERVICE_PROBLEM, e);
         } finally {
             if (s3Object != null) {
                 try {
@@ -517,12 +887,17 @@ public class JetS3Template extends S3Template {
         }
 
         S3Object s3Object = null;
+        ResponseBodyInputStream body = null;
         try {
             s3Object = s3Service.getObject(new S3Bucket(containerName), objectName);
-            StorageUtils.writeStreamToFile(s3Object.getDataInputStream(), toFile);
+            body = new ResponseBodyInputStream(s3Object.getDataInputStream());
+            StorageUtils.writeStreamToFile(body, toFile);
         } catch (S3ServiceException e) {
-            throw new StorageCommunicationException(RECEIVING_FILE_PROBLEM, e);
+            throw new StorageCommunicationException(e.getResponseCode(), RECEIVING_FILE_PROBLEM, e);
         } catch (IOException e) {
+            if (body != null && body.isCauseOf(e)) {
+                throw new StorageCommunicationException("Reading response data stream IO problem", e);
+            }
             throw new StorageResponseHandlingException("Response data stream to file IO problem", e);
         } catch (ServiceException e) {
             throw new StorageResponseHandlingException(SERVICE_PROBLEM, e);
@@ -538,6 +913,60 @@ public class JetS3Template extends S3Template {
         return toFile.getAbsolutePath();
     }
 
+    /**
+     * Receives object in ranges pinned to object ETag with 'If-Match'
+     * condition, so object modified during download is detected.
+     *
+     * @param containerName
+     * @param objectName
+     * @param toFile
+     * @param settings
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#receiveInParts(java.lang.String,
+     *      java.lang.String, java.io.File, org.opencredo.cloud.storage.MultipartDownloadSettings)
+     */
+    public String receiveInParts(String containerName, final String objectName, File toFile,
+                                 MultipartDownloadSettings settings) {
+        Assert.notNull(containerName, BUCKET_NAME_CANNOT_BE_NULL);
+        Assert.hasText(objectName, BLOB_NAME_MUST_BE_SET);
+        Assert.notNull(toFile, "File to save received data must be specified");
+        Assert.notNull(settings, "Multipart download settings must be set");
+
+        try {
+            StorageUtils.createParentDirs(toFile);
+        } catch (IOException e) {
+            throw new StorageResponseHandlingException(e, "Failed to create parent directories for file: %s", toFile
+                    .getAbsolutePath());
+        }
+
+        final S3Bucket bucket = new S3Bucket(containerName);
+        new MultipartDownloader(settings).download(toFile, new MultipartDownloadHandler() {
+            private volatile String eTag;
+
+            public long begin() throws S3ServiceException {
+                S3Object details = s3Service.getObjectDetails(bucket, objectName);
+                eTag = details.getETag();
+                return details.getContentLength();
+            }
+
+            public InputStream openRange(FilePart range) throws ServiceException {
+                try {
+                    S3Object s3Object = s3Service.getObject(bucket, objectName, null, null, new String[]{eTag}, null,
+                            range.getOffset(), range.getOffset() + range.getLength() - 1);
+                    return s3Object.getDataInputStream();
+                } catch (S3ServiceException e) {
+                    if (e.getResponseCode() == HTTP_PRECONDITION_FAILED) {
+                        throw new StorageObjectModifiedException(e,
+                                "Object has been modified while receiving it [bucket: '%s', key: '%s']", bucket
+                                        .getName(), objectName);
+                    }
+                    throw e;
+                }
+            }
+        });
+        return toFile.getAbsolutePath();
+    }
+
     /**
      * @param objectName
      * @return
@@ -561,17 +990,118 @@ public class JetS3Template extends S3Template {
         try {
             return s3Service.getObject(new S3Bucket(containerName), objectName).getDataInputStream();
         } catch (S3ServiceException e) {
-            throw new StorageCommunicationException("Receiving input stream problem", e);
+            throw new StorageCommunicationException(e.getResponseCode(), "Receiving input stream problem", e);
+        } catch (ServiceException e) {
+            throw new StorageCommunicationException(e.getResponseCode(), SERVICE_PROBLEM, e);
+        }
+    }
+
+    /**
+     * @param containerName
+     * @param objectName
+     * @param eTag
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#receiveIfNoneMatch(java.lang.String,
+     *      java.lang.String, java.lang.String)
+     */
+    public BlobContent receiveIfNoneMatch(String containerName, String objectName, String eTag) {
+        Assert.notNull(containerName, BUCKET_NAME_CANNOT_BE_NULL);
+        Assert.hasText(objectName, BLOB_NAME_MUST_BE_SET);
+        LOG.debug("Receive object from bucket '{}' with key '{}' if none match '{}'", new Object[]{containerName,
+                objectName, eTag});
+        try {
+            S3Object s3Object = s3Service.getObject(new S3Bucket(containerName), objectName, null, null, null,
+                    eTag == null ? null : new String[]{eTag}, null, null);
+            return new BlobContent(new BlobDetails(containerName, objectName, s3Object.getETag(), s3Object
+                    .getLastModifiedDate(), s3Object.getContentLength()), s3Object.getDataInputStream());
+        } catch (S3ServiceException e) {
+            if (e.getResponseCode() == HTTP_NOT_MODIFIED) {
+                return null;
+            }
+            throw new StorageCommunicationException(e.getResponseCode(), "Receiving input stream problem", e);
+        } catch (ServiceException e) {
+            throw new StorageCommunicationException(e.getResponseCode(), SERVICE_PROBLEM, e);
+        }
+    }
+
+    /**
+     * @param containerName
+     * @param objectName
+     * @param conditions
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#receive(java.lang.String,
+     *      java.lang.String, org.opencredo.cloud.storage.BlobConditions)
+     */
+    public BlobContent receive(String containerName, String objectName, BlobConditions conditions) {
+        Assert.notNull(containerName, BUCKET_NAME_CANNOT_BE_NULL);
+        Assert.hasText(objectName, BLOB_NAME_MUST_BE_SET);
+        Assert.notNull(conditions, "Conditions are not provided");
+        LOG.debug("Receive object from bucket '{}' with key '{}' with conditions {}", new Object[]{containerName,
+                objectName, conditions});
+        try {
+            S3Object s3Object = s3Service.getObject(new S3Bucket(containerName), objectName,
+                    toCalendar(conditions.getIfModifiedSince()), toCalendar(conditions.getIfUnmodifiedSince()),
+                    toArray(conditions.getIfMatch()), toArray(conditions.getIfNoneMatch()), null, null);
+            return new BlobContent(new BlobDetails(containerName, objectName, s3Object.getETag(), s3Object
+                    .getLastModifiedDate(), s3Object.getContentLength()), s3Object.getDataInputStream());
+        } catch (S3ServiceException e) {
+            if (e.getResponseCode() == HTTP_NOT_MODIFIED) {
+                return null;
+            }
+            if (e.getResponseCode() == HTTP_PRECONDITION_FAILED) {
+                throw new StorageObjectModifiedException(e,
+                        "Object does not meet receive conditions %s [bucket: '%s', key: '%s']", conditions,
+                        containerName, objectName);
+            }
+            throw new StorageCommunicationException(e.getResponseCode(), "Receiving input stream problem", e);
         } catch (ServiceException e) {
-            throw new StorageCommunicationException(SERVICE_PROBLEM, e);
+            throw new StorageCommunicationException(e.getResponseCode(), SERVICE_PROBLEM, e);
         }
     }
 
+    /**
+     * Object details are received with HEAD request.
+     *
+     * @param containerName
+     * @param objectName
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#getBlobDetails(java.lang.String,
+     *      java.lang.String)
+     */
+    public BlobDetails getBlobDetails(String containerName, String objectName) {
+        Assert.notNull(containerName, BUCKET_NAME_CANNOT_BE_NULL);
+        Assert.hasText(objectName, BLOB_NAME_MUST_BE_SET);
+        LOG.debug("Get details of object in bucket '{}' with key '{}'", containerName, objectName);
+        try {
+            S3Object details = s3Service.getObjectDetails(new S3Bucket(containerName), objectName);
+            return new BlobDetails(containerName, objectName, details.getETag(), details.getLastModifiedDate(),
+                    details.getContentLength());
+        } catch (S3ServiceException e) {
+            if (e.getResponseCode() == HTTP_NOT_FOUND) {
+                return null;
+            }
+            throw new StorageCommunicationException(e.getResponseCode(), "Object details problem", e);
+        }
+    }
+
+    private static Calendar toCalendar(Date date) {
+        if (date == null) {
+            return null;
+        }
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(date);
+        return calendar;
+    }
+
+    private static String[] toArray(String eTag) {
+        return eTag == null ? null : new String[]{eTag};
+    }
+
     public String createdSignedUrl(String containerName, String objectName, Date expiryDate) {
         try {
             return s3Service.createSignedGetUrl(containerName, objectName, expiryDate, false);
         } catch (S3ServiceException e) {
-            throw new StorageCommunicationException(RECEIVING_FILE_PROBLEM, e);
+            throw new StorageCommunicationException(e.getResponseCode(), RECEIVING_FILE_PROBLEM, e);
         }
     }
 
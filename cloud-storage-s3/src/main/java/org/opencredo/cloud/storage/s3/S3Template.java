@@ -14,7 +14,16 @@
  */
 package org.opencredo.cloud.storage.s3;
 
+import java.io.File;
+import java.util.Collection;
+import java.util.Map;
+
+import org.opencredo.cloud.storage.BatchResult;
+import org.opencredo.cloud.storage.BlobConditions;
+import org.opencredo.cloud.storage.BlobDetails;
 import org.opencredo.cloud.storage.ContainerStatus;
+import org.opencredo.cloud.storage.StorageBatchOperations;
+import org.opencredo.cloud.storage.StorageObjectModifiedException;
 import org.opencredo.cloud.storage.StorageOperations;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,4 +55,101 @@ public abstract class S3Template implements StorageOperations, InitializingBean
     public String getDefaultContainerName() {
         return defaultContainerName;
     }
+
+    /**
+     * @param containerName
+     * @param filesToSend
+     * @param maxConcurrency
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#sendAll(java.lang.String,
+     *      java.util.Map, int)
+     */
+    public BatchResult<String> sendAll(String containerName, Map<String, File> filesToSend, int maxConcurrency) {
+        Assert.notNull(filesToSend, "Files to send must be specified");
+        return new StorageBatchOperations(this, maxConcurrency).sendAll(containerName, filesToSend);
+    }
+
+    /**
+     * @param containerName
+     * @param objectsToReceive
+     * @param maxConcurrency
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#receiveAll(java.lang.String,
+     *      java.util.Map, int)
+     */
+    public BatchResult<String> receiveAll(String containerName, Map<String, File> objectsToReceive,
+                                          int maxConcurrency) {
+        Assert.notNull(objectsToReceive, "Objects to receive must be specified");
+        return new StorageBatchOperations(this, maxConcurrency).receiveAll(containerName, objectsToReceive);
+    }
+
+    /**
+     * Multi-object delete is not available in S3 client versions used,
+     * objects are deleted with concurrent single object requests.
+     *
+     * @param containerName
+     * @param objectNames
+     * @param maxConcurrency
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#deleteAll(java.lang.String,
+     *      java.util.Collection, int)
+     */
+    public BatchResult<Void> deleteAll(String containerName, Collection<String> objectNames, int maxConcurrency) {
+        Assert.notNull(objectNames, "Object names must be specified");
+        return new StorageBatchOperations(this, maxConcurrency).deleteAll(containerName, objectNames);
+    }
+
+    /**
+     * @param srcContainerName
+     * @param srcPrefix
+     * @param dstContainerName
+     * @param dstPrefix
+     * @param maxConcurrency
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#copyAll(java.lang.String,
+     *      java.lang.String, java.lang.String, java.lang.String, int)
+     */
+    public BatchResult<String> copyAll(String srcContainerName, String srcPrefix, String dstContainerName,
+                                       String dstPrefix, int maxConcurrency) {
+        return new StorageBatchOperations(this, maxConcurrency).copyAll(srcContainerName, srcPrefix,
+                dstContainerName, dstPrefix);
+    }
+
+    /**
+     * S3 has no rename, object is copied and source object is deleted.
+     *
+     * @param srcContainerName
+     * @param srcObjectName
+     * @param dstContainerName
+     * @param dstObjectName
+     * @return
+     * @see org.opencredo.cloud.storage.StorageOperations#move(java.lang.String,
+     *      java.lang.String, java.lang.String, java.lang.String)
+     */
+    public String move(String srcContainerName, String srcObjectName, String dstContainerName, String dstObjectName) {
+        copy(srcContainerName, srcObjectName, dstContainerName, dstObjectName);
+        deleteObject(srcContainerName, srcObjectName);
+        return dstObjectName;
+    }
+
+    /**
+     * S3 client versions used do not support conditional writes, conditions
+     * of send and delete are checked against object details received before
+     * the write. This check is not atomic: object may be changed by another
+     * client between the check and the write.
+     *
+     * @param containerName
+     * @param objectName
+     * @param conditions
+     * @throws StorageObjectModifiedException
+     *             If object does not meet given conditions.
+     */
+    protected void checkConditions(String containerName, String objectName, BlobConditions conditions) {
+        Assert.notNull(conditions, "Conditions are not provided");
+        BlobDetails current = getBlobDetails(containerName, objectName);
+        if (conditions.isPreconditionFailed(current) || conditions.isNotModified(current)) {
+            throw new StorageObjectModifiedException("Object does not meet conditions %s [bucket: '%s', key: '%s']",
+                    conditions, containerName, objectName);
+        }
+    }
 }
@@ -0,0 +1,358 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.s3;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencredo.cloud.storage.BatchResult;
+import org.opencredo.cloud.storage.BlobConditions;
+import org.opencredo.cloud.storage.BlobContent;
+import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.BlobDetailsPage;
+import org.opencredo.cloud.storage.BlobListOptions;
+import org.opencredo.cloud.storage.ContainerStatus;
+import org.opencredo.cloud.storage.MultipartDownloadSettings;
+import org.opencredo.cloud.storage.MultipartUploadSettings;
+import org.opencredo.cloud.storage.StorageException;
+import org.opencredo.cloud.storage.StorageObjectModifiedException;
+import org.opencredo.cloud.storage.StreamingUploadOutputStream;
+import org.opencredo.cloud.storage.test.s3.S3Emulator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * JetS3 template tests running against embedded S3 emulator, so they do not
+ * require AWS account.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class JetS3TemplateEmulatorTest {
+
+    private static final String BUCKET_NAME = "emulator-test";
+
+    private S3Emulator emulator;
+
+    private JetS3Template template;
+
+    private File tempDir;
+
+    @Before
+    public void before() throws IOException {
+        emulator = new S3Emulator();
+        emulator.start();
+        template = new JetS3Template(new AwsCredentials(S3Emulator.DEFAULT_ACCESS_KEY, S3Emulator.DEFAULT_SECRET_KEY),
+                BUCKET_NAME, emulator.getEndpoint());
+        template.createContainer(BUCKET_NAME);
+
+        tempDir = new File(System.getProperty("java.io.tmpdir"), "s3-emulator-test-" + System.nanoTime());
+        assertTrue(tempDir.mkdirs());
+    }
+
+    @After
+    public void after() throws IOException {
+        emulator.stop();
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    @Test
+    public void testBucketLifecycle() {
+        assertEquals(ContainerStatus.MINE, template.checkContainerStatus(BUCKET_NAME));
+        assertEquals(ContainerStatus.DOES_NOT_EXIST, template.checkContainerStatus("missing"));
+        assertTrue(template.listContainerNames().contains(BUCKET_NAME));
+
+        template.deleteContainer(BUCKET_NAME);
+        assertTrue(template.listContainerNames().isEmpty());
+    }
+
+    @Test
+    public void testSendReceiveAndDelete() {
+        template.send(BUCKET_NAME, "key1", "content");
+        assertEquals("content", template.receiveAsString(BUCKET_NAME, "key1"));
+        assertEquals(1, emulator.getOperationCount("PutObject"));
+
+        template.deleteObject(BUCKET_NAME, "key1");
+        assertTrue(template.listContainerObjectDetails(BUCKET_NAME).isEmpty());
+    }
+
+    @Test
+    public void testListingPagesAndPrefixes() {
+        for (int i = 0; i < 5; i++) {
+            template.send(BUCKET_NAME, "dir/key" + i, "data" + i);
+        }
+        template.send(BUCKET_NAME, "dir/sub/key", "data");
+        template.send(BUCKET_NAME, "root", "data");
+
+        BlobListOptions options = new BlobListOptions();
+        options.setPrefix("dir/");
+        options.setDelimiter("/");
+        options.setPageSize(2);
+
+        List<String> names = new ArrayList<String>();
+        List<String> prefixes = new ArrayList<String>();
+        String marker = null;
+        do {
+            BlobDetailsPage page = template.listContainerObjectDetailsPage(BUCKET_NAME, options, marker);
+            for (BlobDetails details : page.getBlobDetails()) {
+                names.add(details.getName());
+            }
+            prefixes.addAll(page.getCommonPrefixes());
+            marker = page.getNextMarker();
+        } while (marker != null);
+
+        assertEquals(5, names.size());
+        assertEquals("dir/key0", names.get(0));
+        assertEquals(1, prefixes.size());
+        assertEquals("dir/sub/", prefixes.get(0));
+        assertEquals(7, template.listContainerObjectDetails(BUCKET_NAME).size());
+    }
+
+    @Test
+    public void testMultipartUploadAndDownload() throws IOException {
+        byte[] data = new byte[(int) (2 * JetS3Template.MIN_PART_SIZE + 1024)];
+        new Random(1).nextBytes(data);
+        File source = new File(tempDir, "source");
+        FileUtils.writeByteArrayToFile(source, data);
+
+        MultipartUploadSettings uploadSettings = new MultipartUploadSettings();
+        uploadSettings.setPartSize(JetS3Template.MIN_PART_SIZE);
+        uploadSettings.setMultipartThreshold(JetS3Template.MIN_PART_SIZE);
+        template.sendInParts(BUCKET_NAME, "large", source, uploadSettings);
+        assertEquals(3, emulator.getOperationCount("UploadPart"));
+        assertEquals(0, emulator.getPendingUploadCount());
+        assertArrayEquals(data, emulator.getObjectData(BUCKET_NAME, "large"));
+
+        MultipartDownloadSettings downloadSettings = new MultipartDownloadSettings();
+        downloadSettings.setRangeSize(4 * 1024 * 1024);
+        downloadSettings.setMultipartThreshold(4 * 1024 * 1024);
+        File target = new File(tempDir, "target");
+        template.receiveInParts(BUCKET_NAME, "large", target, downloadSettings);
+        assertEquals(3, emulator.getOperationCount("GetObject"));
+        assertArrayEquals(data, FileUtils.readFileToByteArray(target));
+    }
+
+    @Test
+    public void testSmallStreamUploadedWithSinglePut() throws IOException {
+        OutputStream os = template.openForWrite(BUCKET_NAME, "small");
+        os.write("content".getBytes("UTF-8"));
+        os.close();
+
+        assertEquals("content", template.receiveAsString(BUCKET_NAME, "small"));
+        assertEquals(1, emulator.getOperationCount("PutObject"));
+        assertEquals(0, emulator.getOperationCount("InitiateMultipartUpload"));
+    }
+
+    @Test
+    public void testLargeStreamUploadedInParts() throws IOException {
+        byte[] data = new byte[(int) (2 * JetS3Template.MIN_PART_SIZE + 1024)];
+        new Random(2).nextBytes(data);
+
+        OutputStream os = template.openForWrite(BUCKET_NAME, "streamed");
+        // Written in chunks not aligned to part size
+        for (int offset = 0; offset < data.length; offset += 100000) {
+            os.write(data, offset, Math.min(100000, data.length - offset));
+        }
+        os.close();
+
+        assertEquals(1, emulator.getOperationCount("InitiateMultipartUpload"));
+        assertEquals(3, emulator.getOperationCount("UploadPart"));
+        assertEquals(1, emulator.getOperationCount("CompleteMultipartUpload"));
+        assertEquals(0, emulator.getOperationCount("PutObject"));
+        assertEquals(0, emulator.getPendingUploadCount());
+        assertArrayEquals(data, emulator.getObjectData(BUCKET_NAME, "streamed"));
+    }
+
+    @Test
+    public void testAbortedStreamDoesNotCreateObject() throws IOException {
+        byte[] data = new byte[(int) JetS3Template.MIN_PART_SIZE + 1024];
+
+        StreamingUploadOutputStream os = (StreamingUploadOutputStream) template.openForWrite(BUCKET_NAME,
+                "aborted");
+        os.write(data);
+        os.abort();
+
+        assertEquals(1, emulator.getOperationCount("AbortMultipartUpload"));
+        assertEquals(0, emulator.getOperationCount("CompleteMultipartUpload"));
+        assertEquals(0, emulator.getPendingUploadCount());
+        assertNull(emulator.getObjectData(BUCKET_NAME, "aborted"));
+    }
+
+    @Test
+    public void testBlobDetailsOfMissingKey() {
+        assertNull(template.getBlobDetails(BUCKET_NAME, "missing"));
+        assertEquals(1, emulator.getOperationCount("HeadObject"));
+        assertEquals(0, emulator.getOperationCount("GetObject"));
+    }
+
+    @Test
+    public void testBlobDetails() {
+        template.send(BUCKET_NAME, "key1", "content");
+
+        BlobDetails details = template.getBlobDetails(BUCKET_NAME, "key1");
+        assertNotNull(details);
+        assertEquals("key1", details.getName());
+        assertEquals(7, details.getContentLength());
+        assertNotNull(details.getETag());
+        assertEquals(1, emulator.getOperationCount("HeadObject"));
+        assertEquals(0, emulator.getOperationCount("GetObject"));
+    }
+
+    @Test
+    public void testConditionalReceive() throws IOException {
+        template.send(BUCKET_NAME, "conditional", "v1");
+        BlobDetails details = template.getBlobDetails(BUCKET_NAME, "conditional");
+
+        // 304 Not Modified
+        BlobConditions notModified = new BlobConditions();
+        notModified.setIfNoneMatch(details.getETag());
+        assertNull(template.receive(BUCKET_NAME, "conditional", notModified));
+
+        BlobConditions matching = new BlobConditions();
+        matching.setIfMatch(details.getETag());
+        BlobContent content = template.receive(BUCKET_NAME, "conditional", matching);
+        try {
+            assertEquals("v1", IOUtils.toString(content.getData()));
+            assertEquals(details.getETag(), content.getDetails().getETag());
+        } finally {
+            IOUtils.closeQuietly(content.getData());
+        }
+
+        // 412 Precondition Failed
+        template.send(BUCKET_NAME, "conditional", "v2");
+        try {
+            template.receive(BUCKET_NAME, "conditional", matching);
+            fail("Object modified after ETag was received should not be received");
+        } catch (StorageObjectModifiedException e) {
+            // expected
+        }
+        assertEquals(3, emulator.getOperationCount("GetObject"));
+    }
+
+    @Test
+    public void testConditionalSendAndDelete() {
+        BlobConditions createOnly = new BlobConditions();
+        createOnly.setIfNoneMatch(BlobConditions.ANY_ETAG);
+        template.send(BUCKET_NAME, "conditional", "v1", createOnly);
+        try {
+            template.send(BUCKET_NAME, "conditional", "v2", createOnly);
+            fail("Existing object should not be overwritten");
+        } catch (StorageObjectModifiedException e) {
+            // expected
+        }
+        assertEquals("v1", template.receiveAsString(BUCKET_NAME, "conditional"));
+
+        BlobConditions matching = new BlobConditions();
+        matching.setIfMatch(template.getBlobDetails(BUCKET_NAME, "conditional").getETag());
+        template.send(BUCKET_NAME, "conditional", "v2", matching);
+        try {
+            template.deleteObject(BUCKET_NAME, "conditional", matching);
+            fail("Object modified after ETag was received should not be deleted");
+        } catch (StorageObjectModifiedException e) {
+            // expected
+        }
+        assertNotNull(emulator.getObjectData(BUCKET_NAME, "conditional"));
+
+        matching.setIfMatch(template.getBlobDetails(BUCKET_NAME, "conditional").getETag());
+        template.deleteObject(BUCKET_NAME, "conditional", matching);
+        assertNull(emulator.getObjectData(BUCKET_NAME, "conditional"));
+    }
+
+    @Test
+    public void testCopyAcrossBuckets() {
+        template.createContainer("copy-target");
+        template.send(BUCKET_NAME, "source", "content");
+
+        assertEquals("copied", template.copy(BUCKET_NAME, "source", "copy-target", "copied"));
+
+        assertEquals("content", template.receiveAsString("copy-target", "copied"));
+        assertEquals("content", template.receiveAsString(BUCKET_NAME, "source"));
+        // Content is copied by S3, not uploaded again
+        assertEquals(1, emulator.getOperationCount("CopyObject"));
+        assertEquals(1, emulator.getOperationCount("PutObject"));
+    }
+
+    @Test
+    public void testMoveDeletesSource() {
+        template.send(BUCKET_NAME, "source", "content");
+
+        template.move(BUCKET_NAME, "source", BUCKET_NAME, "moved");
+
+        assertEquals("content", template.receiveAsString(BUCKET_NAME, "moved"));
+        assertNull(emulator.getObjectData(BUCKET_NAME, "source"));
+        assertEquals(1, emulator.getOperationCount("CopyObject"));
+        assertEquals(1, emulator.getOperationCount("DeleteObject"));
+    }
+
+    @Test
+    public void testCopyAllRewritesPrefix() {
+        template.createContainer("copy-target");
+        template.send(BUCKET_NAME, "in/a", "a");
+        template.send(BUCKET_NAME, "in/sub/b", "b");
+        template.send(BUCKET_NAME, "other/c", "c");
+
+        BatchResult<String> result = template.copyAll(BUCKET_NAME, "in/", "copy-target", "out/", 2);
+
+        assertTrue(result.isSuccessful());
+        assertEquals(2, result.getResults().size());
+        Set<String> copied = new TreeSet<String>();
+        for (BlobDetails details : template.listContainerObjectDetails("copy-target")) {
+            copied.add(details.getName());
+        }
+        assertEquals(new TreeSet<String>(Arrays.asList("out/a", "out/sub/b")), copied);
+        assertEquals("b", template.receiveAsString("copy-target", "out/sub/b"));
+        assertEquals(2, emulator.getOperationCount("CopyObject"));
+    }
+
+    @Test
+    public void testSignedUrl() throws IOException {
+        template.send(BUCKET_NAME, "key1", "content");
+        String signedUrl = template.createdSignedUrl(BUCKET_NAME, "key1", new Date(System.currentTimeMillis() + 60000));
+
+        // Request signed path and query on emulator, whatever host name URL contains.
+        String pathAndQuery = signedUrl.substring(signedUrl.indexOf('/', signedUrl.indexOf("//") + 2));
+        InputStream is = new URL(emulator.getEndpoint() + pathAndQuery).openStream();
+        try {
+            assertEquals("content", IOUtils.toString(is));
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    @Test(expected = StorageException.class)
+    public void testInvalidCredentialsAreRejected() {
+        new JetS3Template(new AwsCredentials(S3Emulator.DEFAULT_ACCESS_KEY, "invalid"), BUCKET_NAME, emulator
+                .getEndpoint());
+    }
+}
@@ -20,10 +20,13 @@ import org.jets3t.service.S3ServiceException;
 import org.jets3t.service.ServiceException;
 import org.jets3t.service.model.S3Bucket;
 import org.jets3t.service.model.S3Object;
+import org.jets3t.service.model.StorageObject;
+import org.jets3t.service.model.StorageObjectsChunk;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentMatcher;
 import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.BlobListOptions;
 import org.opencredo.cloud.storage.ContainerStatus;
 import org.opencredo.cloud.storage.StorageCommunicationException;
 import org.opencredo.cloud.storage.StorageException;
@@ -37,15 +40,18 @@ import java.io.InputStream;
 import java.net.URL;
 import java.security.NoSuchAlgorithmException;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -205,6 +211,31 @@ public class JetS3TemplateTest {
         assertEquals("name2", listBuckets.get(1));
     }
 
+    /**
+     * Test method for
+     * {@link org.opencredo.cloud.storage.s3.JetS3Template#iterateContainerObjectDetails(java.lang.String, org.opencredo.cloud.storage.BlobListOptions)}
+     * .
+     *
+     * @throws ServiceException
+     */
+    @Test
+    public void testIterateContainerObjectDetailsFetchesPagesLazily() throws ServiceException {
+        BlobListOptions options = new BlobListOptions();
+        options.setPageSize(1);
+        doReturn(new StorageObjectsChunk(null, null, new StorageObject[]{new S3Object(KEY)}, null, KEY)).when(
+                s3Service).listObjectsChunked(BUCKET_NAME, null, null, 1L, null);
+        doReturn(new StorageObjectsChunk(null, null, new StorageObject[]{new S3Object("key2")}, null, null)).when(
+                s3Service).listObjectsChunked(BUCKET_NAME, null, null, 1L, KEY);
+
+        Iterator<BlobDetails> iterator = template.iterateContainerObjectDetails(BUCKET_NAME, options);
+        assertEquals(KEY, iterator.next().getName());
+        verify(s3Service, never()).listObjectsChunked(BUCKET_NAME, null, null, 1L, KEY);
+
+        assertEquals("key2", iterator.next().getName());
+        assertFalse(iterator.hasNext());
+        verify(s3Service).listObjectsChunked(BUCKET_NAME, null, null, 1L, KEY);
+    }
+
     /**
      * Test method for
      * {@link org.opencredo.cloud.storage.s3.S3Template#checkContainerStatus(java.lang.String)}
@@ -0,0 +1,88 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.si.adapter;
+
+import java.util.List;
+
+import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.StorageOperations;
+import org.springframework.integration.Message;
+import org.springframework.integration.core.MessageSource;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.util.Assert;
+
+/**
+ * {@link MessageSource} that emits blob details listed by
+ * {@link ReadingMessageSource} in batches, so large backlog is drained with
+ * few poller ticks. Each message contains list of up to
+ * <code>maxPerPoll</code> blob details.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class BatchingMessageSource implements MessageSource<List<BlobDetails>> {
+
+    public static final int DEFAULT_MAX_PER_POLL = 100;
+
+    private final ReadingMessageSource source;
+
+    private volatile int maxPerPoll = DEFAULT_MAX_PER_POLL;
+
+    /**
+     * @param template
+     * @param containerName
+     */
+    public BatchingMessageSource(StorageOperations template, String containerName) {
+        this(new ReadingMessageSource(template, containerName));
+    }
+
+    /**
+     * @param source
+     *            Source of blob details.
+     */
+    public BatchingMessageSource(ReadingMessageSource source) {
+        Assert.notNull(source, "'source' should not be null");
+        this.source = source;
+    }
+
+    /**
+     * @return Message with list of blob details, or <code>null</code> if
+     *         there is nothing to receive.
+     * @see org.springframework.integration.core.MessageSource#receive()
+     */
+    public Message<List<BlobDetails>> receive() {
+        List<BlobDetails> batch = source.receiveBatch(maxPerPoll);
+        if (batch.isEmpty()) {
+            return null;
+        }
+        return MessageBuilder.withPayload(batch).build();
+    }
+
+    public ReadingMessageSource getSource() {
+        return source;
+    }
+
+    public int getMaxPerPoll() {
+        return maxPerPoll;
+    }
+
+    /**
+     * @param maxPerPoll
+     *            Maximum number of blob details in single message.
+     */
+    public void setMaxPerPoll(int maxPerPoll) {
+        Assert.isTrue(maxPerPoll > 0, "'maxPerPoll' must be positive");
+        this.maxPerPoll = maxPerPoll;
+    }
+}
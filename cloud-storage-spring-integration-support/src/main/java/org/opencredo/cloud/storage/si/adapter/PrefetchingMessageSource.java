@@ -0,0 +1,443 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.si.adapter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.StorageCommunicationException;
+import org.opencredo.cloud.storage.StorageOperations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.integration.Message;
+import org.springframework.integration.core.MessageSource;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.util.Assert;
+
+/**
+ * {@link MessageSource} that downloads blobs listed by
+ * {@link ReadingMessageSource} ahead of the consumer. Up to
+ * <code>concurrency</code> blobs are downloaded in parallel and at most
+ * <code>bufferCapacity</code> blobs are held downloaded or in progress, so
+ * listing and downloading stop while downstream does not receive messages.
+ * <p>
+ * Message payload is blob content as <code>byte[]</code>, or as {@link File}
+ * in temporary directory if one is set; consumer is responsible for deleting
+ * received files. Blob details are kept in {@link #BLOB_DETAILS_HEADER}
+ * header. Messages are emitted in download completion order. Failed download
+ * is thrown from {@link #receive()}, so it reaches poller error handling.
+ * Failed blob is put back to the queue of {@link ReadingMessageSource} once
+ * retry delay, doubled after every failure, has passed, and is dropped after
+ * <code>maxAttempts</code> failed downloads of the same blob content; the last
+ * failure is then thrown as {@link IntegrationException}. Blob which no longer
+ * exists is not downloaded again.
+ * <p>
+ * Files of downloads not received before {@link #destroy()} are deleted.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class PrefetchingMessageSource implements MessageSource<Object>, InitializingBean, DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(PrefetchingMessageSource.class);
+
+    public static final String BLOB_DETAILS_HEADER = "cloud_storage_blobDetails";
+
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    public static final int DEFAULT_BUFFER_CAPACITY = 16;
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+    public static final long DEFAULT_RETRY_DELAY = 1000;
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private static final int HTTP_NOT_FOUND = 404;
+
+    private static final long DESTROY_TIMEOUT = 10000;
+
+    private final ReadingMessageSource source;
+
+    private final StorageOperations template;
+
+    private int concurrency = DEFAULT_CONCURRENCY;
+
+    private int bufferCapacity = DEFAULT_BUFFER_CAPACITY;
+
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    private long retryDelay = DEFAULT_RETRY_DELAY;
+
+    private File tempDirectory;
+
+    private ExecutorService executor;
+
+    private CompletionService<Message<Object>> downloads;
+
+    private Semaphore bufferPermits;
+
+    private volatile boolean destroyed;
+
+    /**
+     * Last failure of blobs being retried, by blob name.
+     */
+    private final ConcurrentMap<String, FailedDownload> failures = new ConcurrentHashMap<String, FailedDownload>();
+
+    /**
+     * Failed blobs waiting for their retry delay to pass.
+     */
+    private final DelayQueue<FailedDownload> retries = new DelayQueue<FailedDownload>();
+
+    /**
+     * @param template
+     * @param containerName
+     */
+    public PrefetchingMessageSource(StorageOperations template, String containerName) {
+        this(new ReadingMessageSource(template, containerName));
+    }
+
+    /**
+     * @param source
+     *            Source of blob details to download.
+     */
+    public PrefetchingMessageSource(ReadingMessageSource source) {
+        Assert.notNull(source, "'source' should not be null");
+        this.source = source;
+        this.template = source.getTemplate();
+    }
+
+    public void afterPropertiesSet() {
+        Assert.isTrue(concurrency > 0, "'concurrency' must be positive");
+        Assert.isTrue(bufferCapacity >= concurrency, "'bufferCapacity' must not be less than 'concurrency'");
+        Assert.isTrue(maxAttempts > 0, "'maxAttempts' must be positive");
+        Assert.isTrue(retryDelay >= 0, "'retryDelay' must not be negative");
+        if (tempDirectory != null) {
+            Assert.isTrue(tempDirectory.isDirectory(), "Temporary directory '" + tempDirectory + "' does not exist");
+        }
+
+        executor = Executors.newFixedThreadPool(concurrency, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "blob-prefetch-" + THREAD_COUNTER.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        downloads = new ExecutorCompletionService<Message<Object>>(executor);
+        bufferPermits = new Semaphore(bufferCapacity);
+    }
+
+    public void destroy() {
+        if (executor == null) {
+            return;
+        }
+        destroyed = true;
+        executor.shutdownNow();
+        retries.clear();
+        failures.clear();
+        try {
+            // Downloads in progress delete their files when they stop
+            if (!executor.awaitTermination(DESTROY_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                LOG.warn("Blob downloads have not stopped in {} ms", DESTROY_TIMEOUT);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Remove downloaded files nobody is going to receive
+        Future<Message<Object>> download;
+        while ((download = downloads.poll()) != null) {
+            try {
+                Object payload = download.get().getPayload();
+                if (payload instanceof File) {
+                    ((File) payload).delete();
+                }
+            } catch (ExecutionException e) {
+                // Nothing has been downloaded
+            } catch (InterruptedException e) {
+                // Future is done, keep deleting files of the rest
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Starts downloads for listed blobs while buffer has free space and
+     * returns downloaded blob if there is one.
+     *
+     * @return Message with downloaded blob, or <code>null</code> if no
+     *         download has completed yet.
+     */
+    public Message<Object> receive() {
+        Assert.state(downloads != null, "Prefetching message source is not initialized");
+        prefetch();
+
+        Future<Message<Object>> download = downloads.poll();
+        if (download == null) {
+            return null;
+        }
+
+        bufferPermits.release();
+        try {
+            return download.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IntegrationException) {
+                throw (IntegrationException) e.getCause();
+            }
+            throw new IntegrationException("Failed to prefetch blob", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IntegrationException("Interrupted while receiving prefetched blob", e);
+        }
+    }
+
+    private void prefetch() {
+        requeueDueRetries();
+        while (bufferPermits.tryAcquire()) {
+            Message<BlobDetails> listed = source.receive();
+            if (listed == null) {
+                bufferPermits.release();
+                return;
+            }
+
+            final BlobDetails details = listed.getPayload();
+            LOG.debug("Prefetch blob '{}'", details);
+            downloads.submit(new Callable<Message<Object>>() {
+                public Message<Object> call() throws Exception {
+                    Object payload;
+                    try {
+                        payload = download(details);
+                    } catch (IOException e) {
+                        throw handleFailure(details, e);
+                    } catch (RuntimeException e) {
+                        throw handleFailure(details, e);
+                    }
+                    failures.remove(details.getName());
+                    return MessageBuilder.withPayload(payload).setHeader(BLOB_DETAILS_HEADER, details).build();
+                }
+            });
+        }
+    }
+
+    /**
+     * Schedules blob which failed to download to be downloaded again, unless
+     * it has been removed from container, has failed too many times or source
+     * is destroyed.
+     * 
+     * @param details
+     * @param failure
+     * @return Failure to throw from {@link #receive()}.
+     */
+    private Exception handleFailure(BlobDetails details, Exception failure) {
+        if (destroyed) {
+            return failure;
+        }
+        String name = details.getName();
+        if (failure instanceof StorageCommunicationException
+                && ((StorageCommunicationException) failure).getStatusCode() == HTTP_NOT_FOUND) {
+            failures.remove(name);
+            LOG.debug("Blob '{}' no longer exists, not downloaded again", details);
+            return failure;
+        }
+
+        FailedDownload previous = failures.get(name);
+        // Replaced blob content starts counting from scratch
+        int attempts = previous != null && equal(previous.details.getETag(), details.getETag()) ? previous.attempts + 1
+                : 1;
+        if (attempts >= maxAttempts) {
+            failures.remove(name);
+            LOG.warn("Blob '{}' failed to download {} times, dropped", details, attempts);
+            return new IntegrationException("Blob '" + details + "' failed to download " + attempts
+                    + " times, dropped", failure);
+        }
+
+        // Delay doubles after every failure
+        long delay = retryDelay << Math.min(attempts - 1, 20);
+        FailedDownload retry = new FailedDownload(details, attempts, System.currentTimeMillis() + delay);
+        failures.put(name, retry);
+        retries.add(retry);
+        LOG.debug("Blob '{}' failed to download, will be downloaded again in {} ms", details, delay);
+        return failure;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Puts failed blobs whose retry delay has passed back to the queue of
+     * source, while it has free capacity.
+     */
+    private void requeueDueRetries() {
+        FailedDownload retry;
+        while ((retry = retries.poll()) != null) {
+            if (!source.requeue(retry.details)) {
+                // Queue is full, retry on next poll
+                retries.add(retry);
+                return;
+            }
+        }
+    }
+
+    private Object download(BlobDetails details) throws IOException {
+        if (tempDirectory != null) {
+            File file = File.createTempFile("blob-", ".tmp", tempDirectory);
+            boolean downloaded = false;
+            try {
+                template.receiveAndSaveToFile(details.getContainerName(), details.getName(), file);
+                downloaded = !destroyed;
+            } finally {
+                if (!downloaded) {
+                    // Failed or destroyed while downloading, nobody will receive the file
+                    file.delete();
+                }
+            }
+            if (!downloaded) {
+                throw new IOException("Download of blob '" + details + "' has been interrupted");
+            }
+            return file;
+        }
+
+        InputStream input = template.receiveAsInputStream(details.getContainerName(), details.getName());
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            IOUtils.copy(input, output);
+            return output.toByteArray();
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * @return Number of blobs downloaded or being downloaded and not received
+     *         yet.
+     */
+    public int getBufferedCount() {
+        return bufferCapacity - bufferPermits.availablePermits();
+    }
+
+    public ReadingMessageSource getSource() {
+        return source;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @param concurrency
+     *            Maximum number of parallel downloads.
+     */
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public int getBufferCapacity() {
+        return bufferCapacity;
+    }
+
+    /**
+     * @param bufferCapacity
+     *            Maximum number of blobs downloaded or being downloaded ahead
+     *            of consumer.
+     */
+    public void setBufferCapacity(int bufferCapacity) {
+        this.bufferCapacity = bufferCapacity;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param maxAttempts
+     *            Number of failed downloads after which blob is dropped.
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public long getRetryDelay() {
+        return retryDelay;
+    }
+
+    /**
+     * @param retryDelay
+     *            Time in milliseconds to wait before blob is downloaded again
+     *            after first failure. Doubled after every following failure.
+     */
+    public void setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    public File getTempDirectory() {
+        return tempDirectory;
+    }
+
+    /**
+     * @param tempDirectory
+     *            Directory to download blobs to. If not set, blobs are kept in
+     *            memory.
+     */
+    public void setTempDirectory(File tempDirectory) {
+        this.tempDirectory = tempDirectory;
+    }
+
+    /**
+     * Blob waiting to be downloaded again.
+     */
+    private static class FailedDownload implements Delayed {
+
+        private final BlobDetails details;
+
+        private final int attempts;
+
+        private final long retryTime;
+
+        FailedDownload(BlobDetails details, int attempts, long retryTime) {
+            this.details = details;
+            this.attempts = attempts;
+            this.retryTime = retryTime;
+        }
+
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(retryTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        public int compareTo(Delayed other) {
+            long diff = getDelay(TimeUnit.MILLISECONDS) - other.getDelay(TimeUnit.MILLISECONDS);
+            return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+        }
+    }
+}
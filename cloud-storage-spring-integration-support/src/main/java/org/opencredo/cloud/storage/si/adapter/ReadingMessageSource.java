@@ -22,6 +22,9 @@ import org.opencredo.cloud.storage.si.comparator.BlobDetailsComparator;
 import org.opencredo.cloud.storage.si.comparator.internal.BlobLastModifiedDateComparator;
 import org.opencredo.cloud.storage.si.filter.BlobDetailsFilter;
 import org.opencredo.cloud.storage.si.filter.internal.AcceptOnceBlobNameFilter;
+import org.opencredo.cloud.storage.si.listing.BlobLister;
+import org.opencredo.cloud.storage.si.listing.PagingBlobLister;
+import org.opencredo.cloud.storage.si.listing.internal.FullBlobLister;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
@@ -30,6 +33,8 @@ import org.springframework.integration.core.MessageSource;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.util.Assert;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.PriorityBlockingQueue;
@@ -40,7 +45,18 @@ import java.util.concurrent.PriorityBlockingQueue;
  * may supply an {@link BlobDetailsFilter}. By default, an
  * {@link AcceptOnceBlobNameFilter} is used. It ensures blob objects are picked
  * up only once from the container. A {@link BlobDetailsComparator} can be used
- * to ensure internal ordering of the blob objects in a queue.
+ * to ensure internal ordering of the blob objects in a queue. By default the
+ * whole container is listed on every poll; supply a {@link BlobLister} to list
+ * incrementally.
+ * <p>
+ * If queue capacity is set, listing is consumed only as far as its blob
+ * details fit into the queue; the rest is filtered and queued on following
+ * polls before container is listed again. {@link PagingBlobLister} (e.g. the
+ * default {@link FullBlobLister}) is then read page by page, so at most one
+ * page of listing is held besides the queue; other listers return whole
+ * listing at once and it is held until it is queued. Comparator orders only
+ * blob details which are in the queue at the same time, so across a listing
+ * larger than queue capacity blobs are emitted roughly in listing order.
  *
  * @author Eren Aykin (eren.aykin@opencredo.com)
  * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
@@ -53,8 +69,21 @@ public class ReadingMessageSource implements MessageSource<BlobDetails>, Initial
     private final StorageOperations template;
     private final String containerName;
     private final BlobDetailsFilter filter;
+    private final BlobDetailsComparator comparator;
 
-    private final Queue<BlobDetails> toBeReceived;
+    private volatile Queue<BlobDetails> toBeReceived;
+
+    private volatile int queueCapacity;
+
+    /**
+     * Rest of listing which has not been filtered yet because queue was full,
+     * or <code>null</code> if container is to be listed again.
+     */
+    private Iterator<BlobDetails> notFiltered;
+
+    private final Object listingMonitor = new Object();
+
+    private volatile BlobLister lister = new FullBlobLister();
 
     /**
      * @param template
@@ -88,6 +117,7 @@ public class ReadingMessageSource implements MessageSource<BlobDetails>, Initial
         this.template = template;
         this.containerName = containerName;
         this.filter = filter;
+        this.comparator = comparator;
         this.toBeReceived = new PriorityBlockingQueue<BlobDetails>(INTERNAL_QUEUE_CAPACITY, comparator);
     }
 
@@ -105,8 +135,8 @@ public class ReadingMessageSource implements MessageSource<BlobDetails>, Initial
             doReceive();
         }
 
-        if (!toBeReceived.isEmpty()) {
-            BlobDetails obj = toBeReceived.poll();
+        BlobDetails obj = toBeReceived.poll();
+        if (obj != null) {
             MessageBuilder<BlobDetails> builder = MessageBuilder.withPayload(obj);
             return builder.build();
         }
@@ -115,11 +145,79 @@ public class ReadingMessageSource implements MessageSource<BlobDetails>, Initial
         }
     }
 
+    /**
+     * Receives several blob details at once, listing container if there is
+     * nothing left from previous listing.
+     *
+     * @param maxCount
+     *            Maximum number of blob details to return.
+     * @return Blob details in comparator order, or empty list if there is
+     *         nothing to receive.
+     */
+    public List<BlobDetails> receiveBatch(int maxCount) {
+        Assert.isTrue(maxCount > 0, "'maxCount' must be positive");
+        if (toBeReceived.isEmpty()) {
+            doReceive();
+        }
+
+        List<BlobDetails> batch = new ArrayList<BlobDetails>(Math.min(maxCount, toBeReceived.size()));
+        BlobDetails obj;
+        while (batch.size() < maxCount && (obj = toBeReceived.poll()) != null) {
+            batch.add(obj);
+        }
+        return batch;
+    }
+
     public void doReceive() {
-        LOG.debug("Receive objects from container '{}'", containerName);
+        synchronized (listingMonitor) {
+            if (queueCapacity == 0) {
+                LOG.debug("Receive objects from container '{}'", containerName);
+                List<BlobDetails> listed = lister.list(template, containerName);
+                if (listed != null) {
+                    queue(listed);
+                }
+                return;
+            }
+
+            if (notFiltered == null) {
+                LOG.debug("Receive objects from container '{}' page by page", containerName);
+                notFiltered = listLazily();
+            }
 
-        List<BlobDetails> cod = template.listContainerObjectDetails(containerName);
+            try {
+                // Filter only blob details which fit into queue, so filter
+                // does not record blobs which are not queued
+                while (notFiltered.hasNext()) {
+                    int free = queueCapacity - toBeReceived.size();
+                    if (free <= 0) {
+                        LOG.debug("Queue is full, rest of listing is left for next poll");
+                        return;
+                    }
 
+                    List<BlobDetails> cod = new ArrayList<BlobDetails>(free);
+                    while (cod.size() < free && notFiltered.hasNext()) {
+                        cod.add(notFiltered.next());
+                    }
+                    queue(cod);
+                }
+                notFiltered = null;
+            } catch (RuntimeException e) {
+                // Failed page request: list container again on next poll
+                notFiltered = null;
+                throw e;
+            }
+        }
+    }
+
+    private Iterator<BlobDetails> listLazily() {
+        if (lister instanceof PagingBlobLister) {
+            return ((PagingBlobLister) lister).iterate(template, containerName);
+        }
+        List<BlobDetails> listed = lister.list(template, containerName);
+        return listed == null ? new ArrayList<BlobDetails>(0).iterator() : listed.iterator();
+    }
+
+    private void queue(List<BlobDetails> cod) {
         if (filter != null) {
             // Filter container object details with provided filter
             cod = filter.filter(cod);
@@ -130,11 +228,65 @@ public class ReadingMessageSource implements MessageSource<BlobDetails>, Initial
         }
     }
 
+    /**
+     * Puts blob details received before back to the queue without filtering
+     * them again, e.g. when their processing has failed.
+     *
+     * @param details
+     * @return <code>false</code> if queue is full and blob details have not
+     *         been queued.
+     */
+    public boolean requeue(BlobDetails details) {
+        synchronized (listingMonitor) {
+            if (queueCapacity != 0 && toBeReceived.size() >= queueCapacity) {
+                return false;
+            }
+            toBeReceived.add(details);
+            return true;
+        }
+    }
+
     public Queue<BlobDetails> getQueueToBeReceived() {
         return toBeReceived;
     }
 
+    public StorageOperations getTemplate() {
+        return template;
+    }
+
     public String getContainerName() {
         return containerName;
     }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @param queueCapacity
+     *            Maximum number of listed blob details held in internal queue
+     *            until they are received. Rest of listing is filtered and
+     *            queued on following polls, read page by page if lister is
+     *            {@link PagingBlobLister}. Not bounded by default.
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        Assert.isTrue(queueCapacity > 0, "'queueCapacity' must be positive");
+        Assert.state(toBeReceived.isEmpty(), "Queue capacity cannot be changed after container was listed");
+        this.toBeReceived = new PriorityBlockingQueue<BlobDetails>(queueCapacity, comparator);
+        this.queueCapacity = queueCapacity;
+    }
+
+    public BlobLister getLister() {
+        return lister;
+    }
+
+    /**
+     * @param lister
+     *            Strategy used to list container objects on each poll.
+     *            Default is {@link FullBlobLister}.
+     */
+    public void setLister(BlobLister lister) {
+        Assert.notNull(lister, "'lister' should not be null");
+        this.lister = lister;
+    }
 }
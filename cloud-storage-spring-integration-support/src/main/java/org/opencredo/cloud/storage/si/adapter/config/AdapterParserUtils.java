@@ -29,6 +29,13 @@ public final class AdapterParserUtils {
     // Inbound Properties
     static final String FILTER_ATTRIBUTE = "filter";
     static final String COMPARATOR_ATTRIBUTE = "comparator";
+    static final String LISTER_ATTRIBUTE = "lister";
+    static final String QUEUE_CAPACITY_ATTRIBUTE = "queue-capacity";
+    static final String BATCH_ATTRIBUTE = "batch";
+    static final String MAX_PER_POLL_ATTRIBUTE = "max-per-poll";
+    static final String PREFETCH_CONCURRENCY_ATTRIBUTE = "prefetch-concurrency";
+    static final String PREFETCH_BUFFER_CAPACITY_ATTRIBUTE = "prefetch-buffer-capacity";
+    static final String PREFETCH_DIRECTORY_ATTRIBUTE = "prefetch-directory";
 
     // Outbound Properties
     static final String NAME_BUILDER_ATTRIBUTE = "name-builder";
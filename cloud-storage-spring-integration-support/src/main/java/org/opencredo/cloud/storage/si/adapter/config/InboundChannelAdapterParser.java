@@ -15,8 +15,11 @@
 
 package org.opencredo.cloud.storage.si.adapter.config;
 
+import org.opencredo.cloud.storage.si.adapter.BatchingMessageSource;
+import org.opencredo.cloud.storage.si.adapter.PrefetchingMessageSource;
 import org.opencredo.cloud.storage.si.adapter.ReadingMessageSource;
 import org.springframework.beans.BeanMetadataElement;
+import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.xml.ParserContext;
 import org.springframework.integration.config.xml.AbstractPollingInboundChannelAdapterParser;
@@ -42,6 +45,7 @@ public class InboundChannelAdapterParser extends AbstractPollingInboundChannelAd
         String containerName = element.getAttribute(AdapterParserUtils.CONTAINER_NAME_ATTRIBUTE);
         String filterRef = element.getAttribute(AdapterParserUtils.FILTER_ATTRIBUTE);
         String comparatorRef = element.getAttribute(AdapterParserUtils.COMPARATOR_ATTRIBUTE);
+        String listerRef = element.getAttribute(AdapterParserUtils.LISTER_ATTRIBUTE);
 
         builder.addConstructorArgReference(templateRef);
         builder.addConstructorArgValue(containerName);
@@ -54,6 +58,65 @@ public class InboundChannelAdapterParser extends AbstractPollingInboundChannelAd
             builder.addConstructorArgReference(comparatorRef);
         }
 
+        if (StringUtils.hasText(listerRef)) {
+            builder.addPropertyReference("lister", listerRef);
+        }
+
+        String queueCapacity = element.getAttribute(AdapterParserUtils.QUEUE_CAPACITY_ATTRIBUTE);
+        if (StringUtils.hasText(queueCapacity)) {
+            builder.addPropertyValue("queueCapacity", queueCapacity);
+        }
+
+        boolean batch = Boolean.valueOf(element.getAttribute(AdapterParserUtils.BATCH_ATTRIBUTE));
+        String maxPerPoll = element.getAttribute(AdapterParserUtils.MAX_PER_POLL_ATTRIBUTE);
+        String prefetchConcurrency = element.getAttribute(AdapterParserUtils.PREFETCH_CONCURRENCY_ATTRIBUTE);
+
+        if (StringUtils.hasText(maxPerPoll) && !batch) {
+            parserContext.getReaderContext().error(
+                    "'" + AdapterParserUtils.MAX_PER_POLL_ATTRIBUTE + "' is only allowed in batch mode", element);
+        }
+        if (batch && StringUtils.hasText(prefetchConcurrency)) {
+            parserContext.getReaderContext().error("Batch mode cannot be combined with prefetching", element);
+        }
+
+        if (batch) {
+            return parseBatchingSource(builder.getBeanDefinition(), maxPerPoll);
+        }
+
+        if (StringUtils.hasText(prefetchConcurrency)) {
+            return parsePrefetchingSource(element, builder.getBeanDefinition(), prefetchConcurrency);
+        }
+
         return builder.getBeanDefinition();
     }
+
+    private BeanMetadataElement parseBatchingSource(BeanDefinition source, String maxPerPoll) {
+        BeanDefinitionBuilder batchingBuilder = BeanDefinitionBuilder
+                .genericBeanDefinition(BatchingMessageSource.class.getName());
+        batchingBuilder.addConstructorArgValue(source);
+        if (StringUtils.hasText(maxPerPoll)) {
+            batchingBuilder.addPropertyValue("maxPerPoll", maxPerPoll);
+        }
+        return batchingBuilder.getBeanDefinition();
+    }
+
+    private BeanMetadataElement parsePrefetchingSource(Element element, BeanDefinition source,
+            String prefetchConcurrency) {
+        BeanDefinitionBuilder prefetchingBuilder = BeanDefinitionBuilder
+                .genericBeanDefinition(PrefetchingMessageSource.class.getName());
+        prefetchingBuilder.addConstructorArgValue(source);
+        prefetchingBuilder.addPropertyValue("concurrency", prefetchConcurrency);
+
+        String bufferCapacity = element.getAttribute(AdapterParserUtils.PREFETCH_BUFFER_CAPACITY_ATTRIBUTE);
+        if (StringUtils.hasText(bufferCapacity)) {
+            prefetchingBuilder.addPropertyValue("bufferCapacity", bufferCapacity);
+        }
+
+        String directory = element.getAttribute(AdapterParserUtils.PREFETCH_DIRECTORY_ATTRIBUTE);
+        if (StringUtils.hasText(directory)) {
+            prefetchingBuilder.addPropertyValue("tempDirectory", directory);
+        }
+
+        return prefetchingBuilder.getBeanDefinition();
+    }
 }
@@ -0,0 +1,657 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.si.cluster;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.opencredo.cloud.storage.BlobConditions;
+import org.opencredo.cloud.storage.BlobContent;
+import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.BlobListOptions;
+import org.opencredo.cloud.storage.StorageCommunicationException;
+import org.opencredo.cloud.storage.StorageException;
+import org.opencredo.cloud.storage.StorageObjectModifiedException;
+import org.opencredo.cloud.storage.StorageOperations;
+import org.opencredo.cloud.storage.StorageResponseHandlingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Coordinates inbound adapters running on several nodes through marker blobs
+ * in coordination container, so no extra infrastructure is needed.
+ * <ul>
+ * <li>Every node writes heartbeat blob
+ * <code>&lt;prefix&gt;nodes/&lt;nodeId&gt;</code> every third of lease
+ * duration on its own thread, so node busy processing messages is not
+ * considered dead. Nodes whose heartbeat is older than lease duration
+ * (compared to own heartbeat by storage time, so node clocks do not matter)
+ * are considered dead.</li>
+ * <li>Blob names are partitioned between live nodes with
+ * {@link ConsistentHashRing}. Partitions are rebalanced as soon as membership
+ * change is noticed.</li>
+ * <li>Heartbeats of dead nodes are deleted by live nodes, so nodes which
+ * never come back do not accumulate.</li>
+ * <li>Before processing a blob, node claims it by creating claim blob
+ * <code>&lt;prefix&gt;claims/&lt;blobName&gt;</code> with 'If-None-Match: *'
+ * condition. Claim held by live node is respected, so blobs are not processed
+ * twice while partitions move; claim of dead node is taken over with
+ * 'If-Match' condition on its ETag.</li>
+ * <li>Processed blob kept in container is marked with
+ * {@link #complete(BlobDetails)}, which records completion and ETag of the
+ * blob in its claim with 'If-Match' condition, so claim taken over by other
+ * node meanwhile is not overwritten. Completed claim is never taken over,
+ * unless the blob has been replaced with different content. Claims of
+ * deleted blobs are deleted by node holding them.</li>
+ * </ul>
+ * Node id must be stable across restarts of the node, so restarted node
+ * recognizes its own claims instead of leaving them to be taken over as
+ * claims of dead node.
+ * <p>
+ * Processing is at-least-once: blobs claimed by node which dies before
+ * completing them are processed again by the new owner. Claims are exclusive
+ * on storages with atomic conditional put (Azure, local); S3 templates check
+ * conditions with separate request, leaving a short race window.
+ * <p>
+ * Memory held by coordinator is bounded: at most {@link #getMaxClaims()}
+ * blobs are claimed by this node at once. Claims of blobs which are neither
+ * completed nor deleted count against the limit; once it is reached, node
+ * logs a warning and claims no more blobs. At most
+ * {@link #getMaxCachedClaims()} claims read from storage are cached. Claims
+ * dropped from cache are read again when needed.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class BlobClusterCoordinator {
+    private static final Logger LOG = LoggerFactory.getLogger(BlobClusterCoordinator.class);
+
+    public static final String DEFAULT_PREFIX = ".cluster/";
+
+    public static final long DEFAULT_LEASE_DURATION = 60000;
+
+    public static final int DEFAULT_MAX_CLAIMS = 10000;
+
+    public static final int DEFAULT_MAX_CACHED_CLAIMS = 10000;
+
+    private static final String NODES_PATH = "nodes/";
+
+    private static final String CLAIMS_PATH = "claims/";
+
+    private static final String COMPLETED = "completed";
+
+    private static final int HTTP_NOT_FOUND = 404;
+
+    private final StorageOperations template;
+
+    private final String containerName;
+
+    private String prefix = DEFAULT_PREFIX;
+
+    private final String nodeId;
+
+    private long leaseDuration = DEFAULT_LEASE_DURATION;
+
+    private int virtualNodes = ConsistentHashRing.DEFAULT_VIRTUAL_NODES;
+
+    private int maxClaims = DEFAULT_MAX_CLAIMS;
+
+    private int maxCachedClaims = DEFAULT_MAX_CACHED_CLAIMS;
+
+    private volatile ConsistentHashRing ring;
+
+    private long lastMembershipLoad;
+
+    private ScheduledExecutorService heartbeat;
+
+    private final Set<String> claimed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private volatile boolean claimLimitReached;
+
+    /**
+     * Claims read from storage or completed by this node, least recently used
+     * dropped first.
+     */
+    private final Map<String, Claim> knownClaims = Collections.synchronizedMap(new LinkedHashMap<String, Claim>(16,
+            0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Claim> eldest) {
+            return size() > maxCachedClaims;
+        }
+    });
+
+    private final Object monitor = new Object();
+
+    /**
+     * @param template
+     * @param containerName
+     *            Container to keep heartbeat and claim blobs in.
+     * @param nodeId
+     *            Identifier of this node, unique in cluster and stable across
+     *            restarts of the node (e.g. host name).
+     */
+    public BlobClusterCoordinator(StorageOperations template, String containerName, String nodeId) {
+        Assert.notNull(template, "'template' should not be null");
+        Assert.hasText(containerName, "'containerName' should not be empty");
+        Assert.hasText(nodeId, "'nodeId' should not be empty");
+        this.template = template;
+        this.containerName = containerName;
+        this.nodeId = nodeId;
+    }
+
+    /**
+     * Joins cluster on first call: writes heartbeat and starts thread
+     * renewing it. Reloads cluster membership if a third of lease duration
+     * has passed since it was loaded.
+     */
+    public void refresh() {
+        synchronized (monitor) {
+            if (heartbeat == null) {
+                writeHeartbeat();
+                startHeartbeat();
+            }
+
+            long now = System.currentTimeMillis();
+            if (ring != null && now - lastMembershipLoad < leaseDuration / 3) {
+                return;
+            }
+
+            Set<String> liveNodes = loadLiveNodes();
+            lastMembershipLoad = now;
+            if (ring == null || !liveNodes.equals(ring.getNodes())) {
+                LOG.info("Node '{}' sees cluster members {}", nodeId, liveNodes);
+                ring = new ConsistentHashRing(liveNodes, virtualNodes);
+            }
+        }
+    }
+
+    private void writeHeartbeat() {
+        // Content differs on every write, so stale heartbeat is deleted only
+        // if it has not been renewed meanwhile
+        template.send(containerName, prefix + NODES_PATH + nodeId, nodeId + "\n" + System.currentTimeMillis());
+    }
+
+    private void startHeartbeat() {
+        heartbeat = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "blob-cluster-heartbeat-" + nodeId);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long interval = leaseDuration / 3;
+        heartbeat.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    writeHeartbeat();
+                } catch (RuntimeException e) {
+                    LOG.warn("Failed to write heartbeat of node '" + nodeId + "'", e);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param blobName
+     * @return <code>true</code> if blob belongs to partition of this node.
+     */
+    public boolean isOwner(String blobName) {
+        Assert.state(ring != null, "Cluster membership is not loaded yet");
+        return nodeId.equals(ring.getNode(blobName));
+    }
+
+    /**
+     * @param blobName
+     * @return <code>true</code> if this node holds claim of the blob.
+     */
+    public boolean isClaimed(String blobName) {
+        return claimed.contains(blobName);
+    }
+
+    /**
+     * Claims blob for processing by this node. Blob completed and not replaced
+     * since is not claimed again. Storage failure is logged and leaves the
+     * blob unclaimed until next poll.
+     *
+     * @param blob
+     * @return <code>true</code> if this node holds the claim.
+     */
+    public boolean claim(BlobDetails blob) {
+        String blobName = blob.getName();
+        if (claimed.contains(blobName)) {
+            return true;
+        }
+        Claim known = knownClaims.get(blobName);
+        if (known != null && (known.isCompletedFor(blob) || (!known.completed && isLive(known.owner)))) {
+            return false;
+        }
+        if (claimed.size() >= maxClaims) {
+            if (!claimLimitReached) {
+                claimLimitReached = true;
+                LOG.warn("Node '{}' holds {} claims and stops claiming blobs until some are completed or deleted",
+                        nodeId, claimed.size());
+            }
+            return false;
+        }
+        claimLimitReached = false;
+
+        try {
+            return doClaim(blob);
+        } catch (StorageException e) {
+            LOG.warn("Failed to claim blob '" + blobName + "'", e);
+            return false;
+        }
+    }
+
+    private boolean doClaim(BlobDetails blob) {
+        String blobName = blob.getName();
+        String claimName = claimName(blobName);
+        BlobConditions create = new BlobConditions();
+        create.setIfNoneMatch(BlobConditions.ANY_ETAG);
+        try {
+            template.send(containerName, claimName, nodeId, create);
+            return addClaimed(blobName);
+        } catch (StorageObjectModifiedException e) {
+            LOG.debug("Blob '{}' is already claimed", blobName);
+        }
+
+        Claim current = readClaim(blobName);
+        if (current == null) {
+            LOG.debug("Claim of blob '{}' has been released meanwhile", blobName);
+            return false;
+        }
+        if (current.isCompletedFor(blob)) {
+            knownClaims.put(blobName, current);
+            return false;
+        }
+        if (!current.completed) {
+            // Claimed by this node before it has been restarted
+            if (nodeId.equals(current.owner)) {
+                return addClaimed(blobName);
+            }
+            if (isLive(current.owner)) {
+                knownClaims.put(blobName, current);
+                return false;
+            }
+        }
+
+        BlobConditions takeOver = new BlobConditions();
+        takeOver.setIfMatch(current.version);
+        try {
+            template.send(containerName, claimName, nodeId, takeOver);
+        } catch (StorageObjectModifiedException e) {
+            LOG.debug("Claim of blob '{}' has been taken over by other node", blobName);
+            return false;
+        }
+        if (current.completed) {
+            LOG.info("Node '{}' claimed blob '{}' replaced since completed", nodeId, blobName);
+        } else {
+            LOG.info("Node '{}' took over claim of blob '{}' from dead node '{}'", new Object[] { nodeId, blobName,
+                    current.owner });
+        }
+        return addClaimed(blobName);
+    }
+
+    private boolean addClaimed(String blobName) {
+        claimed.add(blobName);
+        knownClaims.remove(blobName);
+        return true;
+    }
+
+    /**
+     * @param blobName
+     * @return Current claim of the blob, or <code>null</code> if the blob is
+     *         not claimed.
+     * @throws StorageException
+     *             If claim cannot be read.
+     */
+    private Claim readClaim(String blobName) {
+        BlobContent content = null;
+        try {
+            content = template.receive(containerName, claimName(blobName), new BlobConditions());
+            return Claim.parse(IOUtils.toString(content.getData()), content.getDetails().getETag());
+        } catch (StorageCommunicationException e) {
+            if (e.getStatusCode() == HTTP_NOT_FOUND) {
+                return null;
+            }
+            throw e;
+        } catch (IOException e) {
+            throw new StorageResponseHandlingException(e, "Failed to read claim of blob '%s'", blobName);
+        } finally {
+            if (content != null) {
+                IOUtils.closeQuietly(content.getData());
+            }
+        }
+    }
+
+    /**
+     * Records that blob claimed by this node has been processed, so it is not
+     * processed again by any node, including this one after restart, while it
+     * is kept in container unchanged. Completion is written with 'If-Match'
+     * condition on ETag of the claim read just before, so claim taken over by
+     * other node meanwhile is not overwritten.
+     *
+     * @param blob
+     * @return <code>false</code> if this node no longer holds the claim, e.g.
+     *         because it has been taken over by other node after heartbeat of
+     *         this node expired; the blob may be processed again.
+     */
+    public boolean complete(BlobDetails blob) {
+        String blobName = blob.getName();
+        Claim current = readClaim(blobName);
+        if (current == null || current.completed || !nodeId.equals(current.owner)) {
+            return lostClaim(blobName, current);
+        }
+
+        Claim completed = new Claim(nodeId, true, blob.getETag(), null);
+        BlobConditions notTakenOver = new BlobConditions();
+        notTakenOver.setIfMatch(current.version);
+        try {
+            template.send(containerName, claimName(blobName), completed.toString(), notTakenOver);
+        } catch (StorageObjectModifiedException e) {
+            return lostClaim(blobName, null);
+        }
+        claimed.remove(blobName);
+        knownClaims.put(blobName, completed);
+        return true;
+    }
+
+    private boolean lostClaim(String blobName, Claim current) {
+        claimed.remove(blobName);
+        LOG.warn("Node '{}' lost claim of blob '{}' to '{}' before completing it", new Object[] { nodeId, blobName,
+                current == null ? "other node" : current.owner });
+        return false;
+    }
+
+    /**
+     * Deletes claim of this node, e.g. when claimed blob has been deleted.
+     *
+     * @param blobName
+     */
+    public void release(String blobName) {
+        if (claimed.remove(blobName)) {
+            deleteClaim(blobName);
+        }
+    }
+
+    private String claimName(String blobName) {
+        return prefix + CLAIMS_PATH + blobName;
+    }
+
+    private void deleteClaim(String blobName) {
+        try {
+            template.deleteObject(containerName, claimName(blobName));
+        } catch (StorageException e) {
+            LOG.warn("Failed to delete claim of blob '" + blobName + "'", e);
+        }
+    }
+
+    /**
+     * Deletes claims of blobs which no longer exist: claims held or completed
+     * by this node, and cached claims of dead nodes.
+     *
+     * @param existingBlobNames
+     *            Names of all blobs currently in container.
+     */
+    public void retainClaims(Set<String> existingBlobNames) {
+        for (String blobName : claimed) {
+            if (!existingBlobNames.contains(blobName)) {
+                release(blobName);
+            }
+        }
+
+        List<Map.Entry<String, Claim>> cached;
+        synchronized (knownClaims) {
+            cached = new ArrayList<Map.Entry<String, Claim>>(knownClaims.entrySet());
+        }
+        for (Map.Entry<String, Claim> entry : cached) {
+            String blobName = entry.getKey();
+            if (existingBlobNames.contains(blobName)) {
+                continue;
+            }
+            Claim claim = entry.getValue();
+            // Claims of other live nodes are deleted by those nodes
+            if (nodeId.equals(claim.owner) || !isLive(claim.owner)) {
+                deleteClaim(blobName);
+            }
+            knownClaims.remove(blobName);
+        }
+    }
+
+    /**
+     * Stops heartbeat thread and deletes heartbeat, so other nodes take over
+     * partition of this node without waiting for lease to expire. Claims are
+     * left to be taken over.
+     */
+    public void leave() {
+        synchronized (monitor) {
+            if (heartbeat != null) {
+                heartbeat.shutdownNow();
+                try {
+                    // Heartbeat being written must not outlive its deletion
+                    heartbeat.awaitTermination(leaseDuration, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                heartbeat = null;
+            }
+            template.deleteObject(containerName, prefix + NODES_PATH + nodeId);
+            ring = null;
+        }
+    }
+
+    /**
+     * @param containerName
+     * @param blobName
+     * @return <code>true</code> if blob is heartbeat or claim blob.
+     */
+    public boolean isCoordinationBlob(String containerName, String blobName) {
+        return this.containerName.equals(containerName) && blobName.startsWith(prefix);
+    }
+
+    /**
+     * @return Names of blobs claimed by this node.
+     */
+    public Set<String> getClaimed() {
+        return Collections.unmodifiableSet(claimed);
+    }
+
+    /**
+     * @return Live cluster nodes including this one.
+     */
+    public Set<String> getLiveNodes() {
+        ConsistentHashRing current = ring;
+        return current == null ? Collections.<String> emptySet() : current.getNodes();
+    }
+
+    private boolean isLive(String node) {
+        return getLiveNodes().contains(node);
+    }
+
+    private Set<String> loadLiveNodes() {
+        BlobListOptions options = new BlobListOptions();
+        options.setPrefix(prefix + NODES_PATH);
+
+        Map<String, BlobDetails> heartbeats = new HashMap<String, BlobDetails>();
+        Iterator<BlobDetails> it = template.iterateContainerObjectDetails(containerName, options);
+        while (it.hasNext()) {
+            BlobDetails details = it.next();
+            heartbeats.put(details.getName().substring(options.getPrefix().length()), details);
+        }
+
+        BlobDetails own = heartbeats.get(nodeId);
+        Set<String> liveNodes = new TreeSet<String>();
+        for (Map.Entry<String, BlobDetails> heartbeat : heartbeats.entrySet()) {
+            BlobDetails details = heartbeat.getValue();
+            if (own == null || own.getLastModified() == null || details.getLastModified() == null
+                    || details.getLastModified().getTime() >= own.getLastModified().getTime() - leaseDuration) {
+                liveNodes.add(heartbeat.getKey());
+            } else {
+                deleteStaleHeartbeat(details);
+            }
+        }
+        liveNodes.add(nodeId);
+        return liveNodes;
+    }
+
+    private void deleteStaleHeartbeat(BlobDetails details) {
+        BlobConditions notRenewed = new BlobConditions();
+        notRenewed.setIfMatch(details.getETag());
+        try {
+            template.deleteObject(containerName, details.getName(), notRenewed);
+            LOG.info("Deleted heartbeat '{}' of dead node", details.getName());
+        } catch (StorageException e) {
+            LOG.debug("Heartbeat '{}' has been renewed or deleted meanwhile", details.getName());
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * @param prefix
+     *            Name prefix of heartbeat and claim blobs.
+     */
+    public void setPrefix(String prefix) {
+        Assert.hasText(prefix, "'prefix' should not be empty");
+        this.prefix = prefix;
+    }
+
+    public long getLeaseDuration() {
+        return leaseDuration;
+    }
+
+    /**
+     * @param leaseDuration
+     *            Time in milliseconds after which node without heartbeat is
+     *            considered dead.
+     */
+    public void setLeaseDuration(long leaseDuration) {
+        Assert.isTrue(leaseDuration > 0, "'leaseDuration' must be positive");
+        this.leaseDuration = leaseDuration;
+    }
+
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    /**
+     * @param virtualNodes
+     *            Number of hash ring positions per node.
+     */
+    public void setVirtualNodes(int virtualNodes) {
+        Assert.isTrue(virtualNodes > 0, "'virtualNodes' must be positive");
+        this.virtualNodes = virtualNodes;
+    }
+
+    public int getMaxClaims() {
+        return maxClaims;
+    }
+
+    /**
+     * @param maxClaims
+     *            Maximum number of blobs claimed and not yet completed by this
+     *            node at once.
+     */
+    public void setMaxClaims(int maxClaims) {
+        Assert.isTrue(maxClaims > 0, "'maxClaims' must be positive");
+        this.maxClaims = maxClaims;
+    }
+
+    public int getMaxCachedClaims() {
+        return maxCachedClaims;
+    }
+
+    /**
+     * @param maxCachedClaims
+     *            Maximum number of claims of other nodes and completed claims
+     *            remembered, so they are not read from storage on every poll.
+     */
+    public void setMaxCachedClaims(int maxCachedClaims) {
+        Assert.isTrue(maxCachedClaims > 0, "'maxCachedClaims' must be positive");
+        this.maxCachedClaims = maxCachedClaims;
+    }
+
+    /**
+     * Content of claim blob: owner node id, followed by completion marker and
+     * ETag of claimed blob once the blob is completed.
+     */
+    private static class Claim {
+
+        private final String owner;
+
+        private final boolean completed;
+
+        private final String eTag;
+
+        /**
+         * ETag of claim blob, or <code>null</code> if not known.
+         */
+        private final String version;
+
+        Claim(String owner, boolean completed, String eTag, String version) {
+            this.owner = owner;
+            this.completed = completed;
+            this.eTag = eTag;
+            this.version = version;
+        }
+
+        static Claim parse(String content, String version) {
+            String[] lines = content.split("\n", -1);
+            boolean completed = lines.length >= 2 && COMPLETED.equals(lines[1]);
+            return new Claim(lines[0], completed, completed && lines.length >= 3 ? lines[2] : "", version);
+        }
+
+        /**
+         * @param blob
+         * @return <code>true</code> if claimed blob has been completed and not
+         *         replaced since. Blobs without known ETag are never
+         *         considered replaced.
+         */
+        boolean isCompletedFor(BlobDetails blob) {
+            return completed && (isEmpty(eTag) || isEmpty(blob.getETag()) || eTag.equals(blob.getETag()));
+        }
+
+        private static boolean isEmpty(String value) {
+            return value == null || value.length() == 0;
+        }
+
+        @Override
+        public String toString() {
+            return completed ? owner + "\n" + COMPLETED + "\n" + (eTag == null ? "" : eTag) : owner;
+        }
+    }
+}
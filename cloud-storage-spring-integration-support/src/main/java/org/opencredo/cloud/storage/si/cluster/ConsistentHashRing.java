@@ -0,0 +1,105 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.si.cluster;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.springframework.util.Assert;
+
+/**
+ * Immutable consistent hash ring assigning blob names to cluster nodes. Every
+ * node is placed on the ring several times (virtual nodes), so names are
+ * spread evenly and only about 1/n of names move when node joins or leaves.
+ * Hash is computed from {@link String#hashCode()}, so all nodes agree on the
+ * assignment regardless of JVM.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class ConsistentHashRing {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 64;
+
+    private final SortedMap<Integer, String> ring = new TreeMap<Integer, String>();
+
+    private final Set<String> nodes;
+
+    /**
+     * @param nodes
+     */
+    public ConsistentHashRing(Collection<String> nodes) {
+        this(nodes, DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * @param nodes
+     *            Cluster node identifiers.
+     * @param virtualNodes
+     *            Number of ring positions per node.
+     */
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        Assert.notNull(nodes, "'nodes' should not be null");
+        Assert.isTrue(virtualNodes > 0, "'virtualNodes' must be positive");
+        this.nodes = Collections.unmodifiableSet(new TreeSet<String>(nodes));
+
+        // Nodes are added in sorted order, so position collisions are
+        // resolved identically on every node
+        for (String node : this.nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                Integer position = hash(node + "#" + i);
+                if (!ring.containsKey(position)) {
+                    ring.put(position, node);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param name
+     * @return Node owning the name, or <code>null</code> if ring is empty.
+     */
+    public String getNode(String name) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        SortedMap<Integer, String> tail = ring.tailMap(hash(name));
+        return tail.isEmpty() ? ring.get(ring.firstKey()) : tail.get(tail.firstKey());
+    }
+
+    /**
+     * @return Node identifiers in ring.
+     */
+    public Set<String> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @param value
+     * @return String hash code spread by MurmurHash3 finalizer.
+     */
+    private static int hash(String value) {
+        int h = value.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
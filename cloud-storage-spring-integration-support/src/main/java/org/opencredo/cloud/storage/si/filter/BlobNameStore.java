@@ -0,0 +1,39 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.si.filter;
+
+/**
+ * Set of blob names already seen by inbound adapter.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public interface BlobNameStore {
+
+    /**
+     * 
+     * @param name
+     * @return <code>true</code> if name has been added to the store.
+     */
+    boolean contains(String name);
+
+    /**
+     * Adds name to the store. Must be safe to call concurrently.
+     * 
+     * @param name
+     * @return <code>true</code> if name was not in the store before.
+     */
+    boolean add(String name);
+
+}
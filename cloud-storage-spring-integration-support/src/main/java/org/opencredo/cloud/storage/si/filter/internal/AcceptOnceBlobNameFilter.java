@@ -15,24 +15,38 @@
 
 package org.opencredo.cloud.storage.si.filter.internal;
 
-import java.util.HashSet;
-import java.util.Set;
-
 import org.opencredo.cloud.storage.BlobDetails;
 import org.opencredo.cloud.storage.si.filter.AbstractBlobDetailsFilter;
+import org.opencredo.cloud.storage.si.filter.BlobNameStore;
+import org.springframework.util.Assert;
 
 /**
- * Filters blob objects based on name values.
+ * Filters blob objects based on name values. Accepts every blob name only
+ * once. Seen names are kept in {@link BlobNameStore}, by default in
+ * {@link FingerprintSetBlobNameStore} which never forgets a name and keeps
+ * about 8 bytes per name in memory. Give it a journal file to remember seen
+ * names across restarts. {@link FingerprintBlobNameStore} bounds memory by
+ * forgetting oldest names, so it may be given only if blobs are removed from
+ * container after processing.
  * 
  * @author Eren Aykin (eren.aykin@opencredo.com)
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
  */
 public class AcceptOnceBlobNameFilter extends AbstractBlobDetailsFilter {
 
-    private final Set<String> seenKeys;
-    private final Object monitor = new Object();
+    private final BlobNameStore seenNames;
 
     public AcceptOnceBlobNameFilter() {
-        this.seenKeys = new HashSet<String>();
+        this(new FingerprintSetBlobNameStore());
+    }
+
+    /**
+     * @param seenNames
+     *            Store of already accepted blob names.
+     */
+    public AcceptOnceBlobNameFilter(BlobNameStore seenNames) {
+        Assert.notNull(seenNames, "'seenNames' should not be null");
+        this.seenNames = seenNames;
     }
 
     /**
@@ -42,14 +56,14 @@ public class AcceptOnceBlobNameFilter extends AbstractBlobDetailsFilter {
      * @see org.opencredo.cloud.storage.si.filter.AbstractBlobDetailsFilter#accept(org.opencredo.cloud.storage.BlobDetails)
      */
     protected boolean accept(BlobDetails obj) {
-        synchronized (this.monitor) {
-            if (seenKeys.contains(obj.getName())) {
-                return false;
-            }
-
-            seenKeys.add(obj.getName());
-            return true;
-        }
+        return seenNames.add(obj.getName());
+    }
+
+    /**
+     * @return the seenNames
+     */
+    public BlobNameStore getSeenNames() {
+        return seenNames;
     }
 
 }
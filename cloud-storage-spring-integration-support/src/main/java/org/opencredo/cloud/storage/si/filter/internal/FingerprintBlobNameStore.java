@@ -0,0 +1,292 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.si.filter.internal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.opencredo.cloud.storage.si.adapter.IntegrationException;
+import org.opencredo.cloud.storage.si.filter.BlobNameStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Bounded memory {@link BlobNameStore} which forgets names. Keeps 64 bit
+ * fingerprints of blob names in open addressing hash tables instead of name
+ * strings.
+ * <p>
+ * Names are kept in two generations. When current generation reaches
+ * capacity, previous generation is dropped and new one is started, so store
+ * remembers at least <code>capacity</code> most recently added names and uses
+ * at most 64 bytes of heap per capacity unit.
+ * <p>
+ * <b>Warning:</b> every blob still present in container whose name has been
+ * dropped is accepted, and processed, again. Use this store only for
+ * containers whose blobs are removed after processing, with capacity exceeding
+ * number of blobs present in the container at once. Default store of
+ * {@link AcceptOnceBlobNameFilter} is {@link FingerprintSetBlobNameStore},
+ * which never forgets a name.
+ * <p>
+ * Lookups do not take locks; additions are serialized. Two different names
+ * sharing fingerprint are reported as the same name, which is expected once in
+ * about 2^64 / capacity additions.
+ * <p>
+ * If file is given, fingerprints are also appended to memory-mapped journal
+ * and loaded on start, so seen names survive restarts. Journal has fixed size
+ * of 16 bytes per capacity unit.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class FingerprintBlobNameStore implements BlobNameStore, Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(FingerprintBlobNameStore.class);
+
+    public static final int DEFAULT_CAPACITY = 100000;
+
+    private static final int INITIAL_TABLE_SIZE = 1024;
+
+    private static final int MAGIC = 0x4f43424e;
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int CURRENT_REGION_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    private static final int HEADER_SIZE = 32;
+
+    private final int capacity;
+
+    private volatile FingerprintTable current;
+
+    private volatile FingerprintTable previous;
+
+    private int currentCount;
+
+    private int previousCount;
+
+    private int currentRegion;
+
+    private final File file;
+
+    private RandomAccessFile journalFile;
+
+    private MappedByteBuffer journal;
+
+    private final Object writeMonitor = new Object();
+
+    public FingerprintBlobNameStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity
+     *            Number of most recently added names which are guaranteed to
+     *            be remembered.
+     */
+    public FingerprintBlobNameStore(int capacity) {
+        this(capacity, null);
+    }
+
+    /**
+     * @param capacity
+     *            Number of most recently added names which are guaranteed to
+     *            be remembered.
+     * @param file
+     *            Journal file to persist fingerprints to, or <code>null</code>
+     *            to keep them in memory only.
+     */
+    public FingerprintBlobNameStore(int capacity, File file) {
+        Assert.isTrue(capacity > 0, "Capacity must be positive");
+        Assert.isTrue(capacity <= (Integer.MAX_VALUE - HEADER_SIZE) / 16, "Capacity is too large");
+        this.capacity = capacity;
+        this.file = file;
+        this.current = new FingerprintTable(INITIAL_TABLE_SIZE);
+        if (file != null) {
+            openJournal();
+        }
+    }
+
+    /**
+     * @param name
+     * @return
+     * @see org.opencredo.cloud.storage.si.filter.BlobNameStore#contains(java.lang.String)
+     */
+    public boolean contains(String name) {
+        return contains(FingerprintTable.fingerprint(name));
+    }
+
+    /**
+     * @param name
+     * @return
+     * @see org.opencredo.cloud.storage.si.filter.BlobNameStore#add(java.lang.String)
+     */
+    public boolean add(String name) {
+        long fingerprint = FingerprintTable.fingerprint(name);
+        if (contains(fingerprint)) {
+            return false;
+        }
+
+        synchronized (writeMonitor) {
+            if (contains(fingerprint)) {
+                return false;
+            }
+
+            if (currentCount == capacity) {
+                rotate();
+            }
+            insert(fingerprint);
+
+            if (journal != null) {
+                journal.putLong(regionOffset(currentRegion) + currentCount * 8, fingerprint);
+                journal.putInt(COUNT_OFFSET + currentRegion * 4, currentCount + 1);
+            }
+            currentCount++;
+            return true;
+        }
+    }
+
+    /**
+     * @return Number of names currently remembered.
+     */
+    public int size() {
+        synchronized (writeMonitor) {
+            return previousCount + currentCount;
+        }
+    }
+
+    /**
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return Journal file, or <code>null</code> if store is not persistent.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Forces journal changes to the storage device.
+     */
+    public void flush() {
+        synchronized (writeMonitor) {
+            if (journal != null) {
+                journal.force();
+            }
+        }
+    }
+
+    /**
+     * Flushes and closes journal. Names added afterwards are kept in memory
+     * only.
+     *
+     * @see java.io.Closeable#close()
+     */
+    public void close() throws IOException {
+        synchronized (writeMonitor) {
+            if (journal != null) {
+                journal.force();
+                journal = null;
+                journalFile.close();
+                journalFile = null;
+            }
+        }
+    }
+
+    private boolean contains(long fingerprint) {
+        FingerprintTable c = current;
+        FingerprintTable p = previous;
+        return c.contains(fingerprint) || (p != null && p.contains(fingerprint));
+    }
+
+    private void insert(long fingerprint) {
+        FingerprintTable c = current;
+        if ((currentCount + 1) * 2L > c.length() && c.length() < 2L * capacity) {
+            c = c.resize(c.length() * 2);
+            current = c;
+        }
+        c.insert(fingerprint);
+    }
+
+    private void rotate() {
+        LOG.debug("Blob name store reached capacity {}, dropping oldest generation", capacity);
+        previous = current;
+        previousCount = currentCount;
+        current = new FingerprintTable(INITIAL_TABLE_SIZE);
+        currentCount = 0;
+
+        if (journal != null) {
+            int newRegion = 1 - currentRegion;
+            journal.putInt(COUNT_OFFSET + newRegion * 4, 0);
+            journal.putInt(CURRENT_REGION_OFFSET, newRegion);
+            currentRegion = newRegion;
+        }
+    }
+
+    private void openJournal() {
+        boolean initialized;
+        try {
+            journalFile = new RandomAccessFile(file, "rw");
+            initialized = journalFile.length() >= HEADER_SIZE && journalFile.readInt() == MAGIC;
+            int journalCapacity = initialized ? journalFile.readInt() : capacity;
+            if (journalCapacity != capacity) {
+                journalFile.close();
+                throw new IllegalArgumentException("Blob name store journal '" + file
+                        + "' was created with capacity " + journalCapacity);
+            }
+            journal = journalFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, regionOffset(2));
+        } catch (IOException e) {
+            throw new IntegrationException("Failed to open blob name store journal '" + file + "'", e);
+        }
+
+        if (!initialized) {
+            journal.putInt(0, MAGIC);
+            journal.putInt(CAPACITY_OFFSET, capacity);
+            journal.putInt(CURRENT_REGION_OFFSET, 0);
+            journal.putInt(COUNT_OFFSET, 0);
+            journal.putInt(COUNT_OFFSET + 4, 0);
+            return;
+        }
+
+        currentRegion = journal.getInt(CURRENT_REGION_OFFSET);
+        previousCount = journal.getInt(COUNT_OFFSET + (1 - currentRegion) * 4);
+        currentCount = journal.getInt(COUNT_OFFSET + currentRegion * 4);
+
+        previous = load(1 - currentRegion, previousCount);
+        current = load(currentRegion, currentCount);
+        LOG.debug("Loaded {} blob name fingerprints from '{}'", previousCount + currentCount, file);
+    }
+
+    private FingerprintTable load(int region, int count) {
+        int size = INITIAL_TABLE_SIZE;
+        while (size < count * 2L && size < 2L * capacity) {
+            size *= 2;
+        }
+        FingerprintTable table = new FingerprintTable(size);
+        int offset = regionOffset(region);
+        for (int i = 0; i < count; i++) {
+            table.insert(journal.getLong(offset + i * 8));
+        }
+        return table;
+    }
+
+    private int regionOffset(int region) {
+        return HEADER_SIZE + region * capacity * 8;
+    }
+}
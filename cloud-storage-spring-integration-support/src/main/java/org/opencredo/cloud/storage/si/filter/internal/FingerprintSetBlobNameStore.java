@@ -0,0 +1,286 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.si.filter.internal;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.opencredo.cloud.storage.si.adapter.IntegrationException;
+import org.opencredo.cloud.storage.si.filter.BlobNameStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compact {@link BlobNameStore} which never forgets a name. Keeps 64 bit
+ * fingerprints of blob names instead of name strings: most of them in sorted
+ * array searched by binary search, recently added ones in small hash table
+ * which is merged into the array when it fills up. Store uses about 8 bytes of
+ * heap per name, twice as much for a moment while tables are merged.
+ * <p>
+ * Lookups do not take locks; additions are serialized. Two different names
+ * sharing fingerprint are reported as the same name, which is expected once in
+ * about 2^64 / size additions.
+ * <p>
+ * If file is given, every added fingerprint is appended to journal and the
+ * journal is loaded on start, so seen names survive restarts. Journal grows by
+ * 8 bytes per name; {@link #flush()} forces appended fingerprints to the
+ * storage device.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class FingerprintSetBlobNameStore implements BlobNameStore, Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(FingerprintSetBlobNameStore.class);
+
+    private static final int MAGIC = 0x4f43424f;
+    private static final int HEADER_SIZE = 8;
+
+    private static final int MIN_RECENT_CAPACITY = 1024;
+
+    /**
+     * Recent fingerprints are merged into sorted array once they reach this
+     * fraction of it, so merging costs constant time per addition on average.
+     */
+    private static final int MERGE_RATIO = 16;
+
+    private final File file;
+
+    private volatile Fingerprints fingerprints = new Fingerprints(new long[0]);
+
+    private RandomAccessFile journalFile;
+
+    private FileChannel journal;
+
+    private final ByteBuffer entry = ByteBuffer.allocate(8);
+
+    private final Object writeMonitor = new Object();
+
+    public FingerprintSetBlobNameStore() {
+        this(null);
+    }
+
+    /**
+     * @param file
+     *            Journal file to persist fingerprints to, or <code>null</code>
+     *            to keep them in memory only.
+     */
+    public FingerprintSetBlobNameStore(File file) {
+        this.file = file;
+        if (file != null) {
+            openJournal();
+        }
+    }
+
+    /**
+     * @param name
+     * @return
+     * @see org.opencredo.cloud.storage.si.filter.BlobNameStore#contains(java.lang.String)
+     */
+    public boolean contains(String name) {
+        return fingerprints.contains(FingerprintTable.fingerprint(name));
+    }
+
+    /**
+     * @param name
+     * @return
+     * @see org.opencredo.cloud.storage.si.filter.BlobNameStore#add(java.lang.String)
+     */
+    public boolean add(String name) {
+        long fingerprint = FingerprintTable.fingerprint(name);
+        if (fingerprints.contains(fingerprint)) {
+            return false;
+        }
+
+        synchronized (writeMonitor) {
+            Fingerprints f = fingerprints;
+            if (f.contains(fingerprint)) {
+                return false;
+            }
+
+            if (journal != null) {
+                append(fingerprint);
+            }
+            if (f.recentCount == f.recentCapacity) {
+                f = f.merge();
+                fingerprints = f;
+            }
+            f.recent.insert(fingerprint);
+            f.recentCount++;
+            return true;
+        }
+    }
+
+    /**
+     * @return Number of names in the store.
+     */
+    public int size() {
+        synchronized (writeMonitor) {
+            Fingerprints f = fingerprints;
+            return f.sorted.length + f.recentCount;
+        }
+    }
+
+    /**
+     * @return Journal file, or <code>null</code> if store is not persistent.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Forces journal changes to the storage device.
+     */
+    public void flush() {
+        synchronized (writeMonitor) {
+            if (journal != null) {
+                try {
+                    journal.force(false);
+                } catch (IOException e) {
+                    throw new IntegrationException("Failed to flush blob name store journal '" + file + "'", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Flushes and closes journal. Names added afterwards are kept in memory
+     * only.
+     *
+     * @see java.io.Closeable#close()
+     */
+    public void close() throws IOException {
+        synchronized (writeMonitor) {
+            if (journal != null) {
+                journal.force(false);
+                journal = null;
+                journalFile.close();
+                journalFile = null;
+            }
+        }
+    }
+
+    private void append(long fingerprint) {
+        entry.clear();
+        entry.putLong(fingerprint);
+        entry.flip();
+        try {
+            while (entry.hasRemaining()) {
+                journal.write(entry);
+            }
+        } catch (IOException e) {
+            throw new IntegrationException("Failed to append to blob name store journal '" + file + "'", e);
+        }
+    }
+
+    private void openJournal() {
+        try {
+            journalFile = new RandomAccessFile(file, "rw");
+            journal = journalFile.getChannel();
+            long length = journalFile.length();
+            if (length < HEADER_SIZE) {
+                journalFile.setLength(0);
+                journalFile.writeInt(MAGIC);
+                journalFile.writeInt(0);
+                return;
+            }
+            if (journalFile.readInt() != MAGIC) {
+                journalFile.close();
+                throw new IllegalArgumentException("File '" + file + "' is not a blob name store journal");
+            }
+
+            long count = (length - HEADER_SIZE) / 8;
+            if (count > Integer.MAX_VALUE - 8) {
+                journalFile.close();
+                throw new IllegalArgumentException("Blob name store journal '" + file + "' is too large");
+            }
+            long[] loaded = new long[(int) count];
+            // Stream is not closed, it would close the journal
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(journal
+                    .position(HEADER_SIZE))));
+            for (int i = 0; i < loaded.length; i++) {
+                loaded[i] = in.readLong();
+            }
+            // Drop fingerprint partially written before crash
+            long end = HEADER_SIZE + count * 8;
+            journal.truncate(end);
+            journal.position(end);
+
+            Arrays.sort(loaded);
+            fingerprints = new Fingerprints(loaded);
+            LOG.debug("Loaded {} blob name fingerprints from '{}'", loaded.length, file);
+        } catch (IOException e) {
+            throw new IntegrationException("Failed to open blob name store journal '" + file + "'", e);
+        }
+    }
+
+    private static int tableSize(int capacity) {
+        int size = MIN_RECENT_CAPACITY;
+        while (size < capacity * 2L) {
+            size *= 2;
+        }
+        return size;
+    }
+
+    /**
+     * Sorted array of fingerprints and hash table of fingerprints added since
+     * the array has been created. Array is never modified, table is modified
+     * under write monitor only.
+     */
+    private static final class Fingerprints {
+        private final long[] sorted;
+
+        private final int recentCapacity;
+
+        private final FingerprintTable recent;
+
+        private int recentCount;
+
+        Fingerprints(long[] sorted) {
+            this.sorted = sorted;
+            this.recentCapacity = Math.max(MIN_RECENT_CAPACITY, sorted.length / MERGE_RATIO);
+            this.recent = new FingerprintTable(tableSize(recentCapacity));
+        }
+
+        boolean contains(long fingerprint) {
+            return recent.contains(fingerprint) || Arrays.binarySearch(sorted, fingerprint) >= 0;
+        }
+
+        Fingerprints merge() {
+            long[] added = recent.toArray(recentCount);
+            Arrays.sort(added);
+            long[] merged = new long[sorted.length + added.length];
+            int i = 0;
+            int j = 0;
+            int k = 0;
+            while (i < sorted.length && j < added.length) {
+                merged[k++] = sorted[i] < added[j] ? sorted[i++] : added[j++];
+            }
+            while (i < sorted.length) {
+                merged[k++] = sorted[i++];
+            }
+            while (j < added.length) {
+                merged[k++] = added[j++];
+            }
+            return new Fingerprints(merged);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.si.filter.internal;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Linear probing hash set of non zero 64 bit blob name fingerprints. Readers
+ * may run concurrently with single writer.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+final class FingerprintTable {
+    private final AtomicLongArray slots;
+    private final int mask;
+
+    /**
+     * @param size
+     *            Number of slots, power of two.
+     */
+    FingerprintTable(int size) {
+        this.slots = new AtomicLongArray(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * @param name
+     * @return Non zero 64 bit hash of the name: FNV-1a followed by MurmurHash3
+     *         finalizer to spread bits for table indexing.
+     */
+    static long fingerprint(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            hash = (hash ^ (c & 0xff)) * 0x100000001b3L;
+            hash = (hash ^ (c >>> 8)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash;
+    }
+
+    int length() {
+        return slots.length();
+    }
+
+    boolean contains(long fingerprint) {
+        int i = index(fingerprint);
+        long slot;
+        while ((slot = slots.get(i)) != 0) {
+            if (slot == fingerprint) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    void insert(long fingerprint) {
+        int i = index(fingerprint);
+        while (slots.get(i) != 0) {
+            i = (i + 1) & mask;
+        }
+        slots.set(i, fingerprint);
+    }
+
+    FingerprintTable resize(int size) {
+        FingerprintTable table = new FingerprintTable(size);
+        for (int i = 0; i < slots.length(); i++) {
+            long slot = slots.get(i);
+            if (slot != 0) {
+                table.insert(slot);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * @param count
+     *            Number of fingerprints in the table.
+     * @return Fingerprints in slot order.
+     */
+    long[] toArray(int count) {
+        long[] fingerprints = new long[count];
+        int n = 0;
+        for (int i = 0; i < slots.length() && n < count; i++) {
+            long slot = slots.get(i);
+            if (slot != 0) {
+                fingerprints[n++] = slot;
+            }
+        }
+        return fingerprints;
+    }
+
+    private int index(long fingerprint) {
+        return (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,58 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.si.filter.internal;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.opencredo.cloud.storage.si.filter.BlobNameStore;
+
+/**
+ * {@link BlobNameStore} keeping every added name string in memory, so no name
+ * is ever forgotten and names never collide. Memory grows with number and
+ * length of distinct blob names seen; {@link FingerprintSetBlobNameStore}
+ * keeps only 8 bytes per name.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class InMemoryBlobNameStore implements BlobNameStore {
+
+    private final ConcurrentMap<String, Boolean> names = new ConcurrentHashMap<String, Boolean>();
+
+    /**
+     * @param name
+     * @return
+     * @see org.opencredo.cloud.storage.si.filter.BlobNameStore#contains(java.lang.String)
+     */
+    public boolean contains(String name) {
+        return names.containsKey(name);
+    }
+
+    /**
+     * @param name
+     * @return
+     * @see org.opencredo.cloud.storage.si.filter.BlobNameStore#add(java.lang.String)
+     */
+    public boolean add(String name) {
+        return names.putIfAbsent(name, Boolean.TRUE) == null;
+    }
+
+    /**
+     * @return Number of names in the store.
+     */
+    public int size() {
+        return names.size();
+    }
+}
@@ -0,0 +1,40 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.si.listing;
+
+import java.util.List;
+
+import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.StorageOperations;
+
+/**
+ * Strategy used by inbound adapter to list container objects on each poll.
+ * Implementations may keep state between polls to return only part of the
+ * container listing.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public interface BlobLister {
+
+    /**
+     * 
+     * @param template
+     * @param containerName
+     * @return Container object details to be considered on this poll, or
+     *         empty list if there is nothing new.
+     */
+    List<BlobDetails> list(StorageOperations template, String containerName);
+
+}
@@ -0,0 +1,40 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.si.listing;
+
+import java.util.Iterator;
+
+import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.StorageOperations;
+
+/**
+ * {@link BlobLister} which can also list container lazily, page by page, so
+ * inbound adapter with bounded queue holds at most one page of listing in
+ * memory.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public interface PagingBlobLister extends BlobLister {
+
+    /**
+     * 
+     * @param template
+     * @param containerName
+     * @return Iterator over container object details to be considered, which
+     *         requests next page only when iteration reaches it.
+     */
+    Iterator<BlobDetails> iterate(StorageOperations template, String containerName);
+
+}
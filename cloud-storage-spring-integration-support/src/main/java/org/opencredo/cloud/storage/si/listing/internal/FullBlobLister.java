@@ -0,0 +1,53 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.si.listing.internal;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.BlobListOptions;
+import org.opencredo.cloud.storage.StorageOperations;
+import org.opencredo.cloud.storage.si.listing.PagingBlobLister;
+
+/**
+ * Lists all container objects on every poll, at once or page by page.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class FullBlobLister implements PagingBlobLister {
+
+    /**
+     * @param template
+     * @param containerName
+     * @return
+     * @see org.opencredo.cloud.storage.si.listing.BlobLister#list(org.opencredo.cloud.storage.StorageOperations,
+     *      java.lang.String)
+     */
+    public List<BlobDetails> list(StorageOperations template, String containerName) {
+        return template.listContainerObjectDetails(containerName);
+    }
+
+    /**
+     * @param template
+     * @param containerName
+     * @return
+     * @see org.opencredo.cloud.storage.si.listing.PagingBlobLister#iterate(org.opencredo.cloud.storage.StorageOperations,
+     *      java.lang.String)
+     */
+    public Iterator<BlobDetails> iterate(StorageOperations template, String containerName) {
+        return template.iterateContainerObjectDetails(containerName, new BlobListOptions());
+    }
+}
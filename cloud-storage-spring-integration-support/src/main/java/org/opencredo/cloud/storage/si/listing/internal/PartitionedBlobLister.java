@@ -0,0 +1,173 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.si.listing.internal;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.BlobListOptions;
+import org.opencredo.cloud.storage.StorageOperations;
+import org.opencredo.cloud.storage.si.cluster.BlobClusterCoordinator;
+import org.opencredo.cloud.storage.si.listing.BlobLister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.util.Assert;
+
+/**
+ * Lister for inbound adapters running on several nodes. Lists the whole
+ * container and returns only blobs which belong to partition of this node and
+ * are successfully claimed by it, or were claimed by it before, see
+ * {@link BlobClusterCoordinator}. Blobs left by nodes which joined, left or
+ * died are picked up on the next poll.
+ * <p>
+ * Number of new claims per poll is limited, so backlog is not claimed by the
+ * first started node and is spread as other nodes join.
+ * <p>
+ * Partitioning spreads downloads and processing, not listing: every node
+ * still lists the whole container (or all blobs under prefix) on every poll,
+ * so listing requests grow with number of nodes times number of blobs. Blob
+ * names are hashed to partitions, which therefore cannot be mapped to name
+ * prefixes. Keep processed blobs out of the listed prefix, or poll less
+ * often, if listing cost matters.
+ * <p>
+ * Processed blobs should be deleted (e.g. by transformer), or completed with
+ * {@link BlobClusterCoordinator#complete(BlobDetails)} when kept in container,
+ * so they are not listed again, neither by this node after restart nor by
+ * other nodes when partitions move. Leaves cluster when destroyed.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class PartitionedBlobLister implements BlobLister, DisposableBean {
+    private static final Logger LOG = LoggerFactory.getLogger(PartitionedBlobLister.class);
+
+    public static final int DEFAULT_MAX_CLAIMS_PER_POLL = 100;
+
+    private final BlobClusterCoordinator coordinator;
+
+    private String prefix;
+
+    private int pageSize = BlobListOptions.DEFAULT_PAGE_SIZE;
+
+    private int maxClaimsPerPoll = DEFAULT_MAX_CLAIMS_PER_POLL;
+
+    /**
+     * @param coordinator
+     */
+    public PartitionedBlobLister(BlobClusterCoordinator coordinator) {
+        Assert.notNull(coordinator, "'coordinator' should not be null");
+        this.coordinator = coordinator;
+    }
+
+    /**
+     * @param template
+     * @param containerName
+     * @return
+     * @see org.opencredo.cloud.storage.si.listing.BlobLister#list(org.opencredo.cloud.storage.StorageOperations,
+     *      java.lang.String)
+     */
+    public List<BlobDetails> list(StorageOperations template, String containerName) {
+        coordinator.refresh();
+
+        BlobListOptions options = new BlobListOptions();
+        options.setPrefix(prefix);
+        options.setPageSize(pageSize);
+
+        List<BlobDetails> result = new ArrayList<BlobDetails>();
+        Set<String> existing = new HashSet<String>();
+        int claims = 0;
+        Iterator<BlobDetails> it = template.iterateContainerObjectDetails(containerName, options);
+        while (it.hasNext()) {
+            BlobDetails details = it.next();
+            String name = details.getName();
+            if (coordinator.isCoordinationBlob(containerName, name)) {
+                continue;
+            }
+
+            existing.add(name);
+            // Blobs claimed before partition moved stay with this node
+            if (coordinator.isClaimed(name)) {
+                result.add(details);
+            } else if (claims < maxClaimsPerPoll && coordinator.isOwner(name) && coordinator.claim(details)) {
+                result.add(details);
+                claims++;
+            }
+        }
+
+        coordinator.retainClaims(existing);
+        LOG.debug("Node '{}' claimed {} blobs out of {}", new Object[] { coordinator.getNodeId(), result.size(),
+                existing.size() });
+        return result;
+    }
+
+    public void destroy() {
+        coordinator.leave();
+    }
+
+    public BlobClusterCoordinator getCoordinator() {
+        return coordinator;
+    }
+
+    /**
+     * @return the prefix
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * @param prefix
+     *            Only blobs with names starting with prefix are listed.
+     */
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+
+    /**
+     * @return the maxClaimsPerPoll
+     */
+    public int getMaxClaimsPerPoll() {
+        return maxClaimsPerPoll;
+    }
+
+    /**
+     * @param maxClaimsPerPoll
+     *            Maximum number of blobs claimed on single poll.
+     */
+    public void setMaxClaimsPerPoll(int maxClaimsPerPoll) {
+        Assert.isTrue(maxClaimsPerPoll > 0, "'maxClaimsPerPoll' must be positive");
+        this.maxClaimsPerPoll = maxClaimsPerPoll;
+    }
+
+    /**
+     * @return the pageSize
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @param pageSize
+     *            the pageSize to set
+     */
+    public void setPageSize(int pageSize) {
+        Assert.isTrue(pageSize > 0, "Page size must be positive");
+        this.pageSize = pageSize;
+    }
+}
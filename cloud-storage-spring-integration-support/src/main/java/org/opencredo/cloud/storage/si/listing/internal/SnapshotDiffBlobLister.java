@@ -0,0 +1,174 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.si.listing.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.BlobListOptions;
+import org.opencredo.cloud.storage.StorageOperations;
+import org.opencredo.cloud.storage.si.listing.BlobLister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Lister for containers without usable name ordering. Streams the container
+ * listing page by page and compares it with snapshot of previous poll, kept as
+ * sorted array of 64 bit fingerprints of blob name and ETag (8 bytes per blob).
+ * Returns only blobs which are new or changed since previous poll, so downstream
+ * filter and queue do not have to process the whole container every time.
+ * <p>
+ * First poll returns all blobs. Fingerprint collision may hide a change;
+ * probability is negligible for containers below billions of blobs. Instance
+ * keeps state of single container, so it should not be shared between
+ * adapters.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class SnapshotDiffBlobLister implements BlobLister {
+    private static final Logger LOG = LoggerFactory.getLogger(SnapshotDiffBlobLister.class);
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private String prefix;
+
+    private int pageSize = BlobListOptions.DEFAULT_PAGE_SIZE;
+
+    private long[] snapshot = new long[0];
+
+    private final Object monitor = new Object();
+
+    /**
+     * @param template
+     * @param containerName
+     * @return
+     * @see org.opencredo.cloud.storage.si.listing.BlobLister#list(org.opencredo.cloud.storage.StorageOperations,
+     *      java.lang.String)
+     */
+    public List<BlobDetails> list(StorageOperations template, String containerName) {
+        BlobListOptions options = new BlobListOptions();
+        options.setPrefix(prefix);
+        options.setPageSize(pageSize);
+
+        synchronized (monitor) {
+            List<BlobDetails> result = new ArrayList<BlobDetails>();
+            long[] current = new long[Math.max(snapshot.length, 16)];
+            int size = 0;
+
+            Iterator<BlobDetails> it = template.iterateContainerObjectDetails(containerName, options);
+            while (it.hasNext()) {
+                BlobDetails details = it.next();
+                long fingerprint = fingerprint(details);
+                if (Arrays.binarySearch(snapshot, fingerprint) < 0) {
+                    result.add(details);
+                }
+                if (size == current.length) {
+                    current = Arrays.copyOf(current, size * 2);
+                }
+                current[size++] = fingerprint;
+            }
+
+            current = Arrays.copyOf(current, size);
+            Arrays.sort(current);
+            snapshot = current;
+
+            LOG.debug("Container '{}' has {} new or changed blobs out of {}", new Object[] { containerName,
+                    result.size(), size });
+            return result;
+        }
+    }
+
+    /**
+     * Forgets snapshot, so next poll returns all blobs again.
+     */
+    public void reset() {
+        synchronized (monitor) {
+            snapshot = new long[0];
+        }
+    }
+
+    /**
+     * @return Number of blobs in snapshot of previous poll.
+     */
+    public int getSnapshotSize() {
+        synchronized (monitor) {
+            return snapshot.length;
+        }
+    }
+
+    /**
+     * @param details
+     * @return FNV-1a hash of blob name and ETag, or last modified time if ETag
+     *         is not available.
+     */
+    static long fingerprint(BlobDetails details) {
+        long hash = hash(FNV_OFFSET_BASIS, details.getName());
+        hash = (hash ^ 0xff) * FNV_PRIME;
+        if (details.getETag() != null) {
+            hash = hash(hash, details.getETag());
+        } else if (details.getLastModified() != null) {
+            long time = details.getLastModified().getTime();
+            for (int i = 0; i < 8; i++) {
+                hash = (hash ^ ((time >>> (i * 8)) & 0xff)) * FNV_PRIME;
+            }
+        }
+        return hash;
+    }
+
+    private static long hash(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * @return the prefix
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * @param prefix
+     *            Only blobs with names starting with prefix are listed.
+     */
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+
+    /**
+     * @return the pageSize
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @param pageSize
+     *            the pageSize to set
+     */
+    public void setPageSize(int pageSize) {
+        Assert.isTrue(pageSize > 0, "Page size must be positive");
+        this.pageSize = pageSize;
+    }
+}
@@ -0,0 +1,163 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.si.listing.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.BlobDetailsPage;
+import org.opencredo.cloud.storage.BlobListOptions;
+import org.opencredo.cloud.storage.StorageOperations;
+import org.opencredo.cloud.storage.si.listing.BlobLister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Incremental lister for containers where new blobs are named in ascending
+ * order (e.g. time stamp or sequence prefixed names). Remembers the greatest
+ * blob name seen (watermark) and the marker of the last listed page. Next poll
+ * resumes listing from that page, so only the tail of the container is
+ * transferred, and returns blobs named after the watermark only.
+ * <p>
+ * Relies on storage listing blobs in lexicographical name order, which is the
+ * case for all supported providers. Blobs added with names before the
+ * watermark, and modified blobs, are not detected; use
+ * {@link SnapshotDiffBlobLister} for such containers. Instance keeps state of
+ * single container, so it should not be shared between adapters.
+ *
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class WatermarkBlobLister implements BlobLister {
+    private static final Logger LOG = LoggerFactory.getLogger(WatermarkBlobLister.class);
+
+    private String prefix;
+
+    private int pageSize = BlobListOptions.DEFAULT_PAGE_SIZE;
+
+    private String watermark;
+
+    private String resumeMarker;
+
+    private final Object monitor = new Object();
+
+    /**
+     * @param template
+     * @param containerName
+     * @return
+     * @see org.opencredo.cloud.storage.si.listing.BlobLister#list(org.opencredo.cloud.storage.StorageOperations,
+     *      java.lang.String)
+     */
+    public List<BlobDetails> list(StorageOperations template, String containerName) {
+        BlobListOptions options = new BlobListOptions();
+        options.setPrefix(prefix);
+        options.setPageSize(pageSize);
+
+        synchronized (monitor) {
+            LOG.debug("List container '{}' after watermark '{}'", containerName, watermark);
+            List<BlobDetails> result = new ArrayList<BlobDetails>();
+            String newWatermark = watermark;
+            String marker = resumeMarker;
+            String newResumeMarker = resumeMarker;
+
+            BlobDetailsPage page;
+            do {
+                page = template.listContainerObjectDetailsPage(containerName, options, marker);
+                if (!page.getBlobDetails().isEmpty()) {
+                    newResumeMarker = marker;
+                }
+
+                for (BlobDetails details : page.getBlobDetails()) {
+                    String name = details.getName();
+                    if (watermark == null || name.compareTo(watermark) > 0) {
+                        result.add(details);
+                    }
+                    if (newWatermark == null || name.compareTo(newWatermark) > 0) {
+                        newWatermark = name;
+                    }
+                }
+                marker = page.getNextMarker();
+            } while (page.hasNextPage());
+
+            watermark = newWatermark;
+            resumeMarker = newResumeMarker;
+            return result;
+        }
+    }
+
+    /**
+     * Forgets watermark, so next poll lists whole container again.
+     */
+    public void reset() {
+        synchronized (monitor) {
+            watermark = null;
+            resumeMarker = null;
+        }
+    }
+
+    /**
+     * @return Greatest blob name seen, or <code>null</code> if nothing has
+     *         been listed yet.
+     */
+    public String getWatermark() {
+        synchronized (monitor) {
+            return watermark;
+        }
+    }
+
+    /**
+     * @param watermark
+     *            Initial watermark. Blobs named before or equal to it are
+     *            never returned.
+     */
+    public void setWatermark(String watermark) {
+        synchronized (monitor) {
+            this.watermark = watermark;
+            this.resumeMarker = null;
+        }
+    }
+
+    /**
+     * @return the prefix
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * @param prefix
+     *            Only blobs with names starting with prefix are listed.
+     */
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+
+    /**
+     * @return the pageSize
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @param pageSize
+     *            the pageSize to set
+     */
+    public void setPageSize(int pageSize) {
+        Assert.isTrue(pageSize > 0, "Page size must be positive");
+        this.pageSize = pageSize;
+    }
+}
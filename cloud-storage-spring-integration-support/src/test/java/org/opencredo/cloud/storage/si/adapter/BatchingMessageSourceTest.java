@@ -0,0 +1,147 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.cloud.storage.si.adapter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.BlobListOptions;
+import org.opencredo.cloud.storage.StorageOperations;
+import org.opencredo.cloud.storage.si.filter.internal.AcceptOnceBlobNameFilter;
+import org.opencredo.cloud.storage.si.filter.internal.InMemoryBlobNameStore;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.integration.Message;
+
+/**
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class BatchingMessageSourceTest {
+
+    private static final String CONTAINER_NAME = "container";
+
+    private StorageOperations template;
+
+    private List<BlobDetails> blobs;
+
+    private final AtomicInteger iterated = new AtomicInteger();
+
+    private BatchingMessageSource sut;
+
+    @Before
+    public void setUp() {
+        template = mock(StorageOperations.class);
+
+        long currentTime = System.currentTimeMillis();
+        blobs = new ArrayList<BlobDetails>();
+        for (int i = 0; i < 25; i++) {
+            blobs.add(new BlobDetails(CONTAINER_NAME, "blob-" + i, "", new Date(currentTime - i * 1000)));
+        }
+        when(template.listContainerObjectDetails(CONTAINER_NAME)).thenReturn(blobs);
+        when(template.iterateContainerObjectDetails(eq(CONTAINER_NAME), any(BlobListOptions.class))).thenAnswer(
+                new Answer<Iterator<BlobDetails>>() {
+                    public Iterator<BlobDetails> answer(InvocationOnMock invocation) {
+                        final Iterator<BlobDetails> it = blobs.iterator();
+                        return new Iterator<BlobDetails>() {
+                            public boolean hasNext() {
+                                return it.hasNext();
+                            }
+
+                            public BlobDetails next() {
+                                iterated.incrementAndGet();
+                                return it.next();
+                            }
+
+                            public void remove() {
+                                throw new UnsupportedOperationException();
+                            }
+                        };
+                    }
+                });
+
+        sut = new BatchingMessageSource(template, CONTAINER_NAME);
+        sut.setMaxPerPoll(10);
+    }
+
+    @Test
+    public void testBacklogReceivedInBatches() {
+        Message<List<BlobDetails>> message = sut.receive();
+        assertEquals(10, message.getPayload().size());
+        // Oldest blob comes first
+        assertEquals("blob-24", message.getPayload().get(0).getName());
+
+        assertEquals(10, sut.receive().getPayload().size());
+        assertEquals(5, sut.receive().getPayload().size());
+        assertNull(sut.receive());
+    }
+
+    @Test
+    public void testQueueCapacityBoundsBlobsTakenFromListing() {
+        InMemoryBlobNameStore seenNames = new InMemoryBlobNameStore();
+        ReadingMessageSource source = new ReadingMessageSource(template, CONTAINER_NAME,
+                new AcceptOnceBlobNameFilter(seenNames));
+        source.setQueueCapacity(10);
+        sut = new BatchingMessageSource(source);
+        sut.setMaxPerPoll(4);
+
+        assertEquals(4, sut.receive().getPayload().size());
+        assertEquals(6, source.getQueueToBeReceived().size());
+        // Blobs which did not fit into queue are neither taken from listing
+        // nor recorded by filter yet
+        assertEquals(10, iterated.get());
+        assertEquals(10, seenNames.size());
+
+        int received = 4;
+        Message<List<BlobDetails>> message;
+        while ((message = sut.receive()) != null) {
+            assertTrue(source.getQueueToBeReceived().size() <= 10);
+            received += message.getPayload().size();
+        }
+        assertEquals(25, received);
+        // Rest of the first listing is queued before container is listed again
+        verify(template, times(2)).iterateContainerObjectDetails(eq(CONTAINER_NAME), any(BlobListOptions.class));
+    }
+
+    @Test
+    public void testRequeueRespectsQueueCapacity() {
+        ReadingMessageSource source = new ReadingMessageSource(template, CONTAINER_NAME);
+        source.setQueueCapacity(10);
+
+        List<BlobDetails> received = source.receiveBatch(1);
+        assertEquals(9, source.getQueueToBeReceived().size());
+
+        assertTrue(source.requeue(received.get(0)));
+        assertFalse(source.requeue(received.get(0)));
+        assertEquals(10, source.getQueueToBeReceived().size());
+    }
+}
@@ -0,0 +1,254 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.cloud.storage.si.adapter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.StorageCommunicationException;
+import org.opencredo.cloud.storage.StorageOperations;
+import org.springframework.integration.Message;
+
+/**
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class PrefetchingMessageSourceTest {
+
+    private static final String CONTAINER_NAME = "container";
+
+    private static final int BLOB_COUNT = 10;
+
+    private StorageOperations template;
+
+    private PrefetchingMessageSource sut;
+
+    @Before
+    public void setUp() {
+        template = mock(StorageOperations.class);
+
+        List<BlobDetails> blobs = new ArrayList<BlobDetails>();
+        for (int i = 0; i < BLOB_COUNT; i++) {
+            String name = "blob-" + i;
+            blobs.add(new BlobDetails(CONTAINER_NAME, name, "", new Date()));
+            when(template.receiveAsInputStream(CONTAINER_NAME, name)).thenReturn(
+                    new ByteArrayInputStream(("content of " + name).getBytes()));
+        }
+        when(template.listContainerObjectDetails(CONTAINER_NAME)).thenReturn(blobs);
+
+        sut = new PrefetchingMessageSource(template, CONTAINER_NAME);
+        sut.setConcurrency(2);
+        sut.setBufferCapacity(3);
+        sut.setMaxAttempts(3);
+        sut.setRetryDelay(10);
+        sut.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() {
+        sut.destroy();
+    }
+
+    @Test
+    public void testBlobsDownloadedAheadWithinBufferCapacity() throws InterruptedException {
+        Set<String> received = new HashSet<String>();
+        assertEquals(0, receiveAll(received, BLOB_COUNT));
+
+        assertEquals(BLOB_COUNT, received.size());
+        assertNull(sut.receive());
+    }
+
+    @Test
+    public void testFailedDownloadDownloadedAgain() throws InterruptedException {
+        when(template.receiveAsInputStream(CONTAINER_NAME, "blob-3")).thenThrow(
+                new StorageCommunicationException(503, "Server busy", null)).thenReturn(
+                new ByteArrayInputStream("content of blob-3".getBytes()));
+
+        Set<String> received = new HashSet<String>();
+        assertEquals(1, receiveAll(received, BLOB_COUNT));
+
+        assertEquals(BLOB_COUNT, received.size());
+        verify(template, times(2)).receiveAsInputStream(CONTAINER_NAME, "blob-3");
+    }
+
+    @Test
+    public void testFailedDownloadDelayed() throws InterruptedException {
+        sut.setRetryDelay(300);
+        final List<Long> attemptTimes = new CopyOnWriteArrayList<Long>();
+        when(template.receiveAsInputStream(CONTAINER_NAME, "blob-3")).thenAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) {
+                attemptTimes.add(System.currentTimeMillis());
+                if (attemptTimes.size() == 1) {
+                    throw new StorageCommunicationException(503, "Server busy", null);
+                }
+                return new ByteArrayInputStream("content of blob-3".getBytes());
+            }
+        });
+
+        Set<String> received = new HashSet<String>();
+        assertEquals(1, receiveAll(received, BLOB_COUNT));
+
+        assertEquals(2, attemptTimes.size());
+        assertTrue(attemptTimes.get(1) - attemptTimes.get(0) >= 300);
+    }
+
+    @Test
+    public void testBlobFailingRepeatedlyDropped() throws InterruptedException {
+        when(template.receiveAsInputStream(CONTAINER_NAME, "blob-3")).thenThrow(
+                new StorageCommunicationException(503, "Server busy", null));
+
+        List<IntegrationException> failures = new ArrayList<IntegrationException>();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (failures.size() < 3 && System.currentTimeMillis() < deadline) {
+            try {
+                if (sut.receive() == null) {
+                    Thread.sleep(10);
+                }
+            } catch (IntegrationException e) {
+                failures.add(e);
+            }
+        }
+
+        assertEquals(3, failures.size());
+        int dropped = 0;
+        for (IntegrationException failure : failures) {
+            // Failures of attempts may be received in any order
+            if (failure.getMessage().contains("dropped")) {
+                dropped++;
+            }
+        }
+        assertEquals(1, dropped);
+        Thread.sleep(100);
+        assertNull(sut.receive());
+        verify(template, times(3)).receiveAsInputStream(CONTAINER_NAME, "blob-3");
+    }
+
+    @Test
+    public void testRemovedBlobNotDownloadedAgain() throws InterruptedException {
+        when(template.receiveAsInputStream(CONTAINER_NAME, "blob-3")).thenThrow(
+                new StorageCommunicationException(404, "Not found", null));
+
+        Set<String> received = new HashSet<String>();
+        int failures = receiveAll(received, BLOB_COUNT - 1);
+        // Failure may complete after the rest of blobs
+        Thread.sleep(100);
+        try {
+            assertNull(sut.receive());
+        } catch (IntegrationException e) {
+            failures++;
+        }
+        assertNull(sut.receive());
+        assertEquals(1, failures);
+
+        assertEquals(BLOB_COUNT - 1, received.size());
+        verify(template, times(1)).receiveAsInputStream(CONTAINER_NAME, "blob-3");
+    }
+
+    @Test
+    public void testFileOfDownloadInterruptedByDestroyDeleted() throws Exception {
+        File tempDirectory = new File(System.getProperty("java.io.tmpdir"), "prefetch-test-" + System.nanoTime());
+        assertTrue(tempDirectory.mkdirs());
+        final CountDownLatch started = new CountDownLatch(1);
+        // Download which completes even though it is interrupted
+        when(template.receiveAndSaveToFile(eq(CONTAINER_NAME), eq("blob-0"), any(File.class))).thenAnswer(
+                new Answer<String>() {
+                    public String answer(InvocationOnMock invocation) throws Exception {
+                        FileUtils.writeStringToFile((File) invocation.getArguments()[2], "partial");
+                        started.countDown();
+                        try {
+                            Thread.sleep(5000);
+                        } catch (InterruptedException e) {
+                            // ignored
+                        }
+                        return "blob-0";
+                    }
+                });
+
+        PrefetchingMessageSource fileSource = new PrefetchingMessageSource(template, CONTAINER_NAME);
+        fileSource.setConcurrency(1);
+        fileSource.setBufferCapacity(1);
+        fileSource.setTempDirectory(tempDirectory);
+        fileSource.afterPropertiesSet();
+        try {
+            assertNull(fileSource.receive());
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            assertEquals(1, tempDirectory.list().length);
+
+            fileSource.destroy();
+            assertEquals(0, tempDirectory.list().length);
+        } finally {
+            fileSource.destroy();
+            FileUtils.deleteDirectory(tempDirectory);
+        }
+    }
+
+    /**
+     * @param received
+     *            Names of received blobs.
+     * @param expectedCount
+     * @return Number of failed downloads.
+     * @throws InterruptedException
+     */
+    private int receiveAll(Set<String> received, int expectedCount) throws InterruptedException {
+        int failures = 0;
+        long deadline = System.currentTimeMillis() + 5000;
+        while (received.size() < expectedCount && System.currentTimeMillis() < deadline) {
+            Message<Object> message;
+            try {
+                message = sut.receive();
+            } catch (IntegrationException e) {
+                failures++;
+                continue;
+            }
+            assertTrue("Buffer capacity exceeded", sut.getBufferedCount() <= 3);
+            if (message == null) {
+                Thread.sleep(10);
+                continue;
+            }
+
+            BlobDetails details = (BlobDetails) message.getHeaders().get(
+                    PrefetchingMessageSource.BLOB_DETAILS_HEADER);
+            assertEquals("content of " + details.getName(), new String((byte[]) message.getPayload()));
+            received.add(details.getName());
+        }
+        return failures;
+    }
+}
@@ -22,6 +22,8 @@ import static org.junit.Assert.fail;
 
 import org.junit.Test;
 import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.si.adapter.BatchingMessageSource;
+import org.opencredo.cloud.storage.si.adapter.PrefetchingMessageSource;
 import org.opencredo.cloud.storage.si.adapter.ReadingMessageSource;
 import org.opencredo.cloud.storage.si.comparator.BlobDetailsComparator;
 import org.opencredo.cloud.storage.si.filter.internal.AcceptOnceBlobNameFilter;
@@ -143,6 +145,39 @@ public class InboundChannelAdapterParserTest {
         assertEquals(TestPropertiesAccessor.getDefaultContainerName(), adapterDirect.getPropertyValue("containerName"));
     }
 
+    @Test
+    public void testInboundAdapterLoadWithPrefetch() {
+        ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext(
+                "InboundChannelAdapterParserTest-withPrefetch-context.xml", this.getClass());
+
+        Object bean = context.getBean("inbound-adapter");
+        assertNotNull("Adapter not found", bean);
+        DirectFieldAccessor d = new DirectFieldAccessor(bean);
+        Object value = d.getPropertyValue("source");
+        assertTrue(value instanceof PrefetchingMessageSource);
+
+        PrefetchingMessageSource pms = (PrefetchingMessageSource) value;
+        assertEquals(2, pms.getConcurrency());
+        assertEquals(8, pms.getBufferCapacity());
+        assertEquals(TestPropertiesAccessor.getDefaultContainerName(), pms.getSource().getContainerName());
+    }
+
+    @Test
+    public void testInboundAdapterLoadWithBatch() {
+        ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext(
+                "InboundChannelAdapterParserTest-withBatch-context.xml", this.getClass());
+
+        Object bean = context.getBean("inbound-adapter");
+        assertNotNull("Adapter not found", bean);
+        DirectFieldAccessor d = new DirectFieldAccessor(bean);
+        Object value = d.getPropertyValue("source");
+        assertTrue(value instanceof BatchingMessageSource);
+
+        BatchingMessageSource bms = (BatchingMessageSource) value;
+        assertEquals(20, bms.getMaxPerPoll());
+        assertEquals(TestPropertiesAccessor.getDefaultContainerName(), bms.getSource().getContainerName());
+    }
+
     /**
      * Used in spring context for parser tests.
      * 
@@ -0,0 +1,262 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.si.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencredo.cloud.storage.BlobConditions;
+import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.StorageCommunicationException;
+import org.opencredo.cloud.storage.StorageOperations;
+import org.opencredo.cloud.storage.local.LocalStorageTemplate;
+
+/**
+ * Several coordinators sharing local storage, as nodes of a cluster.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class BlobClusterCoordinatorTest {
+
+    private static final String CONTAINER_NAME = "cluster";
+
+    private static final long LEASE_DURATION = 300;
+
+    private static final String NODES = BlobClusterCoordinator.DEFAULT_PREFIX + "nodes/";
+
+    private static final String CLAIMS = BlobClusterCoordinator.DEFAULT_PREFIX + "claims/";
+
+    private File baseDirectory;
+
+    private LocalStorageTemplate template;
+
+    private BlobClusterCoordinator nodeA;
+
+    private BlobClusterCoordinator nodeB;
+
+    @Before
+    public void setUp() {
+        baseDirectory = new File(System.getProperty("java.io.tmpdir"), "blob-cluster-test-" + System.nanoTime());
+        template = new LocalStorageTemplate(baseDirectory, CONTAINER_NAME);
+        template.afterPropertiesSet();
+        nodeA = createNode("node-a");
+        nodeB = createNode("node-b");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        nodeA.leave();
+        nodeB.leave();
+        template.destroy();
+        FileUtils.deleteDirectory(baseDirectory);
+    }
+
+    @Test
+    public void testBusyNodeKeptAlive() throws InterruptedException {
+        nodeA.refresh();
+        nodeB.refresh();
+        assertEquals(nodes("node-a", "node-b"), nodeB.getLiveNodes());
+
+        // Node A does not poll for several leases
+        Thread.sleep(4 * LEASE_DURATION);
+        nodeB.refresh();
+
+        assertEquals(nodes("node-a", "node-b"), nodeB.getLiveNodes());
+    }
+
+    @Test
+    public void testLeftNodeNotAlive() throws InterruptedException {
+        nodeA.refresh();
+        nodeB.refresh();
+
+        nodeA.leave();
+        Thread.sleep(LEASE_DURATION);
+        nodeB.refresh();
+
+        assertEquals(nodes("node-b"), nodeB.getLiveNodes());
+        assertNull(template.getBlobDetails(CONTAINER_NAME, NODES + "node-a"));
+    }
+
+    @Test
+    public void testStaleHeartbeatDeleted() throws InterruptedException {
+        template.send(CONTAINER_NAME, NODES + "ghost", "ghost");
+        nodeA.refresh();
+        assertEquals(nodes("ghost", "node-a"), nodeA.getLiveNodes());
+
+        Thread.sleep(LEASE_DURATION * 3 / 2);
+        nodeA.refresh();
+
+        assertEquals(nodes("node-a"), nodeA.getLiveNodes());
+        assertNull(template.getBlobDetails(CONTAINER_NAME, NODES + "ghost"));
+    }
+
+    @Test
+    public void testBlobClaimedByOneNode() {
+        BlobDetails blob = sendBlob("a", "1");
+        nodeA.refresh();
+        nodeB.refresh();
+
+        assertTrue(nodeA.claim(blob));
+        assertFalse(nodeB.claim(blob));
+        assertTrue(nodeA.isClaimed("a"));
+        assertFalse(nodeB.isClaimed("a"));
+    }
+
+    @Test
+    public void testClaimOfDeadNodeTakenOver() {
+        BlobDetails blob = sendBlob("a", "1");
+        template.send(CONTAINER_NAME, CLAIMS + "a", "ghost");
+        nodeA.refresh();
+
+        assertTrue(nodeA.claim(blob));
+    }
+
+    @Test
+    public void testClaimKeptAfterRestart() {
+        BlobDetails blob = sendBlob("a", "1");
+        nodeA.refresh();
+        nodeB.refresh();
+        assertTrue(nodeA.claim(blob));
+
+        nodeA.leave();
+        BlobClusterCoordinator restarted = createNode("node-a");
+        try {
+            restarted.refresh();
+            assertTrue(restarted.claim(blob));
+        } finally {
+            restarted.leave();
+        }
+    }
+
+    @Test
+    public void testCompletedBlobNotClaimedAgain() {
+        BlobDetails blob = sendBlob("a", "1");
+        nodeA.refresh();
+        assertTrue(nodeA.claim(blob));
+        nodeA.complete(blob);
+        assertFalse(nodeA.isClaimed("a"));
+
+        nodeA.leave();
+        BlobClusterCoordinator restarted = createNode("node-a");
+        try {
+            restarted.refresh();
+            nodeB.refresh();
+            assertFalse(restarted.claim(blob));
+            assertFalse(nodeB.claim(blob));
+        } finally {
+            restarted.leave();
+        }
+    }
+
+    @Test
+    public void testCompletionDoesNotOverwriteTakenOverClaim() {
+        BlobDetails blob = sendBlob("a", "1");
+        nodeA.refresh();
+        assertTrue(nodeA.claim(blob));
+
+        // Node B took over while heartbeat of node A was late
+        template.send(CONTAINER_NAME, CLAIMS + "a", "node-b");
+
+        assertFalse(nodeA.complete(blob));
+        assertFalse(nodeA.isClaimed("a"));
+        assertEquals("node-b", template.receiveAsString(CONTAINER_NAME, CLAIMS + "a"));
+    }
+
+    @Test
+    public void testStorageFailureLeavesBlobUnclaimed() {
+        StorageOperations failingTemplate = mock(StorageOperations.class);
+        when(failingTemplate.send(anyString(), anyString(), anyString(), any(BlobConditions.class))).thenThrow(
+                new StorageCommunicationException(500, "Internal error", null));
+        BlobClusterCoordinator node = new BlobClusterCoordinator(failingTemplate, CONTAINER_NAME, "node-c");
+
+        assertFalse(node.claim(sendBlob("a", "1")));
+        assertTrue(node.getClaimed().isEmpty());
+    }
+
+    @Test
+    public void testReplacedBlobClaimedAgain() {
+        BlobDetails blob = sendBlob("a", "1");
+        nodeA.refresh();
+        nodeB.refresh();
+        assertTrue(nodeA.claim(blob));
+        nodeA.complete(blob);
+
+        BlobDetails replaced = sendBlob("a", "2");
+
+        assertTrue(nodeB.claim(replaced));
+    }
+
+    @Test
+    public void testClaimsOfDeletedBlobsDeleted() {
+        BlobDetails completed = sendBlob("a", "1");
+        BlobDetails claimed = sendBlob("b", "1");
+        nodeA.refresh();
+        assertTrue(nodeA.claim(completed));
+        nodeA.complete(completed);
+        assertTrue(nodeA.claim(claimed));
+
+        nodeA.retainClaims(Collections.<String> emptySet());
+
+        assertNull(template.getBlobDetails(CONTAINER_NAME, CLAIMS + "a"));
+        assertNull(template.getBlobDetails(CONTAINER_NAME, CLAIMS + "b"));
+        assertTrue(nodeA.getClaimed().isEmpty());
+    }
+
+    @Test
+    public void testClaimsLimited() {
+        BlobDetails first = sendBlob("a", "1");
+        BlobDetails second = sendBlob("b", "1");
+        nodeA.setMaxClaims(1);
+        nodeA.refresh();
+
+        assertTrue(nodeA.claim(first));
+        assertFalse(nodeA.claim(second));
+        assertNull(template.getBlobDetails(CONTAINER_NAME, CLAIMS + "b"));
+
+        nodeA.complete(first);
+        assertTrue(nodeA.claim(second));
+    }
+
+    private BlobDetails sendBlob(String name, String content) {
+        template.send(CONTAINER_NAME, name, content);
+        return template.getBlobDetails(CONTAINER_NAME, name);
+    }
+
+    private BlobClusterCoordinator createNode(String nodeId) {
+        BlobClusterCoordinator node = new BlobClusterCoordinator(template, CONTAINER_NAME, nodeId);
+        node.setLeaseDuration(LEASE_DURATION);
+        return node;
+    }
+
+    private static TreeSet<String> nodes(String... nodeIds) {
+        return new TreeSet<String>(Arrays.asList(nodeIds));
+    }
+}
@@ -0,0 +1,79 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.cloud.storage.si.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class ConsistentHashRingTest {
+
+    private static final int NAME_COUNT = 10000;
+
+    @Test
+    public void testAssignmentDoesNotDependOnNodeOrder() {
+        ConsistentHashRing ring1 = new ConsistentHashRing(Arrays.asList("a", "b", "c"));
+        ConsistentHashRing ring2 = new ConsistentHashRing(Arrays.asList("c", "a", "b"));
+        for (int i = 0; i < NAME_COUNT; i++) {
+            assertEquals(ring1.getNode("blob-" + i), ring2.getNode("blob-" + i));
+        }
+    }
+
+    @Test
+    public void testNamesSpreadBetweenNodes() {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("a", "b", "c"));
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (int i = 0; i < NAME_COUNT; i++) {
+            String node = ring.getNode("blob-" + i);
+            counts.put(node, counts.containsKey(node) ? counts.get(node) + 1 : 1);
+        }
+
+        assertEquals(3, counts.size());
+        for (Integer count : counts.values()) {
+            assertTrue("Unbalanced partitions: " + counts, count > NAME_COUNT / 5);
+        }
+    }
+
+    @Test
+    public void testOnlyNamesOfNewNodeMovedOnJoin() {
+        ConsistentHashRing before = new ConsistentHashRing(Arrays.asList("a", "b", "c"));
+        ConsistentHashRing after = new ConsistentHashRing(Arrays.asList("a", "b", "c", "d"));
+        int moved = 0;
+        for (int i = 0; i < NAME_COUNT; i++) {
+            String name = "blob-" + i;
+            if (!before.getNode(name).equals(after.getNode(name))) {
+                assertEquals("d", after.getNode(name));
+                moved++;
+            }
+        }
+        assertTrue("Too many names moved: " + moved, moved < NAME_COUNT / 2);
+    }
+
+    @Test
+    public void testEmptyRing() {
+        assertNull(new ConsistentHashRing(Collections.<String> emptyList()).getNode("blob"));
+    }
+}
@@ -15,6 +15,9 @@
 
 package org.opencredo.cloud.storage.si.filter.internal;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
@@ -52,4 +55,52 @@ public class AcceptOnceBlobNameFilterTest {
         Assert.assertEquals(0, acceptedObjects.size());
     }
 
+    @Test
+    public void testListingLargerThanFingerprintCapacityAcceptedOnce() {
+        sut = new AcceptOnceBlobNameFilter();
+        List<BlobDetails> listing = new ArrayList<BlobDetails>();
+        for (int i = 0; i < 2 * FingerprintBlobNameStore.DEFAULT_CAPACITY + 1; i++) {
+            listing.add(new BlobDetails("", "blob-" + i, "", currentDate));
+        }
+
+        Assert.assertEquals(listing.size(), sut.filter(listing).size());
+        // Every poll lists the whole container again
+        Assert.assertEquals(0, sut.filter(listing).size());
+        Assert.assertEquals(0, sut.filter(listing).size());
+    }
+
+    @Test
+    public void testJournaledStoreRemembersNamesAcrossRestart() throws IOException {
+        File file = File.createTempFile("blob-names", ".bin");
+        file.deleteOnExit();
+        List<BlobDetails> listing = new ArrayList<BlobDetails>();
+        for (int i = 0; i < 100; i++) {
+            listing.add(new BlobDetails("", "blob-" + i, "", currentDate));
+        }
+
+        FingerprintSetBlobNameStore seenNames = new FingerprintSetBlobNameStore(file);
+        sut = new AcceptOnceBlobNameFilter(seenNames);
+        Assert.assertEquals(100, sut.filter(listing).size());
+        seenNames.close();
+
+        seenNames = new FingerprintSetBlobNameStore(file);
+        sut = new AcceptOnceBlobNameFilter(seenNames);
+        Assert.assertEquals(0, sut.filter(listing).size());
+        seenNames.close();
+    }
+
+    @Test
+    public void testFingerprintStoreRemembersListingWithinCapacity() {
+        sut = new AcceptOnceBlobNameFilter(new FingerprintBlobNameStore(100));
+        List<BlobDetails> listing = new ArrayList<BlobDetails>();
+        for (int i = 0; i < 100; i++) {
+            listing.add(new BlobDetails("", "blob-" + i, "", currentDate));
+        }
+
+        Assert.assertEquals(100, sut.filter(listing).size());
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(0, sut.filter(listing).size());
+        }
+    }
+
 }
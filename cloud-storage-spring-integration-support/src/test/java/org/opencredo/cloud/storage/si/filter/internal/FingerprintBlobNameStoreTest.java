@@ -0,0 +1,72 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.cloud.storage.si.filter.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class FingerprintBlobNameStoreTest {
+
+    @Test
+    public void testNameAddedOnlyOnce() {
+        FingerprintBlobNameStore sut = new FingerprintBlobNameStore();
+        assertTrue(sut.add("a"));
+        assertFalse(sut.add("a"));
+        assertTrue(sut.contains("a"));
+        assertFalse(sut.contains("b"));
+    }
+
+    @Test
+    public void testOldestGenerationDroppedWhenCapacityReached() {
+        FingerprintBlobNameStore sut = new FingerprintBlobNameStore(100);
+        for (int i = 0; i < 250; i++) {
+            assertTrue(sut.add("blob-" + i));
+        }
+
+        assertEquals(150, sut.size());
+        assertFalse(sut.contains("blob-99"));
+        for (int i = 100; i < 250; i++) {
+            assertTrue(sut.contains("blob-" + i));
+        }
+    }
+
+    @Test
+    public void testNamesLoadedFromJournal() throws IOException {
+        File file = File.createTempFile("blob-names", ".bin");
+        file.deleteOnExit();
+
+        FingerprintBlobNameStore sut = new FingerprintBlobNameStore(100, file);
+        for (int i = 0; i < 150; i++) {
+            sut.add("blob-" + i);
+        }
+        sut.close();
+
+        sut = new FingerprintBlobNameStore(100, file);
+        assertEquals(150, sut.size());
+        assertFalse(sut.add("blob-149"));
+        assertTrue(sut.add("blob-150"));
+        sut.close();
+    }
+}
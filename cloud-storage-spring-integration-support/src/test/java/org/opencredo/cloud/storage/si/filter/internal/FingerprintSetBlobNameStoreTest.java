@@ -0,0 +1,101 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.si.filter.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Test;
+
+/**
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class FingerprintSetBlobNameStoreTest {
+
+    @Test
+    public void testNameAddedOnlyOnce() {
+        FingerprintSetBlobNameStore sut = new FingerprintSetBlobNameStore();
+        assertTrue(sut.add("a"));
+        assertFalse(sut.add("a"));
+        assertTrue(sut.contains("a"));
+        assertFalse(sut.contains("b"));
+    }
+
+    @Test
+    public void testNoNameForgotten() {
+        FingerprintSetBlobNameStore sut = new FingerprintSetBlobNameStore();
+        // Several merges of recent names into sorted array
+        for (int i = 0; i < 50000; i++) {
+            assertTrue(sut.add("blob-" + i));
+        }
+
+        assertEquals(50000, sut.size());
+        for (int i = 0; i < 50000; i++) {
+            assertFalse(sut.add("blob-" + i));
+        }
+        assertFalse(sut.contains("blob-50000"));
+    }
+
+    @Test
+    public void testNamesLoadedFromJournal() throws IOException {
+        File file = File.createTempFile("blob-names", ".bin");
+        file.deleteOnExit();
+
+        FingerprintSetBlobNameStore sut = new FingerprintSetBlobNameStore(file);
+        for (int i = 0; i < 3000; i++) {
+            sut.add("blob-" + i);
+        }
+        sut.close();
+
+        sut = new FingerprintSetBlobNameStore(file);
+        assertEquals(3000, sut.size());
+        assertFalse(sut.add("blob-2999"));
+        assertFalse(sut.add("blob-0"));
+        assertTrue(sut.add("blob-3000"));
+        sut.close();
+
+        sut = new FingerprintSetBlobNameStore(file);
+        assertEquals(3001, sut.size());
+        sut.close();
+    }
+
+    @Test
+    public void testPartiallyWrittenFingerprintIgnored() throws IOException {
+        File file = File.createTempFile("blob-names", ".bin");
+        file.deleteOnExit();
+
+        FingerprintSetBlobNameStore sut = new FingerprintSetBlobNameStore(file);
+        sut.add("a");
+        sut.close();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() + 3);
+        raf.close();
+
+        sut = new FingerprintSetBlobNameStore(file);
+        assertEquals(1, sut.size());
+        assertTrue(sut.add("b"));
+        sut.close();
+
+        sut = new FingerprintSetBlobNameStore(file);
+        assertTrue(sut.contains("a"));
+        assertTrue(sut.contains("b"));
+        sut.close();
+    }
+}
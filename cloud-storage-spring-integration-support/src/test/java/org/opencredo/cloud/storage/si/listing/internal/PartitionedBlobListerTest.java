@@ -0,0 +1,158 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.si.listing.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.local.LocalStorageTemplate;
+import org.opencredo.cloud.storage.si.cluster.BlobClusterCoordinator;
+
+/**
+ * Two listers sharing local storage, as inbound adapters on two nodes.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class PartitionedBlobListerTest {
+
+    private static final String CONTAINER_NAME = "cluster";
+
+    private static final long LEASE_DURATION = 300;
+
+    private static final int BLOB_COUNT = 20;
+
+    private File baseDirectory;
+
+    private LocalStorageTemplate template;
+
+    private PartitionedBlobLister listerA;
+
+    private PartitionedBlobLister listerB;
+
+    private Set<String> allBlobs;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        baseDirectory = new File(System.getProperty("java.io.tmpdir"), "partitioned-lister-test-" + System.nanoTime());
+        template = new LocalStorageTemplate(baseDirectory, CONTAINER_NAME);
+        template.afterPropertiesSet();
+
+        allBlobs = new TreeSet<String>();
+        for (int i = 0; i < BLOB_COUNT; i++) {
+            template.send(CONTAINER_NAME, "blob-" + i, String.valueOf(i));
+            allBlobs.add("blob-" + i);
+        }
+
+        listerA = createLister("node-a");
+        listerB = createLister("node-b");
+        // Both nodes join, then wait until each has seen the other
+        listerA.getCoordinator().refresh();
+        listerB.getCoordinator().refresh();
+        Thread.sleep(LEASE_DURATION / 2);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        listerA.destroy();
+        listerB.destroy();
+        template.destroy();
+        FileUtils.deleteDirectory(baseDirectory);
+    }
+
+    @Test
+    public void testPartitionsDisjointAndCoverAllBlobs() {
+        Set<String> listedByA = names(listerA.list(template, CONTAINER_NAME));
+        Set<String> listedByB = names(listerB.list(template, CONTAINER_NAME));
+
+        assertFalse(listedByA.isEmpty());
+        assertFalse(listedByB.isEmpty());
+        assertTrue(Collections.disjoint(listedByA, listedByB));
+        Set<String> listed = new TreeSet<String>(listedByA);
+        listed.addAll(listedByB);
+        assertEquals(allBlobs, listed);
+
+        // Claimed blobs are listed again until they are completed or deleted
+        assertEquals(listedByA, names(listerA.list(template, CONTAINER_NAME)));
+    }
+
+    @Test
+    public void testPartitionOfLeftNodeTakenOver() throws InterruptedException {
+        listerA.list(template, CONTAINER_NAME);
+        listerB.list(template, CONTAINER_NAME);
+
+        listerA.destroy();
+        Thread.sleep(LEASE_DURATION / 2);
+
+        assertEquals(allBlobs, names(listerB.list(template, CONTAINER_NAME)));
+    }
+
+    @Test
+    public void testCompletedBlobsNotListedAgain() throws InterruptedException {
+        List<BlobDetails> listedByA = listerA.list(template, CONTAINER_NAME);
+        Set<String> listedByB = names(listerB.list(template, CONTAINER_NAME));
+        for (BlobDetails blob : listedByA) {
+            listerA.getCoordinator().complete(blob);
+        }
+        assertTrue(listerA.list(template, CONTAINER_NAME).isEmpty());
+
+        listerA.destroy();
+        Thread.sleep(LEASE_DURATION / 2);
+
+        assertEquals(listedByB, names(listerB.list(template, CONTAINER_NAME)));
+    }
+
+    @Test
+    public void testClaimsOfDeletedBlobsReleased() {
+        List<BlobDetails> listedByA = listerA.list(template, CONTAINER_NAME);
+        for (BlobDetails blob : listedByA) {
+            template.deleteObject(CONTAINER_NAME, blob.getName());
+        }
+
+        assertTrue(listerA.list(template, CONTAINER_NAME).isEmpty());
+        assertTrue(listerA.getCoordinator().getClaimed().isEmpty());
+        for (BlobDetails blob : listedByA) {
+            assertNull(template.getBlobDetails(CONTAINER_NAME, BlobClusterCoordinator.DEFAULT_PREFIX
+                    + "claims/" + blob.getName()));
+        }
+    }
+
+    private PartitionedBlobLister createLister(String nodeId) {
+        BlobClusterCoordinator coordinator = new BlobClusterCoordinator(template, CONTAINER_NAME, nodeId);
+        coordinator.setLeaseDuration(LEASE_DURATION);
+        return new PartitionedBlobLister(coordinator);
+    }
+
+    private static Set<String> names(List<BlobDetails> blobs) {
+        Set<String> names = new TreeSet<String>();
+        for (BlobDetails blob : blobs) {
+            names.add(blob.getName());
+        }
+        return names;
+    }
+}
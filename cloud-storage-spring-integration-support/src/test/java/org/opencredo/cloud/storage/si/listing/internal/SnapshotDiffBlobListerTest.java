@@ -0,0 +1,82 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.cloud.storage.si.listing.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.BlobListOptions;
+import org.opencredo.cloud.storage.StorageOperations;
+
+/**
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class SnapshotDiffBlobListerTest {
+
+    private static final String CONTAINER_NAME = "container";
+
+    private final Date currentDate = new Date();
+
+    private StorageOperations template;
+
+    private SnapshotDiffBlobLister sut;
+
+    @Before
+    public void setUp() {
+        template = mock(StorageOperations.class);
+        sut = new SnapshotDiffBlobLister();
+    }
+
+    @Test
+    public void testOnlyNewAndChangedBlobsListed() {
+        when(template.iterateContainerObjectDetails(eq(CONTAINER_NAME), any(BlobListOptions.class))).thenReturn(
+                Arrays.asList(blob("a", "1"), blob("b", "1"), blob("c", "1")).iterator(),
+                Arrays.asList(blob("c", "1"), blob("b", "2"), blob("0", "1")).iterator());
+
+        assertEquals(3, sut.list(template, CONTAINER_NAME).size());
+
+        List<BlobDetails> listed = sut.list(template, CONTAINER_NAME);
+        assertEquals(2, listed.size());
+        assertEquals("b", listed.get(0).getName());
+        assertEquals("0", listed.get(1).getName());
+        assertEquals(3, sut.getSnapshotSize());
+    }
+
+    @Test
+    public void testDeletedBlobListedAgainWhenRecreated() {
+        when(template.iterateContainerObjectDetails(eq(CONTAINER_NAME), any(BlobListOptions.class))).thenReturn(
+                Arrays.asList(blob("a", "1")).iterator(), Arrays.<BlobDetails> asList().iterator(),
+                Arrays.asList(blob("a", "1")).iterator());
+
+        assertEquals(1, sut.list(template, CONTAINER_NAME).size());
+        assertEquals(0, sut.list(template, CONTAINER_NAME).size());
+        assertEquals(1, sut.list(template, CONTAINER_NAME).size());
+    }
+
+    private BlobDetails blob(String name, String eTag) {
+        return new BlobDetails(CONTAINER_NAME, name, eTag, currentDate);
+    }
+}
@@ -0,0 +1,94 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencredo.cloud.storage.si.listing.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencredo.cloud.storage.BlobDetails;
+import org.opencredo.cloud.storage.BlobDetailsPage;
+import org.opencredo.cloud.storage.BlobListOptions;
+import org.opencredo.cloud.storage.StorageOperations;
+
+/**
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class WatermarkBlobListerTest {
+
+    private static final String CONTAINER_NAME = "container";
+
+    private final Date currentDate = new Date();
+
+    private StorageOperations template;
+
+    private WatermarkBlobLister sut;
+
+    @Before
+    public void setUp() {
+        template = mock(StorageOperations.class);
+        sut = new WatermarkBlobLister();
+    }
+
+    @Test
+    public void testOnlyBlobsAfterWatermarkListed() {
+        when(template.listContainerObjectDetailsPage(eq(CONTAINER_NAME), any(BlobListOptions.class), (String) isNull()))
+                .thenReturn(page("m1", blob("a"), blob("b")));
+        when(template.listContainerObjectDetailsPage(eq(CONTAINER_NAME), any(BlobListOptions.class), eq("m1")))
+                .thenReturn(page(null, blob("c"), blob("d")));
+
+        assertEquals(4, sut.list(template, CONTAINER_NAME).size());
+        assertEquals("d", sut.getWatermark());
+
+        // Second poll resumes from the last page only
+        when(template.listContainerObjectDetailsPage(eq(CONTAINER_NAME), any(BlobListOptions.class), eq("m1")))
+                .thenReturn(page(null, blob("c"), blob("d"), blob("e")));
+
+        List<BlobDetails> listed = sut.list(template, CONTAINER_NAME);
+        assertEquals(1, listed.size());
+        assertEquals("e", listed.get(0).getName());
+        assertEquals("e", sut.getWatermark());
+    }
+
+    @Test
+    public void testResetListsWholeContainer() {
+        when(template.listContainerObjectDetailsPage(eq(CONTAINER_NAME), any(BlobListOptions.class), (String) isNull()))
+                .thenReturn(page(null, blob("a"), blob("b")));
+
+        assertEquals(2, sut.list(template, CONTAINER_NAME).size());
+        assertEquals(0, sut.list(template, CONTAINER_NAME).size());
+
+        sut.reset();
+        assertEquals(2, sut.list(template, CONTAINER_NAME).size());
+    }
+
+    private BlobDetails blob(String name) {
+        return new BlobDetails(CONTAINER_NAME, name, "", currentDate);
+    }
+
+    private static BlobDetailsPage page(String nextMarker, BlobDetails... blobs) {
+        return new BlobDetailsPage(Arrays.asList(blobs), null, nextMarker);
+    }
+}
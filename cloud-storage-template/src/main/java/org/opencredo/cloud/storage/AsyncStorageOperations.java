@@ -0,0 +1,129 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * Asynchronous variant of {@link StorageOperations} send, receive, list and
+ * delete operations. Every operation returns immediately with {@link Future}
+ * of its result. Optional callback is notified when operation completes.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ * @see ExecutorAsyncStorageOperations
+ */
+public interface AsyncStorageOperations {
+
+    /**
+     * @param containerName
+     * @param callback
+     *            Completion callback, or <code>null</code>.
+     * @return
+     * @see StorageOperations#listContainerObjectDetails(String)
+     */
+    Future<List<BlobDetails>> listContainerObjectDetails(String containerName, StorageCallback<List<BlobDetails>> callback);
+
+    /**
+     * @param containerName
+     * @param options
+     * @param marker
+     * @param callback
+     *            Completion callback, or <code>null</code>.
+     * @return
+     * @see StorageOperations#listContainerObjectDetailsPage(String,
+     *      BlobListOptions, String)
+     */
+    Future<BlobDetailsPage> listContainerObjectDetailsPage(String containerName, BlobListOptions options,
+            String marker, StorageCallback<BlobDetailsPage> callback);
+
+    /**
+     * @param containerName
+     * @param objectName
+     * @param stringToSend
+     * @param callback
+     *            Completion callback, or <code>null</code>.
+     * @return
+     * @see StorageOperations#send(String, String, String)
+     */
+    Future<String> send(String containerName, String objectName, String stringToSend, StorageCallback<String> callback);
+
+    /**
+     * @param containerName
+     * @param objectName
+     * @param fileToSend
+     * @param callback
+     *            Completion callback, or <code>null</code>.
+     * @return
+     * @see StorageOperations#send(String, String, File)
+     */
+    Future<String> send(String containerName, String objectName, File fileToSend, StorageCallback<String> callback);
+
+    /**
+     * @param containerName
+     * @param objectName
+     * @param is
+     * @param callback
+     *            Completion callback, or <code>null</code>.
+     * @return
+     * @see StorageOperations#send(String, String, InputStream)
+     */
+    Future<String> send(String containerName, String objectName, InputStream is, StorageCallback<String> callback);
+
+    /**
+     * @param containerName
+     * @param objectName
+     * @param callback
+     *            Completion callback, or <code>null</code>.
+     * @return
+     * @see StorageOperations#receiveAsString(String, String)
+     */
+    Future<String> receiveAsString(String containerName, String objectName, StorageCallback<String> callback);
+
+    /**
+     * @param containerName
+     * @param objectName
+     * @param toFile
+     * @param callback
+     *            Completion callback, or <code>null</code>.
+     * @return
+     * @see StorageOperations#receiveAndSaveToFile(String, String, File)
+     */
+    Future<String> receiveAndSaveToFile(String containerName, String objectName, File toFile,
+            StorageCallback<String> callback);
+
+    /**
+     * @param containerName
+     * @param objectName
+     * @param callback
+     *            Completion callback, or <code>null</code>.
+     * @return
+     * @see StorageOperations#receiveAsInputStream(String, String)
+     */
+    Future<InputStream> receiveAsInputStream(String containerName, String objectName,
+            StorageCallback<InputStream> callback);
+
+    /**
+     * @param containerName
+     * @param objectName
+     * @param callback
+     *            Completion callback, or <code>null</code>.
+     * @return
+     * @see StorageOperations#deleteObject(String, String)
+     */
+    Future<Void> deleteObject(String containerName, String objectName, StorageCallback<Void> callback);
+}
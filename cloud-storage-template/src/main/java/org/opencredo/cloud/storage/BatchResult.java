@@ -0,0 +1,84 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Results and failures of batch operation, keyed by object name in the order
+ * objects were given to batch operation.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ * @see StorageBatchOperations
+ */
+public class BatchResult<T> {
+
+    private final Map<String, T> results = new LinkedHashMap<String, T>();
+
+    private final Map<String, Throwable> failures = new LinkedHashMap<String, Throwable>();
+
+    /**
+     * @param objectName
+     * @param result
+     */
+    void addResult(String objectName, T result) {
+        results.put(objectName, result);
+    }
+
+    /**
+     * @param objectName
+     * @param failure
+     */
+    void addFailure(String objectName, Throwable failure) {
+        failures.put(objectName, failure);
+    }
+
+    /**
+     * @return Results of succeeded operations by object name.
+     */
+    public Map<String, T> getResults() {
+        return Collections.unmodifiableMap(results);
+    }
+
+    /**
+     * @return Failures of failed operations by object name.
+     */
+    public Map<String, Throwable> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * @return <code>true</code> if operations on all objects succeeded.
+     */
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+    /**
+     * @return
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)//
+                .append("succeeded", this.results.size())//
+                .append("failed", this.failures.keySet())//
+                .toString();
+    }
+}
@@ -0,0 +1,382 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Size bounded two tier cache of cloud storage objects used by
+ * {@link CachingStorageOperations}. Small objects are kept in memory, large
+ * objects in files of cache directory. Least recently used objects are
+ * evicted from a tier when its size limit is exceeded.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+class BlobCache {
+    private static final Logger LOG = LoggerFactory.getLogger(BlobCache.class);
+
+    private final BlobCacheSettings settings;
+
+    private final Map<String, CachedBlob> memoryBlobs = new LinkedHashMap<String, CachedBlob>(16, 0.75f, true);
+
+    private final Map<String, CachedBlob> diskBlobs = new LinkedHashMap<String, CachedBlob>(16, 0.75f, true);
+
+    private long memorySize;
+
+    private long diskSize;
+
+    /**
+     * Objects being received, by key. Kept only while object is received, so
+     * removal of one object does not affect receiving of other objects.
+     */
+    private final Map<String, Receiving> receiving = new HashMap<String, Receiving>();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * @param settings
+     */
+    BlobCache(BlobCacheSettings settings) {
+        super();
+        this.settings = settings;
+    }
+
+    /**
+     * @param key
+     * @return Cached object, or <code>null</code> if object is not cached.
+     */
+    synchronized CachedBlob get(String key) {
+        CachedBlob blob = memoryBlobs.get(key);
+        return blob != null ? blob : diskBlobs.get(key);
+    }
+
+    /**
+     * Registers receiving of object, which must be ended with
+     * {@link #endReceive(String)}.
+     * 
+     * @param key
+     * @return Generation of object, changed by every removal of object while
+     *         it is being received.
+     */
+    synchronized long beginReceive(String key) {
+        Receiving r = receiving.get(key);
+        if (r == null) {
+            r = new Receiving();
+            receiving.put(key, r);
+        }
+        r.count++;
+        return r.generation;
+    }
+
+    /**
+     * @param key
+     */
+    synchronized void endReceive(String key) {
+        Receiving r = receiving.get(key);
+        if (r != null && --r.count == 0) {
+            receiving.remove(key);
+        }
+    }
+
+    /**
+     * @param contentLength
+     * @return <code>true</code> if object of given length fits into one of
+     *         cache tiers.
+     */
+    boolean isCacheable(long contentLength) {
+        if (contentLength == BlobDetails.UNKNOWN_CONTENT_LENGTH) {
+            return false;
+        }
+        return isMemoryCacheable(contentLength)
+                || (settings.getCacheDirectory() != null && contentLength <= settings.getMaxDiskSize());
+    }
+
+    private boolean isMemoryCacheable(long contentLength) {
+        return contentLength <= settings.getMaxMemoryObjectSize() && contentLength <= settings.getMaxMemorySize();
+    }
+
+    /**
+     * Reads object content to cache and closes content data stream. Object
+     * length must be accepted by {@link #isCacheable(long)}. Object is not
+     * cached if it has been removed since given generation, because content
+     * received before removal may be already stale; such object is released
+     * when its stream is closed.
+     * 
+     * @param key
+     * @param content
+     * @param validatedAt
+     * @param generation
+     *            Generation returned by {@link #beginReceive(String)} before
+     *            object was requested.
+     * @return Cached object.
+     * @throws IOException
+     */
+    CachedBlob put(String key, BlobContent content, long validatedAt, long generation) throws IOException {
+        CachedBlob blob;
+        try {
+            if (isMemoryCacheable(content.getDetails().getContentLength())) {
+                blob = new MemoryBlob(content.getDetails(), IOUtils.toByteArray(content.getData()), validatedAt);
+            } else {
+                File dir = settings.getCacheDirectory();
+                StorageUtils.createParentDirs(new File(dir, "blob"));
+                File file = File.createTempFile("blob-", ".cache", dir);
+                try {
+                    StorageUtils.writeStreamToFile(content.getData(), file);
+                } catch (IOException e) {
+                    file.delete();
+                    throw e;
+                }
+                blob = new FileBlob(content.getDetails(), file, validatedAt);
+            }
+        } finally {
+            IOUtils.closeQuietly(content.getData());
+        }
+
+        synchronized (this) {
+            Receiving r = receiving.get(key);
+            if (r == null || r.generation != generation) {
+                LOG.debug("Object '{}' has been received before cache invalidation, it is not cached", key);
+                blob.detach();
+                return blob;
+            }
+            removeEntry(key);
+            if (blob instanceof MemoryBlob) {
+                memoryBlobs.put(key, blob);
+                memorySize += blob.getSize();
+                memorySize -= evict(memoryBlobs, memorySize, settings.getMaxMemorySize());
+            } else {
+                diskBlobs.put(key, blob);
+                diskSize += blob.getSize();
+                diskSize -= evict(diskBlobs, diskSize, settings.getMaxDiskSize());
+            }
+        }
+        return blob;
+    }
+
+    /**
+     * @param key
+     */
+    synchronized void remove(String key) {
+        Receiving r = receiving.get(key);
+        if (r != null) {
+            r.generation++;
+        }
+        removeEntry(key);
+    }
+
+    private void removeEntry(String key) {
+        CachedBlob blob = memoryBlobs.remove(key);
+        if (blob != null) {
+            memorySize -= blob.getSize();
+        }
+        blob = diskBlobs.remove(key);
+        if (blob != null) {
+            diskSize -= blob.getSize();
+            blob.release();
+        }
+    }
+
+    /**
+     * Removes all objects with keys starting with given prefix.
+     * 
+     * @param keyPrefix
+     */
+    synchronized void removeAll(String keyPrefix) {
+        for (Map.Entry<String, Receiving> entry : receiving.entrySet()) {
+            if (entry.getKey().startsWith(keyPrefix)) {
+                entry.getValue().generation++;
+            }
+        }
+        memorySize -= removeAll(memoryBlobs, keyPrefix);
+        diskSize -= removeAll(diskBlobs, keyPrefix);
+    }
+
+    private long removeAll(Map<String, CachedBlob> blobs, String keyPrefix) {
+        long removedSize = 0;
+        for (Iterator<Map.Entry<String, CachedBlob>> it = blobs.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, CachedBlob> entry = it.next();
+            if (entry.getKey().startsWith(keyPrefix)) {
+                it.remove();
+                removedSize += entry.getValue().getSize();
+                entry.getValue().release();
+            }
+        }
+        return removedSize;
+    }
+
+    private long evict(Map<String, CachedBlob> blobs, long size, long maxSize) {
+        long evictedSize = 0;
+        for (Iterator<CachedBlob> it = blobs.values().iterator(); it.hasNext() && size - evictedSize > maxSize;) {
+            CachedBlob blob = it.next();
+            it.remove();
+            evictedSize += blob.getSize();
+            blob.release();
+            evictionCount.incrementAndGet();
+        }
+        return evictedSize;
+    }
+
+    /**
+     * @return Amount of objects evicted because cache tier size limit has been
+     *         exceeded.
+     */
+    long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * @return Size in bytes of objects cached in memory.
+     */
+    synchronized long getMemorySize() {
+        return memorySize;
+    }
+
+    /**
+     * @return Size in bytes of objects cached in cache directory.
+     */
+    synchronized long getDiskSize() {
+        return diskSize;
+    }
+
+    /**
+     * Receiving of single object, possibly by several threads.
+     */
+    private static class Receiving {
+        private int count;
+
+        private long generation;
+    }
+
+    /**
+     * Cached object content with details it was received with.
+     */
+    abstract static class CachedBlob {
+
+        private final BlobDetails details;
+
+        private volatile long validatedAt;
+
+        CachedBlob(BlobDetails details, long validatedAt) {
+            this.details = details;
+            this.validatedAt = validatedAt;
+        }
+
+        BlobDetails getDetails() {
+            return details;
+        }
+
+        /**
+         * @return Time in milliseconds when cached object was received or
+         *         last confirmed to be not modified.
+         */
+        long getValidatedAt() {
+            return validatedAt;
+        }
+
+        void setValidatedAt(long validatedAt) {
+            this.validatedAt = validatedAt;
+        }
+
+        abstract long getSize();
+
+        abstract InputStream openStream() throws IOException;
+
+        void release() {
+        }
+
+        /**
+         * Object is not kept in cache, release it as soon as it is read.
+         */
+        void detach() {
+        }
+    }
+
+    private static class MemoryBlob extends CachedBlob {
+
+        private final byte[] data;
+
+        MemoryBlob(BlobDetails details, byte[] data, long validatedAt) {
+            super(details, validatedAt);
+            this.data = data;
+        }
+
+        long getSize() {
+            return data.length;
+        }
+
+        InputStream openStream() {
+            return new ByteArrayInputStream(data);
+        }
+    }
+
+    private static class FileBlob extends CachedBlob {
+
+        private final File file;
+
+        private final long size;
+
+        private volatile boolean detached;
+
+        FileBlob(BlobDetails details, File file, long validatedAt) {
+            super(details, validatedAt);
+            this.file = file;
+            this.size = file.length();
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        InputStream openStream() throws IOException {
+            if (!detached) {
+                return new FileInputStream(file);
+            }
+            return new FileInputStream(file) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        release();
+                    }
+                }
+            };
+        }
+
+        void detach() {
+            detached = true;
+        }
+
+        void release() {
+            if (!file.delete() && file.exists()) {
+                LOG.debug("Failed to delete cached object file '{}'", file);
+                file.deleteOnExit();
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.io.File;
+
+import org.apache.commons.lang.Validate;
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Settings of {@link CachingStorageOperations} cache. Objects not larger than
+ * max memory object size are kept in memory, larger objects are kept in cache
+ * directory. Disk tier is disabled if cache directory is not set.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class BlobCacheSettings {
+
+    public static final long DEFAULT_MAX_MEMORY_SIZE = 32 * 1024 * 1024;
+
+    public static final long DEFAULT_MAX_MEMORY_OBJECT_SIZE = 1024 * 1024;
+
+    public static final long DEFAULT_MAX_DISK_SIZE = 1024 * 1024 * 1024;
+
+    public static final long DEFAULT_TIME_TO_LIVE = 0;
+
+    private long maxMemorySize = DEFAULT_MAX_MEMORY_SIZE;
+
+    private long maxMemoryObjectSize = DEFAULT_MAX_MEMORY_OBJECT_SIZE;
+
+    private File cacheDirectory;
+
+    private long maxDiskSize = DEFAULT_MAX_DISK_SIZE;
+
+    private long timeToLive = DEFAULT_TIME_TO_LIVE;
+
+    /**
+     * @return the maxMemorySize
+     */
+    public long getMaxMemorySize() {
+        return maxMemorySize;
+    }
+
+    /**
+     * @param maxMemorySize
+     *            Maximum size in bytes of objects cached in memory.
+     */
+    public void setMaxMemorySize(long maxMemorySize) {
+        Validate.isTrue(maxMemorySize >= 0, "Max memory size must not be negative");
+        this.maxMemorySize = maxMemorySize;
+    }
+
+    /**
+     * @return the maxMemoryObjectSize
+     */
+    public long getMaxMemoryObjectSize() {
+        return maxMemoryObjectSize;
+    }
+
+    /**
+     * @param maxMemoryObjectSize
+     *            Objects larger than this size in bytes are cached in cache
+     *            directory.
+     */
+    public void setMaxMemoryObjectSize(long maxMemoryObjectSize) {
+        Validate.isTrue(maxMemoryObjectSize >= 0, "Max memory object size must not be negative");
+        this.maxMemoryObjectSize = maxMemoryObjectSize;
+    }
+
+    /**
+     * @return the cacheDirectory
+     */
+    public File getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * @param cacheDirectory
+     *            Directory of cached object files, or <code>null</code> to
+     *            disable disk tier.
+     */
+    public void setCacheDirectory(File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * @return the maxDiskSize
+     */
+    public long getMaxDiskSize() {
+        return maxDiskSize;
+    }
+
+    /**
+     * @param maxDiskSize
+     *            Maximum size in bytes of objects cached in cache directory.
+     */
+    public void setMaxDiskSize(long maxDiskSize) {
+        Validate.isTrue(maxDiskSize >= 0, "Max disk size must not be negative");
+        this.maxDiskSize = maxDiskSize;
+    }
+
+    /**
+     * @return the timeToLive
+     */
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * @param timeToLive
+     *            Time in milliseconds cached object is served without
+     *            revalidation. Object older than this is revalidated with
+     *            conditional request, so 0 means every access is revalidated.
+     */
+    public void setTimeToLive(long timeToLive) {
+        Validate.isTrue(timeToLive >= 0, "Time to live must not be negative");
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * @return
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)//
+                .append("maxMemorySize", this.maxMemorySize)//
+                .append("maxMemoryObjectSize", this.maxMemoryObjectSize)//
+                .append("cacheDirectory", this.cacheDirectory)//
+                .append("maxDiskSize", this.maxDiskSize)//
+                .append("timeToLive", this.timeToLive)//
+                .toString();
+    }
+}
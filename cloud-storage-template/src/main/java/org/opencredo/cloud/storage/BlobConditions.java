@@ -0,0 +1,197 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.util.Date;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * HTTP conditions ('If-Match', 'If-None-Match', 'If-Modified-Since',
+ * 'If-Unmodified-Since') of conditional receive, send and delete operations.
+ * Conditions not set are not checked.
+ * <p>
+ * Receive returns no content if 'If-None-Match' or 'If-Modified-Since'
+ * condition is not met (object is not modified). Other unmet conditions, and
+ * any unmet condition of send or delete, fail the operation with
+ * {@link StorageObjectModifiedException}.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ * @see StorageOperations#receive(String, String, BlobConditions)
+ * @see StorageOperations#send(String, String, java.io.File, BlobConditions)
+ * @see StorageOperations#deleteObject(String, String, BlobConditions)
+ */
+public class BlobConditions {
+
+    /**
+     * ETag matching any existing object version. 'If-None-Match' condition
+     * with this ETag is met only if object does not exist.
+     */
+    public static final String ANY_ETAG = "*";
+
+    private String ifMatch;
+
+    private String ifNoneMatch;
+
+    private Date ifModifiedSince;
+
+    private Date ifUnmodifiedSince;
+
+    /**
+     * @return the ifMatch
+     */
+    public String getIfMatch() {
+        return ifMatch;
+    }
+
+    /**
+     * @param ifMatch
+     *            Met if object exists and its ETag equals given ETag, or
+     *            {@link #ANY_ETAG} for any existing object.
+     */
+    public void setIfMatch(String ifMatch) {
+        this.ifMatch = ifMatch;
+    }
+
+    /**
+     * @return the ifNoneMatch
+     */
+    public String getIfNoneMatch() {
+        return ifNoneMatch;
+    }
+
+    /**
+     * @param ifNoneMatch
+     *            Met if object does not exist or its ETag differs from given
+     *            ETag, {@link #ANY_ETAG} is met only if object does not exist.
+     */
+    public void setIfNoneMatch(String ifNoneMatch) {
+        this.ifNoneMatch = ifNoneMatch;
+    }
+
+    /**
+     * @return the ifModifiedSince
+     */
+    public Date getIfModifiedSince() {
+        return ifModifiedSince;
+    }
+
+    /**
+     * @param ifModifiedSince
+     *            Met if object does not exist or it has been modified after
+     *            given date (compared with one second precision).
+     */
+    public void setIfModifiedSince(Date ifModifiedSince) {
+        this.ifModifiedSince = ifModifiedSince;
+    }
+
+    /**
+     * @return the ifUnmodifiedSince
+     */
+    public Date getIfUnmodifiedSince() {
+        return ifUnmodifiedSince;
+    }
+
+    /**
+     * @param ifUnmodifiedSince
+     *            Met if object does not exist or it has not been modified
+     *            after given date (compared with one second precision).
+     */
+    public void setIfUnmodifiedSince(Date ifUnmodifiedSince) {
+        this.ifUnmodifiedSince = ifUnmodifiedSince;
+    }
+
+    /**
+     * @return <code>true</code> if no condition is set.
+     */
+    public boolean isEmpty() {
+        return ifMatch == null && ifNoneMatch == null && ifModifiedSince == null && ifUnmodifiedSince == null;
+    }
+
+    /**
+     * Check 'If-Match' and 'If-Unmodified-Since' conditions against current
+     * object details. Used by templates which evaluate conditions themselves.
+     * 
+     * @param current
+     *            Details of current object version, or <code>null</code> if
+     *            object does not exist.
+     * @return <code>true</code> if 'If-Match' or 'If-Unmodified-Since'
+     *         condition is not met.
+     */
+    public boolean isPreconditionFailed(BlobDetails current) {
+        if (ifMatch != null) {
+            if (current == null || !(ANY_ETAG.equals(ifMatch) || eTagEquals(ifMatch, current.getETag()))) {
+                return true;
+            }
+        }
+        return ifUnmodifiedSince != null && current != null && current.getLastModified() != null
+                && seconds(current.getLastModified()) > seconds(ifUnmodifiedSince);
+    }
+
+    /**
+     * Check 'If-None-Match' and 'If-Modified-Since' conditions against
+     * current object details. Used by templates which evaluate conditions
+     * themselves.
+     * 
+     * @param current
+     *            Details of current object version, or <code>null</code> if
+     *            object does not exist.
+     * @return <code>true</code> if 'If-None-Match' or 'If-Modified-Since'
+     *         condition is not met.
+     */
+    public boolean isNotModified(BlobDetails current) {
+        if (current == null) {
+            return false;
+        }
+        if (ifNoneMatch != null && (ANY_ETAG.equals(ifNoneMatch) || eTagEquals(ifNoneMatch, current.getETag()))) {
+            return true;
+        }
+        return ifModifiedSince != null && current.getLastModified() != null
+                && seconds(current.getLastModified()) <= seconds(ifModifiedSince);
+    }
+
+    /**
+     * ETags are compared without surrounding quotes, as some providers
+     * return them quoted and others do not.
+     */
+    private static boolean eTagEquals(String eTag1, String eTag2) {
+        return eTag2 != null && unquote(eTag1).equals(unquote(eTag2));
+    }
+
+    private static String unquote(String eTag) {
+        if (eTag.length() > 1 && eTag.startsWith("\"") && eTag.endsWith("\"")) {
+            return eTag.substring(1, eTag.length() - 1);
+        }
+        return eTag;
+    }
+
+    private static long seconds(Date date) {
+        return date.getTime() / 1000;
+    }
+
+    /**
+     * @return
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)//
+                .append("ifMatch", this.ifMatch)//
+                .append("ifNoneMatch", this.ifNoneMatch)//
+                .append("ifModifiedSince", this.ifModifiedSince)//
+                .append("ifUnmodifiedSince", this.ifUnmodifiedSince)//
+                .toString();
+    }
+}
@@ -0,0 +1,67 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.io.InputStream;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Content of cloud storage object received together with object details.
+ * Caller is responsible for closing content data stream.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class BlobContent {
+
+    private final BlobDetails details;
+
+    private final InputStream data;
+
+    /**
+     * @param details
+     * @param data
+     */
+    public BlobContent(BlobDetails details, InputStream data) {
+        super();
+        this.details = details;
+        this.data = data;
+    }
+
+    /**
+     * @return the details
+     */
+    public BlobDetails getDetails() {
+        return details;
+    }
+
+    /**
+     * @return the data
+     */
+    public InputStream getData() {
+        return data;
+    }
+
+    /**
+     * @return
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)//
+                .append("details", this.details)//
+                .toString();
+    }
+}
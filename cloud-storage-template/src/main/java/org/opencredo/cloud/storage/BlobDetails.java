@@ -27,6 +27,11 @@ import org.apache.commons.lang.builder.ToStringBuilder;
  */
 public class BlobDetails {
 
+    /**
+     * Content length of blob details received without object size.
+     */
+    public static final long UNKNOWN_CONTENT_LENGTH = -1;
+
     private final String containerName;
 
     private final String name;
@@ -35,6 +40,8 @@ public class BlobDetails {
 
     private final Date lastModified;
 
+    private final long contentLength;
+
     /**
      * @param containerName
      * @param name
@@ -42,11 +49,23 @@ public class BlobDetails {
      * @param lastModified
      */
     public BlobDetails(String containerName, String name, String eTag, Date lastModified) {
+        this(containerName, name, eTag, lastModified, UNKNOWN_CONTENT_LENGTH);
+    }
+
+    /**
+     * @param containerName
+     * @param name
+     * @param eTag
+     * @param lastModified
+     * @param contentLength
+     */
+    public BlobDetails(String containerName, String name, String eTag, Date lastModified, long contentLength) {
         super();
         this.containerName = containerName;
         this.name = name;
         this.eTag = eTag;
         this.lastModified = lastModified;
+        this.contentLength = contentLength;
     }
 
     /**
@@ -77,6 +96,14 @@ public class BlobDetails {
         return lastModified;
     }
 
+    /**
+     * @return the contentLength, or {@link #UNKNOWN_CONTENT_LENGTH} if
+     *         unknown.
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
    /**
     * 
     * @return
@@ -89,6 +116,7 @@ public class BlobDetails {
                 .append("name", this.name)//
                 .append("eTag", this.eTag)//
                 .append("lastModified", this.lastModified)//
+                .append("contentLength", this.contentLength)//
                 .toString();
     }
 }
@@ -0,0 +1,90 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Single page of container object details listing.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class BlobDetailsPage {
+
+    private final List<BlobDetails> blobDetails;
+
+    private final List<String> commonPrefixes;
+
+    private final String nextMarker;
+
+    /**
+     * @param blobDetails
+     * @param commonPrefixes
+     * @param nextMarker
+     *            Marker to request next page with, or <code>null</code> if
+     *            this is the last page.
+     */
+    public BlobDetailsPage(List<BlobDetails> blobDetails, List<String> commonPrefixes, String nextMarker) {
+        super();
+        this.blobDetails = blobDetails == null ? Collections.<BlobDetails> emptyList() : blobDetails;
+        this.commonPrefixes = commonPrefixes == null ? Collections.<String> emptyList() : commonPrefixes;
+        this.nextMarker = nextMarker == null || nextMarker.length() == 0 ? null : nextMarker;
+    }
+
+    /**
+     * @return the blobDetails
+     */
+    public List<BlobDetails> getBlobDetails() {
+        return blobDetails;
+    }
+
+    /**
+     * @return Prefixes rolled up by delimiter, empty if no delimiter was
+     *         requested.
+     */
+    public List<String> getCommonPrefixes() {
+        return commonPrefixes;
+    }
+
+    /**
+     * @return the nextMarker
+     */
+    public String getNextMarker() {
+        return nextMarker;
+    }
+
+    /**
+     * @return <code>true</code> if more pages are available.
+     */
+    public boolean hasNextPage() {
+        return nextMarker != null;
+    }
+
+    /**
+     * @return
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)//
+                .append("blobDetails", this.blobDetails.size())//
+                .append("commonPrefixes", this.commonPrefixes.size())//
+                .append("nextMarker", this.nextMarker)//
+                .toString();
+    }
+}
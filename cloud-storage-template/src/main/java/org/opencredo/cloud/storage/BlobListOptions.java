@@ -0,0 +1,125 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import org.apache.commons.lang.Validate;
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Options for paged container object details listing.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ * @see StorageOperations#listContainerObjectDetailsPage(String, BlobListOptions, String)
+ * @see StorageOperations#iterateContainerObjectDetails(String, BlobListOptions)
+ */
+public class BlobListOptions {
+
+    /**
+     * Largest page size supported by all cloud storage providers.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    /**
+     * Unlimited amount of listed blobs.
+     */
+    public static final int UNLIMITED = 0;
+
+    private String prefix;
+
+    private String delimiter;
+
+    private int pageSize = DEFAULT_PAGE_SIZE;
+
+    private int maxResults = UNLIMITED;
+
+    /**
+     * @return the prefix
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * @param prefix
+     *            List only blobs which names start with prefix.
+     */
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+
+    /**
+     * @return the delimiter
+     */
+    public String getDelimiter() {
+        return delimiter;
+    }
+
+    /**
+     * @param delimiter
+     *            Blobs which names contain delimiter after prefix are rolled
+     *            up into common prefixes instead of being listed.
+     */
+    public void setDelimiter(String delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * @return the pageSize
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @param pageSize
+     *            Amount of blobs requested from cloud storage in single call.
+     *            Providers may return fewer.
+     */
+    public void setPageSize(int pageSize) {
+        Validate.isTrue(pageSize > 0, "Page size must be positive");
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @return the maxResults
+     */
+    public int getMaxResults() {
+        return maxResults;
+    }
+
+    /**
+     * @param maxResults
+     *            Maximum amount of blobs to list across all pages, or
+     *            {@link #UNLIMITED}.
+     */
+    public void setMaxResults(int maxResults) {
+        Validate.isTrue(maxResults >= 0, "Max results must not be negative");
+        this.maxResults = maxResults;
+    }
+
+    /**
+     * @return
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)//
+                .append("prefix", this.prefix)//
+                .append("delimiter", this.delimiter)//
+                .append("pageSize", this.pageSize)//
+                .append("maxResults", this.maxResults)//
+                .toString();
+    }
+}
@@ -0,0 +1,436 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.ProxyOutputStream;
+import org.apache.commons.lang.Validate;
+import org.opencredo.cloud.storage.BlobCache.CachedBlob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link StorageOperations} decorator caching objects received with
+ * {@link #receiveAsString(String, String)} and
+ * {@link #receiveAsInputStream(String, String)}. Cached object is served
+ * without request to cloud storage during time to live, later it is
+ * revalidated with conditional request (
+ * {@link StorageOperations#receiveIfNoneMatch(String, String, String)}), so
+ * object content is transferred again only if object ETag has changed.
+ * <p>
+ * Objects sent or deleted through this decorator are removed from cache.
+ * Changes made by other clients are noticed only when cached object is
+ * revalidated.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ * @see BlobCacheSettings
+ */
+public class CachingStorageOperations implements StorageOperations {
+    private static final Logger LOG = LoggerFactory.getLogger(CachingStorageOperations.class);
+
+    private final StorageOperations operations;
+
+    private final BlobCacheSettings settings;
+
+    private final BlobCache cache;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong revalidationCount = new AtomicLong();
+
+    /**
+     * Creates decorator with {@link BlobCacheSettings} default settings
+     * (memory tier only).
+     * 
+     * @param operations
+     */
+    public CachingStorageOperations(StorageOperations operations) {
+        this(operations, new BlobCacheSettings());
+    }
+
+    /**
+     * @param operations
+     * @param settings
+     */
+    public CachingStorageOperations(StorageOperations operations, BlobCacheSettings settings) {
+        super();
+        Validate.notNull(operations, "Storage operations must be set");
+        Validate.notNull(settings, "Cache settings must be set");
+        this.operations = operations;
+        this.settings = settings;
+        this.cache = new BlobCache(settings);
+    }
+
+    public String getDefaultContainerName() {
+        return operations.getDefaultContainerName();
+    }
+
+    public List<String> listContainerNames() {
+        return operations.listContainerNames();
+    }
+
+    public List<BlobDetails> listContainerObjectDetails() {
+        return operations.listContainerObjectDetails();
+    }
+
+    public List<BlobDetails> listContainerObjectDetails(String containerName) {
+        return operations.listContainerObjectDetails(containerName);
+    }
+
+    public BlobDetailsPage listContainerObjectDetailsPage(String containerName, BlobListOptions options, String marker) {
+        return operations.listContainerObjectDetailsPage(containerName, options, marker);
+    }
+
+    public Iterator<BlobDetails> iterateContainerObjectDetails(String containerName, BlobListOptions options) {
+        return operations.iterateContainerObjectDetails(containerName, options);
+    }
+
+    public ContainerStatus checkContainerStatus(String containerName) {
+        return operations.checkContainerStatus(containerName);
+    }
+
+    public boolean createContainer(String containerName) {
+        return operations.createContainer(containerName);
+    }
+
+    public void deleteContainer(String containerName) {
+        try {
+            operations.deleteContainer(containerName);
+        } finally {
+            cache.removeAll(containerName + '/');
+        }
+    }
+
+    public String send(String objectName, String stringToSend) {
+        return send(getDefaultContainerName(), objectName, stringToSend);
+    }
+
+    public String send(String containerName, String objectName, String stringToSend) {
+        try {
+            return operations.send(containerName, objectName, stringToSend);
+        } finally {
+            cache.remove(createKey(containerName, objectName));
+        }
+    }
+
+    public String send(File fileToSend) {
+        return send(getDefaultContainerName(), fileToSend);
+    }
+
+    public String send(String containerName, File fileToSend) {
+        return send(containerName, fileToSend.getName(), fileToSend);
+    }
+
+    public String send(String containerName, String objectName, File fileToSend) {
+        try {
+            return operations.send(containerName, objectName, fileToSend);
+        } finally {
+            cache.remove(createKey(containerName, objectName));
+        }
+    }
+
+    public String sendInParts(String containerName, String objectName, File fileToSend,
+            MultipartUploadSettings settings) {
+        try {
+            return operations.sendInParts(containerName, objectName, fileToSend, settings);
+        } finally {
+            cache.remove(createKey(containerName, objectName));
+        }
+    }
+
+    public String send(String containerName, String objectName, String stringToSend, BlobConditions conditions) {
+        try {
+            return operations.send(containerName, objectName, stringToSend, conditions);
+        } finally {
+            cache.remove(createKey(containerName, objectName));
+        }
+    }
+
+    public String send(String containerName, String objectName, File fileToSend, BlobConditions conditions) {
+        try {
+            return operations.send(containerName, objectName, fileToSend, conditions);
+        } finally {
+            cache.remove(createKey(containerName, objectName));
+        }
+    }
+
+    public String send(String objectName, InputStream is) {
+        return send(getDefaultContainerName(), objectName, is);
+    }
+
+    public String send(String containerName, String objectName, InputStream is) {
+        try {
+            return operations.send(containerName, objectName, is);
+        } finally {
+            cache.remove(createKey(containerName, objectName));
+        }
+    }
+
+    public OutputStream openForWrite(String containerName, String objectName) {
+        final String key = createKey(containerName, objectName);
+        return new ProxyOutputStream(operations.openForWrite(containerName, objectName)) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    cache.remove(key);
+                }
+            }
+        };
+    }
+
+    public String receiveAsString(String objectName) {
+        return receiveAsString(getDefaultContainerName(), objectName);
+    }
+
+    public String receiveAsString(String containerName, String objectName) throws StorageResponseHandlingException {
+        InputStream is = receive(containerName, objectName);
+        try {
+            return IOUtils.toString(is);
+        } catch (IOException e) {
+            throw new StorageResponseHandlingException(e,
+                    "Failed to read cached object as string [container: '%s', object: '%s']", containerName,
+                    objectName);
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    public String receiveAndSaveToFile(String objectName, File toFile) {
+        return receiveAndSaveToFile(getDefaultContainerName(), objectName, toFile);
+    }
+
+    public String receiveAndSaveToFile(String containerName, String objectName, File toFile) {
+        return operations.receiveAndSaveToFile(containerName, objectName, toFile);
+    }
+
+    public String receiveInParts(String containerName, String objectName, File toFile,
+            MultipartDownloadSettings settings) {
+        return operations.receiveInParts(containerName, objectName, toFile, settings);
+    }
+
+    public InputStream receiveAsInputStream(String objectName) {
+        return receiveAsInputStream(getDefaultContainerName(), objectName);
+    }
+
+    public InputStream receiveAsInputStream(String containerName, String objectName) {
+        return receive(containerName, objectName);
+    }
+
+    public BlobContent receiveIfNoneMatch(String containerName, String objectName, String eTag) {
+        return operations.receiveIfNoneMatch(containerName, objectName, eTag);
+    }
+
+    public BlobContent receive(String containerName, String objectName, BlobConditions conditions) {
+        return operations.receive(containerName, objectName, conditions);
+    }
+
+    public BlobDetails getBlobDetails(String containerName, String objectName) {
+        return operations.getBlobDetails(containerName, objectName);
+    }
+
+    public void deleteObject(String objectName) {
+        deleteObject(getDefaultContainerName(), objectName);
+    }
+
+    public void deleteObject(String containerName, String objectName) {
+        try {
+            operations.deleteObject(containerName, objectName);
+        } finally {
+            cache.remove(createKey(containerName, objectName));
+        }
+    }
+
+    public void deleteObject(String containerName, String objectName, BlobConditions conditions) {
+        try {
+            operations.deleteObject(containerName, objectName, conditions);
+        } finally {
+            cache.remove(createKey(containerName, objectName));
+        }
+    }
+
+    public String copy(String srcContainerName, String srcObjectName, String dstContainerName, String dstObjectName) {
+        try {
+            return operations.copy(srcContainerName, srcObjectName, dstContainerName, dstObjectName);
+        } finally {
+            cache.remove(createKey(dstContainerName, dstObjectName));
+        }
+    }
+
+    public String move(String srcContainerName, String srcObjectName, String dstContainerName, String dstObjectName) {
+        try {
+            return operations.move(srcContainerName, srcObjectName, dstContainerName, dstObjectName);
+        } finally {
+            cache.remove(createKey(srcContainerName, srcObjectName));
+            cache.remove(createKey(dstContainerName, dstObjectName));
+        }
+    }
+
+    public BatchResult<String> sendAll(String containerName, Map<String, File> filesToSend, int maxConcurrency) {
+        return new StorageBatchOperations(this, maxConcurrency).sendAll(containerName, filesToSend);
+    }
+
+    public BatchResult<String> receiveAll(String containerName, Map<String, File> objectsToReceive,
+            int maxConcurrency) {
+        return operations.receiveAll(containerName, objectsToReceive, maxConcurrency);
+    }
+
+    public BatchResult<Void> deleteAll(String containerName, Collection<String> objectNames, int maxConcurrency) {
+        return new StorageBatchOperations(this, maxConcurrency).deleteAll(containerName, objectNames);
+    }
+
+    public BatchResult<String> copyAll(String srcContainerName, String srcPrefix, String dstContainerName,
+            String dstPrefix, int maxConcurrency) {
+        return new StorageBatchOperations(this, maxConcurrency).copyAll(srcContainerName, srcPrefix,
+                dstContainerName, dstPrefix);
+    }
+
+    public String createdSignedUrl(String containerName, String objectName, Date expiryDate) {
+        return operations.createdSignedUrl(containerName, objectName, expiryDate);
+    }
+
+    /**
+     * @return Amount of receive operations served from cache, including
+     *         operations revalidating cached object.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return Amount of receive operations which transferred object content
+     *         from cloud storage.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return Amount of conditional requests sent to revalidate cached
+     *         objects.
+     */
+    public long getRevalidationCount() {
+        return revalidationCount.get();
+    }
+
+    /**
+     * @return Amount of objects evicted from cache because cache size limit
+     *         has been exceeded.
+     */
+    public long getEvictionCount() {
+        return cache.getEvictionCount();
+    }
+
+    /**
+     * @return Size in bytes of objects cached in memory.
+     */
+    public long getMemorySize() {
+        return cache.getMemorySize();
+    }
+
+    /**
+     * @return Size in bytes of objects cached in cache directory.
+     */
+    public long getDiskSize() {
+        return cache.getDiskSize();
+    }
+
+    /**
+     * Remove all objects from cache.
+     */
+    public void clear() {
+        cache.removeAll("");
+    }
+
+    private InputStream receive(String containerName, String objectName) {
+        String key = createKey(containerName, objectName);
+        // Content received before concurrent send or delete must not be cached
+        long generation = cache.beginReceive(key);
+        try {
+            return receive(containerName, objectName, key, generation);
+        } finally {
+            cache.endReceive(key);
+        }
+    }
+
+    private InputStream receive(String containerName, String objectName, String key, long generation) {
+        long now = System.currentTimeMillis();
+        CachedBlob cached = cache.get(key);
+        if (cached != null && now - cached.getValidatedAt() < settings.getTimeToLive()) {
+            InputStream is = openCached(key, cached);
+            if (is != null) {
+                hitCount.incrementAndGet();
+                return is;
+            }
+            cached = null;
+        }
+
+        String eTag = cached == null ? null : cached.getDetails().getETag();
+        if (eTag != null) {
+            revalidationCount.incrementAndGet();
+        }
+        BlobContent content = operations.receiveIfNoneMatch(containerName, objectName, eTag);
+        if (content == null) {
+            cached.setValidatedAt(now);
+            InputStream is = openCached(key, cached);
+            if (is != null) {
+                hitCount.incrementAndGet();
+                return is;
+            }
+            content = operations.receiveIfNoneMatch(containerName, objectName, null);
+        }
+
+        missCount.incrementAndGet();
+        if (!cache.isCacheable(content.getDetails().getContentLength())) {
+            cache.remove(key);
+            return content.getData();
+        }
+        try {
+            InputStream is = openCached(key, cache.put(key, content, now, generation));
+            return is != null ? is : operations.receiveAsInputStream(containerName, objectName);
+        } catch (IOException e) {
+            throw new StorageResponseHandlingException(e, "Failed to cache object [container: '%s', object: '%s']",
+                    containerName, objectName);
+        }
+    }
+
+    private InputStream openCached(String key, CachedBlob cached) {
+        try {
+            return cached.openStream();
+        } catch (IOException e) {
+            LOG.debug("Cached object '{}' is not available anymore", key);
+            cache.remove(key);
+            return null;
+        }
+    }
+
+    private String createKey(String containerName, String objectName) {
+        return containerName + '/' + objectName;
+    }
+}
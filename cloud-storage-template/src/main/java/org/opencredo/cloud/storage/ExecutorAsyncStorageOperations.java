@@ -0,0 +1,224 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link AsyncStorageOperations} adapter executing blocking
+ * {@link StorageOperations} by bounded executor. Amount of requests executed
+ * at the same time is limited by executor threads, other requests wait in
+ * executor queue. For templates backed by HTTP connection pool (e.g. Azure),
+ * executor threads should not exceed amount of pooled connections.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class ExecutorAsyncStorageOperations implements AsyncStorageOperations {
+    private static final Logger LOG = LoggerFactory.getLogger(ExecutorAsyncStorageOperations.class);
+
+    public static final long DEFAULT_THREAD_KEEP_ALIVE = 60000;
+
+    private final StorageOperations operations;
+
+    private final ExecutorService executor;
+
+    private final boolean executorOwner;
+
+    /**
+     * Creates adapter with own executor of given amount of threads. Idle
+     * threads are released after {@link #DEFAULT_THREAD_KEEP_ALIVE}
+     * milliseconds.
+     * 
+     * @param operations
+     * @param maxConcurrentRequests
+     */
+    public ExecutorAsyncStorageOperations(StorageOperations operations, int maxConcurrentRequests) {
+        this(operations, createExecutor(maxConcurrentRequests), true);
+    }
+
+    /**
+     * Creates adapter with provided executor, which is not shut down by
+     * {@link #shutdown()}.
+     * 
+     * @param operations
+     * @param executor
+     */
+    public ExecutorAsyncStorageOperations(StorageOperations operations, ExecutorService executor) {
+        this(operations, executor, false);
+    }
+
+    private ExecutorAsyncStorageOperations(StorageOperations operations, ExecutorService executor,
+            boolean executorOwner) {
+        super();
+        Validate.notNull(operations, "Storage operations must be set");
+        Validate.notNull(executor, "Executor must be set");
+        this.operations = operations;
+        this.executor = executor;
+        this.executorOwner = executorOwner;
+    }
+
+    public Future<List<BlobDetails>> listContainerObjectDetails(final String containerName,
+            StorageCallback<List<BlobDetails>> callback) {
+        return submit(new Callable<List<BlobDetails>>() {
+            public List<BlobDetails> call() {
+                return operations.listContainerObjectDetails(containerName);
+            }
+        }, callback);
+    }
+
+    public Future<BlobDetailsPage> listContainerObjectDetailsPage(final String containerName,
+            final BlobListOptions options, final String marker, StorageCallback<BlobDetailsPage> callback) {
+        return submit(new Callable<BlobDetailsPage>() {
+            public BlobDetailsPage call() {
+                return operations.listContainerObjectDetailsPage(containerName, options, marker);
+            }
+        }, callback);
+    }
+
+    public Future<String> send(final String containerName, final String objectName, final String stringToSend,
+            StorageCallback<String> callback) {
+        return submit(new Callable<String>() {
+            public String call() {
+                return operations.send(containerName, objectName, stringToSend);
+            }
+        }, callback);
+    }
+
+    public Future<String> send(final String containerName, final String objectName, final File fileToSend,
+            StorageCallback<String> callback) {
+        return submit(new Callable<String>() {
+            public String call() {
+                return operations.send(containerName, objectName, fileToSend);
+            }
+        }, callback);
+    }
+
+    public Future<String> send(final String containerName, final String objectName, final InputStream is,
+            StorageCallback<String> callback) {
+        return submit(new Callable<String>() {
+            public String call() {
+                return operations.send(containerName, objectName, is);
+            }
+        }, callback);
+    }
+
+    public Future<String> receiveAsString(final String containerName, final String objectName,
+            StorageCallback<String> callback) {
+        return submit(new Callable<String>() {
+            public String call() {
+                return operations.receiveAsString(containerName, objectName);
+            }
+        }, callback);
+    }
+
+    public Future<String> receiveAndSaveToFile(final String containerName, final String objectName,
+            final File toFile, StorageCallback<String> callback) {
+        return submit(new Callable<String>() {
+            public String call() {
+                return operations.receiveAndSaveToFile(containerName, objectName, toFile);
+            }
+        }, callback);
+    }
+
+    public Future<InputStream> receiveAsInputStream(final String containerName, final String objectName,
+            StorageCallback<InputStream> callback) {
+        return submit(new Callable<InputStream>() {
+            public InputStream call() {
+                return operations.receiveAsInputStream(containerName, objectName);
+            }
+        }, callback);
+    }
+
+    public Future<Void> deleteObject(final String containerName, final String objectName,
+            StorageCallback<Void> callback) {
+        return submit(new Callable<Void>() {
+            public Void call() {
+                operations.deleteObject(containerName, objectName);
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * Shuts down own executor. Already submitted operations are completed.
+     */
+    public void shutdown() {
+        if (executorOwner) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @return the operations
+     */
+    public StorageOperations getOperations() {
+        return operations;
+    }
+
+    private <T> Future<T> submit(final Callable<T> operation, final StorageCallback<T> callback) {
+        if (callback == null) {
+            return executor.submit(operation);
+        }
+        return executor.submit(new Callable<T>() {
+            public T call() throws Exception {
+                T result;
+                try {
+                    result = operation.call();
+                } catch (Exception e) {
+                    notifyFailure(callback, e);
+                    throw e;
+                } catch (Error e) {
+                    notifyFailure(callback, e);
+                    throw e;
+                }
+                try {
+                    callback.onSuccess(result);
+                } catch (RuntimeException e) {
+                    LOG.warn("Storage callback has failed", e);
+                }
+                return result;
+            }
+        });
+    }
+
+    private void notifyFailure(StorageCallback<?> callback, Throwable failure) {
+        try {
+            callback.onFailure(failure);
+        } catch (RuntimeException e) {
+            LOG.warn("Storage callback has failed", e);
+        }
+    }
+
+    private static ExecutorService createExecutor(int maxConcurrentRequests) {
+        Validate.isTrue(maxConcurrentRequests > 0, "Max concurrent requests must be positive");
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxConcurrentRequests, maxConcurrentRequests,
+                DEFAULT_THREAD_KEEP_ALIVE, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                new TransferThreadFactory("async-storage-"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
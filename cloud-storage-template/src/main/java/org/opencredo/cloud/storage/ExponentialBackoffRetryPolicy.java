@@ -0,0 +1,194 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.lang.Validate;
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Retry policy with exponentially growing delay between attempts and full
+ * jitter: delay before next attempt is random value between 0 and
+ * <code>min(maxRetryDelay, initialRetryDelay * 2^(attempt - 1))</code>, so
+ * clients throttled at the same time do not retry at the same time.
+ * <p>
+ * Retried are failures with retryable status code (e.g. 503 Server Busy) and
+ * failures caused by IO problems (e.g. connection reset, also in the middle
+ * of response body, which templates report as
+ * {@link StorageCommunicationException}). Failures of non idempotent
+ * operations, failures handling response locally and failures caused by
+ * modified object are never retried.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class ExponentialBackoffRetryPolicy implements RetryPolicy {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 4;
+
+    public static final long DEFAULT_INITIAL_RETRY_DELAY = 200;
+
+    public static final long DEFAULT_MAX_RETRY_DELAY = 20000;
+
+    /**
+     * Request timeout, too many requests, internal error, bad gateway, server
+     * busy and gateway timeout.
+     */
+    public static final Set<Integer> DEFAULT_RETRYABLE_STATUS_CODES = Collections
+            .unmodifiableSet(new HashSet<Integer>(Arrays.asList(408, 429, 500, 502, 503, 504)));
+
+    private final Random random = new Random();
+
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    private long initialRetryDelay = DEFAULT_INITIAL_RETRY_DELAY;
+
+    private long maxRetryDelay = DEFAULT_MAX_RETRY_DELAY;
+
+    private Set<Integer> retryableStatusCodes = DEFAULT_RETRYABLE_STATUS_CODES;
+
+    /**
+     * @param e
+     * @param attempt
+     * @param idempotent
+     * @return
+     * @see org.opencredo.cloud.storage.RetryPolicy#shouldRetry(java.lang.RuntimeException,
+     *      int, boolean)
+     */
+    public boolean shouldRetry(RuntimeException e, int attempt, boolean idempotent) {
+        if (!idempotent || attempt >= maxAttempts) {
+            return false;
+        }
+        if (e instanceof StorageObjectModifiedException || e instanceof StorageResponseHandlingException) {
+            return false;
+        }
+        if (e instanceof StorageCommunicationException) {
+            int statusCode = ((StorageCommunicationException) e).getStatusCode();
+            if (statusCode != StorageCommunicationException.UNKNOWN_STATUS_CODE) {
+                return retryableStatusCodes.contains(statusCode);
+            }
+        }
+        return isCausedByIOException(e);
+    }
+
+    /**
+     * @param attempt
+     * @return
+     * @see org.opencredo.cloud.storage.RetryPolicy#getRetryDelay(int)
+     */
+    public long getRetryDelay(int attempt) {
+        long ceiling = maxRetryDelay;
+        if (attempt <= 62 && initialRetryDelay <= (maxRetryDelay >> (attempt - 1))) {
+            ceiling = initialRetryDelay << (attempt - 1);
+        }
+        synchronized (random) {
+            return (long) (random.nextDouble() * (ceiling + 1));
+        }
+    }
+
+    private boolean isCausedByIOException(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the maxAttempts
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param maxAttempts
+     *            Maximum amount of attempts including the first one.
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        Validate.isTrue(maxAttempts > 0, "Max attempts must be positive");
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @return the initialRetryDelay
+     */
+    public long getInitialRetryDelay() {
+        return initialRetryDelay;
+    }
+
+    /**
+     * @param initialRetryDelay
+     *            Upper bound of delay in milliseconds before the first retry,
+     *            doubled for every next retry.
+     */
+    public void setInitialRetryDelay(long initialRetryDelay) {
+        Validate.isTrue(initialRetryDelay >= 0, "Initial retry delay must not be negative");
+        this.initialRetryDelay = initialRetryDelay;
+    }
+
+    /**
+     * @return the maxRetryDelay
+     */
+    public long getMaxRetryDelay() {
+        return maxRetryDelay;
+    }
+
+    /**
+     * @param maxRetryDelay
+     *            Upper bound of delay in milliseconds before any retry.
+     */
+    public void setMaxRetryDelay(long maxRetryDelay) {
+        Validate.isTrue(maxRetryDelay >= 0, "Max retry delay must not be negative");
+        this.maxRetryDelay = maxRetryDelay;
+    }
+
+    /**
+     * @return the retryableStatusCodes
+     */
+    public Set<Integer> getRetryableStatusCodes() {
+        return retryableStatusCodes;
+    }
+
+    /**
+     * @param retryableStatusCodes
+     *            Cloud storage response status codes of failures which should
+     *            be retried.
+     */
+    public void setRetryableStatusCodes(Set<Integer> retryableStatusCodes) {
+        Validate.notNull(retryableStatusCodes, "Retryable status codes must be set");
+        this.retryableStatusCodes = Collections.unmodifiableSet(new HashSet<Integer>(retryableStatusCodes));
+    }
+
+    /**
+     * @return
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)//
+                .append("maxAttempts", this.maxAttempts)//
+                .append("initialRetryDelay", this.initialRetryDelay)//
+                .append("maxRetryDelay", this.maxRetryDelay)//
+                .append("retryableStatusCodes", this.retryableStatusCodes)//
+                .toString();
+    }
+}
@@ -0,0 +1,203 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Continuous byte range of a file transferred as single part of multipart
+ * upload or download.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class FilePart {
+
+    private final File file;
+
+    private final int partNumber;
+
+    private final long offset;
+
+    private final long length;
+
+    /**
+     * @param file
+     * @param partNumber
+     *            Part number starting from 1.
+     * @param offset
+     * @param length
+     */
+    public FilePart(File file, int partNumber, long offset, long length) {
+        super();
+        this.file = file;
+        this.partNumber = partNumber;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Splits file to parts of given size. Last part may be smaller.
+     * 
+     * @param file
+     * @param partSize
+     * @return
+     */
+    public static List<FilePart> split(File file, long partSize) {
+        return split(file, file.length(), partSize);
+    }
+
+    /**
+     * Splits given length of file to parts of given size. Last part may be
+     * smaller.
+     * 
+     * @param file
+     * @param fileLength
+     * @param partSize
+     * @return
+     */
+    public static List<FilePart> split(File file, long fileLength, long partSize) {
+        List<FilePart> parts = new ArrayList<FilePart>((int) (fileLength / partSize) + 1);
+        long offset = 0;
+        int partNumber = 1;
+        do {
+            long length = Math.min(partSize, fileLength - offset);
+            parts.add(new FilePart(file, partNumber++, offset, length));
+            offset += length;
+        } while (offset < fileLength);
+        return parts;
+    }
+
+    /**
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the partNumber
+     */
+    public int getPartNumber() {
+        return partNumber;
+    }
+
+    /**
+     * @return the offset
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the length
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Opens new stream reading part bytes only. Every invocation returns new
+     * stream, so failed part upload can be repeated.
+     * 
+     * @return
+     * @throws IOException
+     */
+    public InputStream openStream() throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            in.getChannel().position(offset);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new PartInputStream(in, length);
+    }
+
+    /**
+     * @return
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)//
+                .append("file", this.file)//
+                .append("partNumber", this.partNumber)//
+                .append("offset", this.offset)//
+                .append("length", this.length)//
+                .toString();
+    }
+
+    /**
+     * Stream limiting amount of bytes read from underlying stream.
+     */
+    private static class PartInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        PartInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b != -1) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Collects written data in temporary file which is uploaded when stream is
+ * closed. Used by templates which cannot upload blob in parts, so memory used
+ * by stream does not depend on blob size.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public abstract class FileSpoolingOutputStream extends OutputStream {
+
+    private final File file;
+
+    private final OutputStream out;
+
+    private boolean closed;
+
+    /**
+     * @param directory
+     *            Directory of temporary file, or <code>null</code> for
+     *            default temporary directory.
+     * @throws IOException
+     */
+    protected FileSpoolingOutputStream(File directory) throws IOException {
+        this.file = File.createTempFile("upload-", ".tmp", directory);
+        this.out = new BufferedOutputStream(new FileOutputStream(file), StorageUtils.STREAM_BUFFER_SIZE);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        out.write(b, off, len);
+    }
+
+    /**
+     * Data is uploaded when stream is closed, flush has no effect.
+     * 
+     * @see java.io.OutputStream#flush()
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+    }
+
+    /**
+     * Upload temporary file and delete it.
+     * 
+     * @see java.io.OutputStream#close()
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            out.close();
+            upload(file);
+        } catch (StorageException e) {
+            IOException ioe = new IOException("Upload of spooled file '" + file + "' has failed");
+            ioe.initCause(e);
+            throw ioe;
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Discard written data without uploading it. Has no effect if stream is
+     * already closed.
+     */
+    public void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            out.close();
+        } catch (IOException e) {
+            // Data is discarded anyway
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Upload complete temporary file. File is deleted after this method
+     * returns.
+     * 
+     * @param file
+     * @throws IOException
+     */
+    protected abstract void upload(File file) throws IOException;
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Upload stream is closed");
+        }
+    }
+}
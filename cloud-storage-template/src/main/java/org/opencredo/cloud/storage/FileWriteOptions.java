@@ -0,0 +1,78 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Options of writing data to local file.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ * @see StorageUtils#writeStreamToFile(java.io.InputStream, java.io.File,
+ *      FileWriteOptions)
+ * @see StorageUtils#writeFileToFile(java.io.File, java.io.File,
+ *      FileWriteOptions)
+ */
+public class FileWriteOptions {
+
+    private boolean sync;
+
+    private boolean atomic;
+
+    /**
+     * @return the sync
+     */
+    public boolean isSync() {
+        return sync;
+    }
+
+    /**
+     * @param sync
+     *            If <code>true</code>, file content is forced to storage
+     *            device before write completes.
+     */
+    public void setSync(boolean sync) {
+        this.sync = sync;
+    }
+
+    /**
+     * @return the atomic
+     */
+    public boolean isAtomic() {
+        return atomic;
+    }
+
+    /**
+     * @param atomic
+     *            If <code>true</code>, data is written to temporary file in
+     *            target directory which is renamed to target file when
+     *            complete, so target file is never seen partially written.
+     */
+    public void setAtomic(boolean atomic) {
+        this.atomic = atomic;
+    }
+
+    /**
+     * @return
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)//
+                .append("sync", this.sync)//
+                .append("atomic", this.atomic)//
+                .toString();
+    }
+}
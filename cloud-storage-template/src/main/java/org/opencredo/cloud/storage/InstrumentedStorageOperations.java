@@ -0,0 +1,543 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.lang.Validate;
+
+/**
+ * {@link StorageOperations} decorator reporting duration, payload size and
+ * failure of every operation of decorated template to
+ * {@link StorageOperationListener}. Templates which are not decorated are
+ * not instrumented, so instrumentation has no overhead when it is not used.
+ * <p>
+ * Operations receiving input stream are reported when returned stream is
+ * closed, so reported duration and received bytes include reading of object
+ * content. Sent and received strings are measured as UTF-8 encoded bytes.
+ * Batch operations and iteration over container objects are executed by this
+ * decorator, so every single object operation or page request is reported
+ * separately. When combined with {@link RetryingStorageOperations}, this
+ * decorator should be decorated by it, so every attempt is reported.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class InstrumentedStorageOperations implements StorageOperations {
+
+    private final StorageOperations operations;
+
+    private final StorageOperationListener listener;
+
+    /**
+     * @param operations
+     * @param listener
+     */
+    public InstrumentedStorageOperations(StorageOperations operations, StorageOperationListener listener) {
+        super();
+        Validate.notNull(operations, "Storage operations must be set");
+        Validate.notNull(listener, "Storage operation listener must be set");
+        this.operations = operations;
+        this.listener = listener;
+    }
+
+    public String getDefaultContainerName() {
+        return operations.getDefaultContainerName();
+    }
+
+    public List<String> listContainerNames() {
+        return execute("listContainerNames", null, null, new Operation<List<String>>() {
+            public List<String> execute() {
+                return operations.listContainerNames();
+            }
+        });
+    }
+
+    public List<BlobDetails> listContainerObjectDetails() {
+        return listContainerObjectDetails(getDefaultContainerName());
+    }
+
+    public List<BlobDetails> listContainerObjectDetails(final String containerName) {
+        return execute("listContainerObjectDetails", containerName, null, new Operation<List<BlobDetails>>() {
+            public List<BlobDetails> execute() {
+                return operations.listContainerObjectDetails(containerName);
+            }
+        });
+    }
+
+    public BlobDetailsPage listContainerObjectDetailsPage(final String containerName, final BlobListOptions options,
+            final String marker) {
+        return execute("listContainerObjectDetailsPage", containerName, null, new Operation<BlobDetailsPage>() {
+            public BlobDetailsPage execute() {
+                return operations.listContainerObjectDetailsPage(containerName, options, marker);
+            }
+        });
+    }
+
+    public Iterator<BlobDetails> iterateContainerObjectDetails(String containerName, BlobListOptions options) {
+        return new PagedBlobDetailsIterator(this, containerName, options);
+    }
+
+    public ContainerStatus checkContainerStatus(final String containerName) {
+        return execute("checkContainerStatus", containerName, null, new Operation<ContainerStatus>() {
+            public ContainerStatus execute() {
+                return operations.checkContainerStatus(containerName);
+            }
+        });
+    }
+
+    public boolean createContainer(final String containerName) {
+        return execute("createContainer", containerName, null, new Operation<Boolean>() {
+            public Boolean execute() {
+                return operations.createContainer(containerName);
+            }
+        });
+    }
+
+    public void deleteContainer(final String containerName) {
+        execute("deleteContainer", containerName, null, new Operation<Void>() {
+            public Void execute() {
+                operations.deleteContainer(containerName);
+                return null;
+            }
+        });
+    }
+
+    public String send(String objectName, String stringToSend) {
+        return send(getDefaultContainerName(), objectName, stringToSend);
+    }
+
+    public String send(final String containerName, final String objectName, final String stringToSend) {
+        return execute("send", containerName, objectName, new Operation<String>() {
+            public String execute() {
+                return operations.send(containerName, objectName, stringToSend);
+            }
+
+            @Override
+            public long getBytesSent() {
+                return utf8Length(stringToSend);
+            }
+        });
+    }
+
+    public String send(File fileToSend) {
+        return send(getDefaultContainerName(), fileToSend);
+    }
+
+    public String send(String containerName, File fileToSend) {
+        return send(containerName, fileToSend.getName(), fileToSend);
+    }
+
+    public String send(final String containerName, final String objectName, final File fileToSend) {
+        return execute("send", containerName, objectName, new Operation<String>() {
+            public String execute() {
+                return operations.send(containerName, objectName, fileToSend);
+            }
+
+            @Override
+            public long getBytesSent() {
+                return fileToSend.length();
+            }
+        });
+    }
+
+    public String sendInParts(final String containerName, final String objectName, final File fileToSend,
+            final MultipartUploadSettings settings) {
+        return execute("sendInParts", containerName, objectName, new Operation<String>() {
+            public String execute() {
+                return operations.sendInParts(containerName, objectName, fileToSend, settings);
+            }
+
+            @Override
+            public long getBytesSent() {
+                return fileToSend.length();
+            }
+        });
+    }
+
+    public String send(final String containerName, final String objectName, final String stringToSend,
+            final BlobConditions conditions) {
+        return execute("send", containerName, objectName, new Operation<String>() {
+            public String execute() {
+                return operations.send(containerName, objectName, stringToSend, conditions);
+            }
+
+            @Override
+            public long getBytesSent() {
+                return utf8Length(stringToSend);
+            }
+        });
+    }
+
+    public String send(final String containerName, final String objectName, final File fileToSend,
+            final BlobConditions conditions) {
+        return execute("send", containerName, objectName, new Operation<String>() {
+            public String execute() {
+                return operations.send(containerName, objectName, fileToSend, conditions);
+            }
+
+            @Override
+            public long getBytesSent() {
+                return fileToSend.length();
+            }
+        });
+    }
+
+    public String send(String objectName, InputStream is) {
+        return send(getDefaultContainerName(), objectName, is);
+    }
+
+    public String send(final String containerName, final String objectName, InputStream is) {
+        final CountingInputStream countingInputStream = new CountingInputStream(is);
+        return execute("send", containerName, objectName, new Operation<String>() {
+            public String execute() {
+                return operations.send(containerName, objectName, countingInputStream);
+            }
+
+            @Override
+            public long getBytesSent() {
+                return countingInputStream.getByteCount();
+            }
+        });
+    }
+
+    public OutputStream openForWrite(String containerName, String objectName) {
+        long start = System.nanoTime();
+        OutputStream os;
+        try {
+            os = operations.openForWrite(containerName, objectName);
+        } catch (RuntimeException e) {
+            fireOperationCompleted("openForWrite", containerName, objectName, start, 0, 0, e);
+            throw e;
+        }
+        return new ReportingOutputStream(os, containerName, objectName, start);
+    }
+
+    public String receiveAsString(String objectName) {
+        return receiveAsString(getDefaultContainerName(), objectName);
+    }
+
+    public String receiveAsString(final String containerName, final String objectName)
+            throws StorageResponseHandlingException {
+        return execute("receiveAsString", containerName, objectName, new Operation<String>() {
+            public String execute() {
+                return operations.receiveAsString(containerName, objectName);
+            }
+
+            @Override
+            public long getBytesReceived(String result) {
+                return utf8Length(result);
+            }
+        });
+    }
+
+    public String receiveAndSaveToFile(String objectName, File toFile) {
+        return receiveAndSaveToFile(getDefaultContainerName(), objectName, toFile);
+    }
+
+    public String receiveAndSaveToFile(final String containerName, final String objectName, final File toFile) {
+        return execute("receiveAndSaveToFile", containerName, objectName, new Operation<String>() {
+            public String execute() {
+                return operations.receiveAndSaveToFile(containerName, objectName, toFile);
+            }
+
+            @Override
+            public long getBytesReceived(String result) {
+                return toFile.length();
+            }
+        });
+    }
+
+    public String receiveInParts(final String containerName, final String objectName, final File toFile,
+            final MultipartDownloadSettings settings) {
+        return execute("receiveInParts", containerName, objectName, new Operation<String>() {
+            public String execute() {
+                return operations.receiveInParts(containerName, objectName, toFile, settings);
+            }
+
+            @Override
+            public long getBytesReceived(String result) {
+                return toFile.length();
+            }
+        });
+    }
+
+    public InputStream receiveAsInputStream(String objectName) {
+        return receiveAsInputStream(getDefaultContainerName(), objectName);
+    }
+
+    public InputStream receiveAsInputStream(String containerName, String objectName) {
+        long start = System.nanoTime();
+        InputStream is;
+        try {
+            is = operations.receiveAsInputStream(containerName, objectName);
+        } catch (RuntimeException e) {
+            fireOperationCompleted("receiveAsInputStream", containerName, objectName, start, 0, 0, e);
+            throw e;
+        }
+        return new ReportingInputStream(is, "receiveAsInputStream", containerName, objectName, start);
+    }
+
+    public BlobContent receiveIfNoneMatch(String containerName, String objectName, String eTag) {
+        long start = System.nanoTime();
+        BlobContent content;
+        try {
+            content = operations.receiveIfNoneMatch(containerName, objectName, eTag);
+        } catch (RuntimeException e) {
+            fireOperationCompleted("receiveIfNoneMatch", containerName, objectName, start, 0, 0, e);
+            throw e;
+        }
+
+        if (content == null) {
+            fireOperationCompleted("receiveIfNoneMatch", containerName, objectName, start, 0, 0, null);
+            return null;
+        }
+        return new BlobContent(content.getDetails(), new ReportingInputStream(content.getData(),
+                "receiveIfNoneMatch", containerName, objectName, start));
+    }
+
+    public BlobContent receive(String containerName, String objectName, BlobConditions conditions) {
+        long start = System.nanoTime();
+        BlobContent content;
+        try {
+            content = operations.receive(containerName, objectName, conditions);
+        } catch (RuntimeException e) {
+            fireOperationCompleted("receive", containerName, objectName, start, 0, 0, e);
+            throw e;
+        }
+
+        if (content == null) {
+            fireOperationCompleted("receive", containerName, objectName, start, 0, 0, null);
+            return null;
+        }
+        return new BlobContent(content.getDetails(), new ReportingInputStream(content.getData(), "receive",
+                containerName, objectName, start));
+    }
+
+    public BlobDetails getBlobDetails(final String containerName, final String objectName) {
+        return execute("getBlobDetails", containerName, objectName, new Operation<BlobDetails>() {
+            public BlobDetails execute() {
+                return operations.getBlobDetails(containerName, objectName);
+            }
+        });
+    }
+
+    public void deleteObject(String objectName) {
+        deleteObject(getDefaultContainerName(), objectName);
+    }
+
+    public void deleteObject(final String containerName, final String objectName) {
+        execute("deleteObject", containerName, objectName, new Operation<Void>() {
+            public Void execute() {
+                operations.deleteObject(containerName, objectName);
+                return null;
+            }
+        });
+    }
+
+    public void deleteObject(final String containerName, final String objectName, final BlobConditions conditions) {
+        execute("deleteObject", containerName, objectName, new Operation<Void>() {
+            public Void execute() {
+                operations.deleteObject(containerName, objectName, conditions);
+                return null;
+            }
+        });
+    }
+
+    public String copy(final String srcContainerName, final String srcObjectName, final String dstContainerName,
+            final String dstObjectName) {
+        return execute("copy", srcContainerName, srcObjectName, new Operation<String>() {
+            public String execute() {
+                return operations.copy(srcContainerName, srcObjectName, dstContainerName, dstObjectName);
+            }
+        });
+    }
+
+    public String move(final String srcContainerName, final String srcObjectName, final String dstContainerName,
+            final String dstObjectName) {
+        return execute("move", srcContainerName, srcObjectName, new Operation<String>() {
+            public String execute() {
+                return operations.move(srcContainerName, srcObjectName, dstContainerName, dstObjectName);
+            }
+        });
+    }
+
+    public BatchResult<String> sendAll(String containerName, Map<String, File> filesToSend, int maxConcurrency) {
+        return new StorageBatchOperations(this, maxConcurrency).sendAll(containerName, filesToSend);
+    }
+
+    public BatchResult<String> receiveAll(String containerName, Map<String, File> objectsToReceive,
+            int maxConcurrency) {
+        return new StorageBatchOperations(this, maxConcurrency).receiveAll(containerName, objectsToReceive);
+    }
+
+    public BatchResult<Void> deleteAll(String containerName, Collection<String> objectNames, int maxConcurrency) {
+        return new StorageBatchOperations(this, maxConcurrency).deleteAll(containerName, objectNames);
+    }
+
+    public BatchResult<String> copyAll(String srcContainerName, String srcPrefix, String dstContainerName,
+            String dstPrefix, int maxConcurrency) {
+        return new StorageBatchOperations(this, maxConcurrency).copyAll(srcContainerName, srcPrefix,
+                dstContainerName, dstPrefix);
+    }
+
+    public String createdSignedUrl(String containerName, String objectName, Date expiryDate) {
+        return operations.createdSignedUrl(containerName, objectName, expiryDate);
+    }
+
+    /**
+     * @return the listener
+     */
+    public StorageOperationListener getListener() {
+        return listener;
+    }
+
+    private <T> T execute(String operationName, String containerName, String objectName, Operation<T> operation) {
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = operation.execute();
+        } catch (RuntimeException e) {
+            fireOperationCompleted(operationName, containerName, objectName, start, operation.getBytesSent(), 0, e);
+            throw e;
+        }
+
+        fireOperationCompleted(operationName, containerName, objectName, start, operation.getBytesSent(),
+                operation.getBytesReceived(result), null);
+        return result;
+    }
+
+    private void fireOperationCompleted(String operationName, String containerName, String objectName, long start,
+            long bytesSent, long bytesReceived, RuntimeException failure) {
+        long duration = System.nanoTime() - start;
+        listener.operationCompleted(new StorageOperationEvent(operationName, containerName, objectName, duration,
+                bytesSent, bytesReceived, failure));
+    }
+
+    /**
+     * Length of string encoded with UTF-8, calculated without encoding it.
+     * 
+     * @param s
+     * @return
+     */
+    private static long utf8Length(String s) {
+        if (s == null) {
+            return 0;
+        }
+        long length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private abstract static class Operation<T> {
+        abstract T execute();
+
+        long getBytesSent() {
+            return 0;
+        }
+
+        long getBytesReceived(T result) {
+            return 0;
+        }
+    }
+
+    /**
+     * Input stream reporting operation when it is closed for the first time.
+     */
+    private class ReportingInputStream extends CountingInputStream {
+        private final String operationName;
+        private final String containerName;
+        private final String objectName;
+        private final long start;
+        private boolean reported;
+
+        ReportingInputStream(InputStream in, String operationName, String containerName, String objectName,
+                long start) {
+            super(in);
+            this.operationName = operationName;
+            this.containerName = containerName;
+            this.objectName = objectName;
+            this.start = start;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!reported) {
+                    reported = true;
+                    fireOperationCompleted(operationName, containerName, objectName, start, 0, getByteCount(), null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Output stream reporting upload when it is closed for the first time.
+     */
+    private class ReportingOutputStream extends CountingOutputStream {
+        private final String containerName;
+        private final String objectName;
+        private final long start;
+        private boolean reported;
+
+        ReportingOutputStream(OutputStream out, String containerName, String objectName, long start) {
+            super(out);
+            this.containerName = containerName;
+            this.objectName = objectName;
+            this.start = start;
+        }
+
+        @Override
+        public void close() throws IOException {
+            RuntimeException failure = null;
+            try {
+                super.close();
+            } catch (IOException e) {
+                failure = new StorageCommunicationException(e, "Upload of object '%s' to container '%s' has failed",
+                        objectName, containerName);
+                throw e;
+            } finally {
+                if (!reported) {
+                    reported = true;
+                    fireOperationCompleted("openForWrite", containerName, objectName, start, getByteCount(), 0,
+                            failure);
+                }
+            }
+        }
+    }
+}
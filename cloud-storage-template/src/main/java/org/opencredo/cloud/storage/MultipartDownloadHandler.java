@@ -0,0 +1,51 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.io.InputStream;
+
+/**
+ * Cloud storage specific steps of single parallel ranged download driven by
+ * {@link MultipartDownloader}. Ranges are requested concurrently, so
+ * {@link #openRange(FilePart)} must be thread safe.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public interface MultipartDownloadHandler {
+
+    /**
+     * Get object size and pin object version (ETag) all ranges are requested
+     * for.
+     * 
+     * @return Object size in bytes.
+     * @throws Exception
+     */
+    long begin() throws Exception;
+
+    /**
+     * Open stream of single object range. May be invoked more than once for
+     * the same range if previous attempt failed.
+     * 
+     * @param range
+     *            Range of target file to fill, its offset and length match
+     *            object range.
+     * @return
+     * @throws StorageObjectModifiedException
+     *             If object version differs from version pinned by
+     *             {@link #begin()}.
+     * @throws Exception
+     */
+    InputStream openRange(FilePart range) throws Exception;
+}
@@ -0,0 +1,184 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import org.apache.commons.lang.Validate;
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Settings of parallel ranged download.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ * @see StorageOperations#receiveInParts(String, String, java.io.File,
+ *      MultipartDownloadSettings)
+ */
+public class MultipartDownloadSettings {
+
+    public static final long DEFAULT_RANGE_SIZE = 4 * 1024 * 1024;
+
+    public static final long DEFAULT_MULTIPART_THRESHOLD = 16 * 1024 * 1024;
+
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    public static final int DEFAULT_MAX_RANGE_ATTEMPTS = 3;
+
+    public static final long DEFAULT_RETRY_DELAY = 1000;
+
+    private long rangeSize = DEFAULT_RANGE_SIZE;
+
+    private long multipartThreshold = DEFAULT_MULTIPART_THRESHOLD;
+
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    private int maxRangeAttempts = DEFAULT_MAX_RANGE_ATTEMPTS;
+
+    private long retryDelay = DEFAULT_RETRY_DELAY;
+
+    private TransferRequestLimit requestLimit;
+
+    public MultipartDownloadSettings() {
+        super();
+    }
+
+    /**
+     * Copies settings, without limit of transfer requests.
+     * 
+     * @param settings
+     */
+    public MultipartDownloadSettings(MultipartDownloadSettings settings) {
+        super();
+        Validate.notNull(settings, "Settings to copy must be set");
+        this.rangeSize = settings.rangeSize;
+        this.multipartThreshold = settings.multipartThreshold;
+        this.parallelism = settings.parallelism;
+        this.maxRangeAttempts = settings.maxRangeAttempts;
+        this.retryDelay = settings.retryDelay;
+    }
+
+    /**
+     * @return the rangeSize
+     */
+    public long getRangeSize() {
+        return rangeSize;
+    }
+
+    /**
+     * @param rangeSize
+     *            Size in bytes of range requested with single request.
+     */
+    public void setRangeSize(long rangeSize) {
+        Validate.isTrue(rangeSize > 0, "Range size must be positive");
+        this.rangeSize = rangeSize;
+    }
+
+    /**
+     * @return the multipartThreshold
+     */
+    public long getMultipartThreshold() {
+        return multipartThreshold;
+    }
+
+    /**
+     * @param multipartThreshold
+     *            Objects not larger than threshold (in bytes) are received
+     *            with single request.
+     */
+    public void setMultipartThreshold(long multipartThreshold) {
+        Validate.isTrue(multipartThreshold >= 0, "Multipart threshold must not be negative");
+        this.multipartThreshold = multipartThreshold;
+    }
+
+    /**
+     * @return the parallelism
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism
+     *            Maximum amount of ranges received at the same time.
+     */
+    public void setParallelism(int parallelism) {
+        Validate.isTrue(parallelism > 0, "Parallelism must be positive");
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return the maxRangeAttempts
+     */
+    public int getMaxRangeAttempts() {
+        return maxRangeAttempts;
+    }
+
+    /**
+     * @param maxRangeAttempts
+     *            Maximum amount of attempts to receive single range.
+     */
+    public void setMaxRangeAttempts(int maxRangeAttempts) {
+        Validate.isTrue(maxRangeAttempts > 0, "Max range attempts must be positive");
+        this.maxRangeAttempts = maxRangeAttempts;
+    }
+
+    /**
+     * @return the retryDelay
+     */
+    public long getRetryDelay() {
+        return retryDelay;
+    }
+
+    /**
+     * @param retryDelay
+     *            Delay in milliseconds before repeating failed range request,
+     *            multiplied by attempt number.
+     */
+    public void setRetryDelay(long retryDelay) {
+        Validate.isTrue(retryDelay >= 0, "Retry delay must not be negative");
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * @return Limit of every transfer request, or <code>null</code> if
+     *         requests are not limited.
+     */
+    TransferRequestLimit getRequestLimit() {
+        return requestLimit;
+    }
+
+    /**
+     * @param requestLimit
+     *            Limit of every transfer request, set by
+     *            {@link RateLimitingStorageOperations} on its copy of
+     *            settings.
+     */
+    void setRequestLimit(TransferRequestLimit requestLimit) {
+        this.requestLimit = requestLimit;
+    }
+
+    /**
+     * @return
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)//
+                .append("rangeSize", this.rangeSize)//
+                .append("multipartThreshold", this.multipartThreshold)//
+                .append("parallelism", this.parallelism)//
+                .append("maxRangeAttempts", this.maxRangeAttempts)//
+                .append("retryDelay", this.retryDelay)//
+                .toString();
+    }
+}
@@ -0,0 +1,217 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Downloads object in ranges requested in parallel. Target file is
+ * pre-allocated to object size and every range is written directly to its
+ * position through shared {@link FileChannel}. Every range is retried
+ * independently, except when object has been modified since download has
+ * begun. Failed download deletes partially written file. When download is
+ * executed through {@link RateLimitingStorageOperations}, the initial request
+ * and every range request (including retries) wait for their own request
+ * permit.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ * @see MultipartDownloadHandler
+ */
+public class MultipartDownloader {
+    private static final Logger LOG = LoggerFactory.getLogger(MultipartDownloader.class);
+
+    private final MultipartDownloadSettings settings;
+
+    /**
+     * @param settings
+     */
+    public MultipartDownloader(MultipartDownloadSettings settings) {
+        super();
+        Validate.notNull(settings, "Multipart download settings must be set");
+        this.settings = settings;
+    }
+
+    /**
+     * @param toFile
+     * @param handler
+     * @throws StorageException
+     *             If object size is not known.
+     */
+    public void download(File toFile, final MultipartDownloadHandler handler) {
+        long length;
+        try {
+            length = TransferRequestLimit.execute(settings.getRequestLimit(), new Callable<Long>() {
+                public Long call() throws Exception {
+                    return handler.begin();
+                }
+            });
+        } catch (StorageException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new StorageCommunicationException(e, "Failed to begin multipart download to file '%s'", toFile);
+        }
+        if (length < 0) {
+            // Ranges cannot be computed and file cannot be pre-sized
+            throw new StorageException("Size of object to download to file '%s' is unknown", toFile);
+        }
+
+        long rangeSize = length <= settings.getMultipartThreshold() ? Math.max(length, 1) : settings.getRangeSize();
+        List<FilePart> ranges = FilePart.split(toFile, length, rangeSize);
+        LOG.debug("Download {} bytes to file '{}' in {} ranges", new Object[] { length, toFile, ranges.size() });
+
+        RandomAccessFile file = null;
+        ExecutorService executor = null;
+        boolean completed = false;
+        try {
+            file = new RandomAccessFile(toFile, "rw");
+            file.setLength(length);
+            final FileChannel channel = file.getChannel();
+
+            if (length > 0) {
+                executor = Executors.newFixedThreadPool(Math.min(settings.getParallelism(), ranges.size()),
+                        new TransferThreadFactory("multipart-download-"));
+                List<Future<Object>> futures = new ArrayList<Future<Object>>(ranges.size());
+                for (final FilePart range : ranges) {
+                    futures.add(executor.submit(new Callable<Object>() {
+                        public Object call() throws Exception {
+                            downloadRange(range, channel, handler);
+                            return null;
+                        }
+                    }));
+                }
+                for (Future<Object> future : futures) {
+                    future.get();
+                }
+            }
+            completed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException(e, "Multipart download to file '%s' has been interrupted", toFile);
+        } catch (ExecutionException e) {
+            throw asStorageException(e.getCause(), toFile);
+        } catch (IOException e) {
+            throw new StorageResponseHandlingException(e, "Failed to write multipart download to file '%s'", toFile);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            close(file);
+            if (!completed && !toFile.delete()) {
+                LOG.warn("Failed to delete partially downloaded file '{}'", toFile);
+            }
+        }
+    }
+
+    /**
+     * @param range
+     * @param channel
+     * @param handler
+     * @throws Exception
+     *             Last failure if all attempts have failed.
+     */
+    private void downloadRange(final FilePart range, final FileChannel channel,
+            final MultipartDownloadHandler handler) throws Exception {
+        // Range request is in flight until its content is transferred
+        Callable<Object> request = new Callable<Object>() {
+            public Object call() throws Exception {
+                InputStream in = handler.openRange(range);
+                try {
+                    transfer(in, channel, range);
+                    return null;
+                } finally {
+                    in.close();
+                }
+            }
+        };
+        int maxAttempts = settings.getMaxRangeAttempts();
+        for (int attempt = 1;; attempt++) {
+            try {
+                TransferRequestLimit.execute(settings.getRequestLimit(), request);
+                return;
+            } catch (StorageObjectModifiedException e) {
+                throw e;
+            } catch (InterruptedException e) {
+                // Download is being cancelled, e.g. while waiting for permit
+                throw e;
+            } catch (Exception e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                LOG.warn("Download of range {} failed (attempt {} of {}), retrying: {}", new Object[] {
+                        range.getPartNumber(), attempt, maxAttempts, e.getMessage() });
+                Thread.sleep(settings.getRetryDelay() * attempt);
+            }
+        }
+    }
+
+    /**
+     * Writes range content to its position in file. Positional writes do not
+     * move channel position, so ranges can be written concurrently.
+     * 
+     * @param in
+     * @param channel
+     * @param range
+     * @throws IOException
+     */
+    private void transfer(InputStream in, FileChannel channel, FilePart range) throws IOException {
+        ReadableByteChannel source = Channels.newChannel(in);
+        long position = range.getOffset();
+        long remaining = range.getLength();
+        while (remaining > 0) {
+            long transferred = channel.transferFrom(source, position, remaining);
+            if (transferred <= 0) {
+                throw new IOException("Range " + range.getPartNumber() + " ended " + remaining
+                        + " bytes before expected length");
+            }
+            position += transferred;
+            remaining -= transferred;
+        }
+    }
+
+    private void close(RandomAccessFile file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            file.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close file", e);
+        }
+    }
+
+    private StorageException asStorageException(Throwable t, File file) {
+        if (t instanceof StorageException) {
+            return (StorageException) t;
+        }
+        return new StorageCommunicationException(t, "Multipart download to file '%s' has failed", file);
+    }
+}
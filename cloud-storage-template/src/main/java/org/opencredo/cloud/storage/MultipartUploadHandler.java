@@ -0,0 +1,64 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.util.List;
+
+/**
+ * Cloud storage specific steps of single multipart upload driven by
+ * {@link MultipartUploader}. Parts are uploaded concurrently, so
+ * {@link #uploadPart(FilePart)} must be thread safe.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public interface MultipartUploadHandler {
+
+    /**
+     * Initiate multipart upload.
+     * 
+     * @throws Exception
+     */
+    void begin() throws Exception;
+
+    /**
+     * Upload single part. May be invoked more than once for the same part if
+     * previous attempt failed.
+     * 
+     * @param part
+     * @return Part identifier required to commit upload.
+     * @throws StorageException
+     *             If part cannot be uploaded at all, upload fails without
+     *             retrying the part. {@link StorageCommunicationException}
+     *             is retried.
+     * @throws Exception
+     */
+    String uploadPart(FilePart part) throws Exception;
+
+    /**
+     * Commit uploaded parts as single blob.
+     * 
+     * @param partIds
+     *            Part identifiers in part number order.
+     * @throws Exception
+     */
+    void commit(List<String> partIds) throws Exception;
+
+    /**
+     * Release uploaded parts after failure.
+     * 
+     * @throws Exception
+     */
+    void abort() throws Exception;
+}
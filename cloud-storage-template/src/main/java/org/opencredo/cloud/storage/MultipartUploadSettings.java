@@ -0,0 +1,186 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import org.apache.commons.lang.Validate;
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Settings of multipart (block) file upload. Part size is adjusted by
+ * templates to fit cloud storage provider limits (e.g. Azure blocks can not
+ * exceed 4MB, S3 parts can not be smaller than 5MB).
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ * @see StorageOperations#sendInParts(String, String, java.io.File,
+ *      MultipartUploadSettings)
+ */
+public class MultipartUploadSettings {
+
+    public static final long DEFAULT_PART_SIZE = 4 * 1024 * 1024;
+
+    public static final long DEFAULT_MULTIPART_THRESHOLD = 16 * 1024 * 1024;
+
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    public static final int DEFAULT_MAX_PART_ATTEMPTS = 3;
+
+    public static final long DEFAULT_RETRY_DELAY = 1000;
+
+    private long partSize = DEFAULT_PART_SIZE;
+
+    private long multipartThreshold = DEFAULT_MULTIPART_THRESHOLD;
+
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    private int maxPartAttempts = DEFAULT_MAX_PART_ATTEMPTS;
+
+    private long retryDelay = DEFAULT_RETRY_DELAY;
+
+    private TransferRequestLimit requestLimit;
+
+    public MultipartUploadSettings() {
+        super();
+    }
+
+    /**
+     * Copies settings, without limit of transfer requests.
+     * 
+     * @param settings
+     */
+    public MultipartUploadSettings(MultipartUploadSettings settings) {
+        super();
+        Validate.notNull(settings, "Settings to copy must be set");
+        this.partSize = settings.partSize;
+        this.multipartThreshold = settings.multipartThreshold;
+        this.parallelism = settings.parallelism;
+        this.maxPartAttempts = settings.maxPartAttempts;
+        this.retryDelay = settings.retryDelay;
+    }
+
+    /**
+     * @return the partSize
+     */
+    public long getPartSize() {
+        return partSize;
+    }
+
+    /**
+     * @param partSize
+     *            Part size in bytes.
+     */
+    public void setPartSize(long partSize) {
+        Validate.isTrue(partSize > 0, "Part size must be positive");
+        this.partSize = partSize;
+    }
+
+    /**
+     * @return the multipartThreshold
+     */
+    public long getMultipartThreshold() {
+        return multipartThreshold;
+    }
+
+    /**
+     * @param multipartThreshold
+     *            Files not larger than threshold (in bytes) are sent in single
+     *            request.
+     */
+    public void setMultipartThreshold(long multipartThreshold) {
+        Validate.isTrue(multipartThreshold >= 0, "Multipart threshold must not be negative");
+        this.multipartThreshold = multipartThreshold;
+    }
+
+    /**
+     * @return the parallelism
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism
+     *            Maximum amount of parts uploaded at the same time.
+     */
+    public void setParallelism(int parallelism) {
+        Validate.isTrue(parallelism > 0, "Parallelism must be positive");
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return the maxPartAttempts
+     */
+    public int getMaxPartAttempts() {
+        return maxPartAttempts;
+    }
+
+    /**
+     * @param maxPartAttempts
+     *            Maximum amount of attempts to upload single part.
+     */
+    public void setMaxPartAttempts(int maxPartAttempts) {
+        Validate.isTrue(maxPartAttempts > 0, "Max part attempts must be positive");
+        this.maxPartAttempts = maxPartAttempts;
+    }
+
+    /**
+     * @return the retryDelay
+     */
+    public long getRetryDelay() {
+        return retryDelay;
+    }
+
+    /**
+     * @param retryDelay
+     *            Delay in milliseconds before repeating failed part upload,
+     *            multiplied by attempt number.
+     */
+    public void setRetryDelay(long retryDelay) {
+        Validate.isTrue(retryDelay >= 0, "Retry delay must not be negative");
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * @return Limit of every transfer request, or <code>null</code> if
+     *         requests are not limited.
+     */
+    TransferRequestLimit getRequestLimit() {
+        return requestLimit;
+    }
+
+    /**
+     * @param requestLimit
+     *            Limit of every transfer request, set by
+     *            {@link RateLimitingStorageOperations} on its copy of
+     *            settings.
+     */
+    void setRequestLimit(TransferRequestLimit requestLimit) {
+        this.requestLimit = requestLimit;
+    }
+
+    /**
+     * @return
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)//
+                .append("partSize", this.partSize)//
+                .append("multipartThreshold", this.multipartThreshold)//
+                .append("parallelism", this.parallelism)//
+                .append("maxPartAttempts", this.maxPartAttempts)//
+                .append("retryDelay", this.retryDelay)//
+                .toString();
+    }
+}
@@ -0,0 +1,172 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Uploads file in parts. Parts are uploaded by bounded amount of threads,
+ * every part is retried independently and upload is committed only when all
+ * parts are uploaded. Failed upload is aborted, so already uploaded parts are
+ * released. When upload is executed through
+ * {@link RateLimitingStorageOperations}, every begin, part and commit request
+ * (including part retries) waits for its own request permit.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ * @see MultipartUploadHandler
+ */
+public class MultipartUploader {
+    private static final Logger LOG = LoggerFactory.getLogger(MultipartUploader.class);
+
+    private final MultipartUploadSettings settings;
+
+    /**
+     * @param settings
+     */
+    public MultipartUploader(MultipartUploadSettings settings) {
+        super();
+        Validate.notNull(settings, "Multipart upload settings must be set");
+        this.settings = settings;
+    }
+
+    /**
+     * @param file
+     * @param partSize
+     *            Part size adjusted to cloud storage limits.
+     * @param handler
+     */
+    public void upload(File file, long partSize, final MultipartUploadHandler handler) {
+        List<FilePart> parts = FilePart.split(file, partSize);
+        LOG.debug("Upload file '{}' in {} parts", file, parts.size());
+
+        final TransferRequestLimit limit = settings.getRequestLimit();
+        try {
+            TransferRequestLimit.execute(limit, new Callable<Object>() {
+                public Object call() throws Exception {
+                    handler.begin();
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            throw new StorageCommunicationException(e, "Failed to begin multipart upload of file '%s'", file);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(settings.getParallelism(), parts.size()),
+                new TransferThreadFactory("multipart-upload-"));
+        try {
+            List<Future<String>> futures = new ArrayList<Future<String>>(parts.size());
+            for (final FilePart part : parts) {
+                futures.add(executor.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        return uploadPart(part, handler);
+                    }
+                }));
+            }
+
+            List<String> partIds = new ArrayList<String>(parts.size());
+            for (Future<String> future : futures) {
+                partIds.add(future.get());
+            }
+            final List<String> committed = partIds;
+            TransferRequestLimit.execute(limit, new Callable<Object>() {
+                public Object call() throws Exception {
+                    handler.commit(committed);
+                    return null;
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(file, handler);
+            throw new StorageException(e, "Multipart upload of file '%s' has been interrupted", file);
+        } catch (ExecutionException e) {
+            abort(file, handler);
+            throw asStorageException(e.getCause(), file);
+        } catch (Exception e) {
+            abort(file, handler);
+            throw asStorageException(e, file);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param part
+     * @param handler
+     * @return
+     * @throws Exception
+     *             Last failure if all attempts have failed, or
+     *             {@link StorageException} other than
+     *             {@link StorageCommunicationException} which is not retried.
+     */
+    String uploadPart(final FilePart part, final MultipartUploadHandler handler) throws Exception {
+        Callable<String> request = new Callable<String>() {
+            public String call() throws Exception {
+                return handler.uploadPart(part);
+            }
+        };
+        int maxAttempts = settings.getMaxPartAttempts();
+        for (int attempt = 1;; attempt++) {
+            try {
+                return TransferRequestLimit.execute(settings.getRequestLimit(), request);
+            } catch (StorageException e) {
+                if (!(e instanceof StorageCommunicationException) || attempt >= maxAttempts) {
+                    // Part which cannot be uploaded is not retried
+                    throw e;
+                }
+                retryPart(part, attempt, maxAttempts, e);
+            } catch (InterruptedException e) {
+                // Upload is being cancelled, e.g. while waiting for permit
+                throw e;
+            } catch (Exception e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                retryPart(part, attempt, maxAttempts, e);
+            }
+        }
+    }
+
+    private void retryPart(FilePart part, int attempt, int maxAttempts, Exception e) throws InterruptedException {
+        LOG.warn("Upload of part {} failed (attempt {} of {}), retrying: {}", new Object[] { part.getPartNumber(),
+                attempt, maxAttempts, e.getMessage() });
+        Thread.sleep(settings.getRetryDelay() * attempt);
+    }
+
+    private void abort(File file, MultipartUploadHandler handler) {
+        try {
+            handler.abort();
+        } catch (Exception e) {
+            LOG.warn("Failed to abort multipart upload of file '" + file + "'", e);
+        }
+    }
+
+    private StorageException asStorageException(Throwable t, File file) {
+        if (t instanceof StorageException) {
+            return (StorageException) t;
+        }
+        return new StorageCommunicationException(t, "Multipart upload of file '%s' has failed", file);
+    }
+}
@@ -0,0 +1,109 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator over container object details requesting next page from cloud
+ * storage only when all details of current page were consumed.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class PagedBlobDetailsIterator implements Iterator<BlobDetails> {
+
+    private final StorageOperations template;
+
+    private final String containerName;
+
+    private final BlobListOptions options;
+
+    private List<BlobDetails> page;
+
+    private int pageIndex;
+
+    private String nextMarker;
+
+    private boolean lastPage;
+
+    private int returned;
+
+    /**
+     * @param template
+     * @param containerName
+     * @param options
+     */
+    public PagedBlobDetailsIterator(StorageOperations template, String containerName, BlobListOptions options) {
+        super();
+        this.template = template;
+        this.containerName = containerName;
+        this.options = options;
+    }
+
+    /**
+     * @return
+     * @see java.util.Iterator#hasNext()
+     */
+    public boolean hasNext() {
+        if (options.getMaxResults() != BlobListOptions.UNLIMITED && returned >= options.getMaxResults()) {
+            return false;
+        }
+
+        // Pages may be empty while marker is still provided.
+        while (page == null || pageIndex >= page.size()) {
+            if (lastPage) {
+                return false;
+            }
+            fetchNextPage();
+        }
+        return true;
+    }
+
+    /**
+     * @return
+     * @see java.util.Iterator#next()
+     */
+    public BlobDetails next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more blobs in container '" + containerName + "'");
+        }
+        returned++;
+        return page.get(pageIndex++);
+    }
+
+    /**
+     * @see java.util.Iterator#remove()
+     */
+    public void remove() {
+        throw new UnsupportedOperationException("Remove is not supported");
+    }
+
+    /**
+     * @return Marker of the next not yet requested page, or <code>null</code>.
+     */
+    public String getNextMarker() {
+        return nextMarker;
+    }
+
+    private void fetchNextPage() {
+        BlobDetailsPage detailsPage = template.listContainerObjectDetailsPage(containerName, options, nextMarker);
+        page = detailsPage.getBlobDetails();
+        pageIndex = 0;
+        nextMarker = detailsPage.getNextMarker();
+        lastPage = !detailsPage.hasNextPage();
+    }
+}
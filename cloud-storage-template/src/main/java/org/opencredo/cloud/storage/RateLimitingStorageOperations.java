@@ -0,0 +1,428 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.output.ProxyOutputStream;
+import org.apache.commons.lang.Validate;
+
+/**
+ * {@link StorageOperations} decorator executing operations of decorated
+ * template only when they are allowed by {@link StorageRequestLimiter}.
+ * Request is counted as in flight until decorated template call returns
+ * (received input stream may still be read after that). Upload opened with
+ * {@link #openForWrite(String, String)} is counted as single request in flight
+ * until its stream is closed, although templates may upload its parts in
+ * parallel (the same applies to {@link #send(String, String, InputStream)}).
+ * <p>
+ * Multipart transfers ({@link #sendInParts(String, String, File, MultipartUploadSettings)}
+ * and {@link #receiveInParts(String, String, File, MultipartDownloadSettings)})
+ * are limited per request: templates transferring through
+ * {@link MultipartUploader} or {@link MultipartDownloader} acquire permit for
+ * every part, range, begin and commit request. Templates which ignore
+ * settings and transfer file with single request count the call as single
+ * request.
+ * <p>
+ * Batch operations and iteration over container objects are executed by this
+ * decorator, so every single object operation or page request is limited
+ * separately. When combined with {@link RetryingStorageOperations}, this
+ * decorator should be decorated by it, so every retry is limited too.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class RateLimitingStorageOperations implements StorageOperations {
+
+    private final StorageOperations operations;
+
+    private final StorageRequestLimiter limiter;
+
+    /**
+     * @param operations
+     * @param limiter
+     *            Limiter of account used by decorated template.
+     */
+    public RateLimitingStorageOperations(StorageOperations operations, StorageRequestLimiter limiter) {
+        super();
+        Validate.notNull(operations, "Storage operations must be set");
+        Validate.notNull(limiter, "Request limiter must be set");
+        this.operations = operations;
+        this.limiter = limiter;
+    }
+
+    public String getDefaultContainerName() {
+        return operations.getDefaultContainerName();
+    }
+
+    public List<String> listContainerNames() {
+        return execute(null, new Operation<List<String>>() {
+            public List<String> execute() {
+                return operations.listContainerNames();
+            }
+        });
+    }
+
+    public List<BlobDetails> listContainerObjectDetails() {
+        return listContainerObjectDetails(getDefaultContainerName());
+    }
+
+    public List<BlobDetails> listContainerObjectDetails(final String containerName) {
+        return execute(containerName, new Operation<List<BlobDetails>>() {
+            public List<BlobDetails> execute() {
+                return operations.listContainerObjectDetails(containerName);
+            }
+        });
+    }
+
+    public BlobDetailsPage listContainerObjectDetailsPage(final String containerName, final BlobListOptions options,
+            final String marker) {
+        return execute(containerName, new Operation<BlobDetailsPage>() {
+            public BlobDetailsPage execute() {
+                return operations.listContainerObjectDetailsPage(containerName, options, marker);
+            }
+        });
+    }
+
+    public Iterator<BlobDetails> iterateContainerObjectDetails(String containerName, BlobListOptions options) {
+        return new PagedBlobDetailsIterator(this, containerName, options);
+    }
+
+    public ContainerStatus checkContainerStatus(final String containerName) {
+        return execute(containerName, new Operation<ContainerStatus>() {
+            public ContainerStatus execute() {
+                return operations.checkContainerStatus(containerName);
+            }
+        });
+    }
+
+    public boolean createContainer(final String containerName) {
+        return execute(containerName, new Operation<Boolean>() {
+            public Boolean execute() {
+                return operations.createContainer(containerName);
+            }
+        });
+    }
+
+    public void deleteContainer(final String containerName) {
+        execute(containerName, new Operation<Void>() {
+            public Void execute() {
+                operations.deleteContainer(containerName);
+                return null;
+            }
+        });
+    }
+
+    public String send(String objectName, String stringToSend) {
+        return send(getDefaultContainerName(), objectName, stringToSend);
+    }
+
+    public String send(final String containerName, final String objectName, final String stringToSend) {
+        return execute(containerName, new Operation<String>() {
+            public String execute() {
+                return operations.send(containerName, objectName, stringToSend);
+            }
+        });
+    }
+
+    public String send(File fileToSend) {
+        return send(getDefaultContainerName(), fileToSend);
+    }
+
+    public String send(String containerName, File fileToSend) {
+        return send(containerName, fileToSend.getName(), fileToSend);
+    }
+
+    public String send(final String containerName, final String objectName, final File fileToSend) {
+        return execute(containerName, new Operation<String>() {
+            public String execute() {
+                return operations.send(containerName, objectName, fileToSend);
+            }
+        });
+    }
+
+    public String sendInParts(String containerName, String objectName, File fileToSend,
+            MultipartUploadSettings settings) {
+        Validate.notNull(settings, "Multipart upload settings must be set");
+        MultipartUploadSettings limited = new MultipartUploadSettings(settings);
+        TransferRequestLimit limit = acquireTransfer(containerName);
+        limited.setRequestLimit(limit);
+
+        RuntimeException failure = null;
+        try {
+            return operations.sendInParts(containerName, objectName, fileToSend, limited);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            limit.releaseCallPermit(failure);
+        }
+    }
+
+    public String send(final String containerName, final String objectName, final String stringToSend,
+            final BlobConditions conditions) {
+        return execute(containerName, new Operation<String>() {
+            public String execute() {
+                return operations.send(containerName, objectName, stringToSend, conditions);
+            }
+        });
+    }
+
+    public String send(final String containerName, final String objectName, final File fileToSend,
+            final BlobConditions conditions) {
+        return execute(containerName, new Operation<String>() {
+            public String execute() {
+                return operations.send(containerName, objectName, fileToSend, conditions);
+            }
+        });
+    }
+
+    public String send(String objectName, InputStream is) {
+        return send(getDefaultContainerName(), objectName, is);
+    }
+
+    public String send(final String containerName, final String objectName, final InputStream is) {
+        return execute(containerName, new Operation<String>() {
+            public String execute() {
+                return operations.send(containerName, objectName, is);
+            }
+        });
+    }
+
+    public OutputStream openForWrite(final String containerName, String objectName) {
+        acquire(containerName);
+        OutputStream os;
+        try {
+            os = operations.openForWrite(containerName, objectName);
+        } catch (RuntimeException e) {
+            limiter.release(containerName, e);
+            throw e;
+        }
+        return new ProxyOutputStream(os) {
+            private boolean released;
+
+            @Override
+            public void close() throws IOException {
+                RuntimeException failure = null;
+                try {
+                    super.close();
+                } catch (IOException e) {
+                    failure = new StorageCommunicationException(e, "Upload to container '%s' has failed",
+                            containerName);
+                    throw e;
+                } finally {
+                    if (!released) {
+                        released = true;
+                        limiter.release(containerName, failure);
+                    }
+                }
+            }
+        };
+    }
+
+    public String receiveAsString(String objectName) {
+        return receiveAsString(getDefaultContainerName(), objectName);
+    }
+
+    public String receiveAsString(final String containerName, final String objectName)
+            throws StorageResponseHandlingException {
+        return execute(containerName, new Operation<String>() {
+            public String execute() {
+                return operations.receiveAsString(containerName, objectName);
+            }
+        });
+    }
+
+    public String receiveAndSaveToFile(String objectName, File toFile) {
+        return receiveAndSaveToFile(getDefaultContainerName(), objectName, toFile);
+    }
+
+    public String receiveAndSaveToFile(final String containerName, final String objectName, final File toFile) {
+        return execute(containerName, new Operation<String>() {
+            public String execute() {
+                return operations.receiveAndSaveToFile(containerName, objectName, toFile);
+            }
+        });
+    }
+
+    public String receiveInParts(String containerName, String objectName, File toFile,
+            MultipartDownloadSettings settings) {
+        Validate.notNull(settings, "Multipart download settings must be set");
+        MultipartDownloadSettings limited = new MultipartDownloadSettings(settings);
+        TransferRequestLimit limit = acquireTransfer(containerName);
+        limited.setRequestLimit(limit);
+
+        RuntimeException failure = null;
+        try {
+            return operations.receiveInParts(containerName, objectName, toFile, limited);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            limit.releaseCallPermit(failure);
+        }
+    }
+
+    public InputStream receiveAsInputStream(String objectName) {
+        return receiveAsInputStream(getDefaultContainerName(), objectName);
+    }
+
+    public InputStream receiveAsInputStream(final String containerName, final String objectName) {
+        return execute(containerName, new Operation<InputStream>() {
+            public InputStream execute() {
+                return operations.receiveAsInputStream(containerName, objectName);
+            }
+        });
+    }
+
+    public BlobContent receiveIfNoneMatch(final String containerName, final String objectName, final String eTag) {
+        return execute(containerName, new Operation<BlobContent>() {
+            public BlobContent execute() {
+                return operations.receiveIfNoneMatch(containerName, objectName, eTag);
+            }
+        });
+    }
+
+    public BlobContent receive(final String containerName, final String objectName,
+            final BlobConditions conditions) {
+        return execute(containerName, new Operation<BlobContent>() {
+            public BlobContent execute() {
+                return operations.receive(containerName, objectName, conditions);
+            }
+        });
+    }
+
+    public BlobDetails getBlobDetails(final String containerName, final String objectName) {
+        return execute(containerName, new Operation<BlobDetails>() {
+            public BlobDetails execute() {
+                return operations.getBlobDetails(containerName, objectName);
+            }
+        });
+    }
+
+    public void deleteObject(String objectName) {
+        deleteObject(getDefaultContainerName(), objectName);
+    }
+
+    public void deleteObject(final String containerName, final String objectName) {
+        execute(containerName, new Operation<Void>() {
+            public Void execute() {
+                operations.deleteObject(containerName, objectName);
+                return null;
+            }
+        });
+    }
+
+    public void deleteObject(final String containerName, final String objectName, final BlobConditions conditions) {
+        execute(containerName, new Operation<Void>() {
+            public Void execute() {
+                operations.deleteObject(containerName, objectName, conditions);
+                return null;
+            }
+        });
+    }
+
+    public String copy(final String srcContainerName, final String srcObjectName, final String dstContainerName,
+            final String dstObjectName) {
+        return execute(dstContainerName, new Operation<String>() {
+            public String execute() {
+                return operations.copy(srcContainerName, srcObjectName, dstContainerName, dstObjectName);
+            }
+        });
+    }
+
+    public String move(final String srcContainerName, final String srcObjectName, final String dstContainerName,
+            final String dstObjectName) {
+        return execute(dstContainerName, new Operation<String>() {
+            public String execute() {
+                return operations.move(srcContainerName, srcObjectName, dstContainerName, dstObjectName);
+            }
+        });
+    }
+
+    public BatchResult<String> sendAll(String containerName, Map<String, File> filesToSend, int maxConcurrency) {
+        return new StorageBatchOperations(this, maxConcurrency).sendAll(containerName, filesToSend);
+    }
+
+    public BatchResult<String> receiveAll(String containerName, Map<String, File> objectsToReceive,
+            int maxConcurrency) {
+        return new StorageBatchOperations(this, maxConcurrency).receiveAll(containerName, objectsToReceive);
+    }
+
+    public BatchResult<Void> deleteAll(String containerName, Collection<String> objectNames, int maxConcurrency) {
+        return new StorageBatchOperations(this, maxConcurrency).deleteAll(containerName, objectNames);
+    }
+
+    public BatchResult<String> copyAll(String srcContainerName, String srcPrefix, String dstContainerName,
+            String dstPrefix, int maxConcurrency) {
+        return new StorageBatchOperations(this, maxConcurrency).copyAll(srcContainerName, srcPrefix,
+                dstContainerName, dstPrefix);
+    }
+
+    public String createdSignedUrl(String containerName, String objectName, Date expiryDate) {
+        return operations.createdSignedUrl(containerName, objectName, expiryDate);
+    }
+
+    /**
+     * @return the limiter
+     */
+    public StorageRequestLimiter getLimiter() {
+        return limiter;
+    }
+
+    private <T> T execute(String containerName, Operation<T> operation) {
+        acquire(containerName);
+
+        RuntimeException failure = null;
+        try {
+            return operation.execute();
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            limiter.release(containerName, failure);
+        }
+    }
+
+    /**
+     * @param containerName
+     * @return Limit of transfer requests holding permit of whole transfer
+     *         call.
+     */
+    private TransferRequestLimit acquireTransfer(String containerName) {
+        acquire(containerName);
+        return new TransferRequestLimit(limiter, containerName);
+    }
+
+    private void acquire(String containerName) {
+        try {
+            limiter.acquire(containerName);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException(e, "Waiting for request to container '%s' has been interrupted", containerName);
+        }
+    }
+
+    private interface Operation<T> {
+        T execute();
+    }
+}
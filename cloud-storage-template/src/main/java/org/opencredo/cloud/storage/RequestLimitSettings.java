@@ -0,0 +1,232 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.lang.Validate;
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Settings of {@link StorageRequestLimiter}. Request rate and amount of
+ * requests in flight are limited for whole account and for every single
+ * container. Limit set to 0 is not applied.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class RequestLimitSettings {
+
+    public static final double DEFAULT_SLOW_DOWN_FACTOR = 0.5;
+
+    public static final double DEFAULT_SPEED_UP_FRACTION = 0.05;
+
+    public static final double DEFAULT_MIN_RATE_FRACTION = 0.1;
+
+    public static final int DEFAULT_MAX_CONTAINER_LIMITS = 1000;
+
+    /**
+     * Too many requests and server busy.
+     */
+    public static final Set<Integer> DEFAULT_THROTTLING_STATUS_CODES = Collections
+            .unmodifiableSet(new HashSet<Integer>(Arrays.asList(429, 503)));
+
+    private double requestsPerSecond;
+
+    private int maxConcurrentRequests;
+
+    private double containerRequestsPerSecond;
+
+    private int containerMaxConcurrentRequests;
+
+    private double slowDownFactor = DEFAULT_SLOW_DOWN_FACTOR;
+
+    private double speedUpFraction = DEFAULT_SPEED_UP_FRACTION;
+
+    private double minRateFraction = DEFAULT_MIN_RATE_FRACTION;
+
+    private Set<Integer> throttlingStatusCodes = DEFAULT_THROTTLING_STATUS_CODES;
+
+    private int maxContainerLimits = DEFAULT_MAX_CONTAINER_LIMITS;
+
+    /**
+     * @return the requestsPerSecond
+     */
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    /**
+     * @param requestsPerSecond
+     *            Maximum request rate of account.
+     */
+    public void setRequestsPerSecond(double requestsPerSecond) {
+        Validate.isTrue(requestsPerSecond >= 0, "Requests per second must not be negative");
+        this.requestsPerSecond = requestsPerSecond;
+    }
+
+    /**
+     * @return the maxConcurrentRequests
+     */
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    /**
+     * @param maxConcurrentRequests
+     *            Maximum amount of account requests in flight.
+     */
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        Validate.isTrue(maxConcurrentRequests >= 0, "Max concurrent requests must not be negative");
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * @return the containerRequestsPerSecond
+     */
+    public double getContainerRequestsPerSecond() {
+        return containerRequestsPerSecond;
+    }
+
+    /**
+     * @param containerRequestsPerSecond
+     *            Maximum request rate of single container.
+     */
+    public void setContainerRequestsPerSecond(double containerRequestsPerSecond) {
+        Validate.isTrue(containerRequestsPerSecond >= 0, "Container requests per second must not be negative");
+        this.containerRequestsPerSecond = containerRequestsPerSecond;
+    }
+
+    /**
+     * @return the containerMaxConcurrentRequests
+     */
+    public int getContainerMaxConcurrentRequests() {
+        return containerMaxConcurrentRequests;
+    }
+
+    /**
+     * @param containerMaxConcurrentRequests
+     *            Maximum amount of single container requests in flight.
+     */
+    public void setContainerMaxConcurrentRequests(int containerMaxConcurrentRequests) {
+        Validate.isTrue(containerMaxConcurrentRequests >= 0, "Container max concurrent requests must not be negative");
+        this.containerMaxConcurrentRequests = containerMaxConcurrentRequests;
+    }
+
+    /**
+     * @return the slowDownFactor
+     */
+    public double getSlowDownFactor() {
+        return slowDownFactor;
+    }
+
+    /**
+     * @param slowDownFactor
+     *            Request rate is multiplied by this factor when request is
+     *            throttled by cloud storage.
+     */
+    public void setSlowDownFactor(double slowDownFactor) {
+        Validate.isTrue(slowDownFactor > 0 && slowDownFactor <= 1, "Slow down factor must be in range (0, 1]");
+        this.slowDownFactor = slowDownFactor;
+    }
+
+    /**
+     * @return the speedUpFraction
+     */
+    public double getSpeedUpFraction() {
+        return speedUpFraction;
+    }
+
+    /**
+     * @param speedUpFraction
+     *            Fraction of max request rate added to slowed down request
+     *            rate after every request which is not throttled.
+     */
+    public void setSpeedUpFraction(double speedUpFraction) {
+        Validate.isTrue(speedUpFraction >= 0, "Speed up fraction must not be negative");
+        this.speedUpFraction = speedUpFraction;
+    }
+
+    /**
+     * @return the minRateFraction
+     */
+    public double getMinRateFraction() {
+        return minRateFraction;
+    }
+
+    /**
+     * @param minRateFraction
+     *            Fraction of max request rate request rate is never slowed
+     *            down below.
+     */
+    public void setMinRateFraction(double minRateFraction) {
+        Validate.isTrue(minRateFraction > 0 && minRateFraction <= 1, "Min rate fraction must be in range (0, 1]");
+        this.minRateFraction = minRateFraction;
+    }
+
+    /**
+     * @return the throttlingStatusCodes
+     */
+    public Set<Integer> getThrottlingStatusCodes() {
+        return throttlingStatusCodes;
+    }
+
+    /**
+     * @param throttlingStatusCodes
+     *            Cloud storage response status codes of throttled requests.
+     */
+    public void setThrottlingStatusCodes(Set<Integer> throttlingStatusCodes) {
+        Validate.notNull(throttlingStatusCodes, "Throttling status codes must be set");
+        this.throttlingStatusCodes = Collections.unmodifiableSet(new HashSet<Integer>(throttlingStatusCodes));
+    }
+
+    /**
+     * @return the maxContainerLimits
+     */
+    public int getMaxContainerLimits() {
+        return maxContainerLimits;
+    }
+
+    /**
+     * @param maxContainerLimits
+     *            Amount of containers limit state is kept for before limits of
+     *            idle containers are discarded.
+     */
+    public void setMaxContainerLimits(int maxContainerLimits) {
+        Validate.isTrue(maxContainerLimits > 0, "Max container limits must be positive");
+        this.maxContainerLimits = maxContainerLimits;
+    }
+
+    /**
+     * @return
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)//
+                .append("requestsPerSecond", this.requestsPerSecond)//
+                .append("maxConcurrentRequests", this.maxConcurrentRequests)//
+                .append("containerRequestsPerSecond", this.containerRequestsPerSecond)//
+                .append("containerMaxConcurrentRequests", this.containerMaxConcurrentRequests)//
+                .append("slowDownFactor", this.slowDownFactor)//
+                .append("speedUpFraction", this.speedUpFraction)//
+                .append("minRateFraction", this.minRateFraction)//
+                .append("throttlingStatusCodes", this.throttlingStatusCodes)//
+                .append("maxContainerLimits", this.maxContainerLimits)//
+                .toString();
+    }
+}
@@ -0,0 +1,81 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Response body stream which remembers IO failures of reading it, so
+ * templates copying body to file can tell transport failures (e.g. connection
+ * reset in the middle of download), which are reported as
+ * {@link StorageCommunicationException} and may be retried, from failures of
+ * writing file, which are reported as
+ * {@link StorageResponseHandlingException}.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class ResponseBodyInputStream extends FilterInputStream {
+
+    private volatile IOException readFailure;
+
+    /**
+     * @param in
+     *            Response body stream.
+     */
+    public ResponseBodyInputStream(InputStream in) {
+        super(in);
+    }
+
+    /**
+     * @param e
+     * @return <code>true</code> if provided failure was thrown when reading
+     *         response body.
+     */
+    public boolean isCauseOf(IOException e) {
+        return e != null && e == readFailure;
+    }
+
+    @Override
+    public int read() throws IOException {
+        try {
+            return super.read();
+        } catch (IOException e) {
+            readFailure = e;
+            throw e;
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        try {
+            return super.read(b, off, len);
+        } catch (IOException e) {
+            readFailure = e;
+            throw e;
+        }
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        try {
+            return super.skip(n);
+        } catch (IOException e) {
+            readFailure = e;
+            throw e;
+        }
+    }
+}
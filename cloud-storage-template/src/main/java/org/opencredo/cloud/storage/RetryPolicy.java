@@ -0,0 +1,44 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+/**
+ * Decides whether failed cloud storage operation should be retried and how
+ * long to wait before next attempt.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ * @see RetryingStorageOperations
+ */
+public interface RetryPolicy {
+
+    /**
+     * @param e
+     *            Failure of last attempt.
+     * @param attempt
+     *            Number of failed attempt, starting from 1.
+     * @param idempotent
+     *            <code>false</code> if operation can not be safely repeated
+     *            (e.g. body of request is streamed and already consumed).
+     * @return <code>true</code> if operation should be attempted again.
+     */
+    boolean shouldRetry(RuntimeException e, int attempt, boolean idempotent);
+
+    /**
+     * @param attempt
+     *            Number of failed attempt, starting from 1.
+     * @return Delay in milliseconds before next attempt.
+     */
+    long getRetryDelay(int attempt);
+}
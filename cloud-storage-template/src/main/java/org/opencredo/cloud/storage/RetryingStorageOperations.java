@@ -0,0 +1,416 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link StorageOperations} decorator repeating failed operations of
+ * decorated template as decided by {@link RetryPolicy}. Operations sending
+ * {@link InputStream} are not idempotent, because stream is consumed by the
+ * first attempt, conditional send and delete are not idempotent, as repeated
+ * attempt of already applied operation would fail its condition. Other
+ * operations are idempotent; container which already exists when creation
+ * is retried is considered created by the lost attempt. Uploads opened with
+ * {@link #openForWrite(String, String)} are not repeated, their parts are
+ * retried by the stream of decorated template.
+ * <p>
+ * Batch operations and iteration over container objects are executed by this
+ * decorator, so every single object operation or page request is retried
+ * separately.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class RetryingStorageOperations implements StorageOperations {
+    private static final Logger LOG = LoggerFactory.getLogger(RetryingStorageOperations.class);
+
+    private static final int HTTP_CONFLICT = 409;
+
+    private final StorageOperations operations;
+
+    private final RetryPolicy retryPolicy;
+
+    private final AtomicLong attemptCount = new AtomicLong();
+
+    private final AtomicLong retryCount = new AtomicLong();
+
+    private final AtomicLong giveUpCount = new AtomicLong();
+
+    /**
+     * Creates decorator with {@link ExponentialBackoffRetryPolicy} default
+     * settings.
+     * 
+     * @param operations
+     */
+    public RetryingStorageOperations(StorageOperations operations) {
+        this(operations, new ExponentialBackoffRetryPolicy());
+    }
+
+    /**
+     * @param operations
+     * @param retryPolicy
+     */
+    public RetryingStorageOperations(StorageOperations operations, RetryPolicy retryPolicy) {
+        super();
+        Validate.notNull(operations, "Storage operations must be set");
+        Validate.notNull(retryPolicy, "Retry policy must be set");
+        this.operations = operations;
+        this.retryPolicy = retryPolicy;
+    }
+
+    public String getDefaultContainerName() {
+        return operations.getDefaultContainerName();
+    }
+
+    public List<String> listContainerNames() {
+        return execute("list container names", true, new Operation<List<String>>() {
+            public List<String> execute() {
+                return operations.listContainerNames();
+            }
+        });
+    }
+
+    public List<BlobDetails> listContainerObjectDetails() {
+        return listContainerObjectDetails(getDefaultContainerName());
+    }
+
+    public List<BlobDetails> listContainerObjectDetails(final String containerName) {
+        return execute("list container object details", true, new Operation<List<BlobDetails>>() {
+            public List<BlobDetails> execute() {
+                return operations.listContainerObjectDetails(containerName);
+            }
+        });
+    }
+
+    public BlobDetailsPage listContainerObjectDetailsPage(final String containerName, final BlobListOptions options,
+            final String marker) {
+        return execute("list container object details page", true, new Operation<BlobDetailsPage>() {
+            public BlobDetailsPage execute() {
+                return operations.listContainerObjectDetailsPage(containerName, options, marker);
+            }
+        });
+    }
+
+    public Iterator<BlobDetails> iterateContainerObjectDetails(String containerName, BlobListOptions options) {
+        return new PagedBlobDetailsIterator(this, containerName, options);
+    }
+
+    public ContainerStatus checkContainerStatus(final String containerName) {
+        return execute("check container status", true, new Operation<ContainerStatus>() {
+            public ContainerStatus execute() {
+                return operations.checkContainerStatus(containerName);
+            }
+        });
+    }
+
+    public boolean createContainer(final String containerName) {
+        return execute("create container", true, new Operation<Boolean>() {
+            private int attempt;
+
+            public Boolean execute() {
+                attempt++;
+                try {
+                    return operations.createContainer(containerName);
+                } catch (StorageCommunicationException e) {
+                    if (attempt > 1 && e.getStatusCode() == HTTP_CONFLICT) {
+                        // Container has been created by previous attempt
+                        // whose response has been lost
+                        LOG.debug("Container '{}' already exists on attempt {}", containerName, attempt);
+                        return true;
+                    }
+                    throw e;
+                }
+            }
+        });
+    }
+
+    public void deleteContainer(final String containerName) {
+        execute("delete container", true, new Operation<Void>() {
+            public Void execute() {
+                operations.deleteContainer(containerName);
+                return null;
+            }
+        });
+    }
+
+    public String send(String objectName, String stringToSend) {
+        return send(getDefaultContainerName(), objectName, stringToSend);
+    }
+
+    public String send(final String containerName, final String objectName, final String stringToSend) {
+        return execute("send string", true, new Operation<String>() {
+            public String execute() {
+                return operations.send(containerName, objectName, stringToSend);
+            }
+        });
+    }
+
+    public String send(File fileToSend) {
+        return send(getDefaultContainerName(), fileToSend);
+    }
+
+    public String send(String containerName, File fileToSend) {
+        return send(containerName, fileToSend.getName(), fileToSend);
+    }
+
+    public String send(final String containerName, final String objectName, final File fileToSend) {
+        return execute("send file", true, new Operation<String>() {
+            public String execute() {
+                return operations.send(containerName, objectName, fileToSend);
+            }
+        });
+    }
+
+    public String sendInParts(final String containerName, final String objectName, final File fileToSend,
+            final MultipartUploadSettings settings) {
+        return execute("send file in parts", true, new Operation<String>() {
+            public String execute() {
+                return operations.sendInParts(containerName, objectName, fileToSend, settings);
+            }
+        });
+    }
+
+    public String send(final String containerName, final String objectName, final String stringToSend,
+            final BlobConditions conditions) {
+        return execute("send string conditionally", false, new Operation<String>() {
+            public String execute() {
+                return operations.send(containerName, objectName, stringToSend, conditions);
+            }
+        });
+    }
+
+    public String send(final String containerName, final String objectName, final File fileToSend,
+            final BlobConditions conditions) {
+        return execute("send file conditionally", false, new Operation<String>() {
+            public String execute() {
+                return operations.send(containerName, objectName, fileToSend, conditions);
+            }
+        });
+    }
+
+    public String send(String objectName, InputStream is) {
+        return send(getDefaultContainerName(), objectName, is);
+    }
+
+    public String send(final String containerName, final String objectName, final InputStream is) {
+        return execute("send input stream", false, new Operation<String>() {
+            public String execute() {
+                return operations.send(containerName, objectName, is);
+            }
+        });
+    }
+
+    public OutputStream openForWrite(String containerName, String objectName) {
+        return operations.openForWrite(containerName, objectName);
+    }
+
+    public String receiveAsString(String objectName) {
+        return receiveAsString(getDefaultContainerName(), objectName);
+    }
+
+    public String receiveAsString(final String containerName, final String objectName)
+            throws StorageResponseHandlingException {
+        return execute("receive as string", true, new Operation<String>() {
+            public String execute() {
+                return operations.receiveAsString(containerName, objectName);
+            }
+        });
+    }
+
+    public String receiveAndSaveToFile(String objectName, File toFile) {
+        return receiveAndSaveToFile(getDefaultContainerName(), objectName, toFile);
+    }
+
+    public String receiveAndSaveToFile(final String containerName, final String objectName, final File toFile) {
+        return execute("receive and save to file", true, new Operation<String>() {
+            public String execute() {
+                return operations.receiveAndSaveToFile(containerName, objectName, toFile);
+            }
+        });
+    }
+
+    public String receiveInParts(final String containerName, final String objectName, final File toFile,
+            final MultipartDownloadSettings settings) {
+        return execute("receive in parts", true, new Operation<String>() {
+            public String execute() {
+                return operations.receiveInParts(containerName, objectName, toFile, settings);
+            }
+        });
+    }
+
+    public InputStream receiveAsInputStream(String objectName) {
+        return receiveAsInputStream(getDefaultContainerName(), objectName);
+    }
+
+    public InputStream receiveAsInputStream(final String containerName, final String objectName) {
+        return execute("receive as input stream", true, new Operation<InputStream>() {
+            public InputStream execute() {
+                return operations.receiveAsInputStream(containerName, objectName);
+            }
+        });
+    }
+
+    public BlobContent receiveIfNoneMatch(final String containerName, final String objectName, final String eTag) {
+        return execute("receive if none match", true, new Operation<BlobContent>() {
+            public BlobContent execute() {
+                return operations.receiveIfNoneMatch(containerName, objectName, eTag);
+            }
+        });
+    }
+
+    public BlobContent receive(final String containerName, final String objectName,
+            final BlobConditions conditions) {
+        return execute("receive conditionally", true, new Operation<BlobContent>() {
+            public BlobContent execute() {
+                return operations.receive(containerName, objectName, conditions);
+            }
+        });
+    }
+
+    public BlobDetails getBlobDetails(final String containerName, final String objectName) {
+        return execute("get blob details", true, new Operation<BlobDetails>() {
+            public BlobDetails execute() {
+                return operations.getBlobDetails(containerName, objectName);
+            }
+        });
+    }
+
+    public void deleteObject(String objectName) {
+        deleteObject(getDefaultContainerName(), objectName);
+    }
+
+    public void deleteObject(final String containerName, final String objectName) {
+        execute("delete object", true, new Operation<Void>() {
+            public Void execute() {
+                operations.deleteObject(containerName, objectName);
+                return null;
+            }
+        });
+    }
+
+    public void deleteObject(final String containerName, final String objectName, final BlobConditions conditions) {
+        execute("delete object conditionally", false, new Operation<Void>() {
+            public Void execute() {
+                operations.deleteObject(containerName, objectName, conditions);
+                return null;
+            }
+        });
+    }
+
+    public String copy(final String srcContainerName, final String srcObjectName, final String dstContainerName,
+            final String dstObjectName) {
+        return execute("copy", true, new Operation<String>() {
+            public String execute() {
+                return operations.copy(srcContainerName, srcObjectName, dstContainerName, dstObjectName);
+            }
+        });
+    }
+
+    /**
+     * Copy and delete of source object are retried separately, so failed
+     * delete does not repeat the copy.
+     */
+    public String move(String srcContainerName, String srcObjectName, String dstContainerName, String dstObjectName) {
+        String result = copy(srcContainerName, srcObjectName, dstContainerName, dstObjectName);
+        deleteObject(srcContainerName, srcObjectName);
+        return result;
+    }
+
+    public BatchResult<String> sendAll(String containerName, Map<String, File> filesToSend, int maxConcurrency) {
+        return new StorageBatchOperations(this, maxConcurrency).sendAll(containerName, filesToSend);
+    }
+
+    public BatchResult<String> receiveAll(String containerName, Map<String, File> objectsToReceive,
+            int maxConcurrency) {
+        return new StorageBatchOperations(this, maxConcurrency).receiveAll(containerName, objectsToReceive);
+    }
+
+    public BatchResult<Void> deleteAll(String containerName, Collection<String> objectNames, int maxConcurrency) {
+        return new StorageBatchOperations(this, maxConcurrency).deleteAll(containerName, objectNames);
+    }
+
+    public BatchResult<String> copyAll(String srcContainerName, String srcPrefix, String dstContainerName,
+            String dstPrefix, int maxConcurrency) {
+        return new StorageBatchOperations(this, maxConcurrency).copyAll(srcContainerName, srcPrefix,
+                dstContainerName, dstPrefix);
+    }
+
+    public String createdSignedUrl(String containerName, String objectName, Date expiryDate) {
+        return operations.createdSignedUrl(containerName, objectName, expiryDate);
+    }
+
+    /**
+     * @return Amount of attempts to execute operations of decorated template.
+     */
+    public long getAttemptCount() {
+        return attemptCount.get();
+    }
+
+    /**
+     * @return Amount of failed attempts which were repeated.
+     */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * @return Amount of operations which failed after their last attempt.
+     */
+    public long getGiveUpCount() {
+        return giveUpCount.get();
+    }
+
+    private <T> T execute(String operationName, boolean idempotent, Operation<T> operation) {
+        for (int attempt = 1;; attempt++) {
+            attemptCount.incrementAndGet();
+            try {
+                return operation.execute();
+            } catch (RuntimeException e) {
+                if (!retryPolicy.shouldRetry(e, attempt, idempotent)) {
+                    giveUpCount.incrementAndGet();
+                    throw e;
+                }
+
+                long retryDelay = retryPolicy.getRetryDelay(attempt);
+                LOG.debug("Attempt {} of '{}' has failed, retry in {}ms", new Object[] { attempt, operationName,
+                        retryDelay });
+                retryCount.incrementAndGet();
+                try {
+                    Thread.sleep(retryDelay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    giveUpCount.incrementAndGet();
+                    throw new StorageException(e, "Retry of '%s' has been interrupted", operationName);
+                }
+            }
+        }
+    }
+
+    private interface Operation<T> {
+        T execute();
+    }
+}
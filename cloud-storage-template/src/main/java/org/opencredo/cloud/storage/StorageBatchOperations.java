@@ -0,0 +1,181 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes single object operations of {@link StorageOperations} for batch of
+ * objects with bounded concurrency. Failure of single object does not stop
+ * batch, all results and failures are collected to {@link BatchResult}.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ * @see StorageOperations#sendAll(String, Map, int)
+ * @see StorageOperations#receiveAll(String, Map, int)
+ * @see StorageOperations#deleteAll(String, Collection, int)
+ * @see StorageOperations#copyAll(String, String, String, String, int)
+ */
+public class StorageBatchOperations {
+    private static final Logger LOG = LoggerFactory.getLogger(StorageBatchOperations.class);
+
+    private final StorageOperations operations;
+
+    private final int maxConcurrency;
+
+    /**
+     * @param operations
+     * @param maxConcurrency
+     *            Maximum amount of operations executed at the same time.
+     */
+    public StorageBatchOperations(StorageOperations operations, int maxConcurrency) {
+        super();
+        Validate.notNull(operations, "Storage operations must be set");
+        Validate.isTrue(maxConcurrency > 0, "Max concurrency must be positive");
+        this.operations = operations;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * @param containerName
+     * @param filesToSend
+     *            Files to send by object name.
+     * @return
+     */
+    public BatchResult<String> sendAll(final String containerName, final Map<String, File> filesToSend) {
+        return execute(filesToSend.keySet(), new ObjectOperation<String>() {
+            public String execute(String objectName) {
+                return operations.send(containerName, objectName, filesToSend.get(objectName));
+            }
+        });
+    }
+
+    /**
+     * @param containerName
+     * @param objectsToReceive
+     *            Files to save received objects by object name.
+     * @return
+     */
+    public BatchResult<String> receiveAll(final String containerName, final Map<String, File> objectsToReceive) {
+        return execute(objectsToReceive.keySet(), new ObjectOperation<String>() {
+            public String execute(String objectName) {
+                return operations.receiveAndSaveToFile(containerName, objectName, objectsToReceive.get(objectName));
+            }
+        });
+    }
+
+    /**
+     * @param containerName
+     * @param objectNames
+     * @return
+     */
+    public BatchResult<Void> deleteAll(final String containerName, Collection<String> objectNames) {
+        return execute(objectNames, new ObjectOperation<Void>() {
+            public Void execute(String objectName) {
+                operations.deleteObject(containerName, objectName);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Objects to copy are listed before copy starts, objects added to source
+     * container during copy are not copied.
+     * 
+     * @param srcContainerName
+     * @param srcPrefix
+     * @param dstContainerName
+     * @param dstPrefix
+     * @return
+     */
+    public BatchResult<String> copyAll(final String srcContainerName, final String srcPrefix,
+            final String dstContainerName, final String dstPrefix) {
+        Validate.notNull(srcPrefix, "Source prefix must be set");
+        Validate.notNull(dstPrefix, "Destination prefix must be set");
+        BlobListOptions options = new BlobListOptions();
+        if (srcPrefix.length() > 0) {
+            options.setPrefix(srcPrefix);
+        }
+        List<String> objectNames = new ArrayList<String>();
+        for (Iterator<BlobDetails> it = operations.iterateContainerObjectDetails(srcContainerName, options); it
+                .hasNext();) {
+            objectNames.add(it.next().getName());
+        }
+
+        return execute(objectNames, new ObjectOperation<String>() {
+            public String execute(String objectName) {
+                return operations.copy(srcContainerName, objectName, dstContainerName, dstPrefix
+                        + objectName.substring(srcPrefix.length()));
+            }
+        });
+    }
+
+    private <T> BatchResult<T> execute(Collection<String> objectNames, final ObjectOperation<T> operation) {
+        BatchResult<T> result = new BatchResult<T>();
+        if (objectNames.isEmpty()) {
+            return result;
+        }
+
+        LOG.debug("Execute batch of {} operations with max concurrency {}", objectNames.size(), maxConcurrency);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(maxConcurrency, objectNames.size()),
+                new TransferThreadFactory("storage-batch-"));
+        try {
+            List<String> names = new ArrayList<String>(objectNames);
+            List<Future<T>> futures = new ArrayList<Future<T>>(names.size());
+            for (final String objectName : names) {
+                futures.add(executor.submit(new Callable<T>() {
+                    public T call() {
+                        return operation.execute(objectName);
+                    }
+                }));
+            }
+
+            for (int i = 0; i < names.size(); i++) {
+                try {
+                    result.addResult(names.get(i), futures.get(i).get());
+                } catch (ExecutionException e) {
+                    result.addFailure(names.get(i), e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException(e, "Batch operation has been interrupted");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (!result.isSuccessful()) {
+            LOG.debug("Batch operation failed for {} of {} objects", result.getFailures().size(), objectNames.size());
+        }
+        return result;
+    }
+
+    private interface ObjectOperation<T> {
+        T execute(String objectName);
+    }
+}
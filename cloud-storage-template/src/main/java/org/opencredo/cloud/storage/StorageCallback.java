@@ -0,0 +1,37 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+/**
+ * Callback notified when asynchronous cloud storage operation completes.
+ * Callback is invoked by thread which executed operation.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ * @see AsyncStorageOperations
+ */
+public interface StorageCallback<T> {
+
+    /**
+     * @param result
+     *            Operation result, <code>null</code> for operations without
+     *            result.
+     */
+    void onSuccess(T result);
+
+    /**
+     * @param failure
+     */
+    void onFailure(Throwable failure);
+}
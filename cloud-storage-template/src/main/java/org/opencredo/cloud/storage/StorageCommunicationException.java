@@ -25,8 +25,17 @@ public class StorageCommunicationException extends StorageException {
 
     private static final long serialVersionUID = 8080789275931833330L;
 
+    /**
+     * Status code of exceptions not caused by cloud storage response (e.g.
+     * connection failure).
+     */
+    public static final int UNKNOWN_STATUS_CODE = -1;
+
+    private final int statusCode;
+
     public StorageCommunicationException() {
         super();
+        this.statusCode = UNKNOWN_STATUS_CODE;
     }
 
     /**
@@ -35,6 +44,7 @@ public class StorageCommunicationException extends StorageException {
      */
     public StorageCommunicationException(String message, Throwable cause) {
         super(message, cause);
+        this.statusCode = UNKNOWN_STATUS_CODE;
     }
 
     /**
@@ -42,6 +52,7 @@ public class StorageCommunicationException extends StorageException {
      */
     public StorageCommunicationException(String message) {
         super(message);
+        this.statusCode = UNKNOWN_STATUS_CODE;
     }
 
     /**
@@ -49,6 +60,7 @@ public class StorageCommunicationException extends StorageException {
      */
     public StorageCommunicationException(Throwable cause) {
         super(cause);
+        this.statusCode = UNKNOWN_STATUS_CODE;
     }
 
     /**
@@ -57,6 +69,7 @@ public class StorageCommunicationException extends StorageException {
      */
     public StorageCommunicationException(String messageFormat, Object... params) {
         super(messageFormat, params);
+        this.statusCode = UNKNOWN_STATUS_CODE;
     }
 
     /**
@@ -66,5 +79,37 @@ public class StorageCommunicationException extends StorageException {
      */
     public StorageCommunicationException(Throwable cause, String messageFormat, Object... params) {
         super(cause, messageFormat, params);
+        this.statusCode = UNKNOWN_STATUS_CODE;
+    }
+
+    /**
+     * @param statusCode
+     *            Cloud storage response status code.
+     * @param message
+     * @param cause
+     */
+    public StorageCommunicationException(int statusCode, String message, Throwable cause) {
+        super(message, cause);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @param statusCode
+     *            Cloud storage response status code.
+     * @param cause
+     * @param messageFormat
+     * @param params
+     */
+    public StorageCommunicationException(int statusCode, Throwable cause, String messageFormat, Object... params) {
+        super(cause, messageFormat, params);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @return Cloud storage response status code (e.g. HTTP status code), or
+     *         {@link #UNKNOWN_STATUS_CODE} if it is not known.
+     */
+    public int getStatusCode() {
+        return statusCode;
     }
 }
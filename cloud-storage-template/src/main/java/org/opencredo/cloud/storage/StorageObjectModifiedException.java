@@ -0,0 +1,51 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+/**
+ * Thrown when cloud storage object has been modified (e.g. overwritten by
+ * other client) while it was transferred in parts.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class StorageObjectModifiedException extends StorageException {
+
+    private static final long serialVersionUID = -2353097325617207385L;
+
+    /**
+     * @param message
+     * @param cause
+     */
+    public StorageObjectModifiedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    /**
+     * @param messageFormat
+     * @param params
+     */
+    public StorageObjectModifiedException(String messageFormat, Object... params) {
+        super(messageFormat, params);
+    }
+
+    /**
+     * @param cause
+     * @param messageFormat
+     * @param params
+     */
+    public StorageObjectModifiedException(Throwable cause, String messageFormat, Object... params) {
+        super(cause, messageFormat, params);
+    }
+}
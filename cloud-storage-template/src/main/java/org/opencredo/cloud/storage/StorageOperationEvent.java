@@ -0,0 +1,182 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Details of completed cloud storage operation, passed to
+ * {@link StorageOperationListener}.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class StorageOperationEvent {
+
+    /**
+     * Classification of operation outcome.
+     */
+    public enum Outcome {
+        SUCCESS, CLIENT_ERROR, SERVER_ERROR, COMMUNICATION_ERROR, RESPONSE_HANDLING_ERROR, ERROR
+    }
+
+    private final String operation;
+
+    private final String containerName;
+
+    private final String objectName;
+
+    private final long duration;
+
+    private final long bytesSent;
+
+    private final long bytesReceived;
+
+    private final RuntimeException failure;
+
+    /**
+     * @param operation
+     * @param containerName
+     * @param objectName
+     * @param duration
+     *            Operation duration in nanoseconds.
+     * @param bytesSent
+     * @param bytesReceived
+     * @param failure
+     *            Failure thrown by operation, or <code>null</code> if
+     *            operation succeeded.
+     */
+    public StorageOperationEvent(String operation, String containerName, String objectName, long duration,
+            long bytesSent, long bytesReceived, RuntimeException failure) {
+        super();
+        this.operation = operation;
+        this.containerName = containerName;
+        this.objectName = objectName;
+        this.duration = duration;
+        this.bytesSent = bytesSent;
+        this.bytesReceived = bytesReceived;
+        this.failure = failure;
+    }
+
+    /**
+     * @return Name of {@link StorageOperations} method, e.g.
+     *         <code>send</code> or <code>receiveAsInputStream</code>.
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return the containerName, or <code>null</code> if operation is not
+     *         container operation.
+     */
+    public String getContainerName() {
+        return containerName;
+    }
+
+    /**
+     * @return the objectName, or <code>null</code> if operation is not object
+     *         operation.
+     */
+    public String getObjectName() {
+        return objectName;
+    }
+
+    /**
+     * @return Operation duration in nanoseconds.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return Amount of object content bytes sent to cloud storage.
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * @return Amount of object content bytes received from cloud storage.
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * @return Failure thrown by operation, or <code>null</code> if operation
+     *         succeeded.
+     */
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return
+     */
+    public boolean isSuccessful() {
+        return failure == null;
+    }
+
+    /**
+     * @return HTTP status code of failed request, or
+     *         {@link StorageCommunicationException#UNKNOWN_STATUS_CODE} if
+     *         operation succeeded or status code is unknown.
+     */
+    public int getStatusCode() {
+        if (failure instanceof StorageCommunicationException) {
+            return ((StorageCommunicationException) failure).getStatusCode();
+        }
+        return StorageCommunicationException.UNKNOWN_STATUS_CODE;
+    }
+
+    /**
+     * @return
+     */
+    public Outcome getOutcome() {
+        if (failure == null) {
+            return Outcome.SUCCESS;
+        }
+        if (failure instanceof StorageResponseHandlingException) {
+            return Outcome.RESPONSE_HANDLING_ERROR;
+        }
+        if (failure instanceof StorageCommunicationException) {
+            int statusCode = getStatusCode();
+            if (statusCode >= 500) {
+                return Outcome.SERVER_ERROR;
+            } else if (statusCode >= 400) {
+                return Outcome.CLIENT_ERROR;
+            }
+            return Outcome.COMMUNICATION_ERROR;
+        }
+        return Outcome.ERROR;
+    }
+
+    /**
+     * @return
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)//
+                .append("operation", this.operation)//
+                .append("containerName", this.containerName)//
+                .append("objectName", this.objectName)//
+                .append("duration", this.duration)//
+                .append("bytesSent", this.bytesSent)//
+                .append("bytesReceived", this.bytesReceived)//
+                .append("failure", this.failure)//
+                .toString();
+    }
+}
@@ -0,0 +1,32 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+/**
+ * Listener notified about every completed cloud storage operation executed
+ * through {@link InstrumentedStorageOperations}. Listener is called on the
+ * thread which executed operation, so it should not block.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public interface StorageOperationListener {
+
+    /**
+     * @param event
+     *            Completed operation details, duration, payload size and
+     *            failure.
+     */
+    void operationCompleted(StorageOperationEvent event);
+}
@@ -16,8 +16,12 @@ package org.opencredo.cloud.storage;
 
 import java.io.File;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This is core interface defining possible interactions with Cloud Storage.
@@ -61,7 +65,31 @@ public interface StorageOperations {
     List<BlobDetails> listContainerObjectDetails(String containerName);
 
     /**
-     * Get the status of the bucket.
+     * List single page of objects in the cloud storage container.
+     *
+     * @param containerName
+     * @param options       Listing prefix, delimiter and page size. Max results
+     *                      option is not applied to single page.
+     * @param marker        Marker returned with previous page, or
+     *                      <code>null</code> to get the first page.
+     * @return
+     */
+    BlobDetailsPage listContainerObjectDetailsPage(String containerName, BlobListOptions options, String marker);
+
+    /**
+     * Lazily iterate over objects in the cloud storage container. Next page is
+     * requested from cloud storage only when iteration reaches it.
+     *
+     * @param containerName
+     * @param options
+     * @return
+     * @see PagedBlobDetailsIterator
+     */
+    Iterator<BlobDetails> iterateContainerObjectDetails(String containerName, BlobListOptions options);
+
+    /**
+     * Get the status of the bucket. Status is checked with single metadata
+     * request, without listing container content.
      *
      * @param containerName
      * @return
@@ -104,6 +132,21 @@ public interface StorageOperations {
      */
     String send(String containerName, String objectName, String stringToSend);
 
+    /**
+     * Send string data to the cloud storage container if conditions are met
+     * by current object version, e.g. only if object does not exist yet
+     * ('If-None-Match: *') or has not been changed since it was received
+     * ('If-Match' with received ETag).
+     *
+     * @param containerName The name of the cloud storage container.
+     * @param objectName    The name of object in the cloud storage container.
+     * @param stringToSend
+     * @param conditions    Conditions of current object version.
+     * @throws StorageObjectModifiedException If any condition is not met.
+     * @see BlobConditions
+     */
+    String send(String containerName, String objectName, String stringToSend, BlobConditions conditions);
+
     /**
      * Invokes {@link #send(String, File)} with default container name which
      * must be provided in template (implementation class).
@@ -130,6 +173,33 @@ public interface StorageOperations {
      */
     String send(String containerName, String objectName, File fileToSend);
 
+    /**
+     * Send File to the cloud storage container if conditions are met by
+     * current object version.
+     *
+     * @param containerName The name of the cloud storage container.
+     * @param objectName    The name of object in the cloud storage container.
+     * @param fileToSend
+     * @param conditions    Conditions of current object version.
+     * @throws StorageObjectModifiedException If any condition is not met.
+     * @see BlobConditions
+     */
+    String send(String containerName, String objectName, File fileToSend, BlobConditions conditions);
+
+    /**
+     * Send File to the cloud storage container in parts uploaded in parallel
+     * and committed as single object. Files not larger than multipart
+     * threshold, or files sent to cloud storage without multipart upload
+     * support, are sent as with {@link #send(String, String, File)}.
+     *
+     * @param containerName The name of the cloud storage container.
+     * @param objectName    The name of object in the cloud storage container.
+     * @param fileToSend
+     * @param settings      Part size, parallelism and retry settings.
+     * @see MultipartUploader
+     */
+    String sendInParts(String containerName, String objectName, File fileToSend, MultipartUploadSettings settings);
+
     /**
      * Invokes {@link #send(String, String, InputStream)} with default container
      * name which must be provided in template (implementation class).
@@ -148,6 +218,20 @@ public interface StorageOperations {
      */
     String send(String containerName, String objectName, InputStream is);
 
+    /**
+     * Open stream writing container object of unknown length. Written data is
+     * collected into parts which are uploaded while producer keeps writing,
+     * write blocks while maximum amount of parts is being uploaded. Object is
+     * created when stream is closed, failed part upload fails following write
+     * or close with IOException.
+     *
+     * @param containerName The name of the cloud storage container.
+     * @param objectName    The name of object in the cloud storage container.
+     * @return Stream which must be closed to complete object upload.
+     * @see StreamingUploadOutputStream
+     */
+    OutputStream openForWrite(String containerName, String objectName);
+
     /**
      * Invokes {@link #receiveAsString(String, String)} with default container
      * name which must be provided in template (implementation class).
@@ -197,6 +281,24 @@ public interface StorageOperations {
      */
     String receiveAndSaveToFile(String containerName, String objectName, File toFile);
 
+    /**
+     * Receive the object from cloud storage container with range requests
+     * sent in parallel and save it to specified file. Objects not larger than
+     * multipart threshold, or objects received from cloud storage without
+     * range request support, are received as with
+     * {@link #receiveAndSaveToFile(String, String, File)}.
+     *
+     * @param containerName The name of the cloud storage container.
+     * @param objectName    The name of object in the cloud storage container to be
+     *                      received.
+     * @param toFile        The file where response should be saved.
+     * @param settings      Range size, parallelism and retry settings.
+     * @throws StorageObjectModifiedException
+     *          Will be thrown if object is modified while it is received.
+     * @see MultipartDownloader
+     */
+    String receiveInParts(String containerName, String objectName, File toFile, MultipartDownloadSettings settings);
+
     /**
      * Invokes {@link #receiveAsInputStream(String, String)} with default
      * container name which must be provided in template (implementation class).
@@ -221,6 +323,47 @@ public interface StorageOperations {
      */
     InputStream receiveAsInputStream(String containerName, String objectName);
 
+    /**
+     * Receive the object with its details from cloud storage container,
+     * unless object ETag matches given ETag (conditional request with
+     * 'If-None-Match' header), so unchanged object content is not transferred.
+     *
+     * @param containerName The name of the cloud storage container.
+     * @param objectName    The name of object in the cloud storage container to be
+     *                      received.
+     * @param eTag          ETag of object version already known to caller, or
+     *                      <code>null</code> to receive object unconditionally.
+     * @return Object details and content, or <code>null</code> if object ETag
+     *         matches given ETag.
+     */
+    BlobContent receiveIfNoneMatch(String containerName, String objectName, String eTag);
+
+    /**
+     * Receive the object with its details from cloud storage container if
+     * conditions are met, so unchanged object content is not transferred.
+     *
+     * @param containerName The name of the cloud storage container.
+     * @param objectName    The name of object in the cloud storage container to be
+     *                      received.
+     * @param conditions    Conditions of current object version.
+     * @return Object details and content, or <code>null</code> if
+     *         'If-None-Match' or 'If-Modified-Since' condition is not met.
+     * @throws StorageObjectModifiedException If 'If-Match' or
+     *          'If-Unmodified-Since' condition is not met.
+     * @see BlobConditions
+     */
+    BlobContent receive(String containerName, String objectName, BlobConditions conditions);
+
+    /**
+     * Get details of the object in cloud storage container (HEAD request),
+     * without transferring its content.
+     *
+     * @param containerName The name of the cloud storage container.
+     * @param objectName    The name of object in the cloud storage container.
+     * @return Object details, or <code>null</code> if object does not exist.
+     */
+    BlobDetails getBlobDetails(String containerName, String objectName);
+
     /**
      * Invokes {@link #deleteObject(String, String)} with default container name
      * which must be provided in template (implementation class).
@@ -238,5 +381,111 @@ public interface StorageOperations {
      */
     void deleteObject(String containerName, String objectName);
 
+    /**
+     * Delete the object from cloud storage container if conditions are met by
+     * current object version.
+     *
+     * @param containerName The name of the cloud storage container.
+     * @param objectName    The name of object in the cloud storage container.
+     * @param conditions    Conditions of current object version.
+     * @throws StorageObjectModifiedException If any condition is not met.
+     * @see BlobConditions
+     */
+    void deleteObject(String containerName, String objectName, BlobConditions conditions);
+
+    // **********************************
+    // COPY/MOVE
+    // **********************************
+
+    /**
+     * Copy the object to another name and/or container. Object content is
+     * copied by cloud storage service if provider supports server side copy,
+     * otherwise content is streamed through this template without local
+     * copy.
+     *
+     * @param srcContainerName The name of the source container.
+     * @param srcObjectName    The name of the object to copy.
+     * @param dstContainerName The name of the destination container.
+     * @param dstObjectName    The name of the object copy, existing object is
+     *                         replaced.
+     * @return The name of the object copy.
+     */
+    String copy(String srcContainerName, String srcObjectName, String dstContainerName, String dstObjectName);
+
+    /**
+     * Move the object to another name and/or container. Object is copied as
+     * by {@link #copy(String, String, String, String)} and source object is
+     * deleted after successful copy. Cloud storage services have no atomic
+     * rename, both objects exist until source object is deleted.
+     *
+     * @param srcContainerName The name of the source container.
+     * @param srcObjectName    The name of the object to move.
+     * @param dstContainerName The name of the destination container.
+     * @param dstObjectName    The new name of the object, existing object is
+     *                         replaced.
+     * @return The new name of the object.
+     */
+    String move(String srcContainerName, String srcObjectName, String dstContainerName, String dstObjectName);
+
+    // **********************************
+    // BATCH
+    // **********************************
+
+    /**
+     * Send files to the cloud storage container with bounded concurrency.
+     *
+     * @param containerName  The name of the cloud storage container.
+     * @param filesToSend    Files to send by object name.
+     * @param maxConcurrency Maximum amount of files sent at the same time.
+     * @return Send results and failures by object name.
+     * @see StorageBatchOperations
+     */
+    BatchResult<String> sendAll(String containerName, Map<String, File> filesToSend, int maxConcurrency);
+
+    /**
+     * Receive objects from the cloud storage container and save them to
+     * specified files with bounded concurrency.
+     *
+     * @param containerName    The name of the cloud storage container.
+     * @param objectsToReceive Files where objects should be saved by object
+     *                         name.
+     * @param maxConcurrency   Maximum amount of objects received at the same
+     *                         time.
+     * @return Receive results and failures by object name.
+     * @see StorageBatchOperations
+     */
+    BatchResult<String> receiveAll(String containerName, Map<String, File> objectsToReceive, int maxConcurrency);
+
+    /**
+     * Delete objects from the cloud storage container with bounded
+     * concurrency.
+     *
+     * @param containerName  The name of the cloud storage container.
+     * @param objectNames
+     * @param maxConcurrency Maximum amount of objects deleted at the same time.
+     * @return Delete failures by object name.
+     * @see StorageBatchOperations
+     */
+    BatchResult<Void> deleteAll(String containerName, Collection<String> objectNames, int maxConcurrency);
+
+    /**
+     * Copy all objects whose names start with given prefix with bounded
+     * concurrency, see {@link #copy(String, String, String, String)}. Source
+     * prefix of copied object name is replaced with destination prefix.
+     *
+     * @param srcContainerName The name of the source container.
+     * @param srcPrefix        Prefix of names of objects to copy, empty to copy
+     *                         all container objects.
+     * @param dstContainerName The name of the destination container.
+     * @param dstPrefix        Prefix of object copy names, empty to keep source
+     *                         names without source prefix.
+     * @param maxConcurrency   Maximum amount of objects copied at the same
+     *                         time.
+     * @return Names of object copies and failures by source object name.
+     * @see StorageBatchOperations
+     */
+    BatchResult<String> copyAll(String srcContainerName, String srcPrefix, String dstContainerName,
+                                String dstPrefix, int maxConcurrency);
+
     String createdSignedUrl(String containerName, String objectName, Date expiryDate);
 }
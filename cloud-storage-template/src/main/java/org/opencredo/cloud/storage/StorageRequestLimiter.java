@@ -0,0 +1,342 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits rate and concurrency of requests to single cloud storage account
+ * and to every container of the account. Rate is limited by token bucket,
+ * concurrency by semaphore. Rate is slowed down when request is throttled by
+ * cloud storage, and gradually restored by requests which are not throttled.
+ * <p>
+ * Limits of containers without requests in flight and with full, not slowed
+ * down token bucket are discarded when there are more of them than
+ * {@link RequestLimitSettings#getMaxContainerLimits()}.
+ * <p>
+ * Single limiter instance should be shared by all
+ * {@link RateLimitingStorageOperations} decorators of templates using the same
+ * account.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class StorageRequestLimiter {
+    private static final Logger LOG = LoggerFactory.getLogger(StorageRequestLimiter.class);
+
+    private final RequestLimitSettings settings;
+
+    private final Limit accountLimit;
+
+    private final ConcurrentMap<String, Limit> containerLimits = new ConcurrentHashMap<String, Limit>();
+
+    private final AtomicLong acquiredCount = new AtomicLong();
+
+    private final AtomicLong waitTime = new AtomicLong();
+
+    private final AtomicLong throttledCount = new AtomicLong();
+
+    /**
+     * @param settings
+     */
+    public StorageRequestLimiter(RequestLimitSettings settings) {
+        super();
+        Validate.notNull(settings, "Request limit settings must be set");
+        this.settings = settings;
+        this.accountLimit = new Limit(settings.getRequestsPerSecond(), settings.getMaxConcurrentRequests());
+    }
+
+    /**
+     * Wait until request to given container is allowed. Every acquired
+     * request must be released with {@link #release(String, RuntimeException)}.
+     * 
+     * @param containerName
+     *            Container name, or <code>null</code> if request is not
+     *            related to single container.
+     * @throws InterruptedException
+     */
+    public void acquire(String containerName) throws InterruptedException {
+        long start = System.nanoTime();
+        Limit containerLimit = enterContainerLimit(containerName);
+        boolean acquired = false;
+        try {
+            if (containerLimit != null) {
+                containerLimit.acquire();
+            }
+            try {
+                accountLimit.acquire();
+            } catch (InterruptedException e) {
+                if (containerLimit != null) {
+                    containerLimit.cancel();
+                }
+                throw e;
+            }
+            acquired = true;
+        } finally {
+            if (!acquired && containerLimit != null) {
+                containerLimit.exit();
+            }
+        }
+        acquiredCount.incrementAndGet();
+        waitTime.addAndGet(System.nanoTime() - start);
+    }
+
+    /**
+     * Release request acquired with {@link #acquire(String)}.
+     * 
+     * @param containerName
+     * @param failure
+     *            Request failure, or <code>null</code> if request succeeded.
+     */
+    public void release(String containerName, RuntimeException failure) {
+        boolean throttled = isThrottled(failure);
+        if (throttled) {
+            throttledCount.incrementAndGet();
+            LOG.debug("Request to container '{}' has been throttled, slow down", containerName);
+        }
+        accountLimit.release(throttled);
+        // Limit entered by acquire is not discarded until it is released
+        Limit containerLimit = containerName == null ? null : containerLimits.get(containerName);
+        if (containerLimit != null) {
+            containerLimit.release(throttled);
+            containerLimit.exit();
+        }
+    }
+
+    private boolean isThrottled(RuntimeException failure) {
+        return failure instanceof StorageCommunicationException
+                && settings.getThrottlingStatusCodes().contains(
+                        ((StorageCommunicationException) failure).getStatusCode());
+    }
+
+    /**
+     * @param containerName
+     * @return Limit of container marked as used, so it is not discarded, or
+     *         <code>null</code> if container requests are not limited.
+     */
+    private Limit enterContainerLimit(String containerName) {
+        if (containerName == null
+                || (settings.getContainerRequestsPerSecond() == 0 && settings.getContainerMaxConcurrentRequests() == 0)) {
+            return null;
+        }
+        while (true) {
+            Limit limit = containerLimits.get(containerName);
+            if (limit == null) {
+                Limit created = new Limit(settings.getContainerRequestsPerSecond(), settings
+                        .getContainerMaxConcurrentRequests());
+                // Entered before published, so it is not discarded as idle
+                created.enter();
+                limit = containerLimits.putIfAbsent(containerName, created);
+                if (limit == null) {
+                    if (containerLimits.size() > settings.getMaxContainerLimits()) {
+                        discardIdleContainerLimits();
+                    }
+                    return created;
+                }
+            }
+            if (limit.enter()) {
+                return limit;
+            }
+            // Limit has been discarded meanwhile
+        }
+    }
+
+    private void discardIdleContainerLimits() {
+        int discarded = 0;
+        for (Map.Entry<String, Limit> entry : containerLimits.entrySet()) {
+            if (entry.getValue().discardIfIdle()) {
+                containerLimits.remove(entry.getKey(), entry.getValue());
+                discarded++;
+            }
+        }
+        LOG.debug("Discarded {} idle container limits, {} left", discarded, containerLimits.size());
+    }
+
+    /**
+     * @return Available account request permits, or {@link Integer#MAX_VALUE}
+     *         if concurrency is not limited.
+     */
+    public int getAvailablePermits() {
+        return accountLimit.getAvailablePermits();
+    }
+
+    /**
+     * @param containerName
+     * @return Available container request permits, or
+     *         {@link Integer#MAX_VALUE} if concurrency is not limited.
+     */
+    public int getAvailablePermits(String containerName) {
+        Limit limit = containerLimits.get(containerName);
+        if (limit != null) {
+            return limit.getAvailablePermits();
+        }
+        int maxConcurrentRequests = settings.getContainerMaxConcurrentRequests();
+        return maxConcurrentRequests == 0 ? Integer.MAX_VALUE : maxConcurrentRequests;
+    }
+
+    /**
+     * @return Current account request rate, or {@link Double#POSITIVE_INFINITY}
+     *         if rate is not limited.
+     */
+    public double getCurrentRate() {
+        return accountLimit.getRate();
+    }
+
+    /**
+     * @param containerName
+     * @return Current container request rate, or
+     *         {@link Double#POSITIVE_INFINITY} if rate is not limited.
+     */
+    public double getCurrentRate(String containerName) {
+        Limit limit = containerLimits.get(containerName);
+        if (limit != null) {
+            return limit.getRate();
+        }
+        double requestsPerSecond = settings.getContainerRequestsPerSecond();
+        return requestsPerSecond == 0 ? Double.POSITIVE_INFINITY : requestsPerSecond;
+    }
+
+    /**
+     * @return Amount of containers with limit state kept.
+     */
+    public int getContainerLimitCount() {
+        return containerLimits.size();
+    }
+
+    /**
+     * @return Amount of acquired requests.
+     */
+    public long getAcquiredCount() {
+        return acquiredCount.get();
+    }
+
+    /**
+     * @return Total time in milliseconds requests waited to be acquired.
+     */
+    public long getTotalWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(waitTime.get());
+    }
+
+    /**
+     * @return Average time in milliseconds request waited to be acquired.
+     */
+    public double getAverageWaitTime() {
+        long acquired = acquiredCount.get();
+        return acquired == 0 ? 0 : (double) waitTime.get() / TimeUnit.MILLISECONDS.toNanos(1) / acquired;
+    }
+
+    /**
+     * @return Amount of requests throttled by cloud storage.
+     */
+    public long getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    /**
+     * Rate and concurrency limit of account or single container.
+     */
+    private class Limit {
+
+        private final TokenBucket bucket;
+
+        private final Semaphore semaphore;
+
+        /**
+         * Amount of acquired requests, or -1 if limit has been discarded.
+         */
+        private final AtomicInteger users = new AtomicInteger();
+
+        Limit(double requestsPerSecond, int maxConcurrentRequests) {
+            this.bucket = requestsPerSecond == 0 ? null : new TokenBucket(requestsPerSecond, requestsPerSecond
+                    * settings.getMinRateFraction(), Math.max(1, requestsPerSecond));
+            this.semaphore = maxConcurrentRequests == 0 ? null : new Semaphore(maxConcurrentRequests, true);
+        }
+
+        void acquire() throws InterruptedException {
+            if (bucket != null) {
+                TimeUnit.NANOSECONDS.sleep(bucket.reserve());
+            }
+            if (semaphore != null) {
+                semaphore.acquire();
+            }
+        }
+
+        void release(boolean throttled) {
+            if (semaphore != null) {
+                semaphore.release();
+            }
+            if (bucket != null) {
+                if (throttled) {
+                    bucket.slowDown(settings.getSlowDownFactor());
+                } else {
+                    bucket.speedUp(settings.getSpeedUpFraction());
+                }
+            }
+        }
+
+        /**
+         * Release request permit without changing rate.
+         */
+        void cancel() {
+            if (semaphore != null) {
+                semaphore.release();
+            }
+        }
+
+        /**
+         * @return <code>false</code> if limit has been discarded.
+         */
+        boolean enter() {
+            while (true) {
+                int count = users.get();
+                if (count < 0) {
+                    return false;
+                }
+                if (users.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void exit() {
+            users.decrementAndGet();
+        }
+
+        /**
+         * @return <code>true</code> if limit was not used and has been
+         *         discarded, so it will not be entered anymore.
+         */
+        boolean discardIfIdle() {
+            return (bucket == null || bucket.isIdle()) && users.compareAndSet(0, -1);
+        }
+
+        int getAvailablePermits() {
+            return semaphore == null ? Integer.MAX_VALUE : semaphore.availablePermits();
+        }
+
+        double getRate() {
+            return bucket == null ? Double.POSITIVE_INFINITY : bucket.getRate();
+        }
+    }
+}
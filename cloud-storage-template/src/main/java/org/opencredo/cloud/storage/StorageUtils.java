@@ -21,58 +21,173 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 
 /**
- * Utility class.
+ * Utility class. File writes are done through NIO channels: file sources are
+ * transferred without copying data through Java heap, stream sources are read
+ * to per-thread direct buffer.
  *
  * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
  */
 public final class StorageUtils {
 
+    /**
+     * Size of direct buffer used to write stream to file.
+     */
+    public static final int STREAM_BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Maximum amount of bytes transferred between channels with single call.
+     */
+    private static final long MAX_TRANSFER_SIZE = 64 * 1024 * 1024;
+
+    private static final FileWriteOptions DEFAULT_WRITE_OPTIONS = new FileWriteOptions();
+
+    private static final ThreadLocal<ByteBuffer> streamBuffers = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(STREAM_BUFFER_SIZE);
+        }
+    };
+
     private StorageUtils() {
     }
 
     /**
-     * Write InputStream to provided class.
+     * Write InputStream to provided file.
      *
      * @param is     Input stream.
-     * @param toFile Class where input stream should be written.
+     * @param toFile File where input stream should be written.
      * @throws IOException
      */
     public static void writeStreamToFile(InputStream is, File toFile) throws IOException {
-        OutputStream os = null;
+        writeStreamToFile(is, toFile, DEFAULT_WRITE_OPTIONS);
+    }
+
+    /**
+     * Write InputStream to provided file. File input stream is transferred
+     * from its channel directly.
+     *
+     * @param is      Input stream.
+     * @param toFile  File where input stream should be written.
+     * @param options
+     * @throws IOException
+     */
+    public static void writeStreamToFile(InputStream is, File toFile, FileWriteOptions options) throws IOException {
+        File target = options.isAtomic() ? createTempFile(toFile) : toFile;
+        boolean completed = false;
+        FileOutputStream os = new FileOutputStream(target);
         try {
-            os = new FileOutputStream(toFile);
-            byte[] buffer = new byte[4096];
-            for (int n; (n = is.read(buffer)) != -1; ) {
-                os.write(buffer, 0, n);
+            FileChannel out = os.getChannel();
+            if (is instanceof FileInputStream) {
+                FileChannel in = ((FileInputStream) is).getChannel();
+                long position = in.position();
+                // Leave stream at the end as if it had been read
+                in.position(position + transfer(in, position, in.size() - position, out));
+            } else {
+                copy(Channels.newChannel(is), out);
             }
+            if (options.isSync()) {
+                out.force(true);
+            }
+            completed = true;
         } finally {
-            if (os != null) {
-                os.close();
+            os.close();
+            if (target != toFile) {
+                completeTempFile(target, toFile, completed);
             }
         }
     }
 
+    /**
+     * Write file to provided file.
+     *
+     * @param inFile
+     * @param toFile
+     * @throws IOException
+     */
     public static void writeFileToFile(File inFile, File toFile) throws IOException {
-        OutputStream os = null;
-        InputStream is = null;
-        try {
+        writeFileToFile(inFile, toFile, DEFAULT_WRITE_OPTIONS);
+    }
 
-            is = new FileInputStream(inFile);
-            os = new FileOutputStream(toFile);
-            byte[] buffer = new byte[4096];
-            for (int n; (n = is.read(buffer)) != -1; ) {
-                os.write(buffer, 0, n);
-            }
+    /**
+     * Write file to provided file. Data is transferred between file channels,
+     * so operating system may copy it without passing it through Java heap.
+     *
+     * @param inFile
+     * @param toFile
+     * @param options
+     * @throws IOException
+     */
+    public static void writeFileToFile(File inFile, File toFile, FileWriteOptions options) throws IOException {
+        FileInputStream is = new FileInputStream(inFile);
+        try {
+            writeStreamToFile(is, toFile, options);
         } finally {
-            if (os != null) {
-                os.close();
+            is.close();
+        }
+    }
+
+    /**
+     * @param in
+     * @param position
+     * @param count
+     * @param out
+     * @return Amount of transferred bytes.
+     * @throws IOException
+     */
+    private static long transfer(FileChannel in, long position, long count, FileChannel out) throws IOException {
+        long transferred = 0;
+        while (transferred < count) {
+            long n = in.transferTo(position + transferred, Math.min(count - transferred, MAX_TRANSFER_SIZE), out);
+            if (n <= 0) {
+                // Source file has been truncated
+                break;
             }
-            if (is != null) {
-                is.close();
+            transferred += n;
+        }
+        return transferred;
+    }
+
+    /**
+     * @param in
+     * @param out
+     * @throws IOException
+     */
+    private static void copy(ReadableByteChannel in, FileChannel out) throws IOException {
+        ByteBuffer buffer = streamBuffers.get();
+        buffer.clear();
+        while (in.read(buffer) != -1) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
             }
+            buffer.clear();
+        }
+    }
+
+    private static File createTempFile(File toFile) throws IOException {
+        File dir = toFile.getAbsoluteFile().getParentFile();
+        return File.createTempFile("." + toFile.getName() + ".", ".tmp", dir);
+    }
+
+    /**
+     * Rename completed temporary file to target file, or delete it if write
+     * has failed.
+     */
+    private static void completeTempFile(File tempFile, File toFile, boolean completed) throws IOException {
+        if (!completed) {
+            tempFile.delete();
+            return;
+        }
+        // Rename does not replace existing file on some platforms
+        if (!tempFile.renameTo(toFile) && !(toFile.delete() && tempFile.renameTo(toFile))) {
+            tempFile.delete();
+            throw new IOException("Failed to rename temporary file '" + tempFile + "' to '" + toFile + "'");
         }
     }
 
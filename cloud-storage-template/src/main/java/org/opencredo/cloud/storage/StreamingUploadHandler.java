@@ -0,0 +1,35 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+/**
+ * Cloud storage specific steps of upload driven by
+ * {@link StreamingUploadOutputStream}. Data not larger than single part is
+ * uploaded with single request, larger data is uploaded as multipart upload.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public interface StreamingUploadHandler extends MultipartUploadHandler {
+
+    /**
+     * Upload whole blob content with single request. Multipart upload is not
+     * begun in this case.
+     * 
+     * @param part
+     *            The only part of blob content.
+     * @throws Exception
+     */
+    void uploadSingle(FilePart part) throws Exception;
+}
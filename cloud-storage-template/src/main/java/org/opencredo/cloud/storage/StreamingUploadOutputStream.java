@@ -0,0 +1,327 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import org.apache.commons.lang.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Uploads data of unknown length while it is being written. Written bytes are
+ * collected into part buffers, every full part is uploaded by one of
+ * {@link MultipartUploadSettings#getParallelism()} threads and retried as in
+ * {@link MultipartUploader}. Write blocks while all upload threads are busy,
+ * so memory used by stream is bounded by parallelism + 1 part buffers. Data
+ * which fits into single part is uploaded with single request when stream is
+ * closed.
+ * <p>
+ * Upload is committed by {@link #close()}. Failed part upload aborts upload
+ * and fails following write or close. Producer which fails to write all data
+ * should {@link #abort()} upload instead of closing the stream.
+ * <p>
+ * Stream is not thread safe, it is expected to be written by single producer.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ * @see StreamingUploadHandler
+ */
+public class StreamingUploadOutputStream extends OutputStream {
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingUploadOutputStream.class);
+
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
+    private final String description;
+
+    private final int partSize;
+
+    private final int parallelism;
+
+    private final StreamingUploadHandler handler;
+
+    private final MultipartUploader uploader;
+
+    private final Semaphore uploadPermits;
+
+    private final BlockingQueue<byte[]> freeBuffers = new LinkedBlockingQueue<byte[]>();
+
+    private final List<Future<String>> partIds = new ArrayList<Future<String>>();
+
+    private volatile Exception failure;
+
+    private ExecutorService executor;
+
+    private byte[] buffer;
+
+    private int count;
+
+    private boolean closed;
+
+    /**
+     * @param description
+     *            Uploaded blob description used in log and exception
+     *            messages.
+     * @param settings
+     * @param partSize
+     *            Part size adjusted to cloud storage limits.
+     * @param handler
+     */
+    public StreamingUploadOutputStream(String description, MultipartUploadSettings settings, int partSize,
+            StreamingUploadHandler handler) {
+        Validate.notNull(settings, "Multipart upload settings must be set");
+        Validate.isTrue(partSize > 0, "Part size must be positive");
+        Validate.notNull(handler, "Streaming upload handler must be set");
+        this.description = description;
+        this.partSize = partSize;
+        this.parallelism = settings.getParallelism();
+        this.handler = handler;
+        this.uploader = new MultipartUploader(settings);
+        this.uploadPermits = new Semaphore(parallelism);
+        this.buffer = new byte[Math.min(INITIAL_BUFFER_SIZE, partSize)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureCapacity(1);
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (len > 0) {
+            int n = Math.min(len, ensureCapacity(len));
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Data is uploaded in whole parts only, flush has no effect.
+     * 
+     * @see java.io.OutputStream#flush()
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+    }
+
+    /**
+     * Upload remaining data and commit upload. Waits until all parts are
+     * uploaded.
+     * 
+     * @see java.io.OutputStream#close()
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (executor == null) {
+                LOG.debug("Upload {} with single request", description);
+                handler.uploadSingle(new BufferPart(1, buffer, count));
+                return;
+            }
+            submitPart();
+            List<String> ids = new ArrayList<String>(partIds.size());
+            for (Future<String> partId : partIds) {
+                ids.add(partId.get());
+            }
+            handler.commit(ids);
+            LOG.debug("Uploaded {} in {} parts", description, ids.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abortUpload();
+            throw new InterruptedIOException("Upload of " + description + " has been interrupted");
+        } catch (ExecutionException e) {
+            abortUpload();
+            throw uploadFailed(e.getCause());
+        } catch (IOException e) {
+            abortUpload();
+            throw e;
+        } catch (Exception e) {
+            abortUpload();
+            throw uploadFailed(e);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Abort upload, so blob is not created or modified. Has no effect if
+     * stream is already closed.
+     */
+    public void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            abortUpload();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * @param required
+     * @return Free space in buffer, at least 1 byte.
+     * @throws IOException
+     */
+    private int ensureCapacity(int required) throws IOException {
+        ensureOpen();
+        if (count == buffer.length) {
+            if (buffer.length < partSize) {
+                // Small blobs do not need whole part buffer
+                byte[] grown = new byte[(int) Math.min(partSize, Math.max(2L * buffer.length, (long) count
+                        + required))];
+                System.arraycopy(buffer, 0, grown, 0, count);
+                buffer = grown;
+            } else {
+                // Full part is submitted only when more data follows
+                submitPart();
+                buffer = nextBuffer();
+                count = 0;
+            }
+        }
+        return buffer.length - count;
+    }
+
+    private void submitPart() throws IOException {
+        if (executor == null) {
+            try {
+                handler.begin();
+            } catch (Exception e) {
+                abort();
+                throw uploadFailed(e);
+            }
+            executor = Executors.newFixedThreadPool(parallelism, new TransferThreadFactory("streaming-upload-"));
+        }
+
+        try {
+            uploadPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort();
+            throw new InterruptedIOException("Upload of " + description + " has been interrupted");
+        }
+        checkFailure();
+
+        final byte[] data = buffer;
+        final FilePart part = new BufferPart(partIds.size() + 1, data, count);
+        partIds.add(executor.submit(new Callable<String>() {
+            public String call() throws Exception {
+                try {
+                    return uploader.uploadPart(part, handler);
+                } catch (Exception e) {
+                    failure = e;
+                    throw e;
+                } finally {
+                    freeBuffers.offer(data);
+                    uploadPermits.release();
+                }
+            }
+        }));
+    }
+
+    private byte[] nextBuffer() {
+        byte[] free = freeBuffers.poll();
+        return free != null ? free : new byte[partSize];
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Upload stream of " + description + " is closed");
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            abort();
+            throw uploadFailed(failure);
+        }
+    }
+
+    private void abortUpload() {
+        for (Future<String> partId : partIds) {
+            partId.cancel(true);
+        }
+        if (executor != null) {
+            try {
+                handler.abort();
+            } catch (Exception e) {
+                LOG.warn("Failed to abort upload of " + description, e);
+            }
+        }
+    }
+
+    private void release() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        buffer = null;
+        freeBuffers.clear();
+    }
+
+    private IOException uploadFailed(Throwable cause) {
+        IOException e = new IOException("Upload of " + description + " has failed");
+        e.initCause(cause);
+        return e;
+    }
+
+    /**
+     * Part of data collected in memory buffer.
+     */
+    private static class BufferPart extends FilePart {
+
+        private final byte[] data;
+
+        BufferPart(int partNumber, byte[] data, int length) {
+            super(null, partNumber, 0, length);
+            this.data = data;
+        }
+
+        @Override
+        public InputStream openStream() {
+            return new ByteArrayInputStream(data, 0, (int) getLength());
+        }
+
+        @Override
+        public String toString() {
+            return "BufferPart[partNumber=" + getPartNumber() + ",length=" + getLength() + "]";
+        }
+    }
+}
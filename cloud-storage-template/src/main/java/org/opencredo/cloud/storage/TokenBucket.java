@@ -0,0 +1,116 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket with adjustable rate. Tokens are reserved in advance: caller
+ * which finds bucket empty takes token from the future and waits until it is
+ * refilled, so waiting callers are served in order of reservation.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double maxRate;
+
+    private final double minRate;
+
+    private final double capacity;
+
+    private double rate;
+
+    private double tokens;
+
+    private long refilledAt;
+
+    /**
+     * @param maxRate
+     *            Tokens per second.
+     * @param minRate
+     *            Lowest rate bucket can be slowed down to.
+     * @param capacity
+     *            Maximum amount of tokens accumulated while bucket is not
+     *            used.
+     */
+    TokenBucket(double maxRate, double minRate, double capacity) {
+        this.maxRate = maxRate;
+        this.minRate = Math.min(minRate, maxRate);
+        this.capacity = capacity;
+        this.rate = maxRate;
+        this.tokens = capacity;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * Reserve single token.
+     * 
+     * @return Time in nanoseconds caller must wait before using reserved
+     *         token.
+     */
+    synchronized long reserve() {
+        refill();
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) (-tokens * NANOS_PER_SECOND / rate);
+    }
+
+    /**
+     * Multiply current rate by factor, not going below min rate.
+     * 
+     * @param factor
+     */
+    synchronized void slowDown(double factor) {
+        refill();
+        rate = Math.max(minRate, rate * factor);
+    }
+
+    /**
+     * Increase current rate by fraction of max rate, not going above max
+     * rate.
+     * 
+     * @param fraction
+     */
+    synchronized void speedUp(double fraction) {
+        if (rate < maxRate) {
+            refill();
+            rate = Math.min(maxRate, rate + maxRate * fraction);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if bucket is full and not slowed down, so it
+     *         is equal to a new bucket.
+     */
+    synchronized boolean isIdle() {
+        refill();
+        return rate >= maxRate && tokens >= capacity;
+    }
+
+    /**
+     * @return Current rate in tokens per second.
+     */
+    synchronized double getRate() {
+        return rate;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * rate / NANOS_PER_SECOND);
+        refilledAt = now;
+    }
+}
@@ -0,0 +1,96 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Limits every request of single multipart transfer executed through
+ * {@link RateLimitingStorageOperations}. Request permit acquired for whole
+ * transfer call is released when the first request of transfer is limited,
+ * so transfer does not wait for permit it holds itself. Templates which
+ * transfer file with single request keep it until the call returns.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ * @see MultipartUploader
+ * @see MultipartDownloader
+ */
+class TransferRequestLimit {
+
+    private final StorageRequestLimiter limiter;
+
+    private final String containerName;
+
+    private final AtomicBoolean callPermitHeld = new AtomicBoolean(true);
+
+    /**
+     * @param limiter
+     * @param containerName
+     *            Container of transfer, which permit has already been
+     *            acquired for whole transfer call.
+     */
+    TransferRequestLimit(StorageRequestLimiter limiter, String containerName) {
+        this.limiter = limiter;
+        this.containerName = containerName;
+    }
+
+    /**
+     * Executes single request of transfer when it is allowed by limiter.
+     * 
+     * @param request
+     * @return
+     * @throws Exception
+     */
+    <T> T execute(Callable<T> request) throws Exception {
+        releaseCallPermit(null);
+        limiter.acquire(containerName);
+
+        RuntimeException failure = null;
+        try {
+            return request.call();
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            limiter.release(containerName, failure);
+        }
+    }
+
+    /**
+     * Releases permit of whole transfer call, unless it has been released
+     * already.
+     * 
+     * @param failure
+     *            Call failure, or <code>null</code>.
+     */
+    void releaseCallPermit(RuntimeException failure) {
+        if (callPermitHeld.compareAndSet(true, false)) {
+            limiter.release(containerName, failure);
+        }
+    }
+
+    /**
+     * @param limit
+     *            Limit of transfer, or <code>null</code> if its requests are
+     *            not limited.
+     * @param request
+     * @return
+     * @throws Exception
+     */
+    static <T> T execute(TransferRequestLimit limit, Callable<T> request) throws Exception {
+        return limit == null ? request.call() : limit.execute(request);
+    }
+}
@@ -0,0 +1,44 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named daemon threads for multipart transfers, batch and
+ * asynchronous operations, so pending work does not prevent JVM shutdown.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+class TransferThreadFactory implements ThreadFactory {
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final String namePrefix;
+
+    /**
+     * @param namePrefix
+     */
+    TransferThreadFactory(String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
+
+    public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, namePrefix + THREAD_COUNTER.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
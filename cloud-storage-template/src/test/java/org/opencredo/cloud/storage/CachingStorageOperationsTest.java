@@ -0,0 +1,245 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class CachingStorageOperationsTest {
+
+    private StorageOperations operations;
+
+    private BlobCacheSettings settings;
+
+    private File cacheDirectory;
+
+    private CachingStorageOperations cachingOperations;
+
+    @Before
+    public void setUp() {
+        operations = mock(StorageOperations.class);
+        settings = new BlobCacheSettings();
+        settings.setTimeToLive(60000);
+        cacheDirectory = new File(System.getProperty("java.io.tmpdir"), "blob-cache-test-" + System.nanoTime());
+        cachingOperations = new CachingStorageOperations(operations, settings);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        cachingOperations.clear();
+        FileUtils.deleteDirectory(cacheDirectory);
+    }
+
+    @Test
+    public void testCachedObjectServedDuringTimeToLive() {
+        stubContent("container", "blob", "etag1", "content");
+
+        assertEquals("content", cachingOperations.receiveAsString("container", "blob"));
+        assertEquals("content", cachingOperations.receiveAsString("container", "blob"));
+
+        verify(operations, times(1)).receiveIfNoneMatch("container", "blob", null);
+        assertEquals(1, cachingOperations.getMissCount());
+        assertEquals(1, cachingOperations.getHitCount());
+        assertEquals(0, cachingOperations.getRevalidationCount());
+    }
+
+    @Test
+    public void testExpiredObjectRevalidated() {
+        settings.setTimeToLive(0);
+        stubContent("container", "blob", "etag1", "content");
+
+        assertEquals("content", cachingOperations.receiveAsString("container", "blob"));
+        // Not modified
+        assertEquals("content", cachingOperations.receiveAsString("container", "blob"));
+
+        verify(operations).receiveIfNoneMatch("container", "blob", "etag1");
+        assertEquals(1, cachingOperations.getMissCount());
+        assertEquals(1, cachingOperations.getHitCount());
+        assertEquals(1, cachingOperations.getRevalidationCount());
+    }
+
+    @Test
+    public void testModifiedObjectReceivedOnRevalidation() {
+        settings.setTimeToLive(0);
+        stubContent("container", "blob", "etag1", "content");
+        assertEquals("content", cachingOperations.receiveAsString("container", "blob"));
+
+        when(operations.receiveIfNoneMatch("container", "blob", "etag1")).thenReturn(
+                content("container", "blob", "etag2", "changed"));
+
+        assertEquals("changed", cachingOperations.receiveAsString("container", "blob"));
+        assertEquals(2, cachingOperations.getMissCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvictedFromMemory() {
+        settings.setMaxMemorySize(10);
+        stubContent("container", "a", "etag", "aaaa");
+        stubContent("container", "b", "etag", "bbbb");
+        stubContent("container", "c", "etag", "cccc");
+
+        cachingOperations.receiveAsString("container", "a");
+        cachingOperations.receiveAsString("container", "b");
+        cachingOperations.receiveAsString("container", "a");
+        cachingOperations.receiveAsString("container", "c");
+
+        assertEquals(1, cachingOperations.getEvictionCount());
+        assertEquals(8, cachingOperations.getMemorySize());
+        cachingOperations.receiveAsString("container", "a");
+        cachingOperations.receiveAsString("container", "b");
+        verify(operations, times(1)).receiveIfNoneMatch("container", "a", null);
+        verify(operations, times(2)).receiveIfNoneMatch("container", "b", null);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvictedFromDisk() {
+        settings.setMaxMemoryObjectSize(2);
+        settings.setCacheDirectory(cacheDirectory);
+        settings.setMaxDiskSize(10);
+        stubContent("container", "a", "etag", "aaaa");
+        stubContent("container", "b", "etag", "bbbb");
+        stubContent("container", "c", "etag", "cccc");
+
+        assertEquals("aaaa", cachingOperations.receiveAsString("container", "a"));
+        assertEquals("bbbb", cachingOperations.receiveAsString("container", "b"));
+        assertEquals("cccc", cachingOperations.receiveAsString("container", "c"));
+
+        assertEquals(0, cachingOperations.getMemorySize());
+        assertEquals(8, cachingOperations.getDiskSize());
+        assertEquals(1, cachingOperations.getEvictionCount());
+        assertEquals(2, cacheDirectory.list().length);
+        cachingOperations.receiveAsString("container", "c");
+        verify(operations, times(1)).receiveIfNoneMatch("container", "c", null);
+    }
+
+    @Test
+    public void testCopyAndMoveInvalidateChangedObjects() {
+        stubContent("container", "src", "etag", "src");
+        stubContent("container", "dst", "etag", "dst");
+        cachingOperations.receiveAsString("container", "src");
+        cachingOperations.receiveAsString("container", "dst");
+
+        cachingOperations.copy("container", "src", "container", "dst");
+        cachingOperations.receiveAsString("container", "src");
+        cachingOperations.receiveAsString("container", "dst");
+        verify(operations, times(1)).receiveIfNoneMatch("container", "src", null);
+        verify(operations, times(2)).receiveIfNoneMatch("container", "dst", null);
+
+        cachingOperations.move("container", "src", "container", "dst");
+        cachingOperations.receiveAsString("container", "src");
+        cachingOperations.receiveAsString("container", "dst");
+        verify(operations, times(2)).receiveIfNoneMatch("container", "src", null);
+        verify(operations, times(3)).receiveIfNoneMatch("container", "dst", null);
+    }
+
+    @Test
+    public void testDeleteContainerInvalidatesItsObjects() {
+        stubContent("container", "blob", "etag", "content");
+        stubContent("other", "blob", "etag", "content");
+        cachingOperations.receiveAsString("container", "blob");
+        cachingOperations.receiveAsString("other", "blob");
+
+        cachingOperations.deleteContainer("container");
+        cachingOperations.receiveAsString("container", "blob");
+        cachingOperations.receiveAsString("other", "blob");
+
+        verify(operations, times(2)).receiveIfNoneMatch("container", "blob", null);
+        verify(operations, times(1)).receiveIfNoneMatch("other", "blob", null);
+    }
+
+    @Test
+    public void testObjectReceivedBeforeConcurrentSendNotCached() {
+        when(operations.receiveIfNoneMatch("container", "blob", null)).thenAnswer(new Answer<BlobContent>() {
+            public BlobContent answer(InvocationOnMock invocation) {
+                // Object is replaced while its old content is being received
+                cachingOperations.send("container", "blob", "new");
+                return content("container", "blob", "etag1", "old");
+            }
+        }).thenReturn(content("container", "blob", "etag2", "new"));
+
+        assertEquals("old", cachingOperations.receiveAsString("container", "blob"));
+        assertEquals("new", cachingOperations.receiveAsString("container", "blob"));
+        assertEquals(0, cachingOperations.getHitCount());
+    }
+
+    @Test
+    public void testObjectReceivedDuringSendOfOtherObjectCached() {
+        when(operations.receiveIfNoneMatch("container", "blob", null)).thenAnswer(new Answer<BlobContent>() {
+            public BlobContent answer(InvocationOnMock invocation) {
+                cachingOperations.send("container", "other", "new");
+                return content("container", "blob", "etag1", "content");
+            }
+        });
+
+        assertEquals("content", cachingOperations.receiveAsString("container", "blob"));
+        assertEquals("content", cachingOperations.receiveAsString("container", "blob"));
+        assertEquals(1, cachingOperations.getHitCount());
+    }
+
+    @Test
+    public void testObjectReceivedBeforeConcurrentDeleteNotCachedOnDisk() {
+        settings.setMaxMemoryObjectSize(2);
+        settings.setCacheDirectory(cacheDirectory);
+        when(operations.receiveIfNoneMatch("container", "blob", null)).thenAnswer(new Answer<BlobContent>() {
+            public BlobContent answer(InvocationOnMock invocation) {
+                cachingOperations.deleteObject("container", "blob");
+                return content("container", "blob", "etag1", "old");
+            }
+        });
+
+        assertEquals("old", cachingOperations.receiveAsString("container", "blob"));
+
+        assertEquals(0, cachingOperations.getDiskSize());
+        assertEquals("Detached object file left behind", 0, cacheDirectory.list().length);
+    }
+
+    /**
+     * Object is not modified since it has been received for the first time.
+     */
+    private void stubContent(String containerName, String objectName, final String eTag, final String data) {
+        when(operations.receiveIfNoneMatch(eq(containerName), eq(objectName), anyString())).thenReturn(null);
+        when(operations.receiveIfNoneMatch(containerName, objectName, null)).thenAnswer(new Answer<BlobContent>() {
+            public BlobContent answer(InvocationOnMock invocation) {
+                Object[] args = invocation.getArguments();
+                return content((String) args[0], (String) args[1], eTag, data);
+            }
+        });
+    }
+
+    private BlobContent content(String containerName, String objectName, String eTag, String data) {
+        return new BlobContent(new BlobDetails(containerName, objectName, eTag, new Date(), data.length()),
+                new ByteArrayInputStream(data.getBytes()));
+    }
+}
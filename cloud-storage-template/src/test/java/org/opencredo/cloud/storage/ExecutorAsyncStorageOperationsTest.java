@@ -0,0 +1,193 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class ExecutorAsyncStorageOperationsTest {
+
+    private StorageOperations operations;
+
+    private ExecutorAsyncStorageOperations asyncOperations;
+
+    @Before
+    public void setUp() {
+        operations = mock(StorageOperations.class);
+        asyncOperations = new ExecutorAsyncStorageOperations(operations, 2);
+    }
+
+    @After
+    public void tearDown() {
+        asyncOperations.shutdown();
+    }
+
+    @Test
+    public void testResultDeliveredToFutureAndCallback() throws Exception {
+        when(operations.receiveAsString("container", "blob")).thenReturn("content");
+        RecordingCallback<String> callback = new RecordingCallback<String>();
+
+        Future<String> future = asyncOperations.receiveAsString("container", "blob", callback);
+
+        assertEquals("content", future.get());
+        assertEquals("content", callback.result);
+        assertNull(callback.failure);
+    }
+
+    @Test
+    public void testResultDeliveredWithoutCallback() throws Exception {
+        when(operations.send("container", "blob", "content")).thenReturn("etag");
+
+        assertEquals("etag", asyncOperations.send("container", "blob", "content", null).get());
+    }
+
+    @Test
+    public void testFailureDeliveredToFutureAndCallback() throws Exception {
+        StorageException failure = new StorageCommunicationException("Connection reset");
+        doThrow(failure).when(operations).deleteObject("container", "blob");
+        RecordingCallback<Void> callback = new RecordingCallback<Void>();
+
+        Future<Void> future = asyncOperations.deleteObject("container", "blob", callback);
+
+        try {
+            future.get();
+            fail("Failure should be thrown from future");
+        } catch (ExecutionException e) {
+            assertSame(failure, e.getCause());
+        }
+        assertSame(failure, callback.failure);
+        assertFalse(callback.succeeded);
+    }
+
+    @Test
+    public void testFailingCallbackDoesNotAffectResult() throws Exception {
+        when(operations.receiveAsString("container", "blob")).thenReturn("content");
+        StorageCallback<String> callback = new StorageCallback<String>() {
+            public void onSuccess(String result) {
+                throw new IllegalStateException("Callback failure");
+            }
+
+            public void onFailure(Throwable failure) {
+            }
+        };
+
+        assertEquals("content", asyncOperations.receiveAsString("container", "blob", callback).get());
+    }
+
+    @Test
+    public void testOwnExecutorBoundsConcurrency() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        when(operations.receiveAsString("container", "blob")).thenAnswer(new Answer<String>() {
+            public String answer(InvocationOnMock invocation) throws InterruptedException {
+                int now = running.incrementAndGet();
+                synchronized (maxRunning) {
+                    maxRunning.set(Math.max(maxRunning.get(), now));
+                }
+                Thread.sleep(20);
+                running.decrementAndGet();
+                return "content";
+            }
+        });
+
+        List<Future<String>> futures = new ArrayList<Future<String>>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(asyncOperations.receiveAsString("container", "blob", null));
+        }
+        for (Future<String> future : futures) {
+            assertEquals("content", future.get());
+        }
+        assertTrue("Too many concurrent requests: " + maxRunning, maxRunning.get() <= 2);
+    }
+
+    @Test
+    public void testOwnExecutorShutDown() throws Exception {
+        asyncOperations.shutdown();
+        try {
+            asyncOperations.receiveAsString("container", "blob", null);
+            fail("Own executor should be shut down");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testProvidedExecutorNotShutDown() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ExecutorAsyncStorageOperations shared = new ExecutorAsyncStorageOperations(operations, executor);
+            final CountDownLatch started = new CountDownLatch(1);
+            when(operations.receiveAsString("container", "blob")).thenAnswer(new Answer<String>() {
+                public String answer(InvocationOnMock invocation) {
+                    started.countDown();
+                    return "content";
+                }
+            });
+
+            shared.shutdown();
+            assertFalse(executor.isShutdown());
+            assertEquals("content", shared.receiveAsString("container", "blob", null).get());
+            assertTrue(started.await(1, TimeUnit.SECONDS));
+            verify(operations).receiveAsString("container", "blob");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static class RecordingCallback<T> implements StorageCallback<T> {
+        private volatile T result;
+
+        private volatile boolean succeeded;
+
+        private volatile Throwable failure;
+
+        public void onSuccess(T result) {
+            this.result = result;
+            this.succeeded = true;
+        }
+
+        public void onFailure(Throwable failure) {
+            this.failure = failure;
+        }
+    }
+}
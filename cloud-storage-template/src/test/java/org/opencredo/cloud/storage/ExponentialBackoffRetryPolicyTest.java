@@ -0,0 +1,93 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class ExponentialBackoffRetryPolicyTest {
+
+    private ExponentialBackoffRetryPolicy policy;
+
+    @Before
+    public void setUp() {
+        policy = new ExponentialBackoffRetryPolicy();
+        policy.setMaxAttempts(3);
+        policy.setInitialRetryDelay(100);
+        policy.setMaxRetryDelay(1000);
+    }
+
+    @Test
+    public void testRetryableFailures() {
+        assertTrue(policy.shouldRetry(new StorageCommunicationException(503, "Server busy", null), 1, true));
+        assertTrue(policy.shouldRetry(new StorageCommunicationException(500, "Internal error", null), 1, true));
+        assertTrue(policy.shouldRetry(new StorageCommunicationException(new IOException("Connection reset")), 1,
+                true));
+        assertTrue(policy.shouldRetry(new IllegalStateException(new StorageException(new IOException(
+                "Connection reset"))), 1, true));
+    }
+
+    @Test
+    public void testNotRetryableFailures() {
+        assertFalse(policy.shouldRetry(new StorageCommunicationException(404, "Not found", null), 1, true));
+        assertFalse(policy.shouldRetry(new StorageCommunicationException(403, "Forbidden", null), 1, true));
+        assertFalse(policy.shouldRetry(new StorageObjectModifiedException("Modified"), 1, true));
+        assertFalse(policy.shouldRetry(new StorageResponseHandlingException(new IOException("Bad XML")), 1, true));
+        assertFalse(policy.shouldRetry(new StorageException("Failure"), 1, true));
+    }
+
+    @Test
+    public void testNotIdempotentOperationNotRetried() {
+        assertFalse(policy.shouldRetry(new StorageCommunicationException(503, "Server busy", null), 1, false));
+    }
+
+    @Test
+    public void testGiveUpAfterMaxAttempts() {
+        StorageException e = new StorageCommunicationException(503, "Server busy", null);
+        assertTrue(policy.shouldRetry(e, 2, true));
+        assertFalse(policy.shouldRetry(e, 3, true));
+    }
+
+    @Test
+    public void testRetryDelayWithinExponentialBounds() {
+        for (int attempt = 1; attempt <= 5; attempt++) {
+            long ceiling = Math.min(100L << (attempt - 1), 1000);
+            long max = 0;
+            for (int i = 0; i < 1000; i++) {
+                long delay = policy.getRetryDelay(attempt);
+                assertTrue("Delay " + delay + " of attempt " + attempt, delay >= 0 && delay <= ceiling);
+                max = Math.max(max, delay);
+            }
+            // Delays are spread over whole range
+            assertTrue("Max delay " + max + " of attempt " + attempt, max > ceiling / 2);
+        }
+    }
+
+    @Test
+    public void testRetryDelayOfLateAttemptDoesNotOverflow() {
+        for (int attempt = 60; attempt <= 70; attempt++) {
+            long delay = policy.getRetryDelay(attempt);
+            assertTrue("Delay " + delay + " of attempt " + attempt, delay >= 0 && delay <= 1000);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class MultipartDownloaderTest {
+
+    private File file;
+
+    private byte[] content;
+
+    private MultipartDownloadSettings settings;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("multipart-download", ".bin");
+        content = new byte[10000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        settings = new MultipartDownloadSettings();
+        settings.setRangeSize(1024);
+        settings.setMultipartThreshold(1024);
+        settings.setRetryDelay(1);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testRangesWrittenToTheirPositions() throws IOException {
+        new MultipartDownloader(settings).download(file, new ContentHandler(content.length));
+
+        assertArrayEquals(content, FileUtils.readFileToByteArray(file));
+    }
+
+    @Test
+    public void testUnknownSizeRejected() {
+        try {
+            new MultipartDownloader(settings).download(file, new ContentHandler(BlobDetails.UNKNOWN_CONTENT_LENGTH));
+            fail("Download of object with unknown size should fail");
+        } catch (StorageException e) {
+            assertTrue(e.getMessage().contains("unknown"));
+        }
+    }
+
+    @Test
+    public void testModifiedObjectDeletesFile() {
+        ContentHandler handler = new ContentHandler(content.length) {
+            public InputStream openRange(FilePart range) throws Exception {
+                if (range.getPartNumber() == 3) {
+                    throw new StorageObjectModifiedException("Modified");
+                }
+                return super.openRange(range);
+            }
+        };
+        try {
+            new MultipartDownloader(settings).download(file, handler);
+            fail("Download of modified object should fail");
+        } catch (StorageObjectModifiedException e) {
+            assertFalse(file.exists());
+        }
+    }
+
+    private class ContentHandler implements MultipartDownloadHandler {
+        private final long length;
+
+        ContentHandler(long length) {
+            this.length = length;
+        }
+
+        public long begin() {
+            return length;
+        }
+
+        public InputStream openRange(FilePart range) throws Exception {
+            return new ByteArrayInputStream(content, (int) range.getOffset(), (int) range.getLength());
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class MultipartUploaderTest {
+
+    private File file;
+
+    private MultipartUploadSettings settings;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("multipart-upload", ".bin");
+        FileUtils.writeByteArrayToFile(file, new byte[3000]);
+        settings = new MultipartUploadSettings();
+        settings.setParallelism(1);
+        settings.setMaxPartAttempts(3);
+        settings.setRetryDelay(1);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testCommunicationFailureRetried() {
+        CountingHandler handler = new CountingHandler() {
+            protected void upload(FilePart part, int attempt) {
+                if (part.getPartNumber() == 2 && attempt == 1) {
+                    throw new StorageCommunicationException("Connection reset");
+                }
+            }
+        };
+
+        new MultipartUploader(settings).upload(file, 1024, handler);
+
+        assertEquals(4, handler.attempts.get());
+        assertEquals(3, handler.committed.size());
+        assertEquals(0, handler.aborts.get());
+    }
+
+    @Test
+    public void testPartWhichCannotBeUploadedNotRetried() {
+        CountingHandler handler = new CountingHandler() {
+            protected void upload(FilePart part, int attempt) {
+                if (part.getPartNumber() == 2) {
+                    throw new StorageException("Part %d exceeds limit", part.getPartNumber());
+                }
+            }
+        };
+
+        try {
+            new MultipartUploader(settings).upload(file, 1024, handler);
+            fail("Upload should fail");
+        } catch (StorageException e) {
+            assertTrue(e.getMessage().contains("exceeds limit"));
+        }
+        assertEquals(1, handler.partAttempts.get(1).get());
+        assertEquals(1, handler.aborts.get());
+    }
+
+    @Test
+    public void testFailedPartAbortsUploadAfterAllAttempts() {
+        CountingHandler handler = new CountingHandler() {
+            protected void upload(FilePart part, int attempt) throws IOException {
+                throw new IOException("Connection reset");
+            }
+        };
+
+        try {
+            new MultipartUploader(settings).upload(file, 1024, handler);
+            fail("Upload should fail");
+        } catch (StorageCommunicationException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals(3, handler.partAttempts.get(0).get());
+        assertEquals(1, handler.aborts.get());
+    }
+
+    private static class CountingHandler implements MultipartUploadHandler {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final AtomicInteger aborts = new AtomicInteger();
+
+        final List<AtomicInteger> partAttempts = new ArrayList<AtomicInteger>();
+
+        volatile List<String> committed;
+
+        public void begin() {
+            for (int i = 0; i < 3; i++) {
+                partAttempts.add(new AtomicInteger());
+            }
+        }
+
+        public String uploadPart(FilePart part) throws Exception {
+            attempts.incrementAndGet();
+            upload(part, partAttempts.get(part.getPartNumber() - 1).incrementAndGet());
+            return "part" + part.getPartNumber();
+        }
+
+        protected void upload(FilePart part, int attempt) throws Exception {
+        }
+
+        public void commit(List<String> partIds) {
+            committed = partIds;
+        }
+
+        public void abort() {
+            aborts.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class RateLimitingStorageOperationsTest {
+
+    private StorageOperations operations;
+
+    private StorageRequestLimiter limiter;
+
+    private RateLimitingStorageOperations limitingOperations;
+
+    @Before
+    public void setUp() {
+        operations = mock(StorageOperations.class);
+        RequestLimitSettings settings = new RequestLimitSettings();
+        settings.setMaxConcurrentRequests(2);
+        settings.setContainerMaxConcurrentRequests(1);
+        limiter = new StorageRequestLimiter(settings);
+        limitingOperations = new RateLimitingStorageOperations(operations, limiter);
+    }
+
+    @Test
+    public void testPermitReleasedOnSuccess() {
+        when(operations.receiveAsString("container", "blob")).thenReturn("content");
+
+        assertEquals("content", limitingOperations.receiveAsString("container", "blob"));
+
+        assertEquals(2, limiter.getAvailablePermits());
+        assertEquals(1, limiter.getAvailablePermits("container"));
+        assertEquals(1, limiter.getAcquiredCount());
+    }
+
+    @Test
+    public void testPermitReleasedOnFailure() {
+        when(operations.receiveAsString("container", "blob")).thenThrow(
+                new StorageCommunicationException(503, "Server busy", null));
+
+        try {
+            limitingOperations.receiveAsString("container", "blob");
+            fail("Failure should be thrown");
+        } catch (StorageCommunicationException e) {
+            assertEquals(503, e.getStatusCode());
+        }
+
+        assertEquals(2, limiter.getAvailablePermits());
+        assertEquals(1, limiter.getAvailablePermits("container"));
+        assertEquals(1, limiter.getThrottledCount());
+    }
+
+    @Test
+    public void testUploadCountedInFlightUntilClosed() throws IOException {
+        when(operations.openForWrite("container", "blob")).thenReturn(new ByteArrayOutputStream());
+
+        OutputStream os = limitingOperations.openForWrite("container", "blob");
+        os.write(1);
+        assertEquals(1, limiter.getAvailablePermits());
+        assertEquals(0, limiter.getAvailablePermits("container"));
+
+        os.close();
+        os.close();
+        assertEquals(2, limiter.getAvailablePermits());
+        assertEquals(1, limiter.getAvailablePermits("container"));
+    }
+
+    @Test
+    public void testFailedUploadReleasesPermit() {
+        OutputStream failing = new ByteArrayOutputStream() {
+            @Override
+            public void close() throws IOException {
+                throw new IOException("Connection reset");
+            }
+        };
+        when(operations.openForWrite("container", "blob")).thenReturn(failing);
+
+        OutputStream os = limitingOperations.openForWrite("container", "blob");
+        try {
+            os.close();
+            fail("Upload failure should be thrown");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(2, limiter.getAvailablePermits());
+        assertEquals(1, limiter.getAvailablePermits("container"));
+    }
+
+    @Test
+    public void testFailedUploadOpeningReleasesPermit() {
+        when(operations.openForWrite("container", "blob")).thenThrow(new StorageException("Failure"));
+
+        try {
+            limitingOperations.openForWrite("container", "blob");
+            fail("Failure should be thrown");
+        } catch (StorageException e) {
+            // expected
+        }
+        assertEquals(2, limiter.getAvailablePermits());
+        assertEquals(1, limiter.getAvailablePermits("container"));
+    }
+
+    @Test
+    public void testInterruptedWaitNotExecuted() throws Exception {
+        limiter.acquire("container");
+        Thread.currentThread().interrupt();
+        try {
+            limitingOperations.receiveAsString("container", "blob");
+            fail("Interrupted wait should fail");
+        } catch (StorageException e) {
+            assertTrue(Thread.interrupted());
+        }
+        verify(operations, never()).receiveAsString("container", "blob");
+        limiter.release("container", null);
+        assertEquals(2, limiter.getAvailablePermits());
+        assertEquals(1, limiter.getAvailablePermits("container"));
+    }
+
+    @Test
+    public void testEveryRequestOfMultipartUploadLimited() throws IOException {
+        final File file = File.createTempFile("rate-limited-upload", ".bin");
+        FileUtils.writeByteArrayToFile(file, new byte[3000]);
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        when(operations.sendInParts(eq("container"), eq("blob"), eq(file), any(MultipartUploadSettings.class)))
+                .thenAnswer(new Answer<String>() {
+                    public String answer(InvocationOnMock invocation) {
+                        MultipartUploadSettings settings = (MultipartUploadSettings) invocation.getArguments()[3];
+                        new MultipartUploader(settings).upload(file, 1000, new MultipartUploadHandler() {
+                            public void begin() {
+                            }
+
+                            public String uploadPart(FilePart part) throws Exception {
+                                maxInFlight.set(Math.max(maxInFlight.get(), inFlight.incrementAndGet()));
+                                Thread.sleep(10);
+                                inFlight.decrementAndGet();
+                                return String.valueOf(part.getPartNumber());
+                            }
+
+                            public void commit(List<String> partIds) {
+                            }
+
+                            public void abort() {
+                            }
+                        });
+                        return "blob";
+                    }
+                });
+        MultipartUploadSettings settings = new MultipartUploadSettings();
+        settings.setParallelism(3);
+
+        try {
+            assertEquals("blob", limitingOperations.sendInParts("container", "blob", file, settings));
+        } finally {
+            file.delete();
+        }
+
+        // Parts are uploaded one by one within container concurrency limit
+        assertEquals(1, maxInFlight.get());
+        // Call, begin, three parts and commit
+        assertEquals(6, limiter.getAcquiredCount());
+        assertEquals(2, limiter.getAvailablePermits());
+        assertEquals(1, limiter.getAvailablePermits("container"));
+    }
+
+    @Test
+    public void testSingleRequestTransferCountedAsOneRequest() {
+        final File file = new File("blob");
+        when(operations.sendInParts(eq("container"), eq("blob"), eq(file), any(MultipartUploadSettings.class)))
+                .thenAnswer(new Answer<String>() {
+                    public String answer(InvocationOnMock invocation) {
+                        // Template ignoring settings sends file in single request
+                        assertEquals(0, limiter.getAvailablePermits("container"));
+                        return "blob";
+                    }
+                });
+
+        assertEquals("blob", limitingOperations.sendInParts("container", "blob", file, new MultipartUploadSettings()));
+
+        assertEquals(1, limiter.getAcquiredCount());
+        assertEquals(1, limiter.getAvailablePermits("container"));
+    }
+}
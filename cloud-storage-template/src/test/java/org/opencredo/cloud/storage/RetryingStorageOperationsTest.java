@@ -0,0 +1,164 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.net.SocketException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class RetryingStorageOperationsTest {
+
+    private StorageOperations operations;
+
+    private RetryingStorageOperations retryingOperations;
+
+    @Before
+    public void setUp() {
+        operations = mock(StorageOperations.class);
+        ExponentialBackoffRetryPolicy policy = new ExponentialBackoffRetryPolicy();
+        policy.setMaxAttempts(3);
+        policy.setInitialRetryDelay(0);
+        retryingOperations = new RetryingStorageOperations(operations, policy);
+    }
+
+    @Test
+    public void testTransientFailureRetried() {
+        when(operations.receiveAsString("container", "blob")).thenThrow(serverBusy()).thenReturn("content");
+
+        assertEquals("content", retryingOperations.receiveAsString("container", "blob"));
+        verify(operations, times(2)).receiveAsString("container", "blob");
+        assertEquals(2, retryingOperations.getAttemptCount());
+        assertEquals(1, retryingOperations.getRetryCount());
+        assertEquals(0, retryingOperations.getGiveUpCount());
+    }
+
+    @Test
+    public void testGiveUpAfterMaxAttempts() {
+        StorageException failure = serverBusy();
+        doThrow(failure).when(operations).deleteObject("container", "blob");
+
+        try {
+            retryingOperations.deleteObject("container", "blob");
+            fail("Failure of last attempt should be thrown");
+        } catch (StorageException e) {
+            assertSame(failure, e);
+        }
+        verify(operations, times(3)).deleteObject("container", "blob");
+        assertEquals(3, retryingOperations.getAttemptCount());
+        assertEquals(2, retryingOperations.getRetryCount());
+        assertEquals(1, retryingOperations.getGiveUpCount());
+    }
+
+    @Test
+    public void testNotRetryableFailureNotRetried() {
+        when(operations.receiveAsString("container", "blob")).thenThrow(
+                new StorageCommunicationException(404, "Not found", null));
+
+        try {
+            retryingOperations.receiveAsString("container", "blob");
+            fail("Not found failure should be thrown");
+        } catch (StorageCommunicationException e) {
+            assertEquals(404, e.getStatusCode());
+        }
+        verify(operations, times(1)).receiveAsString("container", "blob");
+        assertEquals(0, retryingOperations.getRetryCount());
+    }
+
+    @Test
+    public void testConnectionResetWhileReadingBodyRetried() {
+        File toFile = new File("blob");
+        // Templates report body read failures as communication failures
+        when(operations.receiveAndSaveToFile("container", "blob", toFile)).thenThrow(
+                new StorageCommunicationException(new SocketException("Connection reset"),
+                        "Reading response from container '%s' blob '%s' has failed", "container", "blob")).thenReturn(
+                toFile.getAbsolutePath());
+
+        assertEquals(toFile.getAbsolutePath(), retryingOperations.receiveAndSaveToFile("container", "blob", toFile));
+        verify(operations, times(2)).receiveAndSaveToFile("container", "blob", toFile);
+        assertEquals(1, retryingOperations.getRetryCount());
+    }
+
+    @Test
+    public void testConsumedStreamNotResent() {
+        InputStream is = new ByteArrayInputStream("content".getBytes());
+        when(operations.send("container", "blob", is)).thenThrow(serverBusy());
+
+        try {
+            retryingOperations.send("container", "blob", is);
+            fail("Send failure should be thrown");
+        } catch (StorageCommunicationException e) {
+            assertEquals(503, e.getStatusCode());
+        }
+        verify(operations, times(1)).send("container", "blob", is);
+    }
+
+    @Test
+    public void testConditionalSendNotRetried() {
+        BlobConditions conditions = new BlobConditions();
+        conditions.setIfNoneMatch(BlobConditions.ANY_ETAG);
+        when(operations.send("container", "blob", "content", conditions)).thenThrow(serverBusy());
+
+        try {
+            retryingOperations.send("container", "blob", "content", conditions);
+            fail("Send failure should be thrown");
+        } catch (StorageCommunicationException e) {
+            assertEquals(503, e.getStatusCode());
+        }
+        verify(operations, times(1)).send("container", "blob", "content", conditions);
+    }
+
+    @Test
+    public void testContainerExistingOnRetryCreated() {
+        when(operations.createContainer("container")).thenThrow(serverBusy()).thenThrow(
+                new StorageCommunicationException(409, "Container already exists", null));
+
+        assertTrue(retryingOperations.createContainer("container"));
+        verify(operations, times(2)).createContainer("container");
+    }
+
+    @Test
+    public void testContainerExistingOnFirstAttemptNotCreated() {
+        when(operations.createContainer("container")).thenThrow(
+                new StorageCommunicationException(409, "Container already exists", null));
+
+        try {
+            retryingOperations.createContainer("container");
+            fail("Conflict should be thrown");
+        } catch (StorageCommunicationException e) {
+            assertEquals(409, e.getStatusCode());
+        }
+    }
+
+    private StorageCommunicationException serverBusy() {
+        return new StorageCommunicationException(503, "Server busy", null);
+    }
+}
@@ -0,0 +1,143 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class StorageBatchOperationsTest {
+
+    private StorageOperations operations;
+
+    private StorageBatchOperations batchOperations;
+
+    @Before
+    public void setUp() {
+        operations = mock(StorageOperations.class);
+        batchOperations = new StorageBatchOperations(operations, 3);
+    }
+
+    @Test
+    public void testResultsAndFailuresCollectedPerObject() {
+        File file1 = new File("file1");
+        File file2 = new File("file2");
+        File file3 = new File("file3");
+        Map<String, File> files = new LinkedHashMap<String, File>();
+        files.put("blob1", file1);
+        files.put("blob2", file2);
+        files.put("blob3", file3);
+        StorageException failure = new StorageCommunicationException("Connection reset");
+        when(operations.send("container", "blob1", file1)).thenReturn("etag1");
+        when(operations.send("container", "blob2", file2)).thenThrow(failure);
+        when(operations.send("container", "blob3", file3)).thenReturn("etag3");
+
+        BatchResult<String> result = batchOperations.sendAll("container", files);
+
+        assertFalse(result.isSuccessful());
+        assertEquals(2, result.getResults().size());
+        assertEquals("etag1", result.getResults().get("blob1"));
+        assertEquals("etag3", result.getResults().get("blob3"));
+        assertEquals(1, result.getFailures().size());
+        assertSame(failure, result.getFailures().get("blob2"));
+    }
+
+    @Test
+    public void testDeleteAll() {
+        doThrow(new StorageException("Not found")).when(operations).deleteObject("container", "blob2");
+
+        BatchResult<Void> result = batchOperations.deleteAll("container", Arrays.asList("blob1", "blob2"));
+
+        assertTrue(result.getResults().containsKey("blob1"));
+        assertTrue(result.getFailures().containsKey("blob2"));
+        verify(operations).deleteObject("container", "blob1");
+    }
+
+    @Test
+    public void testConcurrencyBounded() {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        when(operations.receiveAndSaveToFile(eq("container"), any(String.class), any(File.class))).thenAnswer(
+                new Answer<String>() {
+                    public String answer(InvocationOnMock invocation) throws InterruptedException {
+                        int now = running.incrementAndGet();
+                        synchronized (maxRunning) {
+                            maxRunning.set(Math.max(maxRunning.get(), now));
+                        }
+                        Thread.sleep(10);
+                        running.decrementAndGet();
+                        return "path";
+                    }
+                });
+        Map<String, File> objects = new LinkedHashMap<String, File>();
+        for (int i = 0; i < 20; i++) {
+            objects.put("blob" + i, new File("file" + i));
+        }
+
+        BatchResult<String> result = batchOperations.receiveAll("container", objects);
+
+        assertTrue(result.isSuccessful());
+        assertEquals(20, result.getResults().size());
+        assertTrue("Too many concurrent operations: " + maxRunning, maxRunning.get() <= 3);
+    }
+
+    @Test
+    public void testCopyAllRewritesPrefix() {
+        when(operations.iterateContainerObjectDetails(eq("src"), any(BlobListOptions.class))).thenReturn(
+                Arrays.asList(details("in/a"), details("in/b/c")).iterator());
+        when(operations.copy("src", "in/a", "dst", "out/a")).thenReturn("etag-a");
+        when(operations.copy("src", "in/b/c", "dst", "out/b/c")).thenReturn("etag-c");
+
+        BatchResult<String> result = batchOperations.copyAll("src", "in/", "dst", "out/");
+
+        assertTrue(result.isSuccessful());
+        assertEquals("etag-a", result.getResults().get("in/a"));
+        assertEquals("etag-c", result.getResults().get("in/b/c"));
+    }
+
+    @Test
+    public void testEmptyBatch() {
+        BatchResult<Void> result = batchOperations.deleteAll("container", Arrays.<String> asList());
+
+        assertTrue(result.isSuccessful());
+        assertTrue(result.getResults().isEmpty());
+    }
+
+    private BlobDetails details(String name) {
+        return new BlobDetails("src", name, "etag", new Date());
+    }
+}
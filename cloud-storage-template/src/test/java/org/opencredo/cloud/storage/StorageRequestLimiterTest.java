@@ -0,0 +1,167 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class StorageRequestLimiterTest {
+
+    private RequestLimitSettings settings;
+
+    @Before
+    public void setUp() {
+        settings = new RequestLimitSettings();
+    }
+
+    @Test
+    public void testConcurrencyLimited() throws Exception {
+        settings.setMaxConcurrentRequests(2);
+        final StorageRequestLimiter limiter = new StorageRequestLimiter(settings);
+        limiter.acquire("container");
+        limiter.acquire("container");
+        assertEquals(0, limiter.getAvailablePermits());
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiting = new Thread() {
+            public void run() {
+                try {
+                    limiter.acquire("container");
+                    acquired.countDown();
+                } catch (InterruptedException e) {
+                    // test failure
+                }
+            }
+        };
+        waiting.start();
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+
+        limiter.release("container", null);
+        assertTrue(acquired.await(1, TimeUnit.SECONDS));
+        assertEquals(3, limiter.getAcquiredCount());
+    }
+
+    @Test
+    public void testRateLimited() throws Exception {
+        settings.setRequestsPerSecond(50);
+        StorageRequestLimiter limiter = new StorageRequestLimiter(settings);
+
+        long start = System.nanoTime();
+        // First 50 requests are served from full bucket
+        for (int i = 0; i < 60; i++) {
+            limiter.acquire(null);
+            limiter.release(null, null);
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("Elapsed " + elapsed + "ms", elapsed >= 150);
+    }
+
+    @Test
+    public void testRateAdaptedToThrottling() throws Exception {
+        settings.setRequestsPerSecond(100);
+        settings.setContainerRequestsPerSecond(10);
+        settings.setSlowDownFactor(0.5);
+        settings.setSpeedUpFraction(0.1);
+        StorageRequestLimiter limiter = new StorageRequestLimiter(settings);
+
+        limiter.acquire("container");
+        limiter.release("container", new StorageCommunicationException(503, "Server busy", null));
+        assertEquals(50, limiter.getCurrentRate(), 0.001);
+        assertEquals(5, limiter.getCurrentRate("container"), 0.001);
+        assertEquals(1, limiter.getThrottledCount());
+
+        limiter.acquire("container");
+        limiter.release("container", new StorageCommunicationException(404, "Not found", null));
+        assertEquals(60, limiter.getCurrentRate(), 0.001);
+        assertEquals(6, limiter.getCurrentRate("container"), 0.001);
+        assertEquals(1, limiter.getThrottledCount());
+    }
+
+    @Test
+    public void testIdleContainerLimitsDiscarded() throws Exception {
+        settings.setContainerMaxConcurrentRequests(1);
+        settings.setMaxContainerLimits(2);
+        StorageRequestLimiter limiter = new StorageRequestLimiter(settings);
+
+        limiter.acquire("busy");
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire("container" + i);
+            limiter.release("container" + i, null);
+        }
+        assertTrue("Container limits kept: " + limiter.getContainerLimitCount(),
+                limiter.getContainerLimitCount() <= 2);
+
+        // Limit of container with request in flight is kept
+        assertEquals(0, limiter.getAvailablePermits("busy"));
+        limiter.release("busy", null);
+        assertEquals(1, limiter.getAvailablePermits("busy"));
+    }
+
+    @Test
+    public void testSlowedDownContainerLimitNotDiscarded() throws Exception {
+        settings.setContainerRequestsPerSecond(10);
+        settings.setMaxContainerLimits(1);
+        StorageRequestLimiter limiter = new StorageRequestLimiter(settings);
+
+        limiter.acquire("throttled");
+        limiter.release("throttled", new StorageCommunicationException(503, "Server busy", null));
+        limiter.acquire("other");
+        limiter.release("other", null);
+
+        assertEquals(5, limiter.getCurrentRate("throttled"), 0.001);
+    }
+
+    @Test
+    public void testInterruptedAcquireReleasesContainerPermit() throws Exception {
+        settings.setMaxConcurrentRequests(1);
+        settings.setContainerMaxConcurrentRequests(1);
+        final StorageRequestLimiter limiter = new StorageRequestLimiter(settings);
+        limiter.acquire("other");
+
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread waiting = new Thread() {
+            public void run() {
+                try {
+                    limiter.acquire("container");
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        };
+        waiting.start();
+        // Container permit is acquired, account permit is awaited
+        while (limiter.getAvailablePermits("container") != 0) {
+            Thread.sleep(1);
+        }
+        waiting.interrupt();
+        waiting.join(1000);
+
+        assertTrue(failure.get() instanceof InterruptedException);
+        assertEquals(1, limiter.getAvailablePermits("container"));
+        assertEquals(1, limiter.getAcquiredCount());
+    }
+}
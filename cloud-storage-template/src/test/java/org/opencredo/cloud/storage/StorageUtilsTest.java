@@ -0,0 +1,163 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class StorageUtilsTest {
+
+    private File dir;
+
+    private byte[] content;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = new File(System.getProperty("java.io.tmpdir"), "storage-utils-test-" + System.nanoTime());
+        FileUtils.forceMkdir(dir);
+        // Larger than stream buffer, so it is written in several chunks
+        content = new byte[StorageUtils.STREAM_BUFFER_SIZE * 2 + 100];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i % 251);
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testWriteStreamToFile() throws IOException {
+        File toFile = new File(dir, "stream.bin");
+        StorageUtils.writeStreamToFile(new ByteArrayInputStream(content), toFile);
+
+        assertArrayEquals(content, FileUtils.readFileToByteArray(toFile));
+    }
+
+    @Test
+    public void testWriteFileStreamFromItsPosition() throws IOException {
+        File inFile = new File(dir, "in.bin");
+        FileUtils.writeByteArrayToFile(inFile, content);
+        File toFile = new File(dir, "out.bin");
+
+        FileInputStream in = new FileInputStream(inFile);
+        try {
+            assertEquals(100, in.skip(100));
+            StorageUtils.writeStreamToFile(in, toFile);
+            assertEquals(-1, in.read());
+        } finally {
+            in.close();
+        }
+
+        byte[] expected = new byte[content.length - 100];
+        System.arraycopy(content, 100, expected, 0, expected.length);
+        assertArrayEquals(expected, FileUtils.readFileToByteArray(toFile));
+    }
+
+    @Test
+    public void testAtomicWriteReplacesExistingFile() throws IOException {
+        File inFile = new File(dir, "in.bin");
+        FileUtils.writeByteArrayToFile(inFile, content);
+        File toFile = new File(dir, "out.bin");
+        FileUtils.writeStringToFile(toFile, "old content");
+
+        FileWriteOptions options = new FileWriteOptions();
+        options.setAtomic(true);
+        options.setSync(true);
+        StorageUtils.writeFileToFile(inFile, toFile, options);
+
+        assertArrayEquals(content, FileUtils.readFileToByteArray(toFile));
+        assertEquals("Temporary file left behind", 2, dir.list().length);
+    }
+
+    @Test
+    public void testFailedAtomicWriteKeepsTargetAndDeletesTempFile() throws IOException {
+        File toFile = new File(dir, "out.bin");
+        FileUtils.writeStringToFile(toFile, "old content");
+
+        InputStream failing = new ByteArrayInputStream(content) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                if (pos > 1000) {
+                    throw new IllegalStateException("Connection reset");
+                }
+                return super.read(b, off, Math.min(len, 1000));
+            }
+        };
+        FileWriteOptions options = new FileWriteOptions();
+        options.setAtomic(true);
+        try {
+            StorageUtils.writeStreamToFile(failing, toFile, options);
+            fail("Write of failing stream should fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        assertEquals("old content", FileUtils.readFileToString(toFile));
+        assertEquals("Temporary file left behind", 1, dir.list().length);
+    }
+
+    @Test
+    public void testResponseBodyReadFailureRecognized() {
+        InputStream reset = new InputStream() {
+            private int read;
+
+            @Override
+            public int read() throws IOException {
+                if (read++ > 1000) {
+                    throw new SocketException("Connection reset");
+                }
+                return 0;
+            }
+        };
+        ResponseBodyInputStream body = new ResponseBodyInputStream(reset);
+        try {
+            StorageUtils.writeStreamToFile(body, new File(dir, "out.bin"));
+            fail("Write of reset stream should fail");
+        } catch (IOException e) {
+            assertTrue(body.isCauseOf(e));
+        }
+    }
+
+    @Test
+    public void testFileWriteFailureNotRecognizedAsResponseBodyFailure() {
+        ResponseBodyInputStream body = new ResponseBodyInputStream(new ByteArrayInputStream(content));
+        try {
+            StorageUtils.writeStreamToFile(body, new File(new File(dir, "missing"), "out.bin"));
+            fail("Write to missing directory should fail");
+        } catch (IOException e) {
+            assertFalse(body.isCauseOf(e));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class TokenBucketTest {
+
+    @Test
+    public void testTokensReservedFromFutureWhenEmpty() {
+        TokenBucket bucket = new TokenBucket(10, 1, 2);
+
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+        long wait = bucket.reserve();
+        assertTrue("Wait " + wait, wait > TimeUnit.MILLISECONDS.toNanos(50)
+                && wait <= TimeUnit.MILLISECONDS.toNanos(100));
+        // Next caller waits for the next token
+        assertTrue(bucket.reserve() > wait);
+    }
+
+    @Test
+    public void testSlowDownNotBelowMinRate() {
+        TokenBucket bucket = new TokenBucket(10, 2, 10);
+
+        bucket.slowDown(0.5);
+        assertEquals(5, bucket.getRate(), 0.001);
+        bucket.slowDown(0.5);
+        bucket.slowDown(0.5);
+        assertEquals(2, bucket.getRate(), 0.001);
+    }
+
+    @Test
+    public void testSpeedUpNotAboveMaxRate() {
+        TokenBucket bucket = new TokenBucket(10, 1, 10);
+        bucket.slowDown(0.1);
+
+        bucket.speedUp(0.2);
+        assertEquals(3, bucket.getRate(), 0.001);
+        bucket.speedUp(0.5);
+        assertEquals(8, bucket.getRate(), 0.001);
+        bucket.speedUp(0.5);
+        assertEquals(10, bucket.getRate(), 0.001);
+    }
+
+    @Test
+    public void testIdleOnlyWhenFullAndNotSlowedDown() {
+        TokenBucket bucket = new TokenBucket(1000, 1, 1);
+        assertTrue(bucket.isIdle());
+
+        bucket.reserve();
+        assertFalse(bucket.isIdle());
+
+        bucket.slowDown(0.5);
+        sleep(10);
+        assertFalse(bucket.isIdle());
+
+        bucket.speedUp(1);
+        assertTrue(bucket.isIdle());
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
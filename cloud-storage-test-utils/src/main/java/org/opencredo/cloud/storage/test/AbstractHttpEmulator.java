@@ -0,0 +1,393 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.util.Assert;
+import org.springframework.util.FileCopyUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Base of embedded HTTP server emulating cloud storage REST API on local
+ * port. Handles server lifecycle, request counters and fault injection
+ * (latency added to every request and failed requests), so tests and
+ * benchmarks can run without network and exercise retry and throttling
+ * handling deterministically.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public abstract class AbstractHttpEmulator {
+
+    /**
+     * Status code of injected failures unless other is set, the status cloud
+     * storage services use to throttle requests.
+     */
+    public static final int DEFAULT_FAILURE_STATUS_CODE = 503;
+
+    private static final String RFC1123_DATE_PATTERN = "EEE, dd MMM yyyy HH:mm:ss 'GMT'";
+
+    private final AtomicLong requestCount = new AtomicLong();
+
+    private final AtomicLong injectedFailureCount = new AtomicLong();
+
+    private final ConcurrentMap<String, AtomicLong> operationCounts = new ConcurrentHashMap<String, AtomicLong>();
+
+    private final AtomicInteger failNextRequests = new AtomicInteger();
+
+    private final Random random = new Random();
+
+    private volatile long latency;
+
+    private volatile double failureRate;
+
+    private volatile int failureStatusCode = DEFAULT_FAILURE_STATUS_CODE;
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    /**
+     * Start server on free local port.
+     * 
+     * @throws IOException
+     */
+    public synchronized void start() throws IOException {
+        Assert.state(server == null, "Emulator is already started");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                String name = AbstractHttpEmulator.this.getClass().getSimpleName() + "-" + threadCount.incrementAndGet();
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    handleExchange(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * Stop server, stored data is kept until emulator is discarded.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    /**
+     * @return Port server listens on.
+     */
+    public synchronized int getPort() {
+        Assert.state(server != null, "Emulator is not started");
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return Base URL of server, e.g. <code>http://127.0.0.1:8080</code>.
+     */
+    public String getEndpoint() {
+        return "http://127.0.0.1:" + getPort();
+    }
+
+    /**
+     * @param latency
+     *            Time in milliseconds every request is delayed by before it
+     *            is handled.
+     */
+    public void setLatency(long latency) {
+        Assert.isTrue(latency >= 0, "Latency must not be negative");
+        this.latency = latency;
+    }
+
+    /**
+     * @param failureRate
+     *            Probability of request to fail with failure status code,
+     *            from 0 to 1.
+     */
+    public void setFailureRate(double failureRate) {
+        Assert.isTrue(failureRate >= 0 && failureRate <= 1, "Failure rate must be between 0 and 1");
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * @param failureStatusCode
+     *            Status code of injected failures.
+     * @see #DEFAULT_FAILURE_STATUS_CODE
+     */
+    public void setFailureStatusCode(int failureStatusCode) {
+        Assert.isTrue(failureStatusCode >= 400, "Failure status code must be error status code");
+        this.failureStatusCode = failureStatusCode;
+    }
+
+    /**
+     * Fail given amount of next requests with failure status code.
+     * 
+     * @param count
+     */
+    public void failNextRequests(int count) {
+        Assert.isTrue(count >= 0, "Count must not be negative");
+        failNextRequests.set(count);
+    }
+
+    /**
+     * @return Amount of requests received, including failed requests.
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @param operation
+     *            Operation name, as named by cloud storage REST API (e.g.
+     *            <code>PutBlob</code>).
+     * @return Amount of requests of given operation handled without injected
+     *         failure.
+     */
+    public long getOperationCount(String operation) {
+        AtomicLong count = operationCounts.get(operation);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return Amount of requests failed by fault injection.
+     */
+    public long getInjectedFailureCount() {
+        return injectedFailureCount.get();
+    }
+
+    /**
+     * Reset request counters and fault injection settings.
+     */
+    public void reset() {
+        requestCount.set(0);
+        injectedFailureCount.set(0);
+        operationCounts.clear();
+        failNextRequests.set(0);
+        latency = 0;
+        failureRate = 0;
+        failureStatusCode = DEFAULT_FAILURE_STATUS_CODE;
+    }
+
+    /**
+     * Handle request which has not been failed by fault injection.
+     * 
+     * @param exchange
+     * @param body
+     *            Request body, empty if request has no body.
+     * @throws IOException
+     */
+    protected abstract void handle(HttpExchange exchange, byte[] body) throws IOException;
+
+    /**
+     * Send error response in format of emulated cloud storage.
+     * 
+     * @param exchange
+     * @param statusCode
+     * @param errorCode
+     *            Error code, or <code>null</code> to use default error code
+     *            of status code.
+     * @param message
+     * @throws IOException
+     */
+    protected abstract void sendError(HttpExchange exchange, int statusCode, String errorCode, String message)
+            throws IOException;
+
+    /**
+     * Count request of given operation.
+     * 
+     * @param operation
+     */
+    protected void countOperation(String operation) {
+        AtomicLong count = operationCounts.get(operation);
+        if (count == null) {
+            AtomicLong newCount = new AtomicLong();
+            count = operationCounts.putIfAbsent(operation, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * @param exchange
+     * @param statusCode
+     * @param body
+     *            Response body, or <code>null</code> if response has no body.
+     * @throws IOException
+     */
+    protected void sendResponse(HttpExchange exchange, int statusCode, byte[] body) throws IOException {
+        if (body == null || "HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(statusCode, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(statusCode, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            OutputStream os = exchange.getResponseBody();
+            try {
+                os.write(body);
+            } finally {
+                os.close();
+            }
+        }
+    }
+
+    /**
+     * @param rawQuery
+     *            URL encoded query string, or <code>null</code>.
+     * @return Decoded query parameters, parameters without value are mapped
+     *         to empty string.
+     */
+    protected static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<String, String>();
+        if (rawQuery == null || rawQuery.length() == 0) {
+            return params;
+        }
+        for (String param : rawQuery.split("&")) {
+            int i = param.indexOf('=');
+            if (i == -1) {
+                params.put(decode(param), "");
+            } else {
+                params.put(decode(param.substring(0, i)), decode(param.substring(i + 1)));
+            }
+        }
+        return params;
+    }
+
+    /**
+     * @param date
+     * @return Date formatted as HTTP date (RFC 1123).
+     */
+    protected static String formatDate(Date date) {
+        DateFormat format = new SimpleDateFormat(RFC1123_DATE_PATTERN, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(date);
+    }
+
+    /**
+     * @param date
+     *            HTTP date (RFC 1123), or <code>null</code>.
+     * @return Parsed date, or <code>null</code> if date is not set or can not
+     *         be parsed.
+     */
+    protected static Date parseDate(String date) {
+        if (date == null) {
+            return null;
+        }
+        DateFormat format = new SimpleDateFormat(RFC1123_DATE_PATTERN, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return format.parse(date);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param s
+     * @return XML escaped string.
+     */
+    protected static String escapeXml(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static String decode(String s) {
+        try {
+            return URLDecoder.decode(s, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void handleExchange(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        byte[] body = readBody(exchange);
+
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        if (isFailureInjected()) {
+            injectedFailureCount.incrementAndGet();
+            sendError(exchange, failureStatusCode, null, "Failure injected by emulator");
+            return;
+        }
+
+        handle(exchange, body);
+    }
+
+    private boolean isFailureInjected() {
+        for (int n = failNextRequests.get(); n > 0; n = failNextRequests.get()) {
+            if (failNextRequests.compareAndSet(n, n - 1)) {
+                return true;
+            }
+        }
+        if (failureRate > 0) {
+            synchronized (random) {
+                return random.nextDouble() < failureRate;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        InputStream is = exchange.getRequestBody();
+        return FileCopyUtils.copyToByteArray(is);
+    }
+}
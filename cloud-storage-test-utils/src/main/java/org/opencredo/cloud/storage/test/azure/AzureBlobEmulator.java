@@ -0,0 +1,781 @@
+/* Copyright 2009-2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencredo.cloud.storage.test.azure;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.binary.Base64;
+import org.opencredo.cloud.storage.test.AbstractHttpEmulator;
+import org.springframework.util.Assert;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Embedded emulator of Azure Blob service REST API (version 2009-09-19),
+ * implementing operations used by Azure template: create, delete and list
+ * containers, put, get (including ranges and conditional requests), get
+ * properties, copy and delete blobs, put block and put block list, and list
+ * blobs with prefix, delimiter and markers. Blobs are kept in memory. Requests must
+ * be signed with SharedKey of emulated account unless signature validation is
+ * disabled.
+ * <p>
+ * Emulated account is addressed path-style, as with Azure storage emulator,
+ * so Azure template should be configured with {@link #getBlobUrlFormat()}.
+ * 
+ * @author Tomas Lukosius (tomas.lukosius@opencredo.com)
+ */
+public class AzureBlobEmulator extends AbstractHttpEmulator {
+
+    /**
+     * Account name of Azure storage emulator.
+     */
+    public static final String DEFAULT_ACCOUNT_NAME = "devstoreaccount1";
+
+    /**
+     * Publicly known secret key of Azure storage emulator account.
+     */
+    public static final String DEFAULT_SECRET_KEY = "Eby8vdM02xNOcqFlqUwJPLlmEtlCDXJ1OUzFT50uSRZ6IFsuFq2UVErCz4I6tq/K1SZFPTOtr/KBHBeksoGMGw==";
+
+    private static final String STORAGE_VERSION = "2009-09-19";
+
+    private static final int DEFAULT_MAX_RESULTS = 5000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String[] STANDARD_HEADERS = {"Content-Encoding", "Content-Language", "Content-Length",
+            "Content-MD5", "Content-Type", "Date", "If-Modified-Since", "If-Match", "If-None-Match",
+            "If-Unmodified-Since", "Range"};
+
+    private static final Pattern BLOCK_LIST_ITEM = Pattern
+            .compile("<(Latest|Committed|Uncommitted)>([^<]*)</(?:Latest|Committed|Uncommitted)>");
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    private final String accountName;
+
+    private final SecretKeySpec key;
+
+    private final ConcurrentSkipListMap<String, Container> containers = new ConcurrentSkipListMap<String, Container>();
+
+    private final AtomicLong eTagSequence = new AtomicLong(System.currentTimeMillis());
+
+    private volatile boolean validateSignatures = true;
+
+    /**
+     * Emulator of {@link #DEFAULT_ACCOUNT_NAME} account with
+     * {@link #DEFAULT_SECRET_KEY}.
+     */
+    public AzureBlobEmulator() {
+        this(DEFAULT_ACCOUNT_NAME, DEFAULT_SECRET_KEY);
+    }
+
+    /**
+     * @param accountName
+     * @param secretKey
+     *            Base64 encoded secret key requests are signed with.
+     */
+    public AzureBlobEmulator(String accountName, String secretKey) {
+        super();
+        Assert.hasText(accountName, "Account name must be set");
+        Assert.hasText(secretKey, "Secret key must be set");
+        this.accountName = accountName;
+        this.key = new SecretKeySpec(Base64.decodeBase64(secretKey.getBytes(UTF_8)), "HmacSHA256");
+    }
+
+    /**
+     * @return Blob URL format Azure template should be configured with.
+     */
+    public String getBlobUrlFormat() {
+        return getEndpoint() + "/%s/%s";
+    }
+
+    /**
+     * @return the accountName
+     */
+    public String getAccountName() {
+        return accountName;
+    }
+
+    /**
+     * @param validateSignatures
+     *            If <code>false</code>, requests are accepted without
+     *            checking SharedKey signature.
+     */
+    public void setValidateSignatures(boolean validateSignatures) {
+        this.validateSignatures = validateSignatures;
+    }
+
+    /**
+     * @param containerName
+     * @param blobName
+     * @return Content of committed blob, or <code>null</code> if blob does not
+     *         exist.
+     */
+    public byte[] getBlobData(String containerName, String blobName) {
+        Container container = containers.get(containerName);
+        StoredBlob blob = container == null ? null : container.blobs.get(blobName);
+        return blob == null ? null : blob.data.clone();
+    }
+
+    /**
+     * Delete all containers and blobs.
+     */
+    public void clear() {
+        containers.clear();
+    }
+
+    @Override
+    protected void handle(HttpExchange exchange, byte[] body) throws IOException {
+        URI uri = exchange.getRequestURI();
+        String method = exchange.getRequestMethod();
+        Map<String, String> query = parseQuery(uri.getRawQuery());
+
+        exchange.getResponseHeaders().add("x-ms-request-id", UUID.randomUUID().toString());
+        exchange.getResponseHeaders().add("x-ms-version", STORAGE_VERSION);
+        exchange.getResponseHeaders().add("Date", formatDate(new Date()));
+
+        if (validateSignatures && !isSignatureValid(exchange)) {
+            sendError(exchange, 403, "AuthenticationFailed",
+                    "Server failed to authenticate the request. Make sure the value of Authorization header is formed correctly including the signature.");
+            return;
+        }
+
+        // Path is /account[/container[/blob]]
+        String path = uri.getPath();
+        String accountPrefix = "/" + accountName;
+        if (!path.equals(accountPrefix) && !path.startsWith(accountPrefix + "/")) {
+            sendError(exchange, 400, "InvalidUri", "The requested URI does not represent any resource on the server.");
+            return;
+        }
+        String resource = path.length() > accountPrefix.length() ? path.substring(accountPrefix.length() + 1) : "";
+        int slash = resource.indexOf('/');
+        String containerName = slash == -1 ? resource : resource.substring(0, slash);
+        String blobName = slash == -1 ? "" : resource.substring(slash + 1);
+
+        if (containerName.length() == 0) {
+            if ("GET".equals(method) && "list".equals(query.get("comp"))) {
+                listContainers(exchange, query);
+            } else {
+                sendError(exchange, 400, "InvalidQueryParameterValue", "Unsupported account operation.");
+            }
+        } else if (blobName.length() == 0) {
+            if (!"container".equals(query.get("restype"))) {
+                sendError(exchange, 400, "InvalidQueryParameterValue", "Value for restype is not valid.");
+            } else if ("PUT".equals(method)) {
+                createContainer(exchange, containerName);
+            } else if ("DELETE".equals(method)) {
+                deleteContainer(exchange, containerName);
+            } else if ("GET".equals(method) && "list".equals(query.get("comp"))) {
+                listBlobs(exchange, containerName, query);
+            } else if ("GET".equals(method) || "HEAD".equals(method)) {
+                getContainerProperties(exchange, containerName);
+            } else {
+                sendError(exchange, 405, "UnsupportedHttpVerb", "The resource doesn't support specified Http Verb.");
+            }
+        } else if ("PUT".equals(method) && "block".equals(query.get("comp"))) {
+            putBlock(exchange, containerName, blobName, query.get("blockid"), body);
+        } else if ("PUT".equals(method) && "blocklist".equals(query.get("comp"))) {
+            putBlockList(exchange, containerName, blobName, body);
+        } else if ("PUT".equals(method) && exchange.getRequestHeaders().containsKey("x-ms-copy-source")) {
+            copyBlob(exchange, containerName, blobName, exchange.getRequestHeaders().getFirst("x-ms-copy-source"));
+        } else if ("PUT".equals(method)) {
+            putBlob(exchange, containerName, blobName, body);
+        } else if ("GET".equals(method) || "HEAD".equals(method)) {
+            getBlob(exchange, containerName, blobName);
+        } else if ("DELETE".equals(method)) {
+            deleteBlob(exchange, containerName, blobName);
+        } else {
+            sendError(exchange, 405, "UnsupportedHttpVerb", "The resource doesn't support specified Http Verb.");
+        }
+    }
+
+    @Override
+    protected void sendError(HttpExchange exchange, int statusCode, String errorCode, String message)
+            throws IOException {
+        String code = errorCode;
+        if (code == null) {
+            code = statusCode == 503 ? "ServerBusy" : statusCode == 500 ? "InternalError" : "InvalidInput";
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/xml");
+        String error = "<?xml version=\"1.0\" encoding=\"utf-8\"?><Error><Code>" + code + "</Code><Message>"
+                + escapeXml(message) + "</Message></Error>";
+        sendResponse(exchange, statusCode, error.getBytes(UTF_8));
+    }
+
+    private void createContainer(HttpExchange exchange, String containerName) throws IOException {
+        countOperation("CreateContainer");
+        Container container = new Container(nextETag());
+        if (containers.putIfAbsent(containerName, container) != null) {
+            sendError(exchange, 409, "ContainerAlreadyExists", "The specified container already exists.");
+            return;
+        }
+        addProperties(exchange, container.eTag, container.lastModified);
+        sendResponse(exchange, 201, null);
+    }
+
+    private void deleteContainer(HttpExchange exchange, String containerName) throws IOException {
+        countOperation("DeleteContainer");
+        if (containers.remove(containerName) == null) {
+            sendContainerNotFound(exchange);
+            return;
+        }
+        sendResponse(exchange, 202, null);
+    }
+
+    private void getContainerProperties(HttpExchange exchange, String containerName) throws IOException {
+        countOperation("GetContainerProperties");
+        Container container = containers.get(containerName);
+        if (container == null) {
+            sendContainerNotFound(exchange);
+            return;
+        }
+        addProperties(exchange, container.eTag, container.lastModified);
+        sendResponse(exchange, 200, null);
+    }
+
+    private void listContainers(HttpExchange exchange, Map<String, String> query) throws IOException {
+        countOperation("ListContainers");
+        String prefix = query.get("prefix");
+        String marker = query.get("marker");
+        int maxResults = getMaxResults(query);
+
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>");
+        xml.append("<EnumerationResults AccountName=\"").append(escapeXml(getEndpoint() + "/" + accountName))
+                .append("\"><Containers>");
+        String nextMarker = null;
+        int count = 0;
+        Map<String, Container> tail = marker == null ? containers : containers.tailMap(marker);
+        for (Map.Entry<String, Container> entry : tail.entrySet()) {
+            String name = entry.getKey();
+            if (prefix != null && !name.startsWith(prefix)) {
+                continue;
+            }
+            if (count == maxResults) {
+                nextMarker = name;
+                break;
+            }
+            count++;
+            Container container = entry.getValue();
+            xml.append("<Container><Name>").append(escapeXml(name)).append("</Name><Url>").append(
+                    escapeXml(getEndpoint() + "/" + accountName + "/" + name)).append("</Url><LastModified>")
+                    .append(formatDate(container.lastModified)).append("</LastModified><Etag>").append(
+                            container.eTag).append("</Etag></Container>");
+        }
+        xml.append("</Containers>");
+        appendNextMarker(xml, nextMarker);
+        xml.append("</EnumerationResults>");
+        sendXml(exchange, xml);
+    }
+
+    private void listBlobs(HttpExchange exchange, String containerName, Map<String, String> query)
+            throws IOException {
+        countOperation("ListBlobs");
+        Container container = containers.get(containerName);
+        if (container == null) {
+            sendContainerNotFound(exchange);
+            return;
+        }
+
+        String prefix = query.get("prefix");
+        String delimiter = query.get("delimiter");
+        String marker = query.get("marker");
+        int maxResults = getMaxResults(query);
+
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>");
+        xml.append("<EnumerationResults ContainerName=\"").append(
+                escapeXml(getEndpoint() + "/" + accountName + "/" + containerName)).append("\">");
+        appendElement(xml, "Prefix", prefix);
+        appendElement(xml, "Marker", marker);
+        appendElement(xml, "MaxResults", query.get("maxresults"));
+        appendElement(xml, "Delimiter", delimiter);
+        xml.append("<Blobs>");
+
+        String nextMarker = null;
+        String lastBlobPrefix = null;
+        int count = 0;
+        ConcurrentNavigableMap<String, StoredBlob> tail = marker == null ? container.blobs : container.blobs
+                .tailMap(marker);
+        for (Map.Entry<String, StoredBlob> entry : tail.entrySet()) {
+            String name = entry.getKey();
+            if (prefix != null && !name.startsWith(prefix)) {
+                if (name.compareTo(prefix) > 0) {
+                    break;
+                }
+                continue;
+            }
+
+            String blobPrefix = null;
+            if (delimiter != null && delimiter.length() > 0) {
+                int i = name.indexOf(delimiter, prefix == null ? 0 : prefix.length());
+                if (i != -1) {
+                    blobPrefix = name.substring(0, i + delimiter.length());
+                }
+            }
+            if (blobPrefix != null && blobPrefix.equals(lastBlobPrefix)) {
+                continue;
+            }
+            if (count == maxResults) {
+                nextMarker = name;
+                break;
+            }
+            count++;
+
+            if (blobPrefix != null) {
+                lastBlobPrefix = blobPrefix;
+                xml.append("<BlobPrefix><Name>").append(escapeXml(blobPrefix)).append("</Name></BlobPrefix>");
+            } else {
+                StoredBlob blob = entry.getValue();
+                xml.append("<Blob><Name>").append(escapeXml(name)).append("</Name><Url>").append(
+                        escapeXml(getEndpoint() + "/" + accountName + "/" + containerName + "/" + name)).append(
+                        "</Url><Properties><Last-Modified>").append(formatDate(blob.lastModified)).append(
+                        "</Last-Modified><Etag>").append(blob.eTag).append("</Etag><Content-Length>").append(
+                        blob.data.length).append("</Content-Length><Content-Type>").append(
+                        escapeXml(blob.contentType)).append(
+                        "</Content-Type><BlobType>BlockBlob</BlobType><LeaseStatus>unlocked</LeaseStatus>").append(
+                        "</Properties></Blob>");
+            }
+        }
+        xml.append("</Blobs>");
+        appendNextMarker(xml, nextMarker);
+        xml.append("</EnumerationResults>");
+        sendXml(exchange, xml);
+    }
+
+    private void putBlob(HttpExchange exchange, String containerName, String blobName, byte[] body)
+            throws IOException {
+        countOperation("PutBlob");
+        Container container = containers.get(containerName);
+        if (container == null) {
+            sendContainerNotFound(exchange);
+            return;
+        }
+
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        StoredBlob blob = new StoredBlob(body, contentType, nextETag(), Collections.<String, byte[]> emptyMap());
+        synchronized (container) {
+            int status = checkPreconditions(exchange, container.blobs.get(blobName), false);
+            if (status != 0) {
+                sendConditionNotMet(exchange, status);
+                return;
+            }
+            container.blobs.put(blobName, blob);
+            container.uncommittedBlocks.remove(blobName);
+        }
+        addProperties(exchange, blob.eTag, blob.lastModified);
+        sendResponse(exchange, 201, null);
+    }
+
+    /**
+     * Copy source is '/account/container/blob' (storage version 2009-09-19)
+     * or blob URL, copy completes synchronously.
+     */
+    private void copyBlob(HttpExchange exchange, String containerName, String blobName, String copySource)
+            throws IOException {
+        countOperation("CopyBlob");
+        Container container = containers.get(containerName);
+        if (container == null) {
+            sendContainerNotFound(exchange);
+            return;
+        }
+
+        String source = copySource.startsWith("http") ? URI.create(copySource).getPath() : copySource;
+        String accountPrefix = "/" + accountName + "/";
+        int slash = source.indexOf('/', accountPrefix.length());
+        if (!source.startsWith(accountPrefix) || slash == -1) {
+            sendError(exchange, 400, "InvalidHeaderValue", "The value for x-ms-copy-source is not valid.");
+            return;
+        }
+        Container sourceContainer = containers.get(source.substring(accountPrefix.length(), slash));
+        StoredBlob sourceBlob = sourceContainer == null ? null : sourceContainer.blobs.get(source
+                .substring(slash + 1));
+        if (sourceBlob == null) {
+            sendError(exchange, 404, "CannotVerifyCopySource", "The specified copy source blob does not exist.");
+            return;
+        }
+
+        StoredBlob blob = new StoredBlob(sourceBlob.data, sourceBlob.contentType, nextETag(),
+                sourceBlob.committedBlocks);
+        synchronized (container) {
+            int status = checkPreconditions(exchange, container.blobs.get(blobName), false);
+            if (status != 0) {
+                sendConditionNotMet(exchange, status);
+                return;
+            }
+            container.blobs.put(blobName, blob);
+            container.uncommittedBlocks.remove(blobName);
+        }
+        addProperties(exchange, blob.eTag, blob.lastModified);
+        sendResponse(exchange, 201, null);
+    }
+
+    private void putBlock(HttpExchange exchange, String containerName, String blobName, String blockId,
+            byte[] body) throws IOException {
+        countOperation("PutBlock");
+        Container container = containers.get(containerName);
+        if (container == null) {
+            sendContainerNotFound(exchange);
+            return;
+        }
+        if (blockId == null || blockId.length() == 0) {
+            sendError(exchange, 400, "InvalidQueryParameterValue", "Value for blockid is not valid.");
+            return;
+        }
+
+        synchronized (container) {
+            Map<String, byte[]> blocks = container.uncommittedBlocks.get(blobName);
+            if (blocks == null) {
+                blocks = new HashMap<String, byte[]>();
+                container.uncommittedBlocks.put(blobName, blocks);
+            }
+            blocks.put(blockId, body);
+        }
+        sendResponse(exchange, 201, null);
+    }
+
+    private void putBlockList(HttpExchange exchange, String containerName, String blobName, byte[] body)
+            throws IOException {
+        countOperation("PutBlockList");
+        Container container = containers.get(containerName);
+        if (container == null) {
+            sendContainerNotFound(exchange);
+            return;
+        }
+
+        String contentType = exchange.getRequestHeaders().getFirst("x-ms-blob-content-type");
+        StoredBlob blob;
+        synchronized (container) {
+            StoredBlob existing = container.blobs.get(blobName);
+            int status = checkPreconditions(exchange, existing, false);
+            if (status != 0) {
+                sendConditionNotMet(exchange, status);
+                return;
+            }
+
+            Map<String, byte[]> uncommitted = container.uncommittedBlocks.get(blobName);
+            Map<String, byte[]> committed = existing == null ? Collections.<String, byte[]> emptyMap()
+                    : existing.committedBlocks;
+            Map<String, byte[]> blocks = new HashMap<String, byte[]>();
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            Matcher matcher = BLOCK_LIST_ITEM.matcher(new String(body, UTF_8));
+            while (matcher.find()) {
+                String list = matcher.group(1);
+                String blockId = matcher.group(2);
+                byte[] block = null;
+                if (!"Committed".equals(list) && uncommitted != null) {
+                    block = uncommitted.get(blockId);
+                }
+                if (block == null && !"Uncommitted".equals(list)) {
+                    block = committed.get(blockId);
+                }
+                if (block == null) {
+                    sendError(exchange, 400, "InvalidBlockList", "The specified block list is invalid.");
+                    return;
+                }
+                blocks.put(blockId, block);
+                data.write(block, 0, block.length);
+            }
+
+            blob = new StoredBlob(data.toByteArray(), contentType, nextETag(), blocks);
+            container.blobs.put(blobName, blob);
+            container.uncommittedBlocks.remove(blobName);
+        }
+        addProperties(exchange, blob.eTag, blob.lastModified);
+        sendResponse(exchange, 201, null);
+    }
+
+    private void getBlob(HttpExchange exchange, String containerName, String blobName) throws IOException {
+        boolean head = "HEAD".equals(exchange.getRequestMethod());
+        countOperation(head ? "GetBlobProperties" : "GetBlob");
+        Container container = containers.get(containerName);
+        StoredBlob blob = container == null ? null : container.blobs.get(blobName);
+        if (blob == null) {
+            sendBlobNotFound(exchange);
+            return;
+        }
+
+        int status = checkPreconditions(exchange, blob, true);
+        if (status == 304) {
+            addProperties(exchange, blob.eTag, blob.lastModified);
+            sendResponse(exchange, 304, null);
+            return;
+        } else if (status != 0) {
+            sendConditionNotMet(exchange, status);
+            return;
+        }
+
+        Headers responseHeaders = exchange.getResponseHeaders();
+        addProperties(exchange, blob.eTag, blob.lastModified);
+        responseHeaders.add("Content-Type", blob.contentType);
+        responseHeaders.add("x-ms-blob-type", "BlockBlob");
+        responseHeaders.add("Accept-Ranges", "bytes");
+
+        String range = exchange.getRequestHeaders().getFirst("x-ms-range");
+        if (range == null) {
+            range = exchange.getRequestHeaders().getFirst("Range");
+        }
+        if (range == null) {
+            if (head) {
+                responseHeaders.add("Content-Length", String.valueOf(blob.data.length));
+            }
+            sendResponse(exchange, 200, blob.data);
+            return;
+        }
+
+        Matcher matcher = RANGE.matcher(range);
+        if (!matcher.matches() || Long.parseLong(matcher.group(1)) >= blob.data.length) {
+            sendError(exchange, 416, "InvalidRange", "The range specified is invalid for the current size of the resource.");
+            return;
+        }
+        int start = Integer.parseInt(matcher.group(1));
+        int end = matcher.group(2).length() == 0 ? blob.data.length - 1 : (int) Math.min(Long.parseLong(matcher
+                .group(2)), blob.data.length - 1);
+        byte[] data = new byte[end - start + 1];
+        System.arraycopy(blob.data, start, data, 0, data.length);
+        responseHeaders.add("Content-Range", "bytes " + start + "-" + end + "/" + blob.data.length);
+        if (head) {
+            responseHeaders.add("Content-Length", String.valueOf(data.length));
+        }
+        sendResponse(exchange, 206, data);
+    }
+
+    private void deleteBlob(HttpExchange exchange, String containerName, String blobName) throws IOException {
+        countOperation("DeleteBlob");
+        Container container = containers.get(containerName);
+        if (container == null) {
+            sendContainerNotFound(exchange);
+            return;
+        }
+
+        synchronized (container) {
+            StoredBlob blob = container.blobs.get(blobName);
+            if (blob == null) {
+                sendBlobNotFound(exchange);
+                return;
+            }
+            int status = checkPreconditions(exchange, blob, false);
+            if (status != 0) {
+                sendConditionNotMet(exchange, status);
+                return;
+            }
+            container.blobs.remove(blobName);
+        }
+        sendResponse(exchange, 202, null);
+    }
+
+    /**
+     * @param exchange
+     * @param blob
+     *            Current blob, or <code>null</code> if it does not exist.
+     * @param read
+     *            If <code>true</code>, unmet 'If-None-Match' and
+     *            'If-Modified-Since' conditions result in 304 status.
+     * @return Status code of unmet condition, or 0 if all conditions are met.
+     */
+    private int checkPreconditions(HttpExchange exchange, StoredBlob blob, boolean read) {
+        Headers headers = exchange.getRequestHeaders();
+        String ifMatch = headers.getFirst("If-Match");
+        if (ifMatch != null && (blob == null || !("*".equals(ifMatch) || blob.eTag.equals(ifMatch)))) {
+            return 412;
+        }
+        String ifNoneMatch = headers.getFirst("If-None-Match");
+        if (ifNoneMatch != null && blob != null && ("*".equals(ifNoneMatch) || blob.eTag.equals(ifNoneMatch))) {
+            return read ? 304 : 412;
+        }
+        Date ifModifiedSince = parseDate(headers.getFirst("If-Modified-Since"));
+        if (ifModifiedSince != null && blob != null && !blob.lastModified.after(ifModifiedSince)) {
+            return read ? 304 : 412;
+        }
+        Date ifUnmodifiedSince = parseDate(headers.getFirst("If-Unmodified-Since"));
+        if (ifUnmodifiedSince != null && blob != null && blob.lastModified.after(ifUnmodifiedSince)) {
+            return 412;
+        }
+        return 0;
+    }
+
+    /**
+     * Validate SharedKey signature the way Azure Blob service does it:
+     * signature string is built from verb, standard headers, sorted x-ms-
+     * headers and canonicalized resource.
+     * 
+     * @param exchange
+     * @return
+     */
+    private boolean isSignatureValid(HttpExchange exchange) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        String authorizationPrefix = "SharedKey " + accountName + ":";
+        if (authorization == null || !authorization.startsWith(authorizationPrefix)) {
+            return false;
+        }
+        return sign(createSignatureString(exchange)).equals(authorization.substring(authorizationPrefix.length()));
+    }
+
+    private String createSignatureString(HttpExchange exchange) {
+        Headers headers = exchange.getRequestHeaders();
+        StringBuilder sb = new StringBuilder();
+        sb.append(exchange.getRequestMethod().toUpperCase()).append('\n');
+
+        for (String header : STANDARD_HEADERS) {
+            String value = headers.getFirst(header);
+            // Date header is not signed when x-ms-date header is set.
+            if (value != null && !"Date".equals(header)) {
+                sb.append(value);
+            }
+            sb.append('\n');
+        }
+
+        List<String[]> msHeaders = new ArrayList<String[]>();
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            String name = header.getKey().toLowerCase(Locale.US);
+            if (name.startsWith("x-ms-")) {
+                for (String value : header.getValue()) {
+                    msHeaders.add(new String[]{name, value.trim()});
+                }
+            }
+        }
+        Collections.sort(msHeaders, new Comparator<String[]>() {
+            public int compare(String[] h1, String[] h2) {
+                return h1[0].compareTo(h2[0]);
+            }
+        });
+        for (String[] header : msHeaders) {
+            sb.append(header[0]).append(':').append(header[1]).append('\n');
+        }
+
+        URI uri = exchange.getRequestURI();
+        boolean escaped = uri.toString().indexOf('%') != -1;
+        String path = escaped ? uri.getPath() : uri.getRawPath();
+        String query = escaped ? uri.getQuery() : uri.getRawQuery();
+        sb.append('/').append(accountName).append(path);
+        if (query != null) {
+            String[] queryItems = query.split("&");
+            Arrays.sort(queryItems);
+            for (String queryItem : queryItems) {
+                sb.append('\n').append(queryItem.replace('=', ':'));
+            }
+        }
+        return sb.toString();
+    }
+
+    private String sign(String signatureString) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return new String(Base64.encodeBase64(mac.doFinal(signatureString.getBytes(UTF_8))), UTF_8);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to sign request", e);
+        }
+    }
+
+    private String nextETag() {
+        return "0x" + Long.toHexString(eTagSequence.incrementAndGet()).toUpperCase(Locale.US);
+    }
+
+    private void addProperties(HttpExchange exchange, String eTag, Date lastModified) {
+        exchange.getResponseHeaders().add("ETag", eTag);
+        exchange.getResponseHeaders().add("Last-Modified", formatDate(lastModified));
+    }
+
+    private void sendXml(HttpExchange exchange, StringBuilder xml) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/xml");
+        sendResponse(exchange, 200, xml.toString().getBytes(UTF_8));
+    }
+
+    private void sendContainerNotFound(HttpExchange exchange) throws IOException {
+        sendError(exchange, 404, "ContainerNotFound", "The specified container does not exist.");
+    }
+
+    private void sendBlobNotFound(HttpExchange exchange) throws IOException {
+        sendError(exchange, 404, "BlobNotFound", "The specified blob does not exist.");
+    }
+
+    private void sendConditionNotMet(HttpExchange exchange, int status) throws IOException {
+        sendError(exchange, status, "ConditionNotMet", "The condition specified using HTTP conditional header(s) is not met.");
+    }
+
+    private static int getMaxResults(Map<String, String> query) {
+        String maxResults = query.get("maxresults");
+        return maxResults == null ? DEFAULT_MAX_RESULTS : Integer.parseInt(maxResults);
+    }
+
+    private static void appendElement(StringBuilder xml, String name, String value) {
+        if (value != null) {
+            xml.append('<').append(name).append('>').append(escapeXml(value)).append("</").append(name).append('>');
+        }
+    }
+
+    private static void appendNextMarker(StringBuilder xml, String nextMarker) {
+        if (nextMarker == null) {
+            xml.append("<NextMarker />");
+        } else {
+            xml.append("<NextMarker>").append(escapeXml(nextMarker)).append("</NextMarker>");
+        }
+    }
+
+    /**
+     * Current time truncated to seconds, as precise as HTTP dates are.
+     */
+    private static Date now() {
+        return new Date(System.currentTimeMillis() / 1000 * 1000);
+    }
+
+    private static class Container {
+        private final String eTag;
+        private final Date lastModified = now();
+        private final ConcurrentSkipListMap<String, StoredBlob> blobs = new ConcurrentSkipListMap<String, StoredBlob>();
+        private final Map<String, Map<String, byte[]>> uncommittedBlocks = new HashMap<String, Map<String, byte[]>>();
+
+        Container(String eTag) {
+            this.eTag = eTag;
+        }
+    }
+
+    private static class StoredBlob {
+        private final byte[] data;
+        private final String contentType;
+        private final String eTag;
+        private final Date lastModified = now();
+        private final Map<String, byte[]> committedBlocks;
+
+        StoredBlob(byte[] data, String contentType, String eTag, Map<String, byte[]> committedBlocks) {
+            this.data = data;
+            this.contentType = contentType == null ? "application/octet-stream" : contentType;
+            this.eTag = eTag;
+            this.committedBlocks = committedBlocks;
+        }
+    }
+}